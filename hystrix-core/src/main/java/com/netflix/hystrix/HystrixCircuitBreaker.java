@@ -19,6 +19,7 @@ import static org.junit.Assert.*;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.concurrent.ThreadSafe;
@@ -32,7 +33,8 @@ import com.netflix.hystrix.util.HystrixRollingNumberEvent;
 /**
  * Circuit-breaker logic that is hooked into {@link HystrixCommand} execution and will stop allowing executions if failures have gone past the defined threshold.
  * <p>
- * It will then allow single retries after a defined sleepWindow until the execution succeeds at which point it will again close the circuit and allow executions again.
+ * It will then allow a limited number of probe requests after a defined sleepWindow until enough of them succeed at which point it will again close the circuit and allow executions again,
+ * optionally ramping traffic back up gradually rather than all at once.
  */
 public interface HystrixCircuitBreaker {
 
@@ -54,9 +56,16 @@ public interface HystrixCircuitBreaker {
 
     /**
      * Invoked on successful executions from {@link HystrixCommand} as part of feedback mechanism when in a half-open state.
+     * <p>
+     * Only executions let through by {@link #allowRequest()} while the circuit was open (the probes) report here, not executions admitted before it tripped.
      */
     /* package */void markSuccess();
 
+    /**
+     * Invoked on failed or timed-out probe executions from {@link HystrixCommand} as part of feedback mechanism when in a half-open state.
+     */
+    /* package */void markNonSuccess();
+
     /**
      * @ExcludeFromJavadoc
      */
@@ -120,6 +129,17 @@ public interface HystrixCircuitBreaker {
         /* when the circuit was marked open or was last allowed to try a 'singleTest' */
         private AtomicLong circuitOpenedOrLastTestedTime = new AtomicLong();
 
+        /* whether the circuit is open and currently allowing probe requests through (the 'half-open' state) */
+        private AtomicBoolean halfOpen = new AtomicBoolean(false);
+
+        /* number of probe requests currently in flight and number that have succeeded while half-open */
+        private AtomicInteger probesInFlight = new AtomicInteger();
+        private AtomicInteger probeSuccesses = new AtomicInteger();
+
+        /* when the circuit was last closed if it is still ramping traffic back up (0 when not ramping up) and the requests seen since */
+        private AtomicLong rampUpStartTime = new AtomicLong();
+        private AtomicLong rampUpRequests = new AtomicLong();
+
         protected HystrixCircuitBreakerImpl(HystrixCommandKey key, HystrixCommandGroupKey commandGroup, HystrixCommandProperties properties, HystrixCommandMetrics metrics) {
             this.properties = properties;
             this.metrics = metrics;
@@ -127,13 +147,53 @@ public interface HystrixCircuitBreaker {
 
         public void markSuccess() {
             if (circuitOpen.get()) {
-                // If we have been 'open' and have a success then we want to close the circuit. This handles the 'singleTest' logic
-                circuitOpen.set(false);
-                // TODO how can we can do this without resetting the counts so we don't lose metrics of short-circuits etc?
-                metrics.resetCounter();
+                // Only probes still holding a slot count towards closing the circuit. Probes that complete after a failed probe ended the
+                // half-open window say nothing about whether the backend has recovered since then.
+                if (!halfOpen.get() || !releaseProbe()) {
+                    return;
+                }
+                if (probeSuccesses.incrementAndGet() < properties.circuitBreakerHalfOpenSuccessThreshold().get()) {
+                    // not enough probes have succeeded yet so we stay half-open
+                    return;
+                }
+                // If we have been 'open' and have enough successes then we want to close the circuit. This handles the 'singleTest' logic
+                if (circuitOpen.compareAndSet(true, false)) {
+                    halfOpen.set(false);
+                    if (properties.circuitBreakerRampUpTimeInMilliseconds().get() > 0) {
+                        // admit traffic gradually instead of sending all of it at a backend that has only just recovered
+                        rampUpRequests.set(0);
+                        rampUpStartTime.set(System.currentTimeMillis());
+                    }
+                    // TODO how can we can do this without resetting the counts so we don't lose metrics of short-circuits etc?
+                    metrics.resetCounter();
+                }
+            }
+        }
+
+        public void markNonSuccess() {
+            if (circuitOpen.get() && halfOpen.compareAndSet(true, false)) {
+                // a probe failed so the backend has not recovered, stop probing until the next 'sleepWindow' and start counting successes over
+                probeSuccesses.set(0);
+                probesInFlight.set(0);
             }
         }
 
+        /**
+         * Free up a probe slot so another probe can be let through.
+         * 
+         * @return true if a probe slot was held and released
+         */
+        private boolean releaseProbe() {
+            int inFlight = probesInFlight.get();
+            while (inFlight > 0) {
+                if (probesInFlight.compareAndSet(inFlight, inFlight - 1)) {
+                    return true;
+                }
+                inFlight = probesInFlight.get();
+            }
+            return false;
+        }
+
         @Override
         public boolean allowRequest() {
             if (properties.circuitBreakerForceOpen().get()) {
@@ -146,25 +206,67 @@ public interface HystrixCircuitBreaker {
                 // properties have asked us to ignore errors so we will ignore the results of isOpen and just allow all traffic through
                 return true;
             }
-            return !isOpen() || allowSingleTest();
+            if (isOpen()) {
+                return allowSingleTest();
+            }
+            return allowRampUp();
         }
 
         public boolean allowSingleTest() {
             long timeCircuitOpenedOrWasLastTested = circuitOpenedOrLastTestedTime.get();
-            // 1) if the circuit is open
-            // 2) and it's been longer than 'sleepWindow' since we opened the circuit
-            if (circuitOpen.get() && System.currentTimeMillis() > timeCircuitOpenedOrWasLastTested + properties.circuitBreakerSleepWindowInMilliseconds().get()) {
+            if (!circuitOpen.get()) {
+                return false;
+            }
+            // if it's been longer than 'sleepWindow' since we opened the circuit or last started probing
+            if (System.currentTimeMillis() > timeCircuitOpenedOrWasLastTested + properties.circuitBreakerSleepWindowInMilliseconds().get()) {
                 // We push the 'circuitOpenedTime' ahead by 'sleepWindow' since we have allowed one request to try.
-                // If it succeeds the circuit will be closed, otherwise another singleTest will be allowed at the end of the 'sleepWindow'.
+                // If enough succeed the circuit will be closed, otherwise another singleTest will be allowed at the end of the 'sleepWindow'.
                 if (circuitOpenedOrLastTestedTime.compareAndSet(timeCircuitOpenedOrWasLastTested, System.currentTimeMillis())) {
                     // if this returns true that means we set the time so we'll return true to allow the singleTest
                     // if it returned false it means another thread raced us and allowed the singleTest before we did
+                    // (probes that never reported back, such as rejected or bad requests, are forgotten here)
+                    probesInFlight.set(1);
+                    halfOpen.set(true);
                     return true;
                 }
             }
+            // while half-open allow further probes up to the configured concurrency
+            if (halfOpen.get()) {
+                int maxProbes = properties.circuitBreakerHalfOpenMaxConcurrentProbes().get();
+                int inFlight = probesInFlight.get();
+                while (inFlight < maxProbes) {
+                    if (probesInFlight.compareAndSet(inFlight, inFlight + 1)) {
+                        return true;
+                    }
+                    inFlight = probesInFlight.get();
+                }
+            }
             return false;
         }
 
+        /**
+         * While ramping up after the circuit closed admit a share of requests that increases linearly from the initial percentage to 100% over the ramp-up time.
+         */
+        private boolean allowRampUp() {
+            long startTime = rampUpStartTime.get();
+            if (startTime == 0) {
+                // not ramping up
+                return true;
+            }
+            long rampUpTime = properties.circuitBreakerRampUpTimeInMilliseconds().get();
+            long elapsed = System.currentTimeMillis() - startTime;
+            if (elapsed >= rampUpTime) {
+                // the ramp-up is over so we go back to admitting everything
+                rampUpStartTime.compareAndSet(startTime, 0);
+                return true;
+            }
+            int initialPercentage = properties.circuitBreakerRampUpInitialPercentage().get();
+            double percentage = initialPercentage + (100 - initialPercentage) * ((double) elapsed / rampUpTime);
+            // spread the admitted requests evenly: admit the n-th request whenever it pushes the admitted total up by one
+            long n = rampUpRequests.incrementAndGet();
+            return (long) (n * percentage / 100) > (long) ((n - 1) * percentage / 100);
+        }
+
         @Override
         public boolean isOpen() {
             if (circuitOpen.get()) {
@@ -190,6 +292,10 @@ public interface HystrixCircuitBreaker {
                     // How could previousValue be true? If another thread was going through this code at the same time a race-condition could have
                     // caused another thread to set it to true already even though we were in the process of doing the same
                     circuitOpenedOrLastTestedTime.set(System.currentTimeMillis());
+                    // a trip during (or after) a ramp-up starts the half-open cycle from scratch
+                    halfOpen.set(false);
+                    probeSuccesses.set(0);
+                    rampUpStartTime.set(0);
                 }
                 return true;
             }
@@ -219,6 +325,11 @@ public interface HystrixCircuitBreaker {
 
         }
 
+        @Override
+        public void markNonSuccess() {
+
+        }
+
     }
 
     /**
@@ -257,6 +368,11 @@ public interface HystrixCircuitBreaker {
             // we don't need to do anything since we're going to permanently trip the circuit
         }
 
+        @Override
+        public void markNonSuccess() {
+            // we don't need to do anything since we're going to permanently trip the circuit
+        }
+
         @Override
         public boolean allowRequest() {
             return !isOpen();
@@ -656,6 +772,184 @@ public interface HystrixCircuitBreaker {
             }
         }
 
+        /**
+         * While half-open several probes may be in flight at once and the circuit only closes once enough of them have succeeded.
+         * <p>
+         * A failed probe sends the circuit back to sleep and the count of successes starts over in the next window.
+         */
+        @Test
+        public void testHalfOpenWithMultipleProbes() {
+            try {
+                int sleepWindow = 200;
+                HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withCircuitBreakerSleepWindowInMilliseconds(sleepWindow)
+                        .withCircuitBreakerHalfOpenMaxConcurrentProbes(2).withCircuitBreakerHalfOpenSuccessThreshold(3);
+                HystrixCommandMetrics metrics = getMetrics(properties);
+                HystrixCircuitBreaker cb = getCircuitBreaker(key, CommandOwnerForUnitTest.OWNER_TWO, metrics, properties);
+
+                // fail
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+
+                assertFalse(cb.allowRequest());
+                assertTrue(cb.isOpen());
+
+                // wait for sleepWindow to pass
+                Thread.sleep(sleepWindow + 50);
+
+                // we should now allow 2 concurrent probes
+                assertTrue(cb.allowRequest());
+                assertTrue(cb.allowRequest());
+                assertFalse(cb.allowRequest());
+
+                // one probe succeeds which frees its slot but isn't enough to close the circuit
+                metrics.markSuccess(100);
+                cb.markSuccess();
+                assertTrue(cb.isOpen());
+                assertTrue(cb.allowRequest());
+                assertFalse(cb.allowRequest());
+
+                // the other probe fails so no more probes are allowed until after the next sleepWindow
+                metrics.markFailure(1000);
+                cb.markNonSuccess();
+                assertFalse(cb.allowRequest());
+                assertTrue(cb.isOpen());
+
+                // wait for sleepWindow to pass
+                Thread.sleep(sleepWindow + 50);
+
+                // the successes from the previous window don't count any more so it takes 3 new successes to close
+                assertTrue(cb.allowRequest());
+                assertTrue(cb.allowRequest());
+                metrics.markSuccess(100);
+                cb.markSuccess();
+                metrics.markSuccess(100);
+                cb.markSuccess();
+                assertTrue(cb.isOpen());
+                assertTrue(cb.allowRequest());
+                metrics.markSuccess(100);
+                cb.markSuccess();
+
+                // the circuit should be closed again
+                assertFalse(cb.isOpen());
+                assertTrue(cb.allowRequest());
+                assertTrue(cb.allowRequest());
+                assertTrue(cb.allowRequest());
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("Error occurred: " + e.getMessage());
+            }
+        }
+
+        /**
+         * A probe that completes after another probe failed and ended the half-open window must not count towards closing the circuit.
+         */
+        @Test
+        public void testLateProbeSuccessAfterFailedProbeDoesNotCloseCircuit() {
+            try {
+                int sleepWindow = 200;
+                HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withCircuitBreakerSleepWindowInMilliseconds(sleepWindow)
+                        .withCircuitBreakerHalfOpenMaxConcurrentProbes(2).withCircuitBreakerHalfOpenSuccessThreshold(2);
+                HystrixCommandMetrics metrics = getMetrics(properties);
+                HystrixCircuitBreaker cb = getCircuitBreaker(key, CommandOwnerForUnitTest.OWNER_TWO, metrics, properties);
+
+                // fail
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+
+                assertFalse(cb.allowRequest());
+                assertTrue(cb.isOpen());
+
+                // wait for sleepWindow to pass
+                Thread.sleep(sleepWindow + 50);
+
+                // 2 probes are let through, the first fails and ends the half-open window
+                assertTrue(cb.allowRequest());
+                assertTrue(cb.allowRequest());
+                metrics.markFailure(1000);
+                cb.markNonSuccess();
+
+                // the second succeeds afterwards but doesn't count or let another probe through
+                metrics.markSuccess(100);
+                cb.markSuccess();
+                assertTrue(cb.isOpen());
+                assertFalse(cb.allowRequest());
+
+                // wait for sleepWindow to pass
+                Thread.sleep(sleepWindow + 50);
+
+                // it takes 2 successful probes of the new window to close
+                assertTrue(cb.allowRequest());
+                metrics.markSuccess(100);
+                cb.markSuccess();
+                assertTrue(cb.isOpen());
+                assertTrue(cb.allowRequest());
+                metrics.markSuccess(100);
+                cb.markSuccess();
+                assertFalse(cb.isOpen());
+                assertTrue(cb.allowRequest());
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("Error occurred: " + e.getMessage());
+            }
+        }
+
+        /**
+         * After the circuit closes with a ramp-up configured only a small share of requests is admitted at first until the ramp-up time has passed.
+         */
+        @Test
+        public void testRampUpAfterClosingCircuit() {
+            try {
+                int sleepWindow = 50;
+                int rampUpTime = 2000;
+                HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withCircuitBreakerSleepWindowInMilliseconds(sleepWindow)
+                        .withCircuitBreakerRampUpTimeInMilliseconds(rampUpTime).withCircuitBreakerRampUpInitialPercentage(10);
+                HystrixCommandMetrics metrics = getMetrics(properties);
+                HystrixCircuitBreaker cb = getCircuitBreaker(key, CommandOwnerForUnitTest.OWNER_TWO, metrics, properties);
+
+                // fail
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+
+                assertFalse(cb.allowRequest());
+                assertTrue(cb.isOpen());
+
+                // wait for sleepWindow to pass and let the 'singleTest' succeed
+                Thread.sleep(sleepWindow + 50);
+                assertTrue(cb.allowRequest());
+                metrics.markSuccess(100);
+                cb.markSuccess();
+                assertFalse(cb.isOpen());
+
+                // only about 10% of requests are admitted right after closing
+                int admitted = 0;
+                for (int i = 0; i < 100; i++) {
+                    if (cb.allowRequest()) {
+                        admitted++;
+                    }
+                }
+                assertFalse(cb.isOpen());
+                assertTrue("admitted: " + admitted, admitted >= 5 && admitted <= 30);
+
+                // wait for the ramp-up to finish after which everything is admitted again
+                Thread.sleep(rampUpTime + 50);
+                for (int i = 0; i < 100; i++) {
+                    assertTrue(cb.allowRequest());
+                }
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("Error occurred: " + e.getMessage());
+            }
+        }
+
         /**
          * When volume of reporting during a statistical window is lower than a defined threshold the circuit
          * will not trip regardless of whatever statistics are calculated.
@@ -17,17 +17,25 @@ package com.netflix.hystrix;
 
 import static org.junit.Assert.*;
 
+import java.lang.ref.Reference;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -37,6 +45,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
@@ -48,9 +57,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.netflix.config.ConfigurationManager;
+import com.netflix.hystrix.HystrixCircuitBreaker.HystrixCircuitBreakerImpl;
 import com.netflix.hystrix.HystrixCircuitBreaker.NoOpCircuitBreaker;
 import com.netflix.hystrix.HystrixCircuitBreaker.TestCircuitBreaker;
 import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionPriority;
 import com.netflix.hystrix.exception.HystrixBadRequestException;
 import com.netflix.hystrix.exception.HystrixRuntimeException;
 import com.netflix.hystrix.exception.HystrixRuntimeException.FailureType;
@@ -61,13 +72,18 @@ import com.netflix.hystrix.strategy.concurrency.HystrixContextCallable;
 import com.netflix.hystrix.strategy.concurrency.HystrixContextRunnable;
 import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
 import com.netflix.hystrix.strategy.eventnotifier.HystrixEventNotifier;
+import com.netflix.hystrix.strategy.eventnotifier.HystrixEventNotifierDefault;
 import com.netflix.hystrix.strategy.metrics.HystrixMetricsPublisher;
 import com.netflix.hystrix.strategy.metrics.HystrixMetricsPublisherFactory;
 import com.netflix.hystrix.strategy.properties.HystrixPropertiesFactory;
 import com.netflix.hystrix.strategy.properties.HystrixPropertiesStrategy;
 import com.netflix.hystrix.strategy.properties.HystrixProperty;
 import com.netflix.hystrix.util.ExceptionThreadingUtility;
+import com.netflix.hystrix.util.HystrixBoundedCache;
+import com.netflix.hystrix.util.HystrixPriorityBlockingQueue;
 import com.netflix.hystrix.util.HystrixRollingNumberEvent;
+import com.netflix.hystrix.util.HystrixTimer;
+import com.netflix.hystrix.util.HystrixTimer.TimerListener;
 
 /**
  * Used to wrap code that will execute potentially risky functionality (typically meaning a service call over the network)
@@ -83,12 +99,26 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
 
     private final HystrixCircuitBreaker circuitBreaker;
     private final HystrixThreadPool threadPool;
+    private final HystrixThreadPool fallbackThreadPool; // null unless fallbacks are isolated on their own thread-pool
     private final HystrixThreadPoolKey threadPoolKey;
     private final HystrixCommandProperties properties;
     private final HystrixCommandMetrics metrics;
 
     /* result of execution (if this command instance actually gets executed, which may not occur due to request caching) */
     private volatile ExecutionResult executionResult = ExecutionResult.EMPTY;
+    /* execution time of run() on this instance, kept out of ExecutionResult so recording it does not allocate a new ExecutionResult (-1 if not executed or retrieved from cache) */
+    private volatile int executionTime = -1;
+    /* If run() was retried after failing */
+    private volatile boolean isExecutionRetried = false;
+    /* If the circuit-breaker let this execution through as a probe while open, in which case its outcome decides whether the circuit closes */
+    private volatile boolean isCircuitBreakerProbe = false;
+    /* coordinates the hedged execution if hedging is enabled for a THREAD isolated execution */
+    private volatile QueuedExecutionFuture.HedgedExecution hedgedExecution = null;
+    /* the Future of a THREAD isolated execution so a fallback on the fallback thread-pool can set its response without the failing thread waiting for it */
+    private volatile QueuedExecutionFuture queuedExecution = null;
+    /* key for request caching retrieved once per execution (NO_REQUEST_CACHE_KEY if there isn't one) since building it may be costly */
+    private volatile Object requestCacheKeyForExecution = null;
+    private static final Object NO_REQUEST_CACHE_KEY = new Object();
 
     /* If this command executed and timed-out */
     private final AtomicBoolean isCommandTimedOut = new AtomicBoolean(false);
@@ -99,19 +129,32 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
     private final HystrixCommandGroupKey commandGroup;
 
     /* FALLBACK Semaphore */
-    private final TryableSemaphore fallbackSemaphoreOverride;
+    private final TryableSemaphore fallbackSemaphore;
     /* each circuit has a semaphore to restrict concurrent fallback execution */
     private static final ConcurrentHashMap<String, TryableSemaphore> fallbackSemaphorePerCircuit = new ConcurrentHashMap<String, TryableSemaphore>();
 
     /* END FALLBACK Semaphore */
 
+    /* each circuit has a cache of the last successful response per cache key (created only if enabled) */
+    private static final ConcurrentHashMap<String, HystrixBoundedCache<String, Object>> lastKnownGoodPerCircuit = new ConcurrentHashMap<String, HystrixBoundedCache<String, Object>>();
+    /* each circuit has a cache of successful responses shared across requests (created only if enabled) */
+    private static final ConcurrentHashMap<String, HystrixBoundedCache<String, Object>> responseCachePerCircuit = new ConcurrentHashMap<String, HystrixBoundedCache<String, Object>>();
+    /* each circuit has the cache keys that failed recently (created only if enabled) */
+    private static final ConcurrentHashMap<String, HystrixBoundedCache<String, Object>> negativeCachePerCircuit = new ConcurrentHashMap<String, HystrixBoundedCache<String, Object>>();
+    private static final HystrixProperty<Integer> NO_SIZE_LIMIT = HystrixProperty.Factory.asProperty(0);
+    /* each circuit has the executions in flight per cache key that identical executions in any request can join (created only if enabled) */
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, CommandFuture<?>>> singleFlightExecutionsPerCircuit = new ConcurrentHashMap<String, ConcurrentHashMap<String, CommandFuture<?>>>();
+
     /* EXECUTION Semaphore */
-    private final TryableSemaphore executionSemaphoreOverride;
+    private final TryableSemaphore executionSemaphore;
     /* each circuit has a semaphore to restrict concurrent fallback execution */
     private static final ConcurrentHashMap<String, TryableSemaphore> executionSemaphorePerCircuit = new ConcurrentHashMap<String, TryableSemaphore>();
 
     /* END FALLBACK Semaphore */
 
+    /* how often the HystrixTimer checks whether a command executing in a thread has passed its timeout */
+    private static final int TIMEOUT_TICK_INTERVAL_IN_MILLISECONDS = 10;
+
     /* used to track whenever the user invokes the command using execute(), queue() or fireAndForget() ... also used to know if execution has begun */
     private AtomicLong invocationStartTime = new AtomicLong(-1);
 
@@ -155,6 +198,34 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         this(setter.groupKey, setter.commandKey, setter.threadPoolKey, null, null, setter.propertiesStrategy, setter.commandPropertiesDefaults, setter.threadPoolPropertiesDefaults, setter.notifier, setter.concurrencyStrategy, null, setter.metricsPublisher, null, null);
     }
 
+    /**
+     * Construct a {@link HystrixCommand} from a pre-resolved {@link Definition}.
+     * <p>
+     * This is the cheapest way to construct a command as all keys, properties, metrics, circuit-breaker, thread-pool, semaphores and plugins were resolved once when the {@link Definition} was
+     * created so no lookups are performed per instance.
+     * 
+     * @param definition
+     *            {@link Definition} shared by all instances of this command
+     */
+    protected HystrixCommand(Definition definition) {
+        if (definition == null) {
+            throw new IllegalStateException("HystrixCommand.Definition can not be NULL");
+        }
+        this.commandGroup = definition.commandGroup;
+        this.commandKey = definition.commandKey;
+        this.properties = definition.properties;
+        this.threadPoolKey = definition.threadPoolKey;
+        this.eventNotifier = definition.eventNotifier;
+        this.concurrencyStrategy = definition.concurrencyStrategy;
+        this.metrics = definition.metrics;
+        this.circuitBreaker = definition.circuitBreaker;
+        this.threadPool = definition.threadPool;
+        this.fallbackThreadPool = definition.fallbackThreadPool;
+        this.fallbackSemaphore = definition.fallbackSemaphore;
+        this.executionSemaphore = definition.executionSemaphore;
+        this.requestCache = definition.requestCache;
+    }
+
     /**
      * Allow constructing a {@link HystrixCommand} with injection of most aspects of its functionality.
      * <p>
@@ -165,103 +236,30 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
     private HystrixCommand(HystrixCommandGroupKey group, HystrixCommandKey key, HystrixThreadPoolKey threadPoolKey, HystrixCircuitBreaker circuitBreaker, HystrixThreadPool threadPool,
             HystrixPropertiesStrategy propertiesFactory, HystrixCommandProperties.Setter commandPropertiesDefaults, HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults, HystrixEventNotifier notifier,
             HystrixConcurrencyStrategy concurrencyStrategy, HystrixCommandMetrics metrics, HystrixMetricsPublisher metricsPublisher, TryableSemaphore fallbackSemaphore, TryableSemaphore executionSemaphore) {
-        /*
-         * CommandGroup initialization
-         */
-        if (group == null) {
-            throw new IllegalStateException("HystrixCommandGroup can not be NULL");
-        } else {
-            this.commandGroup = group;
-        }
-
         /*
          * CommandKey initialization
          */
         if (key == null || key.name().trim().equals("")) {
             final String keyName = getDefaultNameFromClass(getClass());
-            this.commandKey = HystrixCommandKey.Factory.asKey(keyName);
-        } else {
-            this.commandKey = key;
-        }
-
-        /*
-         * Properties initialization
-         */
-        this.properties = HystrixPropertiesFactory.getCommandProperties(propertiesFactory, this.commandKey, commandPropertiesDefaults);
-
-        /*
-         * ThreadPoolKey
-         * 
-         * This defines which thread-pool this command should run on.
-         * 
-         * It uses the HystrixThreadPoolKey if provided, then defaults to use HystrixCommandGroup.
-         * 
-         * It can then be overridden by a property if defined so it can be changed at runtime.
-         */
-        if (this.properties.executionIsolationThreadPoolKeyOverride().get() == null) {
-            // we don't have a property overriding the value so use either HystrixThreadPoolKey or HystrixCommandGroup
-            if (threadPoolKey == null) {
-                /* use HystrixCommandGroup if HystrixThreadPoolKey is null */
-                this.threadPoolKey = HystrixThreadPoolKey.Factory.asKey(commandGroup.name());
-            } else {
-                this.threadPoolKey = threadPoolKey;
-            }
-        } else {
-            // we have a property defining the thread-pool so use it instead
-            this.threadPoolKey = HystrixThreadPoolKey.Factory.asKey(properties.executionIsolationThreadPoolKeyOverride().get());
-        }
-
-        /* strategy: HystrixEventNotifier */
-        this.eventNotifier = HystrixPlugins.getInstance().getEventNotifier(notifier);
-
-        /* strategy: HystrixConcurrentStrategy */
-        this.concurrencyStrategy = HystrixPlugins.getInstance().getConcurrencyStrategy(concurrencyStrategy);
-
-        /*
-         * Metrics initialization
-         */
-        if (metrics == null) {
-            this.metrics = HystrixCommandMetrics.getInstance(this.commandKey, this.commandGroup, this.threadPoolKey, this.properties, this.eventNotifier);
-        } else {
-            this.metrics = metrics;
-        }
-
-        /*
-         * CircuitBreaker initialization
-         */
-        if (this.properties.circuitBreakerEnabled().get()) {
-            if (circuitBreaker == null) {
-                // get the default implementation of HystrixCircuitBreaker
-                this.circuitBreaker = HystrixCircuitBreaker.Factory.getInstance(this.commandKey, this.commandGroup, this.properties, this.metrics);
-            } else {
-                this.circuitBreaker = circuitBreaker;
-            }
-        } else {
-            this.circuitBreaker = new NoOpCircuitBreaker();
-        }
-
-        /* strategy: HystrixMetricsPublisherCommand */
-        HystrixMetricsPublisherFactory.createOrRetrievePublisherForCommand(metricsPublisher, this.commandKey, this.commandGroup, this.metrics, this.circuitBreaker, this.properties);
-
-        /*
-         * ThreadPool initialization
-         */
-        if (threadPool == null) {
-            // get the default implementation of HystrixThreadPool
-            this.threadPool = HystrixThreadPool.Factory.getInstance(this.threadPoolKey, this.concurrencyStrategy, metricsPublisher, propertiesFactory, threadPoolPropertiesDefaults);
-        } else {
-            this.threadPool = threadPool;
-        }
-
-        /* fallback semaphore override if applicable */
-        this.fallbackSemaphoreOverride = fallbackSemaphore;
-
-        /* execution semaphore override if applicable */
-        this.executionSemaphoreOverride = executionSemaphore;
-
-        /* setup the request cache for this instance */
-        this.requestCache = HystrixRequestCache.getInstance(this.commandKey, this.concurrencyStrategy);
-
+            key = HystrixCommandKey.Factory.asKey(keyName);
+        }
+
+        /* resolve everything else the same way a shared Definition does */
+        Definition definition = new Definition(group, key, threadPoolKey, circuitBreaker, threadPool, propertiesFactory, commandPropertiesDefaults, threadPoolPropertiesDefaults, notifier,
+                concurrencyStrategy, metrics, metricsPublisher, fallbackSemaphore, executionSemaphore);
+        this.commandGroup = definition.commandGroup;
+        this.commandKey = definition.commandKey;
+        this.properties = definition.properties;
+        this.threadPoolKey = definition.threadPoolKey;
+        this.eventNotifier = definition.eventNotifier;
+        this.concurrencyStrategy = definition.concurrencyStrategy;
+        this.metrics = definition.metrics;
+        this.circuitBreaker = definition.circuitBreaker;
+        this.threadPool = definition.threadPool;
+        this.fallbackThreadPool = definition.fallbackThreadPool;
+        this.fallbackSemaphore = definition.fallbackSemaphore;
+        this.executionSemaphore = definition.executionSemaphore;
+        this.requestCache = definition.requestCache;
     }
 
     private static String getDefaultNameFromClass(@SuppressWarnings("rawtypes") Class<? extends HystrixCommand> cls) {
@@ -385,9 +383,17 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                 throw new IllegalStateException("This instance can only be executed once. Please instantiate a new instance.");
             }
             try {
-                /* try from cache first */
+                /* try from the application-scoped cache first */
+                if (properties.responseCacheEnabled().get()) {
+                    R fromResponseCache = getFromResponseCache();
+                    if (fromResponseCache != null) {
+                        return fromResponseCache;
+                    }
+                }
+
+                /* then from the request cache */
                 if (isRequestCachingEnabled()) {
-                    Future<R> fromCache = requestCache.get(getCacheKey());
+                    Future<R> fromCache = requestCache.get(getRequestCacheKeyForExecution());
                     if (fromCache != null) {
                         /* mark that we received this response from cache */
                         metrics.markResponseFromCache();
@@ -395,6 +401,18 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                     }
                 }
 
+                /* don't execute if the request (or the command this is nested within) has already given up */
+                if (isDeadlineExceeded()) {
+                    metrics.markDeadlineExceeded();
+                    return getFallbackOrThrowException(HystrixEventType.DEADLINE_EXCEEDED, FailureType.DEADLINE_EXCEEDED, "rejected since the deadline passed");
+                }
+
+                /* don't execute if the same cache key failed recently */
+                if (isNegativelyCached()) {
+                    metrics.markNegativeCacheHit();
+                    return getFallbackOrThrowException(HystrixEventType.NEGATIVE_CACHE_HIT, FailureType.NEGATIVE_CACHE_HIT, "rejected since the cache key failed recently");
+                }
+
                 /* determine if we're allowed to execute */
                 if (!circuitBreaker.allowRequest()) {
                     // record that we are returning a short-circuited fallback
@@ -402,10 +420,11 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                     // short-circuit and go directly to fallback
                     return getFallbackOrThrowException(HystrixEventType.SHORT_CIRCUITED, FailureType.SHORTCIRCUIT, "short-circuited");
                 }
+                isCircuitBreakerProbe = circuitBreaker.isOpen();
 
                 try {
 
-                    if (properties.executionIsolationStrategy().get().equals(ExecutionIsolationStrategy.THREAD)) {
+                    if (isExecutionIsolatedInThread()) {
                         // we want to run in a separate thread with timeout protection
                         R r = queueInThread().get();
                         return r;
@@ -464,7 +483,7 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
     private R executeWithSemaphore() {
         TryableSemaphore executionSemaphore = getExecutionSemaphore();
         // acquire a permit
-        if (executionSemaphore.tryAcquire()) {
+        if (tryAcquireExecutionPermit(executionSemaphore)) {
             try {
                 // allow tracking how many concurrent threads are in here the same way we do with threadpool
                 metrics.markExecutionSemaphoreUsedPermitsCount(executionSemaphore.getNumberOfPermitsUsed());
@@ -473,7 +492,10 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                 R response = executeCommand();
                 // put in cache
                 if (isRequestCachingEnabled()) {
-                    requestCache.putIfAbsent(getCacheKey(), asFutureForCache(response));
+                    Future<R> cached = asFutureForCache(response);
+                    if (requestCache.putIfAbsent(getRequestCacheKeyForExecution(), cached) == null) {
+                        updateRequestCacheResponseSize(cached, response);
+                    }
                 }
                 /*
                  * We don't bother looking for whether someone else also put it in the cache since we've already executed and received a response.
@@ -513,9 +535,16 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
             if (!invocationStartTime.compareAndSet(-1, System.currentTimeMillis())) {
                 throw new IllegalStateException("This instance can only be executed once. Please instantiate a new instance.");
             }
+            if (properties.responseCacheEnabled().get()) {
+                /* try from the application-scoped cache first */
+                R fromResponseCache = getFromResponseCache();
+                if (fromResponseCache != null) {
+                    return asFuture(fromResponseCache);
+                }
+            }
             if (isRequestCachingEnabled()) {
-                /* try from cache first */
-                Future<R> fromCache = requestCache.get(getCacheKey());
+                /* then from the request cache */
+                Future<R> fromCache = requestCache.get(getRequestCacheKeyForExecution());
                 if (fromCache != null) {
                     /* mark that we received this response from cache */
                     metrics.markResponseFromCache();
@@ -523,6 +552,18 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                 }
             }
 
+            /* don't execute if the request (or the command this is nested within) has already given up */
+            if (isDeadlineExceeded()) {
+                metrics.markDeadlineExceeded();
+                return asFuture(getFallbackOrThrowException(HystrixEventType.DEADLINE_EXCEEDED, FailureType.DEADLINE_EXCEEDED, "rejected since the deadline passed"));
+            }
+
+            /* don't execute if the same cache key failed recently */
+            if (isNegativelyCached()) {
+                metrics.markNegativeCacheHit();
+                return asFuture(getFallbackOrThrowException(HystrixEventType.NEGATIVE_CACHE_HIT, FailureType.NEGATIVE_CACHE_HIT, "rejected since the cache key failed recently"));
+            }
+
             /* determine if we're allowed to execute */
             if (!circuitBreaker.allowRequest()) {
                 // record that we are returning a short-circuited fallback
@@ -530,10 +571,11 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                 // short-circuit and go directly to fallback (or throw an exception if no fallback implemented)
                 return asFuture(getFallbackOrThrowException(HystrixEventType.SHORT_CIRCUITED, FailureType.SHORTCIRCUIT, "short-circuited"));
             }
+            isCircuitBreakerProbe = circuitBreaker.isOpen();
 
             /* nothing was found in the cache so proceed with queuing the execution */
             try {
-                if (properties.executionIsolationStrategy().get().equals(ExecutionIsolationStrategy.THREAD)) {
+                if (isExecutionIsolatedInThread()) {
                     return queueInThread();
                 } else {
                     return queueInSemaphore();
@@ -561,13 +603,328 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         }
     }
 
+    /**
+     * Used for non-blocking asynchronous execution of command.
+     * <p>
+     * This will queue up the command on the thread pool (the same as {@link #queue()}) and invoke the {@link HystrixObserver} once the command completes instead of requiring a thread to block on
+     * {@code Future.get()}.
+     * <p>
+     * Completion, timeout, fallback and metrics are driven by the thread-pool thread executing the command and by the {@link HystrixTimer} enforcing the timeout so the calling thread is never
+     * blocked waiting for the response.
+     * <p>
+     * NOTE: If configured to not run in a separate thread, this will have the same effect as {@link #execute()} and the {@link HystrixObserver} will be invoked on the calling thread before this
+     * method returns.
+     *
+     * @param observer
+     *            {@link HystrixObserver} to receive the result of {@link #run()} execution or a fallback from {@link #getFallback()}, or the exception if a failure occurs and a fallback cannot be
+     *            retrieved
+     */
+    public final void observe(final HystrixObserver<R> observer) {
+        final CommandFuture<R> future;
+        try {
+            // every Future returned from queue() is a CommandFuture
+            future = (CommandFuture<R>) queue();
+        } catch (HystrixRuntimeException e) {
+            notifyObserverOfError(observer, e);
+            return;
+        } catch (HystrixBadRequestException e) {
+            notifyObserverOfError(observer, e);
+            return;
+        }
+
+        future.addCompletionListener(new Runnable() {
+
+            @Override
+            public void run() {
+                R response;
+                try {
+                    // the response is already available so this will not block
+                    response = future.get();
+                } catch (ExecutionException e) {
+                    Throwable t = e.getCause();
+                    if (t instanceof HystrixRuntimeException || t instanceof HystrixBadRequestException) {
+                        notifyObserverOfError(observer, t);
+                    } else {
+                        notifyObserverOfError(observer, new HystrixRuntimeException(FailureType.COMMAND_EXCEPTION, HystrixCommand.this.getClass(), getLogMessagePrefix() + " failed while executing.", t, null));
+                    }
+                    return;
+                } catch (Exception e) {
+                    notifyObserverOfError(observer, new HystrixRuntimeException(FailureType.COMMAND_EXCEPTION, HystrixCommand.this.getClass(), getLogMessagePrefix() + " failed while executing.", e, null));
+                    return;
+                }
+                try {
+                    observer.onCompleted(response);
+                } catch (Exception e) {
+                    // errors from the observer are for the observer itself to deal with
+                    logger.warn(getLogMessagePrefix() + ": Error while executing HystrixObserver.onCompleted.", e);
+                }
+            }
+
+        });
+    }
+
+    private void notifyObserverOfError(HystrixObserver<R> observer, Throwable e) {
+        try {
+            observer.onError(e);
+        } catch (Exception oe) {
+            // errors from the observer are for the observer itself to deal with
+            logger.warn(getLogMessagePrefix() + ": Error while executing HystrixObserver.onError.", oe);
+        }
+    }
+
+    /**
+     * Used for concurrent execution of many commands with one deadline (scatter/gather).
+     * <p>
+     * All commands are queued (see {@link #queue()}) before waiting so they execute concurrently and the calling thread is woken up once: when the last command completes or when the deadline
+     * passes, whichever is first. Commands still executing at the deadline are all timed-out at once and receive their fallback (or exception) so every returned Future is complete and
+     * <code>get()</code> will not block, unless a fallback is still being retrieved after the longest <code>fallback.isolation.thread.timeoutInMilliseconds</code> of the commands in which
+     * case its Future is returned before it completes.
+     * <p>
+     * Use {@link #queueAll} instead to process each response as soon as it completes.
+     * <p>
+     * NOTE: Commands configured to not run in a separate thread execute on the calling thread while being queued, the same as {@link #queue()}.
+     * 
+     * @param commands
+     *            commands to execute, each may only be executed once
+     * @param deadline
+     *            time (as per {@link System#currentTimeMillis()}) after which remaining executions are timed-out
+     * @return {@code List<Future<R>>} completed Futures in the iteration order of the commands. {@code Future.get()} returns the result of {@link #run()} execution or a fallback from
+     *         {@link #getFallback()}, or throws {@link ExecutionException} with the {@link HystrixRuntimeException} or {@link HystrixBadRequestException} as the cause.
+     */
+    public static <R> List<Future<R>> executeAll(Collection<? extends HystrixCommand<? extends R>> commands, long deadline) {
+        BulkExecution<R> executions = new BulkExecution<R>(commands, deadline);
+        executions.await();
+        return executions.futures;
+    }
+
+    /**
+     * Used for concurrent execution of many commands with one deadline (scatter/gather) where each response is processed as soon as it completes.
+     * <p>
+     * All commands are queued (see {@link #queue()}) and each Future is added to the returned queue once complete, in the order they complete, so the caller can <code>take()</code> them
+     * one by one without waiting for the slowest. Commands still executing at the deadline are timed-out (by the {@link HystrixTimer}) and added once they receive their fallback (or
+     * exception).
+     * <p>
+     * NOTE: Commands configured to not run in a separate thread execute on the calling thread while being queued, the same as {@link #queue()}.
+     * 
+     * @param commands
+     *            commands to execute, each may only be executed once
+     * @param deadline
+     *            time (as per {@link System#currentTimeMillis()}) after which remaining executions are timed-out
+     * @return {@code BlockingQueue<Future<R>>} to which all of the Futures are added (one per command) as they complete
+     */
+    public static <R> BlockingQueue<Future<R>> queueAll(Collection<? extends HystrixCommand<? extends R>> commands, long deadline) {
+        BulkExecution<R> executions = new BulkExecution<R>(commands, deadline);
+        executions.scheduleDeadline();
+        return executions.completedFutures;
+    }
+
+    /**
+     * The executions of {@link #executeAll} or {@link #queueAll}: collects their Futures in the order they complete and times-out the remaining ones once the deadline passes.
+     */
+    private static class BulkExecution<R> {
+        /* Futures in the iteration order of the commands */
+        private final List<Future<R>> futures;
+        /* Futures in the order they complete */
+        private final BlockingQueue<Future<R>> completedFutures = new LinkedBlockingQueue<Future<R>>();
+        private final CountDownLatch completed;
+        private final long deadline;
+        /* the longest fallback timeout of the commands which bounds how long to wait for the fallbacks of the executions timed-out at the deadline */
+        private final long fallbackTimeout;
+        /* the TimerListener enforcing the deadline for queueAll (strongly referenced here, and this by the completion listeners of the executions in flight, since the HystrixTimer only holds a SoftReference to it) */
+        private volatile TimerListener deadlineListener;
+        private volatile Reference<TimerListener> deadlineListenerReference;
+
+        @SuppressWarnings("unchecked")
+        private BulkExecution(Collection<? extends HystrixCommand<? extends R>> commands, long deadline) {
+            this.futures = new ArrayList<Future<R>>(commands.size());
+            this.completed = new CountDownLatch(commands.size());
+            this.deadline = deadline;
+            long fallbackTimeout = 0;
+            for (HystrixCommand<? extends R> command : commands) {
+                fallbackTimeout = Math.max(fallbackTimeout, command.properties.fallbackIsolationThreadTimeoutInMilliseconds().get());
+                final CommandFuture<R> future = (CommandFuture<R>) command.queueForExecuteAll();
+                futures.add(future);
+                future.addCompletionListener(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        onCompleted(future);
+                    }
+
+                });
+            }
+            this.fallbackTimeout = fallbackTimeout;
+        }
+
+        private void onCompleted(Future<R> future) {
+            completedFutures.add(future);
+            completed.countDown();
+        }
+
+        /**
+         * Wait until all executions complete or until the deadline passes, in which case the remaining ones are timed-out and their fallbacks waited for (at most the fallback timeout).
+         */
+        private void await() {
+            boolean interrupted = false;
+            try {
+                if (completed.await(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                // time-out the remaining executions now so the caller still receives complete responses
+                interrupted = true;
+            }
+            timeoutRemaining();
+            // wait for the fallbacks (retrieved concurrently on other threads) to set the responses
+            long fallbackDeadline = System.currentTimeMillis() + fallbackTimeout;
+            while (true) {
+                try {
+                    completed.await(fallbackDeadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Time-out the executions that have not yet completed (this does not wait for their fallbacks).
+         */
+        private void timeoutRemaining() {
+            for (Future<R> future : futures) {
+                if (!future.isDone()) {
+                    ((CommandFuture<R>) future).timeout();
+                }
+            }
+        }
+
+        /**
+         * Use the {@link HystrixTimer} to time-out the remaining executions once the deadline passes without any thread waiting for them.
+         */
+        private void scheduleDeadline() {
+            if (completed.getCount() == 0) {
+                return;
+            }
+            deadlineListener = new TimerListener() {
+
+                @Override
+                public void tick() {
+                    if (completed.getCount() == 0) {
+                        // completed so stop ticking
+                        clearDeadlineListener();
+                    } else if (System.currentTimeMillis() >= deadline) {
+                        clearDeadlineListener();
+                        timeoutRemaining();
+                    }
+                }
+
+                @Override
+                public int getIntervalTimeInMilliseconds() {
+                    return TIMEOUT_TICK_INTERVAL_IN_MILLISECONDS;
+                }
+
+            };
+            deadlineListenerReference = HystrixTimer.getInstance().addTimerListener(deadlineListener);
+        }
+
+        private void clearDeadlineListener() {
+            Reference<TimerListener> l = deadlineListenerReference;
+            if (l != null) {
+                l.clear();
+            }
+        }
+
+    }
+
+    /**
+     * Queue for {@link #executeAll} which needs a Future even if queueing throws.
+     */
+    private Future<R> queueForExecuteAll() {
+        try {
+            return queue();
+        } catch (RuntimeException e) {
+            return asFailedFuture(e);
+        }
+    }
+
+    /**
+     * Whether the deadline of the request (see {@link HystrixRequestContext#setDeadline(long)}) or of the command execution this is nested within has passed.
+     */
+    private static boolean isDeadlineExceeded() {
+        long deadline = HystrixRequestContext.getDeadlineForCurrentThread();
+        return deadline != HystrixRequestContext.NO_DEADLINE && deadline <= System.currentTimeMillis();
+    }
+
+    /**
+     * The priority of this execution when queued on the thread-pool: the priority of the request (see {@link HystrixRequestContext#setPriority}) if set, otherwise
+     * {@link HystrixCommandProperties#executionPriority()}.
+     */
+    private ExecutionPriority getExecutionPriority() {
+        HystrixRequestContext context = HystrixRequestContext.getContextForCurrentThread();
+        if (context != null && context.getPriority() != null) {
+            return context.getPriority();
+        }
+        return properties.executionPriority().get();
+    }
+
+    /**
+     * Whether to execute in a separate thread (platform or virtual) rather than the calling thread.
+     */
+    private boolean isExecutionIsolatedInThread() {
+        return !properties.executionIsolationStrategy().get().equals(ExecutionIsolationStrategy.SEMAPHORE);
+    }
+
+    /**
+     * Acquire an execution permit within the static number of permits or, if enabled, the adaptive concurrency limit.
+     * <p>
+     * If none is available and {@link HystrixCommandProperties#executionIsolationSemaphoreWaitQueueSize()} is set then wait for one (up to
+     * {@link HystrixCommandProperties#executionIsolationSemaphoreWaitTimeoutInMicroseconds()}).
+     */
+    private boolean tryAcquireExecutionPermit(TryableSemaphore executionSemaphore) {
+        int permits;
+        if (properties.executionAdaptiveConcurrencyLimitEnabled().get()) {
+            permits = metrics.getConcurrencyLimit(executionSemaphore.getNumberOfPermits(), executionSemaphore.getNumberOfPermitsUsed());
+        } else {
+            permits = executionSemaphore.getNumberOfPermits();
+        }
+        if (executionSemaphore.tryAcquire(permits)) {
+            return true;
+        }
+        int maxWaiters = properties.executionIsolationSemaphoreWaitQueueSize().get();
+        if (maxWaiters <= 0) {
+            return false;
+        }
+        long waitTime = executionSemaphore.tryAcquire(permits, maxWaiters, TimeUnit.MICROSECONDS.toNanos(properties.executionIsolationSemaphoreWaitTimeoutInMicroseconds().get()));
+        if (waitTime < 0) {
+            metrics.markExecutionSemaphoreWaitQueueRejection();
+            return false;
+        }
+        metrics.markExecutionSemaphoreWaited(TimeUnit.NANOSECONDS.toMicros(waitTime));
+        return true;
+    }
+
     private Future<R> queueInSemaphore() {
         TryableSemaphore executionSemaphore = getExecutionSemaphore();
         // acquire a permit
-        if (executionSemaphore.tryAcquire()) {
+        if (tryAcquireExecutionPermit(executionSemaphore)) {
             // allow tracking how many concurrent threads are in here the same way we do with threadpool
             metrics.markExecutionSemaphoreUsedPermitsCount(executionSemaphore.getNumberOfPermitsUsed());
 
+            if (!isRequestCachingEnabled()) {
+                /*
+                 * Without request caching no other thread can receive this Future so there is nothing to de-dupe or block on.
+                 * Execute synchronously and return the completed response without the CountDownLatch and AtomicReference needed below.
+                 */
+                try {
+                    return asFuture(executeCommand());
+                } finally {
+                    executionSemaphore.release();
+                }
+            }
+
             final CountDownLatch executionCompleted = new CountDownLatch(1);
             try {
                 /**
@@ -616,13 +973,24 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                     public ExecutionResult getExecutionResult() {
                         return executionResult;
                     }
+
+                    @Override
+                    public void addCompletionListener(Runnable listener) {
+                        // execution is synchronous so by the time anyone can observe this it is complete (or about to be on another thread sharing it via cache)
+                        listener.run();
+                    }
+
+                    @Override
+                    public void timeout() {
+                        // execution is synchronous so it can't be timed-out
+                    }
                 };
 
                 // put in cache before executing so if multiple threads all try and execute duplicate commands we can de-dupe it
                 // they will each receive the same Future and block on the executionCompleted CountDownLatch until the execution below on the first
                 // thread completes at which point all threads who receive this cached Future will unblock and receive the same result
                 if (isRequestCachingEnabled()) {
-                    Future<R> fromCache = requestCache.putIfAbsent(getCacheKey(), responseFuture);
+                    Future<R> fromCache = requestCache.putIfAbsent(getRequestCacheKeyForExecution(), responseFuture);
                     if (fromCache != null) {
                         // another thread beat us so let's return it from the cache and skip executing the one we just created
                         /* mark that we received this response from cache */
@@ -634,6 +1002,7 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                 // execute outside of future so that fireAndForget will still work (ie. someone calls queue() but not get()) and so that multiple requests can be deduped through request caching
                 R r = executeCommand();
                 value.set(r);
+                updateRequestCacheResponseSize(responseFuture, r);
 
                 return responseFuture;
 
@@ -661,74 +1030,66 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         // final reference to the current calling thread so the child thread can access it if needed
         final Thread callingThread = Thread.currentThread();
 
-        // a snapshot of time so the thread can measure how long it waited before executing
-        final long timeBeforeExecution = System.currentTimeMillis();
         // wrap the synchronous execute() method in a Callable and execute in the threadpool
-        QueuedExecutionFuture future = new QueuedExecutionFuture(this, startTime, threadPool.getExecutor(), new HystrixContextCallable<R>(new Callable<R>() {
-
-            @Override
-            public R call() throws Exception {
-                try {
-                    // assign 'callingThread' to our NFExceptionThreadingUtility ThreadLocal variable so that if we blow up
-                    // anywhere along the way the exception knows who the calling thread is and can include it in the stacktrace
-                    ExceptionThreadingUtility.assignCallingThread(callingThread);
-
-                    // count the active thread
-                    threadPool.markThreadExecution();
-
-                    // see if this command should still be executed, or if the requesting thread has walked away (timed-out) already
-                    long timeQueued = System.currentTimeMillis() - timeBeforeExecution;
-                    if (isCommandTimedOut.get() || timeQueued > properties.executionIsolationThreadTimeoutInMilliseconds().get()) {
-                        /*
-                         * We check isCommandTimedOut first as that is what most time outs will result in.
-                         * We also check the actual time because fireAndForget() will never result in isCommandTimedOut=true since the user-thread never calls the Future.get() method.
-                         * Thus, we want to ensure we don't continue with execution below if we're past the timeout duration regardless of whether the Future.get() was invoked (such as
-                         * fireAndForget or when the user kicks of many
-                         * calls asynchronously to come back to them later)
-                         */
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Callable is being skipped since the user-thread has already timed-out this request after " + timeQueued + "ms.");
-                        }
-                        if (isCommandTimedOut.get()) {
-                            // we don't need to mark any stats here as that will have already been done in the Future.get() method
-                        } else {
-                            // try setting it if the Future.get() hasn't already done it
-                            if (isCommandTimedOut.compareAndSet(false, true)) {
-                                // the Future.get() method has not been called so we'll mark it here (this can happen on fireAndForget executions)
-                                metrics.markTimeout(timeQueued);
-                            }
-                        }
-
-                        return null;
-                    }
-
-                    // execute the command
-                    R r = executeCommand();
-                    return r;
-                } catch (Exception e) {
-                    if (!isCommandTimedOut.get()) {
-                        // count (if we didn't timeout) that we are throwing an exception and re-throw it
-                        metrics.markExceptionThrown();
-                    }
-                    throw e;
-                } finally {
-                    threadPool.markThreadCompletion();
-                }
+        // (the QueuedExecutionFuture skips it if the command already timed out while queued)
+        // a second Callable is only created if a hedged execution may be issued
+        Callable<R> hedge = properties.executionHedgingEnabled().get() ? executeInThread(callingThread, true) : null;
+        QueuedExecutionFuture future = new QueuedExecutionFuture(this, startTime, threadPool.getExecutor(), executeInThread(callingThread, false), hedge);
+
+        // join an identical execution already in flight in any request rather than starting this one
+        // (a probe of a half-open circuit always executes itself as only its own outcome releases the probe it was admitted as)
+        CoalescedExecutionFuture coalesced = null;
+        boolean isSingleFlightLeader = false;
+        String singleFlightKey = properties.executionSingleFlightEnabled().get() && !isCircuitBreakerProbe ? getCacheKey() : null;
+        if (singleFlightKey != null) {
+            CommandFuture<R> inFlight = putIfAbsentSingleFlight(singleFlightKey, future);
+            if (inFlight != null) {
+                coalesced = new CoalescedExecutionFuture(inFlight);
+            } else {
+                isSingleFlightLeader = true;
             }
-        }));
+        }
+        CommandFuture<R> execution = coalesced != null ? coalesced : future;
 
         // put in cache BEFORE starting so we're sure that one-and-only-one Future exists
         if (isRequestCachingEnabled()) {
             /*
              * NOTE: As soon as this Future is added another thread could retrieve it and call get() before we return from this method.
              */
-            Future<R> fromCache = requestCache.putIfAbsent(getCacheKey(), future);
+            Future<R> fromCache = requestCache.putIfAbsent(getRequestCacheKeyForExecution(), execution);
             if (fromCache != null) {
+                if (isSingleFlightLeader) {
+                    // executions in other requests may have already joined the one we just created so it must still be started
+                    future.start();
+                }
                 // another thread beat us so let's return it from the cache and skip executing the one we just created
                 /* mark that we received this response from cache */
                 metrics.markResponseFromCache();
                 return asCachedFuture(fromCache);
             }
+            if (requestCache.isBoundedBySize()) {
+                final CommandFuture<R> cached = execution;
+                // (within the HystrixRequestContext of this thread as it completes on another)
+                cached.addCompletionListener(new HystrixContextRunnable(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            // complete so this does not block
+                            updateRequestCacheResponseSize(cached, cached.get());
+                        } catch (Exception e) {
+                            // the exception is delivered via the Future so there is no response to account for
+                        }
+                    }
+
+                }));
+            }
+        }
+
+        if (coalesced != null) {
+            metrics.markCoalesced();
+            coalesced.start();
+            return coalesced;
         }
 
         // start execution
@@ -738,24 +1099,106 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
     }
 
     /**
-     * Executes the command and marks success/failure on the circuit-breaker and calls <code>getFallback</code> if a failure occurs.
-     * <p>
-     * This does NOT use the circuit-breaker to determine if the command should be executed, use <code>execute()</code> for that. This method will ALWAYS attempt to execute the method.
+     * Register the execution as in flight for the cache key until it completes unless an identical execution is already in flight.
      * 
-     * @return R
+     * @return the execution already in flight or null if the given execution was registered
      */
-    private R executeCommand() {
-        /**
-         * NOTE: Be very careful about what goes in this method. It gets invoked within another thread in most circumstances.
-         * 
-         * The modifications of booleans 'isResponseFromFallback' etc are going across thread-boundaries thus those
-         * variables MUST be volatile otherwise they are not guaranteed to be seen by the user thread when the executing thread modifies them.
-         */
+    @SuppressWarnings("unchecked")
+    private CommandFuture<R> putIfAbsentSingleFlight(final String cacheKey, final CommandFuture<R> execution) {
+        ConcurrentHashMap<String, CommandFuture<?>> executions = singleFlightExecutionsPerCircuit.get(commandKey.name());
+        if (executions == null) {
+            singleFlightExecutionsPerCircuit.putIfAbsent(commandKey.name(), new ConcurrentHashMap<String, CommandFuture<?>>());
+            // assign whatever got set (this or another thread)
+            executions = singleFlightExecutionsPerCircuit.get(commandKey.name());
+        }
+        final ConcurrentHashMap<String, CommandFuture<?>> inFlightExecutions = executions;
+        CommandFuture<R> inFlight = (CommandFuture<R>) inFlightExecutions.putIfAbsent(cacheKey, execution);
+        if (inFlight == null) {
+            // executions only join while this is in flight (a completed response is not shared)
+            execution.addCompletionListener(new Runnable() {
 
-        /* capture start time for logging */
+                @Override
+                public void run() {
+                    inFlightExecutions.remove(cacheKey, execution);
+                }
+
+            });
+        }
+        return inFlight;
+    }
+
+    /**
+     * Wrap the synchronous execution in a Callable to be executed in the threadpool.
+     * 
+     * @param callingThread
+     *            thread queueing the command
+     * @param isHedge
+     *            whether this is the hedged execution rather than the first
+     * @return Callable<R>
+     */
+    private Callable<R> executeInThread(final Thread callingThread, final boolean isHedge) {
+        return new Callable<R>() {
+
+            @Override
+            public R call() throws Exception {
+                try {
+                    // assign 'callingThread' to our NFExceptionThreadingUtility ThreadLocal variable so that if we blow up
+                    // anywhere along the way the exception knows who the calling thread is and can include it in the stacktrace
+                    ExceptionThreadingUtility.assignCallingThread(callingThread);
+
+                    // count the active thread
+                    threadPool.markThreadExecution();
+
+                    // execute the command
+                    R r = executeCommand(isHedge);
+                    return r;
+                } catch (Exception e) {
+                    if (!isCommandTimedOut.get()) {
+                        // count (if we didn't timeout) that we are throwing an exception and re-throw it
+                        metrics.markExceptionThrown();
+                    }
+                    throw e;
+                } finally {
+                    threadPool.markThreadCompletion();
+                }
+            }
+        };
+    }
+
+    /**
+     * Executes the command and marks success/failure on the circuit-breaker and calls <code>getFallback</code> if a failure occurs.
+     * <p>
+     * This does NOT use the circuit-breaker to determine if the command should be executed, use <code>execute()</code> for that. This method will ALWAYS attempt to execute the method.
+     * 
+     * @return R
+     */
+    private R executeCommand() {
+        return executeCommand(false);
+    }
+
+    /**
+     * Executes the command and marks success/failure on the circuit-breaker and calls <code>getFallback</code> if a failure occurs.
+     * <p>
+     * If a hedged execution was issued only the execution that claims the outcome (the first success, or the last failure) reports to the metrics and circuit-breaker
+     * and the other returns null.
+     * 
+     * @param isHedge
+     *            whether this is the hedged execution rather than the first
+     * @return R
+     */
+    private R executeCommand(boolean isHedge) {
+        /**
+         * NOTE: Be very careful about what goes in this method. It gets invoked within another thread in most circumstances.
+         * 
+         * The modifications of booleans 'isResponseFromFallback' etc are going across thread-boundaries thus those
+         * variables MUST be volatile otherwise they are not guaranteed to be seen by the user thread when the executing thread modifies them.
+         */
+        final QueuedExecutionFuture.HedgedExecution hedged = hedgedExecution;
+
+        /* capture start time for logging */
         long startTime = System.currentTimeMillis();
         try {
-            R response = run();
+            R response = runWithRetries(isHedge);
             long duration = System.currentTimeMillis() - startTime;
             metrics.addCommandExecutionTime(duration);
 
@@ -763,11 +1206,26 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                 // the command timed out in the wrapping thread so we will return immediately
                 // and not increment any of the counters below or other such logic
                 return null;
+            } else if (hedged != null && !hedged.claimSuccess(isHedge)) {
+                // the other execution already succeeded so this response is discarded
+                return null;
             } else {
                 // report success
-                executionResult = executionResult.addEvents(HystrixEventType.SUCCESS);
+                if (hedged != null) {
+                    executionResult = hedged.addHedgeEvents(executionResult, isHedge);
+                }
+                if (isExecutionRetried) {
+                    executionResult = executionResult.addEvent(HystrixEventType.RETRY);
+                }
+                executionResult = executionResult.addEvent(HystrixEventType.SUCCESS);
                 metrics.markSuccess(duration);
-                circuitBreaker.markSuccess();
+                if (isCircuitBreakerProbe) {
+                    circuitBreaker.markSuccess();
+                }
+                retainResponse(response);
+                if (properties.negativeCacheEnabled().get()) {
+                    removeNegativeCache();
+                }
                 eventNotifier.markCommandExecution(getCommandKey(), properties.executionIsolationStrategy().get(), (int) duration, executionResult.events);
                 return response;
             }
@@ -775,6 +1233,9 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
             /*
              * HystrixBadRequestException is treated differently and allowed to propagate without any stats tracking or fallback logic
              */
+            if (hedged != null && !hedged.claimOutcome(isHedge)) {
+                return null;
+            }
             throw e;
         } catch (Throwable e) {
             if (isCommandTimedOut.get()) {
@@ -784,13 +1245,35 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                 // and we've already counted the timeout stat
                 logger.error("Error executing HystrixCommand [TimedOut]", e);
                 return null;
+            } else if (hedged != null && !hedged.claimFailure(isHedge)) {
+                // the other execution is still running (or already succeeded) so it determines the outcome
+                logger.debug("Error executing hedged HystrixCommand while the other execution determines the outcome", e);
+                return null;
             } else {
                 logger.error("Error executing HystrixCommand", e);
             }
             // report failure
             metrics.markFailure(System.currentTimeMillis() - startTime);
+            if (isCircuitBreakerProbe) {
+                circuitBreaker.markNonSuccess();
+            }
+            if (properties.negativeCacheEnabled().get()) {
+                putNegativeCache();
+            }
             // record the exception
+            if (hedged != null) {
+                // a hedge only wins by succeeding
+                executionResult = hedged.addHedgeEvents(executionResult, false);
+            }
+            if (isExecutionRetried) {
+                executionResult = executionResult.addEvent(HystrixEventType.RETRY);
+            }
             executionResult = executionResult.setException(e);
+            QueuedExecutionFuture queued = queuedExecution;
+            if (queued != null && queued.setFallbackResponseAsync(HystrixEventType.FAILURE, FailureType.COMMAND_EXCEPTION, "failed", e)) {
+                // the fallback sets the response once it completes on the fallback thread-pool
+                return null;
+            }
             return getFallbackOrThrowException(HystrixEventType.FAILURE, FailureType.COMMAND_EXCEPTION, "failed", e);
         } finally {
             /*
@@ -799,10 +1282,61 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
              * for this metric we include failures and successes as we use it for per-request profiling and debugging
              * whereas 'metrics.addCommandExecutionTime(duration)' is used by stats across many requests
              */
-            executionResult = executionResult.setExecutionTime((int) (System.currentTimeMillis() - startTime));
+            if (hedged == null || !hedged.isOutcomeOwner(!isHedge)) {
+                // (unless the other execution determined the outcome)
+                executionTime = (int) (System.currentTimeMillis() - startTime);
 
-            // record that we're completed
-            isExecutionComplete.set(true);
+                // record that we're completed
+                isExecutionComplete.set(true);
+            }
+        }
+    }
+
+    /**
+     * Execute <code>run()</code> and retry failures up to {@link HystrixCommandProperties#executionRetryMaxAttempts()} times with exponential backoff and jitter
+     * as long as the retry budget (see {@link HystrixCommandProperties#executionRetryBudgetPercentage()}) allows.
+     * 
+     * @param isHedge
+     *            whether this is the hedged execution rather than the first
+     * @return R
+     * @throws Exception
+     *             from the last execution of <code>run()</code>
+     */
+    private R runWithRetries(boolean isHedge) throws Exception {
+        int maxRetries = properties.executionRetryMaxAttempts().get();
+        for (int retry = 0;; retry++) {
+            try {
+                return run();
+            } catch (HystrixBadRequestException e) {
+                // not a failure of the dependency so retrying won't help
+                throw e;
+            } catch (Exception e) {
+                if (retry >= maxRetries || isCommandTimedOut.get() || !metrics.isRetryBudgetAvailable()) {
+                    throw e;
+                }
+                QueuedExecutionFuture.HedgedExecution hedged = hedgedExecution;
+                if (hedged != null && hedged.isOutcomeOwner(!isHedge)) {
+                    // the other execution already determined the outcome
+                    throw e;
+                }
+                // full jitter: a random backoff up to the exponentially increasing ceiling
+                long backoff = (long) (Math.random() * ((long) properties.executionRetryBackoffInMilliseconds().get() << Math.min(retry, 16)));
+                if (logger.isDebugEnabled()) {
+                    logger.debug(getLogMessagePrefix() + ": Retrying failed execution in " + backoff + "ms.", e);
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    // cancelled (such as on timeout) so don't retry
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                if (isCommandTimedOut.get()) {
+                    throw e;
+                }
+                isExecutionRetried = true;
+                metrics.markRetry();
+            }
         }
     }
 
@@ -825,7 +1359,11 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         // acquire a permit
         if (fallbackSemaphore.tryAcquire()) {
             try {
-                return getFallback();
+                if (fallbackThreadPool != null) {
+                    return getFallbackInThread(fallbackThreadPool);
+                } else {
+                    return getFallback();
+                }
             } finally {
                 fallbackSemaphore.release();
             }
@@ -837,6 +1375,59 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         }
     }
 
+    /**
+     * Execute <code>getFallback()</code> on the fallback thread-pool and wait at most <code>fallback.isolation.thread.timeoutInMilliseconds</code> for it.
+     * <p>
+     * A fallback that times out is cancelled (interrupted if <code>execution.isolation.thread.interruptOnTimeout</code>) and thrown as a failure the same as one that throws.
+     * <p>
+     * This is used when the thread retrieving the fallback is the one that will return it (such as on rejection or short-circuit), THREAD isolated executions instead have the fallback set
+     * their response once it completes (see QueuedExecutionFuture.setFallbackResponseAsync).
+     */
+    private R getFallbackInThread(final HystrixThreadPool pool) {
+        Future<R> future;
+        try {
+            if (!pool.isQueueSpaceAvailable()) {
+                throw new RejectedExecutionException("Rejected fallback because fallback thread-pool queueSize is at rejection threshold.");
+            }
+            future = pool.getExecutor().submit(concurrencyStrategy.wrapCallable(new HystrixContextCallable<R>(new Callable<R>() {
+
+                @Override
+                public R call() throws Exception {
+                    pool.markThreadExecution();
+                    try {
+                        return getFallback();
+                    } finally {
+                        pool.markThreadCompletion();
+                    }
+                }
+
+            })));
+        } catch (RejectedExecutionException e) {
+            metrics.markFallbackRejection();
+            logger.debug("HystrixCommand Fallback Rejection."); // debug only since we're throwing the exception and someone higher will do something with it
+            throw new HystrixRuntimeException(FailureType.REJECTED_THREAD_FALLBACK, this.getClass(), getLogMessagePrefix() + " fallback execution rejected.", e, null);
+        }
+        try {
+            return future.get(properties.fallbackIsolationThreadTimeoutInMilliseconds().get(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(properties.executionIsolationThreadInterruptOnTimeout().get());
+            throw new HystrixRuntimeException(FailureType.TIMEOUT, this.getClass(), getLogMessagePrefix() + " fallback timed-out.", e, null);
+        } catch (InterruptedException e) {
+            future.cancel(properties.executionIsolationThreadInterruptOnTimeout().get());
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(getLogMessagePrefix() + " interrupted while waiting for fallback.", e);
+        } catch (ExecutionException e) {
+            // rethrow what getFallback() threw (such as UnsupportedOperationException if not implemented) as if it had been invoked directly
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
     /**
      * Whether the 'circuit-breaker' is open meaning that <code>execute()</code> will immediately return
      * the <code>getFallback()</code> response and not attempt a HystrixCommand execution.
@@ -910,6 +1501,15 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         return executionResult.events.contains(HystrixEventType.FALLBACK_SUCCESS);
     }
 
+    /**
+     * Whether the response received was the last known good response for the cache key rather than from <code>run()</code> or <code>getFallback()</code>.
+     * 
+     * @return boolean
+     */
+    public final boolean isResponseFromLastKnownGood() {
+        return executionResult.events.contains(HystrixEventType.LAST_KNOWN_GOOD);
+    }
+
     /**
      * Whether the response received was the result of a timeout
      * and <code>getFallback()</code> being called.
@@ -939,6 +1539,15 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         return executionResult.events.contains(HystrixEventType.RESPONSE_FROM_CACHE);
     }
 
+    /**
+     * Whether this command joined an identical execution in flight in another request and <code>run()</code> was not invoked.
+     * 
+     * @return boolean
+     */
+    public final boolean isResponseCoalesced() {
+        return executionResult.events.contains(HystrixEventType.COALESCED);
+    }
+
     /**
      * Whether the response received was a fallback as result of being
      * rejected (from thread-pool or semaphore) and <code>getFallback()</code> being called.
@@ -953,6 +1562,8 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
      * List of HystrixCommandEventType enums representing events that occurred during execution.
      * <p>
      * Examples of events are SUCCESS, FAILURE, TIMEOUT, and SHORT_CIRCUITED
+     * <p>
+     * The list is immutable, contains each event at most once and is ordered as the events are declared in {@link HystrixEventType}.
      * 
      * @return {@code List<HystrixEventType>}
      */
@@ -966,52 +1577,39 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
      * @return int
      */
     public final int getExecutionTimeInMilliseconds() {
-        return executionResult.executionTime;
+        return executionTime;
     }
 
     /**
      * Get the TryableSemaphore this HystrixCommand should use if a fallback occurs.
      * 
-     * @param circuitBreaker
-     * @param fallbackSemaphore
      * @return TryableSemaphore
      */
     private TryableSemaphore getFallbackSemaphore() {
-        if (fallbackSemaphoreOverride == null) {
-            TryableSemaphore _s = fallbackSemaphorePerCircuit.get(commandKey.name());
-            if (_s == null) {
-                // we didn't find one cache so setup
-                fallbackSemaphorePerCircuit.putIfAbsent(commandKey.name(), new TryableSemaphore(properties.fallbackIsolationSemaphoreMaxConcurrentRequests()));
-                // assign whatever got set (this or another thread)
-                return fallbackSemaphorePerCircuit.get(commandKey.name());
-            } else {
-                return _s;
-            }
-        } else {
-            return fallbackSemaphoreOverride;
-        }
+        return fallbackSemaphore;
     }
 
     /**
      * Get the TryableSemaphore this HystrixCommand should use for execution if not running in a separate thread.
      * 
-     * @param circuitBreaker
-     * @param fallbackSemaphore
      * @return TryableSemaphore
      */
     private TryableSemaphore getExecutionSemaphore() {
-        if (executionSemaphoreOverride == null) {
-            TryableSemaphore _s = executionSemaphorePerCircuit.get(commandKey.name());
-            if (_s == null) {
-                // we didn't find one cache so setup
-                executionSemaphorePerCircuit.putIfAbsent(commandKey.name(), new TryableSemaphore(properties.executionIsolationSemaphoreMaxConcurrentRequests()));
-                // assign whatever got set (this or another thread)
-                return executionSemaphorePerCircuit.get(commandKey.name());
-            } else {
-                return _s;
-            }
+        return executionSemaphore;
+    }
+
+    /**
+     * Get the TryableSemaphore shared by all commands with the given key, creating it if it doesn't exist yet.
+     */
+    private static TryableSemaphore getSemaphoreForCircuit(ConcurrentHashMap<String, TryableSemaphore> semaphorePerCircuit, HystrixCommandKey commandKey, HystrixProperty<Integer> numberOfPermits) {
+        TryableSemaphore _s = semaphorePerCircuit.get(commandKey.name());
+        if (_s == null) {
+            // we didn't find one cache so setup
+            semaphorePerCircuit.putIfAbsent(commandKey.name(), new TryableSemaphore(numberOfPermits));
+            // assign whatever got set (this or another thread)
+            return semaphorePerCircuit.get(commandKey.name());
         } else {
-            return executionSemaphoreOverride;
+            return _s;
         }
     }
 
@@ -1022,32 +1620,79 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         return getFallbackOrThrowException(eventType, failureType, message, null);
     }
 
+    /**
+     * Whether the last-known-good response may be served instead of the fallback for this event.
+     * <p>
+     * Only events where the dependency could not answer in time are eligible. Other events such as failures, deadline or negative cache rejections keep using {@link #getFallback()}.
+     */
+    private static boolean isLastKnownGoodEligible(HystrixEventType eventType) {
+        return eventType == HystrixEventType.SHORT_CIRCUITED || eventType == HystrixEventType.THREAD_POOL_REJECTED || eventType == HystrixEventType.SEMAPHORE_REJECTED
+                || eventType == HystrixEventType.TIMEOUT;
+    }
+
     /**
      * @throws HystrixRuntimeException
      */
     private R getFallbackOrThrowException(HystrixEventType eventType, FailureType failureType, String message, Throwable e) {
+        R lastKnownGood = getLastKnownGoodInsteadOfFallback(eventType);
+        if (lastKnownGood != null) {
+            return lastKnownGood;
+        }
         try {
             // retrieve the fallback
             R fallback = getFallbackWithProtection();
-            // mark fallback on counter
-            metrics.markFallbackSuccess();
-            // record the executionResult
-            executionResult = executionResult.addEvents(eventType, HystrixEventType.FALLBACK_SUCCESS);
+            markFallbackSuccess(eventType);
             return fallback;
-        } catch (UnsupportedOperationException fe) {
+        } catch (Throwable fe) {
+            throw markFallbackFailure(eventType, failureType, message, e, fe);
+        } finally {
+            // record that we're completed (to handle non-successful events we do it here as well as at the end of executeCommand
+            isExecutionComplete.set(true);
+        }
+    }
+
+    /**
+     * Retrieve the last-known-good response to return instead of the fallback if it is enabled and eligible for this event.
+     * 
+     * @return R or null if the fallback should be retrieved
+     */
+    private R getLastKnownGoodInsteadOfFallback(HystrixEventType eventType) {
+        if (isLastKnownGoodEligible(eventType) && properties.fallbackLastKnownGoodEnabled().get()) {
+            // short-circuited, rejected or timed-out so the dependency was not asked and a recent response from it is preferable to the fallback
+            R lastKnownGood = getLastKnownGood();
+            if (lastKnownGood != null) {
+                executionResult = executionResult.addEvents(eventType, HystrixEventType.LAST_KNOWN_GOOD);
+                isExecutionComplete.set(true);
+                return lastKnownGood;
+            }
+        }
+        return null;
+    }
+
+    private void markFallbackSuccess(HystrixEventType eventType) {
+        // mark fallback on counter
+        metrics.markFallbackSuccess();
+        // record the executionResult
+        executionResult = executionResult.addEvents(eventType, HystrixEventType.FALLBACK_SUCCESS);
+    }
+
+    /**
+     * Record that the fallback could not be retrieved (not implemented, rejected, timed-out or failed).
+     * 
+     * @return HystrixRuntimeException to throw (or deliver via the Future) instead of the fallback
+     */
+    private HystrixRuntimeException markFallbackFailure(HystrixEventType eventType, FailureType failureType, String message, Throwable e, Throwable fe) {
+        if (fe instanceof UnsupportedOperationException) {
             logger.debug("No fallback for HystrixCommand. ", fe); // debug only since we're throwing the exception and someone higher will do something with it
             // record the executionResult
-            executionResult = executionResult.addEvents(eventType);
-            throw new HystrixRuntimeException(failureType, this.getClass(), getLogMessagePrefix() + " " + message + " and no fallback available.", e, fe);
-        } catch (Throwable fe) {
+            executionResult = executionResult.addEvent(eventType);
+            return new HystrixRuntimeException(failureType, this.getClass(), getLogMessagePrefix() + " " + message + " and no fallback available.", e, fe);
+        } else {
             logger.error("Error retrieving fallback for HystrixCommand. ", fe);
             metrics.markFallbackFailure();
             // record the executionResult
             executionResult = executionResult.addEvents(eventType, HystrixEventType.FALLBACK_FAILURE);
-            throw new HystrixRuntimeException(failureType, this.getClass(), getLogMessagePrefix() + " " + message + " and failed retrieving fallback.", e, fe);
-        } finally {
-            // record that we're completed (to handle non-successful events we do it here as well as at the end of executeCommand
-            isExecutionComplete.set(true);
+            return new HystrixRuntimeException(failureType, this.getClass(), getLogMessagePrefix() + " " + message + " and failed retrieving fallback.", e, fe);
         }
     }
 
@@ -1070,33 +1715,49 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
      * when it's safe to mutate the object directly versus needing to deep-copy clone to a new instance.
      */
     private static class ExecutionResult {
-        private final List<HystrixEventType> events;
-        private final int executionTime;
+        private final ExecutionEvents events;
         private final Throwable exception;
 
         private ExecutionResult(HystrixEventType... events) {
-            this(Arrays.asList(events), -1, null);
-        }
-
-        public ExecutionResult setExecutionTime(int executionTime) {
-            return new ExecutionResult(events, executionTime, exception);
+            this(ExecutionEvents.EMPTY.add(events), null);
         }
 
         public ExecutionResult setException(Throwable e) {
-            return new ExecutionResult(events, executionTime, e);
+            return new ExecutionResult(events, e);
         }
 
-        private ExecutionResult(List<HystrixEventType> events, int executionTime, Throwable e) {
-            // we are safe assigning the List reference instead of deep-copying
-            // because we control the original list in 'newEvent'
+        private ExecutionResult(ExecutionEvents events, Throwable e) {
+            // we are safe assigning the reference instead of deep-copying since ExecutionEvents is immutable
             this.events = events;
-            this.executionTime = executionTime;
             this.exception = e;
         }
 
         // we can return a static version since it's immutable
         private static ExecutionResult EMPTY = new ExecutionResult(new HystrixEventType[0]);
 
+        // immutable results for a single event without an exception (such as SUCCESS) so the common case doesn't allocate
+        private static final ExecutionResult[] SINGLE_EVENT = new ExecutionResult[HystrixEventType.values().length];
+        static {
+            for (HystrixEventType e : HystrixEventType.values()) {
+                SINGLE_EVENT[e.ordinal()] = new ExecutionResult(e);
+            }
+        }
+
+        /**
+         * Creates a new ExecutionResult by adding the defined 'event' to the ones on the current instance.
+         * <p>
+         * Returns a shared instance if this is the first event and no exception is set.
+         * 
+         * @param event
+         * @return
+         */
+        public ExecutionResult addEvent(HystrixEventType event) {
+            if (events.isEmpty() && exception == null) {
+                return SINGLE_EVENT[event.ordinal()];
+            }
+            return addEvents(event);
+        }
+
         /**
          * Creates a new ExecutionResult by adding the defined 'events' to the ones on the current instance.
          * 
@@ -1104,13 +1765,108 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
          * @return
          */
         public ExecutionResult addEvents(HystrixEventType... events) {
-            ArrayList<HystrixEventType> newEvents = new ArrayList<HystrixEventType>();
-            newEvents.addAll(this.events);
+            ExecutionEvents newEvents = this.events.add(events);
+            if (newEvents == this.events) {
+                // all events were already present
+                return this;
+            }
+            return new ExecutionResult(newEvents, exception);
+        }
+    }
+
+    /**
+     * Immutable set of {@link HystrixEventType} stored as a bitmask of their ordinals and exposed as a read-only {@code List<HystrixEventType>}.
+     * <p>
+     * Events are iterated in the order they are declared in {@link HystrixEventType} (not the order they occurred) so consumers such as {@link HystrixRequestLog} don't need to copy and sort them.
+     * <p>
+     * Each event can only be present once which matches how they are used as each represents a state the execution passed through.
+     */
+    private static class ExecutionEvents extends AbstractList<HystrixEventType> {
+        private static final HystrixEventType[] ALL_EVENTS = HystrixEventType.values();
+        private static final ExecutionEvents EMPTY = new ExecutionEvents(0);
+
+        static {
+            if (ALL_EVENTS.length > 64) {
+                throw new IllegalStateException("ExecutionEvents bitmask only supports 64 HystrixEventType values.");
+            }
+        }
+
+        private final long mask;
+        private final int size;
+
+        private ExecutionEvents(long mask) {
+            this.mask = mask;
+            this.size = Long.bitCount(mask);
+        }
+
+        /**
+         * @return ExecutionEvents with the given events added, or this instance if they were all already present
+         */
+        public ExecutionEvents add(HystrixEventType... events) {
+            long newMask = mask;
             for (HystrixEventType e : events) {
-                newEvents.add(e);
+                newMask |= 1L << e.ordinal();
+            }
+            if (newMask == mask) {
+                return this;
             }
-            return new ExecutionResult(Collections.unmodifiableList(newEvents), executionTime, exception);
+            return new ExecutionEvents(newMask);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o instanceof HystrixEventType) {
+                return (mask & (1L << ((HystrixEventType) o).ordinal())) != 0;
+            }
+            return false;
+        }
+
+        @Override
+        public HystrixEventType get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            long remaining = mask;
+            for (int i = 0; i < index; i++) {
+                // clear the lowest set bit
+                remaining &= remaining - 1;
+            }
+            return ALL_EVENTS[Long.numberOfTrailingZeros(remaining)];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<HystrixEventType> iterator() {
+            return new Iterator<HystrixEventType>() {
+                long remaining = mask;
+
+                @Override
+                public boolean hasNext() {
+                    return remaining != 0;
+                }
+
+                @Override
+                public HystrixEventType next() {
+                    if (remaining == 0) {
+                        throw new NoSuchElementException();
+                    }
+                    HystrixEventType e = ALL_EVENTS[Long.numberOfTrailingZeros(remaining)];
+                    remaining &= remaining - 1;
+                    return e;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+            };
         }
+
     }
 
     /* ******************************************************************************** */
@@ -1134,31 +1890,225 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         return null;
     }
 
-    private Future<R> asFutureForCache(final R value) {
-        return asFuture(value);
-    }
-
     /**
-     * This wrapper is used for handling Future responses when doing request caching.
+     * Key to be used for request caching, which by default is {@link #getCacheKey()}.
      * <p>
-     * When a response is returned we need to copy the state from the original HystrixCommand instance that actually executed the Future to the current HystrixCommand instance which is
-     * returning from cache.
+     * Override this method instead (or as well) if a key can be provided more cheaply than by building a String, such as a {@link Long} identifier or an object combining several fields
+     * with a precomputed hash code. The key must implement <code>equals()</code> and <code>hashCode()</code> and keys of different types are never equal.
      * <p>
-     * The state is contained within the ExecutionResult object and tells what happened during execution and includes an exception for re-throwing if applicable.
-     * 
-     * @param <K>
+     * This is retrieved once per execution. Caching other than request caching (such as {@link HystrixCommandProperties#responseCacheEnabled()}) uses {@link #getCacheKey()}.
      * 
+     * @return request cache key or null for "do not cache"
      */
-    private Future<R> asCachedFuture(Future<R> actualFuture) {
+    protected Object getRequestCacheKey() {
+        return getCacheKey();
+    }
 
-        if (!(actualFuture instanceof CommandFuture)) {
-            throw new RuntimeException("This should be a CommandFuture from the asFutureForCache method.");
+    /**
+     * Account for the size of the response of a Future this execution put in the request cache if the request cache is bounded by size.
+     */
+    private void updateRequestCacheResponseSize(Future<R> cached, R response) {
+        if (response != null && requestCache.isBoundedBySize()) {
+            requestCache.updateResponseSizeInBytes(getRequestCacheKeyForExecution(), cached, getResponseSizeInBytes(response));
         }
+    }
+
+    private Object getRequestCacheKeyForExecution() {
+        Object key = requestCacheKeyForExecution;
+        if (key == null) {
+            key = getRequestCacheKey();
+            if (key == null) {
+                key = NO_REQUEST_CACHE_KEY;
+            }
+            requestCacheKeyForExecution = key;
+        }
+        return key == NO_REQUEST_CACHE_KEY ? null : key;
+    }
+
+    /**
+     * Estimated size in bytes of a response retained in memory, such as by {@link HystrixCommandProperties#responseCacheEnabled()},
+     * {@link HystrixCommandProperties#fallbackLastKnownGoodEnabled()} or the request cache, so that memory can be bounded.
+     * <p>
+     * By default Strings and byte arrays are estimated from their length and other responses are counted as a nominal 64 bytes.
+     * <p>
+     * Override this method to provide a better estimate for the responses of a command.
+     * 
+     * @param response
+     *            response returned from <code>run()</code>
+     * @return estimated size in bytes
+     */
+    protected int getResponseSizeInBytes(R response) {
+        if (response instanceof String) {
+            return 40 + 2 * ((String) response).length();
+        } else if (response instanceof byte[]) {
+            return 16 + ((byte[]) response).length;
+        } else {
+            return 64;
+        }
+    }
+
+    /**
+     * Retain a successful response for the cache key in the response cache and as the last known good response if enabled.
+     */
+    private void retainResponse(R response) {
+        boolean responseCacheEnabled = properties.responseCacheEnabled().get();
+        boolean lastKnownGoodEnabled = properties.fallbackLastKnownGoodEnabled().get();
+        if (!responseCacheEnabled && !lastKnownGoodEnabled) {
+            return;
+        }
+        String cacheKey = getCacheKey();
+        if (cacheKey == null || response == null) {
+            return;
+        }
+        int sizeInBytes = getResponseSizeInBytes(response);
+        if (responseCacheEnabled) {
+            getResponseCache().put(cacheKey, response, sizeInBytes);
+        }
+        if (lastKnownGoodEnabled) {
+            getLastKnownGoodCache().put(cacheKey, response, sizeInBytes);
+        }
+    }
+
+    /**
+     * Retrieve a response cached by another execution (in this or another request) for the cache key.
+     * <p>
+     * Once the response is older than {@link HystrixCommandProperties#responseCacheRefreshAheadPercentage()} of its time-to-live the first execution to ask for it gets null so it
+     * executes and refreshes the response while all others continue to receive the cached response.
+     * 
+     * @return the cached response or null if this execution should proceed
+     */
+    @SuppressWarnings("unchecked")
+    private R getFromResponseCache() {
+        String cacheKey = getCacheKey();
+        if (cacheKey == null) {
+            return null;
+        }
+        HystrixBoundedCache<String, Object> cache = getResponseCache();
+        R fromCache = (R) cache.get(cacheKey);
+        if (fromCache == null) {
+            return null;
+        }
+        int refreshAheadPercentage = properties.responseCacheRefreshAheadPercentage().get();
+        if (refreshAheadPercentage > 0 && cache.tryClaimRefresh(cacheKey, (long) properties.responseCacheTimeToLiveInMilliseconds().get() * refreshAheadPercentage / 100)) {
+            return null;
+        }
+        /* mark that we received this response from cache */
+        metrics.markResponseFromCache();
+        executionResult = executionResult.addEvent(HystrixEventType.RESPONSE_FROM_CACHE);
+        isExecutionComplete.set(true);
+        return fromCache;
+    }
+
+    /**
+     * Remember that the cache key failed so executions with it return the fallback until it expires.
+     */
+    private void putNegativeCache() {
+        String cacheKey = getCacheKey();
+        if (cacheKey != null) {
+            getNegativeCache().put(cacheKey, Boolean.TRUE, 0);
+        }
+    }
+
+    private void removeNegativeCache() {
+        String cacheKey = getCacheKey();
+        if (cacheKey != null) {
+            getNegativeCache().remove(cacheKey);
+        }
+    }
+
+    /**
+     * @return whether the cache key failed recently (see {@link HystrixCommandProperties#negativeCacheEnabled()})
+     */
+    private boolean isNegativelyCached() {
+        if (!properties.negativeCacheEnabled().get()) {
+            return false;
+        }
+        String cacheKey = getCacheKey();
+        return cacheKey != null && getNegativeCache().get(cacheKey) != null;
+    }
+
+    private HystrixBoundedCache<String, Object> getNegativeCache() {
+        return getBoundedCache(negativeCachePerCircuit, properties.negativeCacheTimeToLiveInMilliseconds(), properties.negativeCacheMaxEntries(), NO_SIZE_LIMIT);
+    }
+
+    private HystrixBoundedCache<String, Object> getResponseCache() {
+        return getBoundedCache(responseCachePerCircuit, properties.responseCacheTimeToLiveInMilliseconds(), properties.responseCacheMaxEntries(), properties.responseCacheMaxSizeInBytes());
+    }
+
+    /**
+     * @return the last known good response for the cache key or null if there isn't one (or it expired)
+     */
+    @SuppressWarnings("unchecked")
+    private R getLastKnownGood() {
+        String cacheKey = getCacheKey();
+        if (cacheKey == null) {
+            return null;
+        }
+        R lastKnownGood = (R) getLastKnownGoodCache().get(cacheKey);
+        if (lastKnownGood != null) {
+            metrics.markLastKnownGoodHit();
+        } else {
+            metrics.markLastKnownGoodMiss();
+        }
+        return lastKnownGood;
+    }
+
+    private HystrixBoundedCache<String, Object> getLastKnownGoodCache() {
+        return getBoundedCache(lastKnownGoodPerCircuit, properties.fallbackLastKnownGoodTimeToLiveInMilliseconds(), properties.fallbackLastKnownGoodMaxEntries(),
+                properties.fallbackLastKnownGoodMaxSizeInBytes());
+    }
+
+    private HystrixBoundedCache<String, Object> getBoundedCache(ConcurrentHashMap<String, HystrixBoundedCache<String, Object>> cachePerCircuit, HystrixProperty<Integer> timeToLiveInMilliseconds,
+            HystrixProperty<Integer> maxEntries, HystrixProperty<Integer> maxSizeInBytes) {
+        HystrixBoundedCache<String, Object> cache = cachePerCircuit.get(commandKey.name());
+        if (cache == null) {
+            cachePerCircuit.putIfAbsent(commandKey.name(), new HystrixBoundedCache<String, Object>(timeToLiveInMilliseconds, maxEntries, maxSizeInBytes));
+            // assign whatever got set (this or another thread)
+            cache = cachePerCircuit.get(commandKey.name());
+        }
+        return cache;
+    }
+
+    private Future<R> asFutureForCache(final R value) {
+        return asFuture(value);
+    }
+
+    /**
+     * This wrapper is used for handling Future responses when doing request caching.
+     * <p>
+     * When a response is returned we need to copy the state from the original HystrixCommand instance that actually executed the Future to the current HystrixCommand instance which is
+     * returning from cache.
+     * <p>
+     * The state is contained within the ExecutionResult object and tells what happened during execution and includes an exception for re-throwing if applicable.
+     * 
+     * @param <K>
+     * 
+     */
+    private Future<R> asCachedFuture(Future<R> actualFuture) {
+
+        if (!(actualFuture instanceof CommandFuture)) {
+            throw new RuntimeException("This should be a CommandFuture from the asFutureForCache method.");
+        }
+
+        final CommandFuture<R> commandFuture = (CommandFuture<R>) actualFuture;
+
+        return new CommandFuture<R>() {
+
+            @Override
+            public ExecutionResult getExecutionResult() {
+                return commandFuture.getExecutionResult();
+            }
+
+            @Override
+            public void addCompletionListener(Runnable listener) {
+                commandFuture.addCompletionListener(listener);
+            }
+
+            @Override
+            public void timeout() {
+                commandFuture.timeout();
+            }
 
-        final CommandFuture<R> commandFuture = (CommandFuture<R>) actualFuture;
-
-        return new Future<R>() {
-
             @Override
             public boolean cancel(boolean mayInterruptIfRunning) {
                 return commandFuture.cancel(mayInterruptIfRunning);
@@ -1182,9 +2132,8 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                     // set this instance to the result that is from cache
                     executionResult = commandFuture.getExecutionResult();
                     // add that this came from cache
-                    executionResult = executionResult.addEvents(HystrixEventType.RESPONSE_FROM_CACHE);
-                    // set the execution time to 0 since we retrieved from cache
-                    executionResult = executionResult.setExecutionTime(-1);
+                    executionResult = executionResult.addEvent(HystrixEventType.RESPONSE_FROM_CACHE);
+                    // the execution time stays at -1 since we retrieved from cache
                 }
             }
 
@@ -1196,9 +2145,8 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                     // set this instance to the result that is from cache
                     executionResult = commandFuture.getExecutionResult();
                     // add that this came from cache
-                    executionResult = executionResult.addEvents(HystrixEventType.RESPONSE_FROM_CACHE);
-                    // set the execution time to 0 since we retrieved from cache
-                    executionResult = executionResult.setExecutionTime(-1);
+                    executionResult = executionResult.addEvent(HystrixEventType.RESPONSE_FROM_CACHE);
+                    // the execution time stays at -1 since we retrieved from cache
                 }
             }
 
@@ -1222,25 +2170,125 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
      * <p>
      * This implementation routes all <code>get()</code> calls to <code>get(long timeout, TimeUnit unit)</code> so that timeouts occur automatically for commands executed via <code>execute()</code> or
      * <code>queue().get()</code>
+     * <p>
+     * The response is set by the thread-pool thread when the execution completes (or by whichever thread performs the timeout) rather than by the thread calling <code>get()</code> so that
+     * listeners (see {@link #addCompletionListener(Runnable)}) can receive it without any thread blocking.
      */
     private class QueuedExecutionFuture implements CommandFuture<R> {
         private final ThreadPoolExecutor executor;
         private final Callable<R> callable;
         private final HystrixCommand<R> command;
         private final long startTime;
+        /* the earlier of the configured timeout and the deadline of the request (or of the command this is nested within) */
+        private final long deadline;
         private final CountDownLatch actualResponseReceived = new CountDownLatch(1);
-        private final AtomicBoolean actualFutureExecuted = new AtomicBoolean(false);
+        private final AtomicBoolean actualResponseSet = new AtomicBoolean(false);
         private volatile R result; // the result of the get()
         private volatile ExecutionException executionException; // in case an exception is thrown
         private volatile Future<R> actualFuture = null;
         private final CountDownLatch futureStarted = new CountDownLatch(1);
         private final AtomicBoolean started = new AtomicBoolean(false);
-
-        public QueuedExecutionFuture(HystrixCommand<R> command, long startTime, ThreadPoolExecutor executor, Callable<R> callable) {
+        /* priority of this execution (and its hedge) on the thread-pool queue */
+        private final ExecutionPriority priority;
+        /* when the execution was submitted to the thread-pool so the time it waits in the queue can be measured */
+        private volatile long queuedTime;
+        /* whether this execution counts towards the adaptive concurrency limit (released once it completes) */
+        private final AtomicBoolean admitted = new AtomicBoolean(false);
+        /* listeners to invoke once the response is set */
+        private final ConcurrentLinkedQueue<Runnable> completionListeners = new ConcurrentLinkedQueue<Runnable>();
+        /* the TimerListener enforcing the timeout (strongly referenced here since the HystrixTimer only holds a SoftReference to it) */
+        private volatile TimerListener timeoutListener;
+        /* reference to the TimerListener so it can be cleared once the response is set */
+        private volatile Reference<TimerListener> timeoutListenerReference;
+        /* completes a claimed timeout on another thread (within the HystrixRequestContext of the thread queueing the command so the fallback executes within it) */
+        private final Runnable timeoutCompletion;
+        /* whether the fallback is executing on the fallback thread-pool and will set the response once it completes */
+        private volatile boolean fallbackPending = false;
+        /* the TimerListener enforcing the timeout of the fallback on the fallback thread-pool (and its reference so it can be cleared once the response is set) */
+        private volatile TimerListener fallbackTimeoutListener;
+        private volatile Reference<TimerListener> fallbackTimeoutListenerReference;
+
+        public QueuedExecutionFuture(HystrixCommand<R> command, long startTime, ThreadPoolExecutor executor, final Callable<R> callable, Callable<R> hedgeCallable) {
             this.command = command;
             this.startTime = startTime;
+            this.deadline = Math.min(startTime + properties.executionIsolationThreadTimeoutInMilliseconds().get(), HystrixRequestContext.getDeadlineForCurrentThread());
+            this.priority = getExecutionPriority();
+            // nested executions on the thread executing this command inherit its deadline
+            final Long deadlineForNestedExecutions = Long.valueOf(deadline);
             this.executor = executor;
-            this.callable = callable;
+            // wrap the Callable so the thread-pool thread sets the response when it completes
+            // (constructed here so the HystrixContextCallable captures the HystrixRequestContext of the thread queueing the command)
+            this.callable = new HystrixContextCallable<R>(new Callable<R>() {
+
+                @Override
+                public R call() throws Exception {
+                    // see if this command should still be executed, or if it has already timed-out while waiting in the queue
+                    long now = System.currentTimeMillis();
+                    if (isCommandTimedOut.get() || now > deadline) {
+                        /*
+                         * We check isCommandTimedOut first as that is what most time outs will result in (performed by the HystrixTimer or a thread waiting on get()).
+                         * We also check the actual time because the HystrixTimer only checks for timeouts every TIMEOUT_TICK_INTERVAL_IN_MILLISECONDS
+                         * and we want to ensure we don't continue with execution below if we're past the timeout duration.
+                         */
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Callable is being skipped since this request has already timed-out after " + (now - QueuedExecutionFuture.this.startTime) + "ms.");
+                        }
+                        // perform the timeout (or skip it if another thread already did)
+                        performTimeout();
+                        return null;
+                    }
+                    // the thread-pool may shed this execution if the queue is overloaded (though not once a hedge may be racing it)
+                    if (!threadPool.markQueueWait((int) (now - queuedTime)) && hedgedExecution == null) {
+                        rejectAfterQueueWait();
+                        return null;
+                    }
+                    // (restored by the wrapping HystrixContextCallable)
+                    HystrixRequestContext.setExecutionDeadlineOnCurrentThread(deadlineForNestedExecutions);
+                    try {
+                        R r = callable.call();
+                        if (isResponseSetBy(false)) {
+                            // if we timed-out the response was already set by whoever performed the timeout
+                            setActualResponse(r, null);
+                        }
+                        return r;
+                    } catch (Exception e) {
+                        if (isResponseSetBy(false)) {
+                            setActualResponse(null, new ExecutionException(e));
+                        }
+                        throw e;
+                    } finally {
+                        releaseAdmission();
+                    }
+                }
+
+            });
+            if (hedgeCallable != null) {
+                hedgedExecution = new HedgedExecution(hedgeCallable, deadlineForNestedExecutions);
+            }
+            this.timeoutCompletion = new HystrixContextRunnable(new Runnable() {
+
+                @Override
+                public void run() {
+                    completeTimeout();
+                }
+
+            });
+            queuedExecution = this;
+        }
+
+        /**
+         * Whether the given execution determines the response (always true unless a hedged execution may be issued).
+         */
+        private boolean isOutcomeOwner(boolean isHedge) {
+            HedgedExecution hedged = hedgedExecution;
+            return hedged == null || hedged.isOutcomeOwner(isHedge);
+        }
+
+        /**
+         * Whether the given execution sets the response once it completes, rather than whoever performed the timeout or the fallback completing on the fallback thread-pool.
+         */
+        private boolean isResponseSetBy(boolean isHedge) {
+            return !isCommandTimedOut.get() && !fallbackPending && isOutcomeOwner(isHedge);
         }
 
         /**
@@ -1250,21 +2298,29 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
             // make sure we only start once
             if (started.compareAndSet(false, true)) {
                 try {
-                    if (!threadPool.isQueueSpaceAvailable()) {
+                    if (!threadPool.isQueueSpaceAvailable(priority)) {
                         // we are at the property defined max so want to throw a RejectedExecutionException to simulate reaching the real max 
                         throw new RejectedExecutionException("Rejected command because thread-pool queueSize is at rejection threshold.");
                     }
+                    if (properties.executionAdaptiveConcurrencyLimitEnabled().get()) {
+                        admit();
+                    }
                     // allow the ConcurrencyStrategy to wrap the Callable if desired and then submit to the ThreadPoolExecutor
-                    actualFuture = executor.submit(concurrencyStrategy.wrapCallable(callable));
+                    queuedTime = System.currentTimeMillis();
+                    actualFuture = submit(concurrencyStrategy.wrapCallable(callable));
+                    // enforce the timeout regardless of whether anyone ever calls get()
+                    scheduleTimeout();
                 } catch (RejectedExecutionException e) {
+                    releaseAdmission();
                     // mark on counter
                     metrics.markThreadPoolRejection();
                     // use a fallback instead (or throw exception if not implemented)
-                    actualFuture = asFuture(getFallbackOrThrowException(HystrixEventType.THREAD_POOL_REJECTED, FailureType.REJECTED_THREAD_EXECUTION, "could not be queued for execution", e));
+                    actualFuture = asFuture(setActualResponseOrThrow(HystrixEventType.THREAD_POOL_REJECTED, FailureType.REJECTED_THREAD_EXECUTION, "could not be queued for execution", e));
                 } catch (Exception e) {
+                    releaseAdmission();
                     // unknown exception
                     logger.error(getLogMessagePrefix() + ": Unexpected exception while submitting to queue.", e);
-                    actualFuture = asFuture(getFallbackOrThrowException(HystrixEventType.THREAD_POOL_REJECTED, FailureType.REJECTED_THREAD_EXECUTION, "had unexpected exception while attempting to queue for execution.", e));
+                    actualFuture = asFuture(setActualResponseOrThrow(HystrixEventType.THREAD_POOL_REJECTED, FailureType.REJECTED_THREAD_EXECUTION, "had unexpected exception while attempting to queue for execution.", e));
                 } finally {
                     futureStarted.countDown();
                 }
@@ -1288,6 +2344,76 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
             }
         }
 
+        /**
+         * Submit to the ThreadPoolExecutor as a task exposing the priority of this execution to the queue.
+         */
+        private Future<R> submit(Callable<R> c) {
+            PrioritizedFutureTask<R> task = new PrioritizedFutureTask<R>(c, priority);
+            executor.execute(task);
+            return task;
+        }
+
+        /**
+         * Count this execution towards the adaptive concurrency limit or reject it if the limit is reached.
+         * <p>
+         * The static limit is the capacity of the thread-pool (threads plus queue) so the adaptive limit rejects early once latency shows that queueing is occurring.
+         */
+        private void admit() {
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            long capacity = (long) executor.getMaximumPoolSize() + queue.size() + queue.remainingCapacity();
+            int inFlight = metrics.incrementThreadExecutionsInFlight();
+            admitted.set(true);
+            if (inFlight > metrics.getConcurrencyLimit((int) Math.min(Integer.MAX_VALUE, capacity), inFlight - 1)) {
+                throw new RejectedExecutionException("Rejected command because the adaptive concurrency limit is reached.");
+            }
+        }
+
+        private void releaseAdmission() {
+            if (admitted.compareAndSet(true, false)) {
+                metrics.decrementThreadExecutionsInFlight();
+            }
+        }
+
+        /**
+         * Cancel an execution and, if a thread has not yet dequeued it, remove it from the queue so it no longer occupies space there (counting towards
+         * <code>queueSizeRejectionThreshold</code>) until a thread dequeues it only to skip it.
+         */
+        private void cancelAndPurge(Future<R> f) {
+            if (f.cancel(properties.executionIsolationThreadInterruptOnTimeout().get()) && f instanceof PrioritizedFutureTask) {
+                threadPool.purgeQueuedTask((PrioritizedFutureTask<R>) f);
+            }
+        }
+
+        /**
+         * Reject the execution on the thread-pool thread (instead of executing it) because it waited too long in an overloaded queue.
+         */
+        private void rejectAfterQueueWait() {
+            releaseAdmission();
+            metrics.markThreadPoolRejection();
+            try {
+                setActualResponseOrThrow(HystrixEventType.THREAD_POOL_REJECTED, FailureType.REJECTED_THREAD_EXECUTION, "was shed after waiting in an overloaded queue",
+                        new RejectedExecutionException("Rejected command because it waited longer than the queue delay target while the thread-pool queue is overloaded."));
+            } catch (HystrixRuntimeException e) {
+                // the exception is delivered to get() via the response
+                metrics.markExceptionThrown();
+            }
+        }
+
+        /**
+         * Retrieve the fallback after a failure to queue for execution and set it as the response, or set and re-throw the exception if a fallback can not be retrieved.
+         */
+        private R setActualResponseOrThrow(HystrixEventType eventType, FailureType failureType, String message, Exception e) {
+            try {
+                R r = getFallbackOrThrowException(eventType, failureType, message, e);
+                setActualResponse(r, null);
+                return r;
+            } catch (HystrixRuntimeException re) {
+                // release anyone waiting on this Future (such as via request cache) before throwing to the thread queueing the command
+                setActualResponse(null, new ExecutionException(re));
+                throw re;
+            }
+        }
+
         /**
          * We override the get(long timeout, TimeUnit unit) to handle timeouts, fallbacks, etc.
          */
@@ -1295,26 +2421,13 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         public R get(long timeout, TimeUnit unit) throws CancellationException, InterruptedException, ExecutionException {
             /* in case another thread got to this (via cache) before the constructing thread started it, we'll optimistically try to start it and start() will ensure only one time wins */
             start();
-            // now we try to get the response
-            if (actualFutureExecuted.compareAndSet(false, true)) {
-                // 1 thread will execute this 1 time
-                performActualGet();
-            } else {
-                // all other threads/requests will go here waiting on performActualGet completing
+            // now we wait for the response to be set by the thread executing it (or by the HystrixTimer on timeout)
+            long timeUntilTimeout = deadline - System.currentTimeMillis();
+            if (!actualResponseReceived.await(timeUntilTimeout, TimeUnit.MILLISECONDS)) {
+                // we did not receive the response in time so perform the timeout now instead of waiting for the next HystrixTimer tick (or skip it if another thread already did)
+                performTimeout();
+                // the timeout sets the response (or the thread execution did so just before the timeout)
                 actualResponseReceived.await();
-                /**
-                 * I am considering putting a timeout value in this latch.await() even though performActualGet seems
-                 * like it should never NOT properly call latch.countDown().
-                 * 
-                 * One scenario I'm trying to determine if it can ever happen is a thread interrupt that prevents the finally block
-                 * from doing the latch.countDown().
-                 * 
-                 * http://docs.oracle.com/javase/tutorial/essential/exceptions/finally.html
-                 * 
-                 * Note: If the JVM exits while the try or catch code is being executed, then the finally block may not execute.
-                 * Likewise, if the thread executing the try or catch code is interrupted or killed, the finally block may not
-                 * execute even though the application as a whole continues.
-                 */
             }
             if (executionException != null) {
                 throw executionException;
@@ -1333,587 +2446,2112 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         }
 
         /**
-         * The actual Future.get() that we want only 1 thread to perform once.
-         * <p>
-         * NOTE: This sets mutable variables on this Future instance so as to do so in a thread-safe manner.
-         * <p>
-         * The execution of this method is protected by a CountDownLatch to occur only once and by a single thread.
+         * Mark this command as timed-out, cancel the execution and set the fallback as the response.
          * <p>
-         * As soon as this method returns all other threads are released so the correct state must be set before this method returns.
-         * 
-         * @return
-         * @throws CancellationException
-         * @throws InterruptedException
-         * @throws ExecutionException
+         * Only the first thread to invoke this will perform the timeout and it will be skipped if the response was already set.
          */
-        private void performActualGet() throws CancellationException, InterruptedException, ExecutionException {
-            try {
-                // this check needs to be inside the try/finally so even if an exception is thrown
-                // we will countDown the latch and release threads
-                if (!started.get() || actualFuture == null) {
-                    throw new IllegalStateException("Future was not started.");
-                }
-                // get on the actualFuture with timeout values from properties
-                result = actualFuture.get(properties.executionIsolationThreadTimeoutInMilliseconds().get(), TimeUnit.MILLISECONDS);
-            } catch (TimeoutException e) {
-                // try to cancel the future (interrupt it)
-                actualFuture.cancel(properties.executionIsolationThreadInterruptOnTimeout().get());
-                // mark this command as timed-out so the run() when it completes can ignore it
-                if (isCommandTimedOut.compareAndSet(false, true)) {
-                    // report timeout failure (or skip this if the compareAndSet failed as that means a thread-race occurred with the execution as the object lived in the queue too long)
-                    metrics.markTimeout(System.currentTimeMillis() - startTime);
-                }
-
-                try {
-                    result = getFallbackOrThrowException(HystrixEventType.TIMEOUT, FailureType.TIMEOUT, "timed-out", e);
-                } catch (HystrixRuntimeException re) {
-                    // we want to obey the contract of NFFuture.get() and throw an ExecutionException rather than a random RuntimeException that developers wouldn't expect
-                    executionException = new ExecutionException(re);
-                    // we can't capture this in execute/queue so we do it here
-                    metrics.markExceptionThrown();
-                }
-            } finally {
-                // mark that we are done and other threads can proceed
-                actualResponseReceived.countDown();
+        private void performTimeout() {
+            if (claimTimeout()) {
+                completeTimeout();
             }
         }
 
         /**
-         * Allow retrieving the executionResult from 1 Future in another Future (due to request caching).
+         * Mark this command as timed-out (so the run() when it completes can ignore it) unless the response was already set or another thread already did.
          * 
-         * @return
+         * @return boolean whether the caller claimed the timeout and must complete it with {@link #completeTimeout()}
          */
-        public ExecutionResult getExecutionResult() {
-            return executionResult;
+        private boolean claimTimeout() {
+            if (actualResponseReceived.getCount() == 0 || fallbackPending) {
+                // the execution completed before the timeout (the fallback of a failure is bound by its own timeout)
+                return false;
+            }
+            return isCommandTimedOut.compareAndSet(false, true);
         }
 
-        @Override
-        public boolean cancel(boolean mayInterruptIfRunning) {
-            // we don't want to allow canceling
-            return false;
-        }
+        /**
+         * Report the timeout claimed by {@link #claimTimeout()}, cancel the execution and set the fallback as the response.
+         */
+        private void completeTimeout() {
+            // report timeout failure
+            metrics.markTimeout(System.currentTimeMillis() - startTime);
+            if (isCircuitBreakerProbe) {
+                circuitBreaker.markNonSuccess();
+            }
 
-        @Override
-        public boolean isCancelled() {
-            return actualFuture.isCancelled();
-        }
+            // try to cancel the future (interrupt it) now that it is marked as timed-out so an interrupted run() won't be counted as a success
+            if (actualFuture != null) {
+                cancelAndPurge(actualFuture);
+            }
+            // (the execution may have been cancelled while queued in which case it never releases it itself)
+            releaseAdmission();
+            HedgedExecution hedged = hedgedExecution;
+            if (hedged != null) {
+                executionResult = hedged.addHedgeEvents(executionResult, false);
+                hedged.cancelHedge();
+            }
 
-        @Override
-        public boolean isDone() {
-            return actualFuture.isDone();
+            if (setFallbackResponseAsync(HystrixEventType.TIMEOUT, FailureType.TIMEOUT, "timed-out", new TimeoutException())) {
+                return;
+            }
+            try {
+                setActualResponse(getFallbackOrThrowException(HystrixEventType.TIMEOUT, FailureType.TIMEOUT, "timed-out", new TimeoutException()), null);
+            } catch (HystrixRuntimeException re) {
+                // we want to obey the contract of NFFuture.get() and throw an ExecutionException rather than a random RuntimeException that developers wouldn't expect
+                // we can't capture this in execute/queue so we do it here
+                metrics.markExceptionThrown();
+                setActualResponse(null, new ExecutionException(re));
+            }
         }
 
-    }
-
-    private static interface CommandFuture<K> extends Future<K> {
         /**
-         * Allow retrieving the executionResult from 1 Future in another Future (due to request caching).
+         * Execute <code>getFallback()</code> on the fallback thread-pool and set it as the response once it completes rather than the calling thread (the HystrixTimer or a thread-pool
+         * thread) waiting for it.
+         * <p>
+         * The fallback is instead bound by <code>fallback.isolation.thread.timeoutInMilliseconds</code> using the {@link HystrixTimer}: a fallback that times out is cancelled and its
+         * response set as a fallback failure.
          * 
-         * @return ExecutionResult
+         * @return boolean false if fallbacks are not isolated on a thread-pool and the caller must retrieve it with {@link HystrixCommand#getFallbackOrThrowException}
          */
-        public ExecutionResult getExecutionResult();
-
-    }
-
-    private Future<R> asFuture(final R value) {
-        return new CommandFuture<R>() {
-
-            @Override
-            public boolean cancel(boolean arg0) {
+        private boolean setFallbackResponseAsync(final HystrixEventType eventType, final FailureType failureType, final String message, final Throwable e) {
+            final HystrixThreadPool pool = fallbackThreadPool;
+            if (pool == null) {
                 return false;
             }
-
-            @Override
-            public R get() throws InterruptedException, ExecutionException {
-                return value;
+            fallbackPending = true;
+            R lastKnownGood = getLastKnownGoodInsteadOfFallback(eventType);
+            if (lastKnownGood != null) {
+                setActualResponse(lastKnownGood, null);
+                return true;
             }
-
-            @Override
-            public R get(long arg0, TimeUnit arg1) throws InterruptedException, ExecutionException, TimeoutException {
-                return get();
+            final TryableSemaphore fallbackSemaphore = getFallbackSemaphore();
+            if (!fallbackSemaphore.tryAcquire()) {
+                metrics.markFallbackRejection();
+                logger.debug("HystrixCommand Fallback Rejection."); // debug only since we're delivering the exception and someone higher will do something with it
+                setFallbackFailure(eventType, failureType, message, e, new HystrixRuntimeException(FailureType.REJECTED_SEMAPHORE_FALLBACK, HystrixCommand.this.getClass(), getLogMessagePrefix()
+                        + " fallback execution rejected.", null, null));
+                return true;
             }
+            // whichever of the fallback and its timeout completes first sets the response and releases the semaphore
+            final AtomicBoolean fallbackCompleted = new AtomicBoolean(false);
+            final FutureTask<R> task = new FutureTask<R>(concurrencyStrategy.wrapCallable(new HystrixContextCallable<R>(new Callable<R>() {
 
-            @Override
-            public boolean isCancelled() {
-                return false;
-            }
+                @Override
+                public R call() throws Exception {
+                    pool.markThreadExecution();
+                    try {
+                        R fallback = getFallback();
+                        if (fallbackCompleted.compareAndSet(false, true)) {
+                            fallbackSemaphore.release();
+                            markFallbackSuccess(eventType);
+                            isExecutionComplete.set(true);
+                            setActualResponse(fallback, null);
+                        }
+                        return fallback;
+                    } catch (Throwable fe) {
+                        if (fallbackCompleted.compareAndSet(false, true)) {
+                            fallbackSemaphore.release();
+                            setFallbackFailure(eventType, failureType, message, e, fe);
+                        }
+                        return null;
+                    } finally {
+                        pool.markThreadCompletion();
+                    }
+                }
 
-            @Override
-            public boolean isDone() {
+            })));
+            try {
+                if (!pool.isQueueSpaceAvailable()) {
+                    throw new RejectedExecutionException("Rejected fallback because fallback thread-pool queueSize is at rejection threshold.");
+                }
+                pool.getExecutor().execute(task);
+            } catch (RejectedExecutionException re) {
+                fallbackCompleted.set(true);
+                fallbackSemaphore.release();
+                metrics.markFallbackRejection();
+                logger.debug("HystrixCommand Fallback Rejection."); // debug only since we're delivering the exception and someone higher will do something with it
+                setFallbackFailure(eventType, failureType, message, e, new HystrixRuntimeException(FailureType.REJECTED_THREAD_FALLBACK, HystrixCommand.this.getClass(), getLogMessagePrefix()
+                        + " fallback execution rejected.", re, null));
                 return true;
             }
+            scheduleFallbackTimeout(task, fallbackCompleted, fallbackSemaphore, eventType, failureType, message, e);
+            return true;
+        }
 
-            @Override
-            public ExecutionResult getExecutionResult() {
-                return executionResult;
-            }
+        /**
+         * Use the {@link HystrixTimer} to cancel the fallback executing on the fallback thread-pool once <code>fallback.isolation.thread.timeoutInMilliseconds</code> passes.
+         */
+        private void scheduleFallbackTimeout(final Future<R> task, final AtomicBoolean fallbackCompleted, final TryableSemaphore fallbackSemaphore, final HystrixEventType eventType,
+                final FailureType failureType, final String message, final Throwable e) {
+            final long fallbackDeadline = System.currentTimeMillis() + properties.fallbackIsolationThreadTimeoutInMilliseconds().get();
+            // capture the HystrixRequestContext of this thread so the fallback failure is recorded within it
+            final Runnable fallbackTimeout = new HystrixContextRunnable(new Runnable() {
 
-        };
-    }
+                @Override
+                public void run() {
+                    task.cancel(properties.executionIsolationThreadInterruptOnTimeout().get());
+                    fallbackSemaphore.release();
+                    setFallbackFailure(eventType, failureType, message, e, new HystrixRuntimeException(FailureType.TIMEOUT, HystrixCommand.this.getClass(), getLogMessagePrefix()
+                            + " fallback timed-out.", new TimeoutException(), null));
+                }
 
-    /* ******************************************************************************** */
-    /* ******************************************************************************** */
-    /* TryableSemaphore */
-    /* ******************************************************************************** */
-    /* ******************************************************************************** */
+            });
+            fallbackTimeoutListener = new TimerListener() {
 
-    /**
-     * Semaphore that only supports tryAcquire and never blocks and that supports a dynamic permit count.
-     * <p>
-     * Using AtomicInteger increment/decrement instead of java.util.concurrent.Semaphore since we don't need blocking and need a custom implementation to get the dynamic permit count and since
-     * AtomicInteger achieves the same behavior and performance without the more complex implementation of the actual Semaphore class using AbstractQueueSynchronizer.
-     */
-    private static class TryableSemaphore {
-        private final HystrixProperty<Integer> numberOfPermits;
-        private static AtomicInteger count = new AtomicInteger(0);
+                @Override
+                public void tick() {
+                    if (fallbackCompleted.get()) {
+                        clearFallbackTimeoutListener();
+                    } else if (System.currentTimeMillis() >= fallbackDeadline) {
+                        clearFallbackTimeoutListener();
+                        // only claim the timeout on the HystrixTimer thread and record the failure on another
+                        if (fallbackCompleted.compareAndSet(false, true)) {
+                            HystrixTimer.getInstance().execute(fallbackTimeout);
+                        }
+                    }
+                }
 
-        public TryableSemaphore(HystrixProperty<Integer> numberOfPermits) {
-            this.numberOfPermits = numberOfPermits;
+                @Override
+                public int getIntervalTimeInMilliseconds() {
+                    return TIMEOUT_TICK_INTERVAL_IN_MILLISECONDS;
+                }
+
+            };
+            fallbackTimeoutListenerReference = HystrixTimer.getInstance().addTimerListener(fallbackTimeoutListener);
+            if (fallbackCompleted.get()) {
+                // the fallback completed concurrently (before the reference was assigned)
+                clearFallbackTimeoutListener();
+            }
         }
 
         /**
-         * Use like this:
-         * <p>
-         * 
-         * <pre>
-         * if (s.tryAcquire()) {
-         * try {
-         * // do work that is protected by 's'
-         * } finally {
-         * s.release();
-         * }
-         * }
-         * </pre>
-         * 
-         * @return boolean
+         * Set the failure to retrieve the fallback as the response.
          */
-        public boolean tryAcquire() {
-            int currentCount = count.incrementAndGet();
-            if (currentCount > numberOfPermits.get()) {
-                count.decrementAndGet();
-                return false;
-            } else {
-                return true;
+        private void setFallbackFailure(HystrixEventType eventType, FailureType failureType, String message, Throwable e, Throwable fe) {
+            HystrixRuntimeException re = markFallbackFailure(eventType, failureType, message, e, fe);
+            isExecutionComplete.set(true);
+            // the exception is delivered to get() via the response
+            metrics.markExceptionThrown();
+            setActualResponse(null, new ExecutionException(re));
+        }
+
+        private void clearFallbackTimeoutListener() {
+            Reference<TimerListener> l = fallbackTimeoutListenerReference;
+            if (l != null) {
+                l.clear();
             }
         }
 
         /**
-         * ONLY call release if tryAcquire returned true.
-         * <p>
-         * 
-         * <pre>
-         * if (s.tryAcquire()) {
-         * try {
-         * // do work that is protected by 's'
-         * } finally {
-         * s.release();
-         * }
-         * }
-         * </pre>
+         * Set the response once (subsequent invocations are ignored), release all threads waiting on it and invoke the listeners.
          */
-        public void release() {
-            count.decrementAndGet();
+        private void setActualResponse(R r, ExecutionException e) {
+            if (actualResponseSet.compareAndSet(false, true)) {
+                result = r;
+                executionException = e;
+                // mark that we are done and other threads can proceed
+                actualResponseReceived.countDown();
+                // the timeout no longer needs to be enforced
+                clearTimeoutListener();
+                clearFallbackTimeoutListener();
+                invokeCompletionListeners();
+            }
         }
 
-        public int getNumberOfPermitsUsed() {
-            return count.get();
+        private void clearTimeoutListener() {
+            Reference<TimerListener> l = timeoutListenerReference;
+            if (l != null) {
+                l.clear();
+            }
         }
 
-        public int getNumberOfPermits() {
-            return numberOfPermits.get();
+        @Override
+        public void addCompletionListener(Runnable listener) {
+            completionListeners.add(listener);
+            if (actualResponseReceived.getCount() == 0) {
+                // the response is already set so invoke it now (and any others that raced with setting the response)
+                invokeCompletionListeners();
+            }
         }
 
-    }
-
-    private String getLogMessagePrefix() {
-        return getCommandKey().name();
-    }
-
-    /**
-     * Fluent interface for arguments to the {@link HystrixCommand} constructor.
-     * <p>
-     * The required arguments are set via the 'with' factory method and optional arguments via the 'and' chained methods.
-     * <p>
-     * Example:
-     * <pre> {@code
-     *  Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("GroupName"))
-                .andCommandKey(HystrixCommandKey.Factory.asKey("CommandName"))
-                .andEventNotifier(notifier);
-     * } </pre>
-     */
-    @NotThreadSafe
-    public static class Setter {
-
-        private final HystrixCommandGroupKey groupKey;
-        private HystrixCommandKey commandKey;
-        private HystrixThreadPoolKey threadPoolKey;
-        private HystrixPropertiesStrategy propertiesStrategy;
-        private HystrixCommandProperties.Setter commandPropertiesDefaults;
-        private HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults;
-        private HystrixEventNotifier notifier;
-        private HystrixConcurrencyStrategy concurrencyStrategy;
-        private HystrixMetricsPublisher metricsPublisher;
-
-        /**
-         * Setter factory method containing required values.
-         * <p>
-         * All optional arguments can be set via the chained methods.
-         * 
-         * @param groupKey
-         *            {@link HystrixCommandGroupKey} used to group together multiple {@link HystrixCommand} objects.
-         *            <p>
-         *            The {@link HystrixCommandGroupKey} is used to represent a common relationship between commands. For example, a library or team name, the system all related commands interace
-         *            with,
-         *            common business purpose etc.
-         */
-        private Setter(HystrixCommandGroupKey groupKey) {
-            this.groupKey = groupKey;
+        private void invokeCompletionListeners() {
+            // poll() so each listener is invoked only once even if multiple threads are draining concurrently
+            Runnable listener;
+            while ((listener = completionListeners.poll()) != null) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    logger.warn(getLogMessagePrefix() + ": Error while executing completion listener.", e);
+                }
+            }
         }
 
         /**
-         * Setter factory method with required values.
+         * Use the {@link HystrixTimer} to perform the timeout once the deadline passes so it occurs even when no thread is blocking on <code>get()</code> (such as fireAndForget or observe).
          * <p>
-         * All optional arguments can be set via the chained methods.
-         * 
-         * @param groupKey
-         *            {@link HystrixCommandGroupKey} used to group together multiple {@link HystrixCommand} objects.
-         *            <p>
-         *            The {@link HystrixCommandGroupKey} is used to represent a common relationship between commands. For example, a library or team name, the system all related commands interace
-         *            with,
-         *            common business purpose etc.
+         * The tick only claims the timeout, the rest of it (including the fallback) is handed off to {@link HystrixTimer#execute(Runnable)} so a slow fallback never holds up the
+         * timeouts of other commands, hedges or collapser batches.
+         * <p>
+         * This is invoked once by the thread that starts the execution.
          */
-        public static Setter withGroupKey(HystrixCommandGroupKey groupKey) {
-            return new Setter(groupKey);
-        }
+        private void scheduleTimeout() {
+            final HedgedExecution hedged = hedgedExecution;
+            final long hedgeTime = hedged == null ? Long.MAX_VALUE : hedged.getHedgeTime(deadline);
+            timeoutListener = new TimerListener() {
 
-        /**
-         * @param commandKey
-         *            {@link HystrixCommandKey} used to identify a {@link HystrixCommand} instance for statistics, circuit-breaker, properties, etc.
-         *            <p>
-         *            By default this will be derived from the instance class name.
-         *            <p>
-         *            NOTE: Every unique {@link HystrixCommandKey} will result in new instances of {@link HystrixCircuitBreaker}, {@link HystrixCommandMetrics} and {@link HystrixCommandProperties}.
-         *            Thus,
-         *            the number of variants should be kept to a finite and reasonable number to avoid high-memory usage or memory leacks.
-         *            <p>
-         *            Hundreds of keys is fine, tens of thousands is probably not.
-         * @return Setter for fluent interface via method chaining
-         */
-        public Setter andCommandKey(HystrixCommandKey commandKey) {
-            this.commandKey = commandKey;
-            return this;
-        }
+                @Override
+                public void tick() {
+                    if (actualResponseReceived.getCount() == 0) {
+                        // completed so stop ticking
+                        clearTimeoutListener();
+                        return;
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now >= deadline) {
+                        clearTimeoutListener();
+                        timeout();
+                    } else if (now >= hedgeTime) {
+                        // the first execution is slower than the configured percentile so issue the hedged execution (only once)
+                        hedged.issue();
+                    }
+                }
 
-        /**
-         * @param threadPoolKey
-         *            {@link HystrixThreadPoolKey} used to define which thread-pool this command should run in (when configured to run on separate threads via
-         *            {@link HystrixCommandProperties#executionIsolationStrategy()}).
-         *            <p>
-         *            By default this is derived from the {@link HystrixCommandGroupKey} but if injected this allows multiple commands to have the same {@link HystrixCommandGroupKey} but different
-         *            thread-pools.
-         * @return Setter for fluent interface via method chaining
-         */
-        public Setter andThreadPoolKey(HystrixThreadPoolKey threadPoolKey) {
-            this.threadPoolKey = threadPoolKey;
-            return this;
-        }
+                @Override
+                public int getIntervalTimeInMilliseconds() {
+                    return TIMEOUT_TICK_INTERVAL_IN_MILLISECONDS;
+                }
 
-        /**
-         * @param propertiesStrategy
-         *            {@link HystrixPropertiesStrategy} implementation used to retrieve {@link HystrixCommandProperties} and {@link HystrixThreadPoolProperties}.
-         *            <p>
-         *            See the {@link HystrixPropertiesStrategy} JavaDocs for more information.
-         * @return Setter for fluent interface via method chaining
-         */
-        public Setter andPropertiesStrategy(HystrixPropertiesStrategy propertiesStrategy) {
-            this.propertiesStrategy = propertiesStrategy;
-            return this;
+            };
+            timeoutListenerReference = HystrixTimer.getInstance().addTimerListener(timeoutListener);
+            if (actualResponseReceived.getCount() == 0) {
+                // the response was set concurrently (before the reference was assigned)
+                clearTimeoutListener();
+            }
         }
 
         /**
-         * Optional
+         * Allow retrieving the executionResult from 1 Future in another Future (due to request caching).
          * 
-         * @param commandPropertiesDefaults
-         *            {@link HystrixCommandProperties.Setter} with property overrides for this specific instance of {@link HystrixCommand}.
-         *            <p>
-         *            See the {@link HystrixPropertiesStrategy} JavaDocs for more information on properties and order of precedence.
-         * @return Setter for fluent interface via method chaining
+         * @return
          */
-        public Setter andCommandPropertiesDefaults(HystrixCommandProperties.Setter commandPropertiesDefaults) {
-            this.commandPropertiesDefaults = commandPropertiesDefaults;
-            return this;
+        public ExecutionResult getExecutionResult() {
+            return executionResult;
         }
 
-        /**
-         * Optional
-         * 
-         * @param threadPoolPropertiesDefaults
-         *            {@link HystrixThreadPoolProperties.Setter} with property overrides for the {@link HystrixThreadPool} used by this specific instance of {@link HystrixCommand}.
-         *            <p>
-         *            See the {@link HystrixPropertiesStrategy} JavaDocs for more information on properties and order of precedence.
-         * @return Setter for fluent interface via method chaining
-         */
-        public Setter andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults) {
-            this.threadPoolPropertiesDefaults = threadPoolPropertiesDefaults;
-            return this;
+        @Override
+        public void timeout() {
+            // only claim the timeout on this thread (such as the HystrixTimer) and retrieve the fallback on another
+            if (claimTimeout()) {
+                HystrixTimer.getInstance().execute(timeoutCompletion);
+            }
         }
 
-        /**
-         * @param notifier
-         *            {@link HystrixEventNotifier} implementation used to perform event notification.
-         *            <p>
-         *            See the {@link HystrixEventNotifier} JavaDocs for more information.
-         * @return Setter for fluent interface via method chaining
-         */
-        public Setter andEventNotifier(HystrixEventNotifier notifier) {
-            this.notifier = notifier;
-            return this;
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // we don't want to allow canceling
+            return false;
         }
 
-        /**
-         * @param concurrencyStrategy
-         *            {@link HystrixConcurrencyStrategy} implementation used for concurrency related behavior.
-         *            <p>
-         *            See {@link HystrixConcurrencyStrategy} JavaDocs for more information.
-         * @return Setter for fluent interface via method chaining
-         */
-        public Setter andConcurrencyStrategy(HystrixConcurrencyStrategy concurrencyStrategy) {
-            this.concurrencyStrategy = concurrencyStrategy;
-            return this;
+        @Override
+        public boolean isCancelled() {
+            // the first execution is also cancelled when a hedged execution wins, in which case the response is still set
+            return actualFuture != null && actualFuture.isCancelled() && (hedgedExecution == null || isCommandTimedOut.get());
         }
 
-        /**
-         * @param metricsPublisher
-         *            {@link HystrixMetricsPublisher} implementation used for publishing metrics.
-         *            <p>
-         *            See {@link HystrixMetricsPublisher} JavaDocs for more information.
-         * @return Setter for fluent interface via method chaining
-         */
-        public Setter andMetricsPublisher(HystrixMetricsPublisher metricsPublisher) {
-            this.metricsPublisher = metricsPublisher;
-            return this;
+        @Override
+        public boolean isDone() {
+            return actualResponseReceived.getCount() == 0;
         }
 
-    }
-
-    public static class UnitTest {
+        /**
+         * Coordinates a second (hedged) execution of <code>run()</code> issued once the first has been running longer than
+         * {@link HystrixCommandProperties#executionHedgingPercentile()} of recent executions.
+         * <p>
+         * Whichever execution succeeds first determines the response and cancels the other. A failure only determines the response once no other execution is outstanding
+         * so the metrics and circuit-breaker see exactly one outcome per command.
+         * <p>
+         * Hedges are not issued while the circuit-breaker is open or beyond {@link HystrixCommandProperties#executionHedgingBudgetPercentage()} of requests.
+         */
+        private class HedgedExecution {
+            private static final int NONE = 0;
+            private static final int PRIMARY = 1;
+            private static final int HEDGE = 2;
+
+            private final Callable<R> hedgeCallable;
+            /* number of executions that have started and not yet completed */
+            private final AtomicInteger outstandingExecutions = new AtomicInteger(1);
+            /* which execution determines the response */
+            private final AtomicInteger outcomeOwner = new AtomicInteger(NONE);
+            private final AtomicBoolean issueAttempted = new AtomicBoolean(false);
+            private volatile boolean hedgeIssued = false;
+            private volatile Future<R> hedgeFuture = null;
+
+            private HedgedExecution(final Callable<R> callable, final Long deadlineForNestedExecutions) {
+                // constructed on the thread queueing the command so the HystrixContextCallable captures its HystrixRequestContext
+                this.hedgeCallable = new HystrixContextCallable<R>(new Callable<R>() {
 
-        @Before
-        public void prepareForTest() {
-            /* we must call this to simulate a new request lifecycle running and clearing caches */
-            HystrixRequestContext.initializeContext();
-        }
+                    @Override
+                    public R call() throws Exception {
+                        // only start if the first execution is still running (it may have completed while this was queued)
+                        if (isCommandTimedOut.get() || !outstandingExecutions.compareAndSet(1, 2) || outcomeOwner.get() != NONE) {
+                            return null;
+                        }
+                        // only count hedges that actually execute
+                        hedgeIssued = true;
+                        metrics.markHedgeIssued();
+                        HystrixRequestContext.setExecutionDeadlineOnCurrentThread(deadlineForNestedExecutions);
+                        try {
+                            R r = callable.call();
+                            if (isResponseSetBy(true)) {
+                                setActualResponse(r, null);
+                            }
+                            return r;
+                        } catch (Exception e) {
+                            if (isResponseSetBy(true)) {
+                                setActualResponse(null, new ExecutionException(e));
+                            }
+                            throw e;
+                        }
+                    }
 
-        @After
-        public void cleanup() {
-            // instead of storing the reference from initialize we'll just get the current state and shutdown
-            if (HystrixRequestContext.getContextForCurrentThread() != null) {
-                // it could have been set NULL by the test
-                HystrixRequestContext.getContextForCurrentThread().shutdown();
+                });
             }
 
-            // force properties to be clean as well
-            ConfigurationManager.getConfigInstance().clear();
+            /**
+             * @return time at which to issue the hedge or Long.MAX_VALUE if there is no useful latency percentile yet or it is beyond the timeout
+             */
+            private long getHedgeTime(long deadline) {
+                int delay = metrics.getExecutionTimePercentile(properties.executionHedgingPercentile().get());
+                if (delay <= 0 || startTime + delay >= deadline) {
+                    return Long.MAX_VALUE;
+                }
+                return startTime + delay;
+            }
+
+            /**
+             * Submit the hedged execution to the thread-pool (invoked by the HystrixTimer, only the first invocation has any effect).
+             */
+            private void issue() {
+                if (!issueAttempted.compareAndSet(false, true)) {
+                    return;
+                }
+                if (outcomeOwner.get() != NONE || circuitBreaker.isOpen() || !metrics.isHedgeBudgetAvailable()) {
+                    // don't add load to a dependency the circuit-breaker is protecting
+                    return;
+                }
+                try {
+                    if (!threadPool.isQueueSpaceAvailable(priority)) {
+                        // a hedge is never worth queueing behind other commands
+                        return;
+                    }
+                    hedgeFuture = submit(concurrencyStrategy.wrapCallable(hedgeCallable));
+                } catch (RejectedExecutionException e) {
+                    // the hedge is opportunistic so rejection is not counted against the command
+                    logger.debug(getLogMessagePrefix() + ": Hedged execution rejected by thread-pool.", e);
+                }
+            }
+
+            private boolean isOutcomeOwner(boolean isHedge) {
+                return outcomeOwner.get() == (isHedge ? HEDGE : PRIMARY);
+            }
+
+            /**
+             * Claim the outcome for the given execution regardless of any other outstanding execution.
+             */
+            private boolean claimOutcome(boolean isHedge) {
+                if (outcomeOwner.compareAndSet(NONE, isHedge ? HEDGE : PRIMARY)) {
+                    // the other execution is no longer needed
+                    if (isHedge) {
+                        if (actualFuture != null) {
+                            cancelAndPurge(actualFuture);
+                        }
+                    } else {
+                        cancelHedge();
+                    }
+                    return true;
+                }
+                return false;
+            }
+
+            /**
+             * The first successful execution claims the outcome.
+             */
+            private boolean claimSuccess(boolean isHedge) {
+                return claimOutcome(isHedge);
+            }
+
+            /**
+             * A failed execution only claims the outcome if no other execution is still running.
+             */
+            private boolean claimFailure(boolean isHedge) {
+                if (outstandingExecutions.decrementAndGet() > 0) {
+                    return false;
+                }
+                return claimOutcome(isHedge);
+            }
+
+            private void cancelHedge() {
+                Future<R> f = hedgeFuture;
+                if (f != null) {
+                    cancelAndPurge(f);
+                }
+            }
+
+            /**
+             * Add HEDGE_ISSUED (and HEDGE_WON if the hedge succeeded first) to the given result.
+             */
+            private ExecutionResult addHedgeEvents(ExecutionResult result, boolean hedgeWon) {
+                if (!hedgeIssued) {
+                    return result;
+                } else if (hedgeWon) {
+                    metrics.markHedgeWon();
+                    return result.addEvents(HystrixEventType.HEDGE_ISSUED, HystrixEventType.HEDGE_WON);
+                } else {
+                    return result.addEvents(HystrixEventType.HEDGE_ISSUED);
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * FutureTask submitted to the thread-pool so a {@link HystrixPriorityBlockingQueue} can queue it according to the priority of the execution.
+     */
+    private static class PrioritizedFutureTask<T> extends FutureTask<T> implements HystrixPriorityBlockingQueue.Prioritized {
+
+        private final ExecutionPriority priority;
+
+        private PrioritizedFutureTask(Callable<T> callable, ExecutionPriority priority) {
+            super(callable);
+            this.priority = priority;
+        }
+
+        @Override
+        public ExecutionPriority getExecutionPriority() {
+            return priority;
+        }
+
+    }
+
+    /**
+     * Shares the response of an identical execution in flight in another request (see {@link HystrixCommandProperties#executionSingleFlightEnabled()}).
+     * <p>
+     * The timeout (or deadline) of the joining command is enforced independently of the execution it joined: if it passes first only the joining command times out and
+     * receives its own fallback while the shared execution continues for everyone else.
+     * <p>
+     * Only a successful response is shared. If the shared execution failed, timed-out or was rejected the joining command retrieves its own fallback rather than the one of the
+     * command it joined.
+     */
+    private class CoalescedExecutionFuture implements CommandFuture<R> {
+        private final CommandFuture<R> inFlight;
+        /* the earlier of the configured timeout and the deadline of the request (or of the command this is nested within) */
+        private final long deadline;
+        private final CountDownLatch responseReceived = new CountDownLatch(1);
+        private final AtomicBoolean responseSet = new AtomicBoolean(false);
+        private volatile R result;
+        private volatile ExecutionException executionException;
+        /* listeners to invoke once the response is set */
+        private final ConcurrentLinkedQueue<Runnable> completionListeners = new ConcurrentLinkedQueue<Runnable>();
+        /* the TimerListener enforcing the timeout (strongly referenced here since the HystrixTimer only holds a SoftReference to it) */
+        private volatile TimerListener timeoutListener;
+        private volatile Reference<TimerListener> timeoutListenerReference;
+        /* complete a claimed timeout, or the failure of the execution in flight, on another thread (within the HystrixRequestContext of the thread queueing the command) */
+        private final Runnable timeoutCompletion;
+        private final Runnable fallbackCompletion;
+
+        private CoalescedExecutionFuture(CommandFuture<R> inFlight) {
+            this.inFlight = inFlight;
+            this.deadline = Math.min(System.currentTimeMillis() + properties.executionIsolationThreadTimeoutInMilliseconds().get(), HystrixRequestContext.getDeadlineForCurrentThread());
+            this.timeoutCompletion = new HystrixContextRunnable(new Runnable() {
+
+                @Override
+                public void run() {
+                    completeTimeout();
+                }
+
+            });
+            this.fallbackCompletion = new HystrixContextRunnable(new Runnable() {
+
+                @Override
+                public void run() {
+                    completeWithFallback();
+                }
+
+            });
         }
 
         /**
-         * Test a successful command execution.
+         * Start waiting for the execution in flight and enforce the timeout regardless of whether anyone ever calls <code>get()</code>.
          */
-        @Test
-        public void testExecutionSuccess() {
-            try {
-                TestHystrixCommand<Boolean> command = new SuccessfulTestCommand();
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-                assertEquals(true, command.execute());
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-                assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+        private void start() {
+            inFlight.addCompletionListener(new Runnable() {
 
-                assertEquals(null, command.getFailedExecutionException());
+                @Override
+                public void run() {
+                    if (responseSet.compareAndSet(false, true)) {
+                        ExecutionEvents events = inFlight.getExecutionResult().events;
+                        if (events.contains(HystrixEventType.FAILURE) || events.contains(HystrixEventType.TIMEOUT) || events.contains(HystrixEventType.THREAD_POOL_REJECTED)) {
+                            // don't hold up the other listeners of the shared execution with this fallback
+                            HystrixTimer.getInstance().execute(fallbackCompletion);
+                        } else {
+                            shareResponse();
+                        }
+                    }
+                }
 
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+            });
+            if (responseReceived.getCount() == 0) {
+                return;
+            }
+            timeoutListener = new TimerListener() {
 
-                assertEquals(0, command.builder.metrics.getHealthCounts().getErrorPercentage());
+                @Override
+                public void tick() {
+                    if (responseReceived.getCount() == 0) {
+                        // completed so stop ticking
+                        clearTimeoutListener();
+                    } else if (System.currentTimeMillis() >= deadline) {
+                        clearTimeoutListener();
+                        timeout();
+                    }
+                }
 
-                assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We received an exception.");
+                @Override
+                public int getIntervalTimeInMilliseconds() {
+                    return TIMEOUT_TICK_INTERVAL_IN_MILLISECONDS;
+                }
+
+            };
+            timeoutListenerReference = HystrixTimer.getInstance().addTimerListener(timeoutListener);
+            if (responseReceived.getCount() == 0) {
+                // the response was set concurrently (before the reference was assigned)
+                clearTimeoutListener();
             }
         }
 
         /**
-         * Test that a command can not be executed multiple times.
+         * Set the response of the execution in flight (successful or a {@link HystrixBadRequestException}) as the response of this command.
          */
-        @Test
-        public void testExecutionMultipleTimes() {
-            SuccessfulTestCommand command = new SuccessfulTestCommand();
-            assertFalse(command.isExecutionComplete());
-            // first should succeed
-            assertEquals(true, command.execute());
-            assertTrue(command.isExecutionComplete());
-            assertTrue(command.isExecutedInThread());
+        private void shareResponse() {
             try {
-                // second should fail
-                command.execute();
-                fail("we should not allow this ... it breaks the state of request logs");
+                // the execution is complete so this does not block
+                result = inFlight.get();
+            } catch (ExecutionException e) {
+                executionException = e;
             } catch (Exception e) {
-                e.printStackTrace();
-                // we want to get here
+                executionException = new ExecutionException(e);
             }
+            executionResult = inFlight.getExecutionResult().addEvent(HystrixEventType.COALESCED);
+            isExecutionComplete.set(true);
+            setResponseReceived();
+        }
 
+        /**
+         * Set the fallback of this command as its response since the execution in flight did not succeed.
+         * <p>
+         * The failure itself was already counted by the command that executed.
+         */
+        private void completeWithFallback() {
+            ExecutionResult shared = inFlight.getExecutionResult();
+            Throwable e = shared.exception;
             try {
-                // queue should also fail
-                command.queue();
-                fail("we should not allow this ... it breaks the state of request logs");
-            } catch (Exception e) {
-                e.printStackTrace();
-                // we want to get here
+                if (shared.events.contains(HystrixEventType.TIMEOUT)) {
+                    result = getFallbackOrThrowException(HystrixEventType.TIMEOUT, FailureType.TIMEOUT, "identical execution in flight timed-out", e);
+                } else if (shared.events.contains(HystrixEventType.THREAD_POOL_REJECTED)) {
+                    result = getFallbackOrThrowException(HystrixEventType.THREAD_POOL_REJECTED, FailureType.REJECTED_THREAD_EXECUTION, "identical execution in flight was rejected", e);
+                } else {
+                    result = getFallbackOrThrowException(HystrixEventType.FAILURE, FailureType.COMMAND_EXCEPTION, "identical execution in flight failed", e);
+                }
+            } catch (HystrixRuntimeException re) {
+                metrics.markExceptionThrown();
+                executionException = new ExecutionException(re);
             }
+            executionResult = executionResult.addEvent(HystrixEventType.COALESCED);
+            setResponseReceived();
         }
 
         /**
-         * Test a command execution that throws an HystrixException and didn't implement getFallback.
+         * Stop waiting for the execution in flight and set the fallback as the response of this command only.
          */
-        @Test
-        public void testExecutionKnownFailureWithNoFallback() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithoutFallback(circuitBreaker);
-            try {
-                command.execute();
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-                assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-                fail("we shouldn't get here");
-            } catch (HystrixRuntimeException e) {
-                e.printStackTrace();
-                assertNotNull(e.getFallbackException());
-                assertNotNull(e.getImplementingClass());
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We should always get an HystrixRuntimeException when an error occurs.");
+        private void performTimeout() {
+            if (claimTimeout()) {
+                completeTimeout();
             }
-
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
-
-            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
-
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test a command execution that throws an unknown exception (not HystrixException) and didn't implement getFallback.
+         * Mark this command as timed-out unless the response was already set.
+         * 
+         * @return boolean whether the caller claimed the timeout and must complete it with {@link #completeTimeout()}
          */
-        @Test
-        public void testExecutionUnknownFailureWithNoFallback() {
-            TestHystrixCommand<Boolean> command = new UnknownFailureTestCommandWithoutFallback();
+        private boolean claimTimeout() {
+            if (responseSet.compareAndSet(false, true)) {
+                isCommandTimedOut.set(true);
+                return true;
+            }
+            return false;
+        }
+
+        private void completeTimeout() {
             try {
-                command.execute();
-                fail("we shouldn't get here");
-            } catch (HystrixRuntimeException e) {
-                e.printStackTrace();
-                assertNotNull(e.getFallbackException());
-                assertNotNull(e.getImplementingClass());
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We should always get an HystrixRuntimeException when an error occurs.");
+                result = getFallbackOrThrowException(HystrixEventType.TIMEOUT, FailureType.TIMEOUT, "timed-out waiting for an identical execution in flight", new TimeoutException());
+            } catch (HystrixRuntimeException re) {
+                metrics.markExceptionThrown();
+                executionException = new ExecutionException(re);
             }
+            executionResult = executionResult.addEvent(HystrixEventType.COALESCED);
+            setResponseReceived();
+        }
 
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+        private void setResponseReceived() {
+            responseReceived.countDown();
+            clearTimeoutListener();
+            invokeCompletionListeners();
+        }
 
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+        private void invokeCompletionListeners() {
+            // poll() so each listener is invoked only once even if multiple threads are draining concurrently
+            Runnable listener;
+            while ((listener = completionListeners.poll()) != null) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    logger.warn(getLogMessagePrefix() + ": Error while executing completion listener.", e);
+                }
+            }
+        }
 
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        private void clearTimeoutListener() {
+            Reference<TimerListener> l = timeoutListenerReference;
+            if (l != null) {
+                l.clear();
+            }
         }
 
-        /**
-         * Test a command execution that fails but has a fallback.
-         */
-        @Test
-        public void testExecutionFailureWithFallback() {
-            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithFallback(new TestCircuitBreaker());
-            try {
-                assertEquals(false, command.execute());
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We should have received a response from the fallback.");
+        @Override
+        public R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+            if (!responseReceived.await(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) {
+                // perform the timeout now instead of waiting for the next HystrixTimer tick (or skip it if the response was just set)
+                performTimeout();
+                responseReceived.await();
+            }
+            if (executionException != null) {
+                throw executionException;
+            } else {
+                return result;
             }
+        }
 
-            assertEquals("we failed with a simulated issue", command.getFailedExecutionException().getMessage());
+        @Override
+        public R get() throws InterruptedException, ExecutionException {
+            return get(properties.executionIsolationThreadTimeoutInMilliseconds().get(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public ExecutionResult getExecutionResult() {
+            return executionResult;
+        }
+
+        @Override
+        public void addCompletionListener(Runnable listener) {
+            completionListeners.add(listener);
+            if (responseReceived.getCount() == 0) {
+                // the response is already set so invoke it now (and any others that raced with setting the response)
+                invokeCompletionListeners();
+            }
+        }
+
+        @Override
+        public void timeout() {
+            // only this command times out, the execution in flight is shared with others
+            // (only claim the timeout on this thread, such as the HystrixTimer, and retrieve the fallback on another)
+            if (claimTimeout()) {
+                HystrixTimer.getInstance().execute(timeoutCompletion);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return responseReceived.getCount() == 0;
+        }
+
+    }
+
+    private static interface CommandFuture<K> extends Future<K> {
+        /**
+         * Allow retrieving the executionResult from 1 Future in another Future (due to request caching).
+         * 
+         * @return ExecutionResult
+         */
+        public ExecutionResult getExecutionResult();
+
+        /**
+         * Invoke the listener once this Future is complete so the response can be retrieved without blocking.
+         * <p>
+         * If already complete the listener is invoked immediately on the calling thread.
+         *
+         * @param listener
+         */
+        public void addCompletionListener(Runnable listener);
+
+        /**
+         * Time-out the execution now if it has not yet completed (such as when the deadline of {@link HystrixCommand#executeAll} passes) so the fallback is set as the response.
+         * <p>
+         * This does not wait for the fallback: it is retrieved on another thread so many executions can be timed-out at once.
+         */
+        public void timeout();
+
+    }
+
+    private Future<R> asFuture(final R value) {
+        return new CommandFuture<R>() {
+
+            @Override
+            public boolean cancel(boolean arg0) {
+                return false;
+            }
+
+            @Override
+            public R get() throws InterruptedException, ExecutionException {
+                return value;
+            }
+
+            @Override
+            public R get(long arg0, TimeUnit arg1) throws InterruptedException, ExecutionException, TimeoutException {
+                return get();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+
+            @Override
+            public boolean isDone() {
+                return true;
+            }
+
+            @Override
+            public ExecutionResult getExecutionResult() {
+                return executionResult;
+            }
+
+            @Override
+            public void addCompletionListener(Runnable listener) {
+                listener.run();
+            }
+
+            @Override
+            public void timeout() {
+                // already complete
+            }
+
+        };
+    }
+
+    /**
+     * Complete Future for when {@link #queue()} throws so the failure can be retrieved via <code>get()</code> (as {@link #executeAll} needs).
+     */
+    private Future<R> asFailedFuture(final RuntimeException e) {
+        return new CommandFuture<R>() {
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                return false;
+            }
+
+            @Override
+            public R get() throws InterruptedException, ExecutionException {
+                throw new ExecutionException(e);
+            }
+
+            @Override
+            public R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+                return get();
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+
+            @Override
+            public boolean isDone() {
+                return true;
+            }
+
+            @Override
+            public ExecutionResult getExecutionResult() {
+                return executionResult;
+            }
+
+            @Override
+            public void addCompletionListener(Runnable listener) {
+                listener.run();
+            }
+
+            @Override
+            public void timeout() {
+                // already complete
+            }
+
+        };
+    }
+
+    /* ******************************************************************************** */
+    /* ******************************************************************************** */
+    /* TryableSemaphore */
+    /* ******************************************************************************** */
+    /* ******************************************************************************** */
+
+    /**
+     * Semaphore that only supports tryAcquire and never blocks and that supports a dynamic permit count.
+     * <p>
+     * Using AtomicInteger increment/decrement instead of java.util.concurrent.Semaphore since we don't need blocking and need a custom implementation to get the dynamic permit count and since
+     * AtomicInteger achieves the same behavior and performance without the more complex implementation of the actual Semaphore class using AbstractQueueSynchronizer.
+     * <p>
+     * The optional bounded wait (see {@link #tryAcquire(int, int, long)}) parks waiting threads with {@link LockSupport} and is only ever entered once the non-blocking attempt fails so the
+     * common path stays the same AtomicInteger increment.
+     */
+    private static class TryableSemaphore {
+        private final HystrixProperty<Integer> numberOfPermits;
+        private final AtomicInteger count = new AtomicInteger(0);
+        /* number of threads in (or entering) tryAcquire(int, int, long) so the wait queue can be bounded */
+        private final AtomicInteger numberOfWaiters = new AtomicInteger(0);
+        /* threads parked waiting for a permit, the head is woken on release */
+        private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+        public TryableSemaphore(HystrixProperty<Integer> numberOfPermits) {
+            this.numberOfPermits = numberOfPermits;
+        }
+
+        /**
+         * Use like this:
+         * <p>
+         * 
+         * <pre>
+         * if (s.tryAcquire()) {
+         * try {
+         * // do work that is protected by 's'
+         * } finally {
+         * s.release();
+         * }
+         * }
+         * </pre>
+         * 
+         * @return boolean
+         */
+        public boolean tryAcquire() {
+            return tryAcquire(numberOfPermits.get());
+        }
+
+        /**
+         * Acquire a permit if fewer than the given number (such as an adaptive limit lower than the number of permits) are in use.
+         * 
+         * @param permits
+         *            the number of permits to allow in use
+         * @return boolean
+         */
+        public boolean tryAcquire(int permits) {
+            int currentCount = count.incrementAndGet();
+            if (currentCount > permits) {
+                count.decrementAndGet();
+                return false;
+            } else {
+                return true;
+            }
+        }
+
+        /**
+         * ONLY call release if tryAcquire returned true.
+         * <p>
+         * 
+         * <pre>
+         * if (s.tryAcquire()) {
+         * try {
+         * // do work that is protected by 's'
+         * } finally {
+         * s.release();
+         * }
+         * }
+         * </pre>
+         */
+        public void release() {
+            count.decrementAndGet();
+            if (numberOfWaiters.get() > 0) {
+                wakeNextWaiter();
+            }
+        }
+
+        /**
+         * Acquire a permit if fewer than the given number are in use, otherwise wait up to the given time for one to be released as long as fewer than <code>maxWaiters</code> threads are
+         * already waiting.
+         * <p>
+         * Waiting isn't fair (a thread arriving while others wait can still acquire a released permit immediately) since it's only intended to smooth short bursts.
+         * 
+         * @param permits
+         *            the number of permits to allow in use
+         * @param maxWaiters
+         *            maximum number of threads waiting at once
+         * @param timeoutInNanoseconds
+         *            maximum time to wait
+         * @return long time waited in nanoseconds or -1 if a permit was not acquired (the wait queue was full, the wait timed-out or the thread was interrupted)
+         */
+        public long tryAcquire(int permits, int maxWaiters, long timeoutInNanoseconds) {
+            if (numberOfWaiters.incrementAndGet() > maxWaiters) {
+                numberOfWaiters.decrementAndGet();
+                return -1;
+            }
+            Thread current = Thread.currentThread();
+            long startTime = System.nanoTime();
+            long deadline = startTime + timeoutInNanoseconds;
+            // enqueue before attempting so a release concurrent with the attempt below will wake this thread
+            waiters.add(current);
+            try {
+                while (true) {
+                    if (tryAcquire(permits)) {
+                        return System.nanoTime() - startTime;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || current.isInterrupted()) {
+                        return -1;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            } finally {
+                waiters.remove(current);
+                numberOfWaiters.decrementAndGet();
+                // this thread may have consumed a wake-up meant for the next waiter
+                if (count.get() < permits) {
+                    wakeNextWaiter();
+                }
+            }
+        }
+
+        private void wakeNextWaiter() {
+            Thread next = waiters.peek();
+            if (next != null) {
+                LockSupport.unpark(next);
+            }
+        }
+
+        public int getNumberOfPermitsUsed() {
+            return count.get();
+        }
+
+        public int getNumberOfPermits() {
+            return numberOfPermits.get();
+        }
+
+    }
+
+    private String getLogMessagePrefix() {
+        return getCommandKey().name();
+    }
+
+    /**
+     * Fluent interface for arguments to the {@link HystrixCommand} constructor.
+     * <p>
+     * The required arguments are set via the 'with' factory method and optional arguments via the 'and' chained methods.
+     * <p>
+     * Example:
+     * <pre> {@code
+     *  Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("GroupName"))
+                .andCommandKey(HystrixCommandKey.Factory.asKey("CommandName"))
+                .andEventNotifier(notifier);
+     * } </pre>
+     */
+    @NotThreadSafe
+    public static class Setter {
+
+        private final HystrixCommandGroupKey groupKey;
+        private HystrixCommandKey commandKey;
+        private HystrixThreadPoolKey threadPoolKey;
+        private HystrixPropertiesStrategy propertiesStrategy;
+        private HystrixCommandProperties.Setter commandPropertiesDefaults;
+        private HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults;
+        private HystrixEventNotifier notifier;
+        private HystrixConcurrencyStrategy concurrencyStrategy;
+        private HystrixMetricsPublisher metricsPublisher;
+
+        /**
+         * Setter factory method containing required values.
+         * <p>
+         * All optional arguments can be set via the chained methods.
+         * 
+         * @param groupKey
+         *            {@link HystrixCommandGroupKey} used to group together multiple {@link HystrixCommand} objects.
+         *            <p>
+         *            The {@link HystrixCommandGroupKey} is used to represent a common relationship between commands. For example, a library or team name, the system all related commands interace
+         *            with,
+         *            common business purpose etc.
+         */
+        private Setter(HystrixCommandGroupKey groupKey) {
+            this.groupKey = groupKey;
+        }
+
+        /**
+         * Setter factory method with required values.
+         * <p>
+         * All optional arguments can be set via the chained methods.
+         * 
+         * @param groupKey
+         *            {@link HystrixCommandGroupKey} used to group together multiple {@link HystrixCommand} objects.
+         *            <p>
+         *            The {@link HystrixCommandGroupKey} is used to represent a common relationship between commands. For example, a library or team name, the system all related commands interace
+         *            with,
+         *            common business purpose etc.
+         */
+        public static Setter withGroupKey(HystrixCommandGroupKey groupKey) {
+            return new Setter(groupKey);
+        }
+
+        /**
+         * @param commandKey
+         *            {@link HystrixCommandKey} used to identify a {@link HystrixCommand} instance for statistics, circuit-breaker, properties, etc.
+         *            <p>
+         *            By default this will be derived from the instance class name.
+         *            <p>
+         *            NOTE: Every unique {@link HystrixCommandKey} will result in new instances of {@link HystrixCircuitBreaker}, {@link HystrixCommandMetrics} and {@link HystrixCommandProperties}.
+         *            Thus,
+         *            the number of variants should be kept to a finite and reasonable number to avoid high-memory usage or memory leacks.
+         *            <p>
+         *            Hundreds of keys is fine, tens of thousands is probably not.
+         * @return Setter for fluent interface via method chaining
+         */
+        public Setter andCommandKey(HystrixCommandKey commandKey) {
+            this.commandKey = commandKey;
+            return this;
+        }
+
+        /**
+         * @param threadPoolKey
+         *            {@link HystrixThreadPoolKey} used to define which thread-pool this command should run in (when configured to run on separate threads via
+         *            {@link HystrixCommandProperties#executionIsolationStrategy()}).
+         *            <p>
+         *            By default this is derived from the {@link HystrixCommandGroupKey} but if injected this allows multiple commands to have the same {@link HystrixCommandGroupKey} but different
+         *            thread-pools.
+         * @return Setter for fluent interface via method chaining
+         */
+        public Setter andThreadPoolKey(HystrixThreadPoolKey threadPoolKey) {
+            this.threadPoolKey = threadPoolKey;
+            return this;
+        }
+
+        /**
+         * @param propertiesStrategy
+         *            {@link HystrixPropertiesStrategy} implementation used to retrieve {@link HystrixCommandProperties} and {@link HystrixThreadPoolProperties}.
+         *            <p>
+         *            See the {@link HystrixPropertiesStrategy} JavaDocs for more information.
+         * @return Setter for fluent interface via method chaining
+         */
+        public Setter andPropertiesStrategy(HystrixPropertiesStrategy propertiesStrategy) {
+            this.propertiesStrategy = propertiesStrategy;
+            return this;
+        }
+
+        /**
+         * Optional
+         * 
+         * @param commandPropertiesDefaults
+         *            {@link HystrixCommandProperties.Setter} with property overrides for this specific instance of {@link HystrixCommand}.
+         *            <p>
+         *            See the {@link HystrixPropertiesStrategy} JavaDocs for more information on properties and order of precedence.
+         * @return Setter for fluent interface via method chaining
+         */
+        public Setter andCommandPropertiesDefaults(HystrixCommandProperties.Setter commandPropertiesDefaults) {
+            this.commandPropertiesDefaults = commandPropertiesDefaults;
+            return this;
+        }
+
+        /**
+         * Optional
+         * 
+         * @param threadPoolPropertiesDefaults
+         *            {@link HystrixThreadPoolProperties.Setter} with property overrides for the {@link HystrixThreadPool} used by this specific instance of {@link HystrixCommand}.
+         *            <p>
+         *            See the {@link HystrixPropertiesStrategy} JavaDocs for more information on properties and order of precedence.
+         * @return Setter for fluent interface via method chaining
+         */
+        public Setter andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults) {
+            this.threadPoolPropertiesDefaults = threadPoolPropertiesDefaults;
+            return this;
+        }
+
+        /**
+         * @param notifier
+         *            {@link HystrixEventNotifier} implementation used to perform event notification.
+         *            <p>
+         *            See the {@link HystrixEventNotifier} JavaDocs for more information.
+         * @return Setter for fluent interface via method chaining
+         */
+        public Setter andEventNotifier(HystrixEventNotifier notifier) {
+            this.notifier = notifier;
+            return this;
+        }
+
+        /**
+         * @param concurrencyStrategy
+         *            {@link HystrixConcurrencyStrategy} implementation used for concurrency related behavior.
+         *            <p>
+         *            See {@link HystrixConcurrencyStrategy} JavaDocs for more information.
+         * @return Setter for fluent interface via method chaining
+         */
+        public Setter andConcurrencyStrategy(HystrixConcurrencyStrategy concurrencyStrategy) {
+            this.concurrencyStrategy = concurrencyStrategy;
+            return this;
+        }
+
+        /**
+         * @param metricsPublisher
+         *            {@link HystrixMetricsPublisher} implementation used for publishing metrics.
+         *            <p>
+         *            See {@link HystrixMetricsPublisher} JavaDocs for more information.
+         * @return Setter for fluent interface via method chaining
+         */
+        public Setter andMetricsPublisher(HystrixMetricsPublisher metricsPublisher) {
+            this.metricsPublisher = metricsPublisher;
+            return this;
+        }
+
+    }
+
+    /**
+     * Immutable, pre-resolved definition of a {@link HystrixCommand} that can be shared by all instances of a command so that constructing an instance does no lookups.
+     * <p>
+     * Constructing a {@link HystrixCommand} from a {@link Setter} resolves the {@link HystrixCommandProperties}, {@link HystrixCommandMetrics}, {@link HystrixCircuitBreaker},
+     * {@link HystrixThreadPool}, semaphores, {@link HystrixRequestCache} and plugins by name on every instantiation. A {@link Definition} does this once and commands are then constructed from it via
+     * {@link HystrixCommand#HystrixCommand(Definition)}.
+     * <p>
+     * Example:
+     * <pre> {@code
+     *  private static final Definition DEFINITION = Definition.from(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("GroupName"))
+                .andCommandKey(HystrixCommandKey.Factory.asKey("CommandName")));
+
+        public CommandName() {
+            super(DEFINITION);
+        }
+     * } </pre>
+     * <p>
+     * NOTE: Properties remain dynamic but the choices made at construction from them (thread-pool key override, whether the circuit-breaker is enabled, whether to use the
+     * {@link ExecutionIsolationStrategy#VIRTUAL_THREAD} pool and whether fallbacks have their own thread-pool) are fixed when the {@link Definition} is created rather than per instance.
+     */
+    @ThreadSafe
+    public static final class Definition {
+        private final HystrixCommandGroupKey commandGroup;
+        private final HystrixCommandKey commandKey;
+        private final HystrixThreadPoolKey threadPoolKey;
+        private final HystrixCommandProperties properties;
+        private final HystrixEventNotifier eventNotifier;
+        private final HystrixConcurrencyStrategy concurrencyStrategy;
+        private final HystrixCommandMetrics metrics;
+        private final HystrixCircuitBreaker circuitBreaker;
+        private final HystrixThreadPool threadPool;
+        private final HystrixThreadPool fallbackThreadPool;
+        private final TryableSemaphore fallbackSemaphore;
+        private final TryableSemaphore executionSemaphore;
+        private final HystrixRequestCache requestCache;
+
+        /**
+         * Resolve a {@link Definition} from the arguments of a {@link Setter}.
+         * <p>
+         * Unlike constructing with a {@link Setter} the {@link HystrixCommandKey} is required as there is no class to derive it from.
+         * 
+         * @param setter
+         *            Fluent interface for constructor arguments
+         * @return {@link Definition} to be retained and shared by all instances of the command
+         */
+        public static Definition from(Setter setter) {
+            if (setter.commandKey == null || setter.commandKey.name().trim().equals("")) {
+                throw new IllegalArgumentException("HystrixCommandKey is required to create a HystrixCommand.Definition");
+            }
+            return new Definition(setter.groupKey, setter.commandKey, setter.threadPoolKey, null, null, setter.propertiesStrategy, setter.commandPropertiesDefaults, setter.threadPoolPropertiesDefaults,
+                    setter.notifier, setter.concurrencyStrategy, null, setter.metricsPublisher, null, null);
+        }
+
+        private Definition(HystrixCommandGroupKey group, HystrixCommandKey key, HystrixThreadPoolKey threadPoolKey, HystrixCircuitBreaker circuitBreaker, HystrixThreadPool threadPool,
+                HystrixPropertiesStrategy propertiesFactory, HystrixCommandProperties.Setter commandPropertiesDefaults, HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults, HystrixEventNotifier notifier,
+                HystrixConcurrencyStrategy concurrencyStrategy, HystrixCommandMetrics metrics, HystrixMetricsPublisher metricsPublisher, TryableSemaphore fallbackSemaphore, TryableSemaphore executionSemaphore) {
+            /*
+             * CommandGroup initialization
+             */
+            if (group == null) {
+                throw new IllegalStateException("HystrixCommandGroup can not be NULL");
+            } else {
+                this.commandGroup = group;
+            }
+
+            this.commandKey = key;
+
+            /*
+             * Properties initialization
+             */
+            this.properties = HystrixPropertiesFactory.getCommandProperties(propertiesFactory, this.commandKey, commandPropertiesDefaults);
+
+            /*
+             * ThreadPoolKey
+             * 
+             * This defines which thread-pool this command should run on.
+             * 
+             * It uses the HystrixThreadPoolKey if provided, then defaults to use HystrixCommandGroup.
+             * 
+             * It can then be overridden by a property if defined so it can be changed at runtime.
+             */
+            if (this.properties.executionIsolationThreadPoolKeyOverride().get() == null) {
+                // we don't have a property overriding the value so use either HystrixThreadPoolKey or HystrixCommandGroup
+                if (threadPoolKey == null) {
+                    /* use HystrixCommandGroup if HystrixThreadPoolKey is null */
+                    this.threadPoolKey = HystrixThreadPoolKey.Factory.asKey(commandGroup.name());
+                } else {
+                    this.threadPoolKey = threadPoolKey;
+                }
+            } else {
+                // we have a property defining the thread-pool so use it instead
+                this.threadPoolKey = HystrixThreadPoolKey.Factory.asKey(properties.executionIsolationThreadPoolKeyOverride().get());
+            }
+
+            /* strategy: HystrixEventNotifier */
+            this.eventNotifier = HystrixPlugins.getInstance().getEventNotifier(notifier);
+
+            /* strategy: HystrixConcurrentStrategy */
+            this.concurrencyStrategy = HystrixPlugins.getInstance().getConcurrencyStrategy(concurrencyStrategy);
+
+            /*
+             * Metrics initialization
+             */
+            if (metrics == null) {
+                this.metrics = HystrixCommandMetrics.getInstance(this.commandKey, this.commandGroup, this.threadPoolKey, this.properties, this.eventNotifier);
+            } else {
+                this.metrics = metrics;
+            }
+
+            /*
+             * CircuitBreaker initialization
+             */
+            if (this.properties.circuitBreakerEnabled().get()) {
+                if (circuitBreaker == null) {
+                    // get the default implementation of HystrixCircuitBreaker
+                    this.circuitBreaker = HystrixCircuitBreaker.Factory.getInstance(this.commandKey, this.commandGroup, this.properties, this.metrics);
+                } else {
+                    this.circuitBreaker = circuitBreaker;
+                }
+            } else {
+                this.circuitBreaker = new NoOpCircuitBreaker();
+            }
+
+            /* strategy: HystrixMetricsPublisherCommand */
+            HystrixMetricsPublisherFactory.createOrRetrievePublisherForCommand(metricsPublisher, this.commandKey, this.commandGroup, this.metrics, this.circuitBreaker, this.properties);
+
+            /*
+             * ThreadPool initialization
+             */
+            if (threadPool == null) {
+                // get the default implementation of HystrixThreadPool
+                // commands isolated with virtual threads use a separate pool (the isolation strategy is dynamic but each command instance only executes once so resolving it here is sufficient)
+                boolean virtualThreads = properties.executionIsolationStrategy().get().equals(ExecutionIsolationStrategy.VIRTUAL_THREAD);
+                this.threadPool = HystrixThreadPool.Factory.getInstance(this.threadPoolKey, this.concurrencyStrategy, metricsPublisher, propertiesFactory, threadPoolPropertiesDefaults, virtualThreads);
+            } else {
+                this.threadPool = threadPool;
+            }
+
+            /* a separate thread-pool for fallbacks (only created if enabled as most commands never need one) */
+            if (properties.fallbackIsolationThreadEnabled().get()) {
+                this.fallbackThreadPool = HystrixThreadPool.Factory.getFallbackInstance(this.threadPoolKey, this.concurrencyStrategy, metricsPublisher, propertiesFactory, threadPoolPropertiesDefaults);
+            } else {
+                this.fallbackThreadPool = null;
+            }
+
+            /* fallback semaphore (unless overridden) is shared by all commands with the same key */
+            if (fallbackSemaphore == null) {
+                this.fallbackSemaphore = getSemaphoreForCircuit(fallbackSemaphorePerCircuit, this.commandKey, properties.fallbackIsolationSemaphoreMaxConcurrentRequests());
+            } else {
+                this.fallbackSemaphore = fallbackSemaphore;
+            }
+
+            /* execution semaphore (unless overridden) is shared by all commands with the same key */
+            if (executionSemaphore == null) {
+                this.executionSemaphore = getSemaphoreForCircuit(executionSemaphorePerCircuit, this.commandKey, properties.executionIsolationSemaphoreMaxConcurrentRequests());
+            } else {
+                this.executionSemaphore = executionSemaphore;
+            }
+
+            /* setup the request cache for this instance */
+            this.requestCache = HystrixRequestCache.getInstance(this.commandKey, this.concurrencyStrategy, this.properties);
+        }
+
+        /**
+         * @return {@link HystrixCommandGroupKey} of commands constructed from this definition
+         */
+        public HystrixCommandGroupKey getCommandGroup() {
+            return commandGroup;
+        }
+
+        /**
+         * @return {@link HystrixCommandKey} of commands constructed from this definition
+         */
+        public HystrixCommandKey getCommandKey() {
+            return commandKey;
+        }
+
+        /**
+         * @return {@link HystrixThreadPoolKey} of commands constructed from this definition
+         */
+        public HystrixThreadPoolKey getThreadPoolKey() {
+            return threadPoolKey;
+        }
+
+        /**
+         * @return {@link HystrixCommandProperties} of commands constructed from this definition
+         */
+        public HystrixCommandProperties getProperties() {
+            return properties;
+        }
+
+        /**
+         * @return {@link HystrixCommandMetrics} of commands constructed from this definition
+         */
+        public HystrixCommandMetrics getMetrics() {
+            return metrics;
+        }
+
+    }
+
+    public static class UnitTest {
+
+        @Before
+        public void prepareForTest() {
+            /* we must call this to simulate a new request lifecycle running and clearing caches */
+            HystrixRequestContext.initializeContext();
+        }
+
+        @After
+        public void cleanup() {
+            // instead of storing the reference from initialize we'll just get the current state and shutdown
+            if (HystrixRequestContext.getContextForCurrentThread() != null) {
+                // it could have been set NULL by the test
+                HystrixRequestContext.getContextForCurrentThread().shutdown();
+            }
+
+            // force properties to be clean as well
+            ConfigurationManager.getConfigInstance().clear();
+        }
+
+        /**
+         * Test a successful command execution.
+         */
+        @Test
+        public void testExecutionSuccess() {
+            try {
+                TestHystrixCommand<Boolean> command = new SuccessfulTestCommand();
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+                assertEquals(true, command.execute());
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+                assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+
+                assertEquals(null, command.getFailedExecutionException());
+
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+                assertEquals(0, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+                assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We received an exception.");
+            }
+        }
+
+        /**
+         * Test that a command can not be executed multiple times.
+         */
+        @Test
+        public void testExecutionMultipleTimes() {
+            SuccessfulTestCommand command = new SuccessfulTestCommand();
+            assertFalse(command.isExecutionComplete());
+            // first should succeed
+            assertEquals(true, command.execute());
+            assertTrue(command.isExecutionComplete());
+            assertTrue(command.isExecutedInThread());
+            try {
+                // second should fail
+                command.execute();
+                fail("we should not allow this ... it breaks the state of request logs");
+            } catch (Exception e) {
+                e.printStackTrace();
+                // we want to get here
+            }
+
+            try {
+                // queue should also fail
+                command.queue();
+                fail("we should not allow this ... it breaks the state of request logs");
+            } catch (Exception e) {
+                e.printStackTrace();
+                // we want to get here
+            }
+        }
+
+        /**
+         * Test a command execution that throws an HystrixException and didn't implement getFallback.
+         */
+        @Test
+        public void testExecutionKnownFailureWithNoFallback() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithoutFallback(circuitBreaker);
+            try {
+                command.execute();
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+                assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+                fail("we shouldn't get here");
+            } catch (HystrixRuntimeException e) {
+                e.printStackTrace();
+                assertNotNull(e.getFallbackException());
+                assertNotNull(e.getImplementingClass());
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We should always get an HystrixRuntimeException when an error occurs.");
+            }
+
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test a command execution that throws an unknown exception (not HystrixException) and didn't implement getFallback.
+         */
+        @Test
+        public void testExecutionUnknownFailureWithNoFallback() {
+            TestHystrixCommand<Boolean> command = new UnknownFailureTestCommandWithoutFallback();
+            try {
+                command.execute();
+                fail("we shouldn't get here");
+            } catch (HystrixRuntimeException e) {
+                e.printStackTrace();
+                assertNotNull(e.getFallbackException());
+                assertNotNull(e.getImplementingClass());
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We should always get an HystrixRuntimeException when an error occurs.");
+            }
+
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test a command execution that fails but has a fallback.
+         */
+        @Test
+        public void testExecutionFailureWithFallback() {
+            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithFallback(new TestCircuitBreaker());
+            try {
+                assertEquals(false, command.execute());
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We should have received a response from the fallback.");
+            }
+
+            assertEquals("we failed with a simulated issue", command.getFailedExecutionException().getMessage());
+
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test a command execution that fails, has getFallback implemented but that fails as well.
+         */
+        @Test
+        public void testExecutionFailureWithFallbackFailure() {
+            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithFallbackFailure();
+            try {
+                command.execute();
+                fail("we shouldn't get here");
+            } catch (HystrixRuntimeException e) {
+                System.out.println("------------------------------------------------");
+                e.printStackTrace();
+                System.out.println("------------------------------------------------");
+                assertNotNull(e.getFallbackException());
+            }
+
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test a successful command execution (asynchronously).
+         */
+        @Test
+        public void testQueueSuccess() {
+            TestHystrixCommand<Boolean> command = new SuccessfulTestCommand();
+            try {
+                Future<Boolean> future = command.queue();
+                assertEquals(true, future.get());
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We received an exception.");
+            }
+
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(0, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test a command execution (asynchronously) that throws an HystrixException and didn't implement getFallback.
+         */
+        @Test
+        public void testQueueKnownFailureWithNoFallback() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithoutFallback(circuitBreaker);
+            try {
+                command.queue().get();
+                fail("we shouldn't get here");
+            } catch (Exception e) {
+                e.printStackTrace();
+                if (e.getCause() instanceof HystrixRuntimeException) {
+                    HystrixRuntimeException de = (HystrixRuntimeException) e.getCause();
+
+                    assertNotNull(de.getFallbackException());
+                    assertNotNull(de.getImplementingClass());
+                } else {
+                    fail("the cause should be HystrixRuntimeException");
+                }
+            }
+
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test a command execution (asynchronously) that throws an unknown exception (not HystrixException) and didn't implement getFallback.
+         */
+        @Test
+        public void testQueueUnknownFailureWithNoFallback() {
+            TestHystrixCommand<Boolean> command = new UnknownFailureTestCommandWithoutFallback();
+            try {
+                command.queue().get();
+                fail("we shouldn't get here");
+            } catch (Exception e) {
+                e.printStackTrace();
+                if (e.getCause() instanceof HystrixRuntimeException) {
+                    HystrixRuntimeException de = (HystrixRuntimeException) e.getCause();
+                    assertNotNull(de.getFallbackException());
+                    assertNotNull(de.getImplementingClass());
+                } else {
+                    fail("the cause should be HystrixRuntimeException");
+                }
+            }
+
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test a command execution (asynchronously) that fails but has a fallback.
+         */
+        @Test
+        public void testQueueFailureWithFallback() {
+            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithFallback(new TestCircuitBreaker());
+            try {
+                Future<Boolean> future = command.queue();
+                assertEquals(false, future.get());
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We should have received a response from the fallback.");
+            }
+
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test a command execution (asynchronously) that fails, has getFallback implemented but that fails as well.
+         */
+        @Test
+        public void testQueueFailureWithFallbackFailure() {
+            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithFallbackFailure();
+            try {
+                command.queue().get();
+                fail("we shouldn't get here");
+            } catch (Exception e) {
+                if (e.getCause() instanceof HystrixRuntimeException) {
+                    HystrixRuntimeException de = (HystrixRuntimeException) e.getCause();
+                    e.printStackTrace();
+                    assertNotNull(de.getFallbackException());
+                } else {
+                    fail("the cause should be HystrixRuntimeException");
+                }
+            }
 
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test that the circuit-breaker will 'trip' and prevent command execution on subsequent calls.
+         */
+        @Test
+        public void testCircuitBreakerTripsAfterFailures() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            /* fail 3 times and then it should trip the circuit and stop executing */
+            // failure 1
+            KnownFailureTestCommandWithFallback attempt1 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+            attempt1.execute();
+            assertTrue(attempt1.isResponseFromFallback());
+            assertFalse(attempt1.isCircuitBreakerOpen());
+            assertFalse(attempt1.isResponseShortCircuited());
+
+            // failure 2
+            KnownFailureTestCommandWithFallback attempt2 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+            attempt2.execute();
+            assertTrue(attempt2.isResponseFromFallback());
+            assertFalse(attempt2.isCircuitBreakerOpen());
+            assertFalse(attempt2.isResponseShortCircuited());
+
+            // failure 3
+            KnownFailureTestCommandWithFallback attempt3 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+            attempt3.execute();
+            assertTrue(attempt3.isResponseFromFallback());
+            assertFalse(attempt3.isResponseShortCircuited());
+            // it should now be 'open' and prevent further executions
+            assertTrue(attempt3.isCircuitBreakerOpen());
+
+            // attempt 4
+            KnownFailureTestCommandWithFallback attempt4 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+            attempt4.execute();
+            assertTrue(attempt4.isResponseFromFallback());
+            // this should now be true as the response will be short-circuited
+            assertTrue(attempt4.isResponseShortCircuited());
+            // this should remain open
+            assertTrue(attempt4.isCircuitBreakerOpen());
+
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(4, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test that the circuit-breaker will 'trip' and prevent command execution on subsequent calls.
+         */
+        @Test
+        public void testCircuitBreakerTripsAfterFailuresViaQueue() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            try {
+                /* fail 3 times and then it should trip the circuit and stop executing */
+                // failure 1
+                KnownFailureTestCommandWithFallback attempt1 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+                attempt1.queue().get();
+                assertTrue(attempt1.isResponseFromFallback());
+                assertFalse(attempt1.isCircuitBreakerOpen());
+                assertFalse(attempt1.isResponseShortCircuited());
+
+                // failure 2
+                KnownFailureTestCommandWithFallback attempt2 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+                attempt2.queue().get();
+                assertTrue(attempt2.isResponseFromFallback());
+                assertFalse(attempt2.isCircuitBreakerOpen());
+                assertFalse(attempt2.isResponseShortCircuited());
+
+                // failure 3
+                KnownFailureTestCommandWithFallback attempt3 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+                attempt3.queue().get();
+                assertTrue(attempt3.isResponseFromFallback());
+                assertFalse(attempt3.isResponseShortCircuited());
+                // it should now be 'open' and prevent further executions
+                assertTrue(attempt3.isCircuitBreakerOpen());
+
+                // attempt 4
+                KnownFailureTestCommandWithFallback attempt4 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+                attempt4.queue().get();
+                assertTrue(attempt4.isResponseFromFallback());
+                // this should now be true as the response will be short-circuited
+                assertTrue(attempt4.isResponseShortCircuited());
+                // this should remain open
+                assertTrue(attempt4.isCircuitBreakerOpen());
+
+                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+                assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+                assertEquals(4, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+                assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+                assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+                assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We should have received fallbacks.");
+            }
+        }
+
+        /**
+         * Test that the circuit-breaker is shared across HystrixCommand objects with the same CommandKey.
+         * <p>
+         * This will test HystrixCommand objects with a single circuit-breaker (as if each injected with same CommandKey)
+         * <p>
+         * Multiple HystrixCommand objects with the same dependency use the same circuit-breaker.
+         */
+        @Test
+        public void testCircuitBreakerAcrossMultipleCommandsButSameCircuitBreaker() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            /* fail 3 times and then it should trip the circuit and stop executing */
+            // failure 1
+            KnownFailureTestCommandWithFallback attempt1 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+            attempt1.execute();
+            assertTrue(attempt1.isResponseFromFallback());
+            assertFalse(attempt1.isCircuitBreakerOpen());
+            assertFalse(attempt1.isResponseShortCircuited());
+
+            // failure 2 with a different command, same circuit breaker
+            KnownFailureTestCommandWithoutFallback attempt2 = new KnownFailureTestCommandWithoutFallback(circuitBreaker);
+            try {
+                attempt2.execute();
+            } catch (Exception e) {
+                // ignore ... this doesn't have a fallback so will throw an exception
+            }
+            assertTrue(attempt2.isFailedExecution());
+            assertFalse(attempt2.isResponseFromFallback()); // false because no fallback
+            assertFalse(attempt2.isCircuitBreakerOpen());
+            assertFalse(attempt2.isResponseShortCircuited());
+
+            // failure 3 of the Hystrix, 2nd for this particular HystrixCommand
+            KnownFailureTestCommandWithFallback attempt3 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+            attempt3.execute();
+            assertTrue(attempt2.isFailedExecution());
+            assertTrue(attempt3.isResponseFromFallback());
+            assertFalse(attempt3.isResponseShortCircuited());
+
+            // it should now be 'open' and prevent further executions
+            // after having 3 failures on the Hystrix that these 2 different HystrixCommand objects are for
+            assertTrue(attempt3.isCircuitBreakerOpen());
+
+            // attempt 4
+            KnownFailureTestCommandWithFallback attempt4 = new KnownFailureTestCommandWithFallback(circuitBreaker);
+            attempt4.execute();
+            assertTrue(attempt4.isResponseFromFallback());
+            // this should now be true as the response will be short-circuited
+            assertTrue(attempt4.isResponseShortCircuited());
+            // this should remain open
+            assertTrue(attempt4.isCircuitBreakerOpen());
+
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test that the circuit-breaker is different between HystrixCommand objects with a different Hystrix.
+         */
+        @Test
+        public void testCircuitBreakerAcrossMultipleCommandsAndDifferentDependency() {
+            TestCircuitBreaker circuitBreaker_one = new TestCircuitBreaker();
+            TestCircuitBreaker circuitBreaker_two = new TestCircuitBreaker();
+            /* fail 3 times, twice on one Hystrix, once on a different Hystrix ... circuit-breaker should NOT open */
+
+            // failure 1
+            KnownFailureTestCommandWithFallback attempt1 = new KnownFailureTestCommandWithFallback(circuitBreaker_one);
+            attempt1.execute();
+            assertTrue(attempt1.isResponseFromFallback());
+            assertFalse(attempt1.isCircuitBreakerOpen());
+            assertFalse(attempt1.isResponseShortCircuited());
+
+            // failure 2 with a different HystrixCommand implementation and different Hystrix
+            KnownFailureTestCommandWithFallback attempt2 = new KnownFailureTestCommandWithFallback(circuitBreaker_two);
+            attempt2.execute();
+            assertTrue(attempt2.isResponseFromFallback());
+            assertFalse(attempt2.isCircuitBreakerOpen());
+            assertFalse(attempt2.isResponseShortCircuited());
+
+            // failure 3 but only 2nd of the Hystrix.ONE
+            KnownFailureTestCommandWithFallback attempt3 = new KnownFailureTestCommandWithFallback(circuitBreaker_one);
+            attempt3.execute();
+            assertTrue(attempt3.isResponseFromFallback());
+            assertFalse(attempt3.isResponseShortCircuited());
+
+            // it should remain 'closed' since we have only had 2 failures on Hystrix.ONE
+            assertFalse(attempt3.isCircuitBreakerOpen());
+
+            // this one should also remain closed as it only had 1 failure for Hystrix.TWO
+            assertFalse(attempt2.isCircuitBreakerOpen());
+
+            // attempt 4 (3rd attempt for Hystrix.ONE)
+            KnownFailureTestCommandWithFallback attempt4 = new KnownFailureTestCommandWithFallback(circuitBreaker_one);
+            attempt4.execute();
+            // this should NOW flip to true as this is the 3rd failure for Hystrix.ONE
+            assertTrue(attempt3.isCircuitBreakerOpen());
+            assertTrue(attempt3.isResponseFromFallback());
+            assertFalse(attempt3.isResponseShortCircuited());
+
+            // Hystrix.TWO should still remain closed
+            assertFalse(attempt2.isCircuitBreakerOpen());
+
+            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(3, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(3, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, circuitBreaker_one.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(1, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(1, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, circuitBreaker_two.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test that the circuit-breaker being disabled doesn't wreak havoc.
+         */
+        @Test
+        public void testExecutionSuccessWithCircuitBreakerDisabled() {
+            TestHystrixCommand<Boolean> command = new TestCommandWithoutCircuitBreaker();
+            try {
+                assertEquals(true, command.execute());
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We received an exception.");
+            }
+
+            // we'll still get metrics ... just not the circuit breaker opening/closing
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
 
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+            assertEquals(0, command.builder.metrics.getHealthCounts().getErrorPercentage());
 
             assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test a command execution that fails, has getFallback implemented but that fails as well.
+         * Test a command execution timeout where the command didn't implement getFallback.
          */
         @Test
-        public void testExecutionFailureWithFallbackFailure() {
-            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithFallbackFailure();
+        public void testExecutionTimeoutWithNoFallback() {
+            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_NOT_IMPLEMENTED);
             try {
                 command.execute();
                 fail("we shouldn't get here");
-            } catch (HystrixRuntimeException e) {
-                System.out.println("------------------------------------------------");
+            } catch (Exception e) {
                 e.printStackTrace();
-                System.out.println("------------------------------------------------");
-                assertNotNull(e.getFallbackException());
+                if (e instanceof HystrixRuntimeException) {
+                    HystrixRuntimeException de = (HystrixRuntimeException) e;
+                    assertNotNull(de.getFallbackException());
+                    assertTrue(de.getFallbackException() instanceof UnsupportedOperationException);
+                    assertNotNull(de.getImplementingClass());
+                    assertNotNull(de.getCause());
+                    assertTrue(de.getCause() instanceof TimeoutException);
+                } else {
+                    fail("the exception should be HystrixRuntimeException");
+                }
             }
+            assertTrue(command.isResponseTimedOut());
+            assertFalse(command.isResponseFromFallback());
+            assertFalse(command.isResponseRejected());
 
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
 
             assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
@@ -1922,105 +4560,200 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         }
 
         /**
-         * Test a successful command execution (asynchronously).
+         * Test a command execution timeout where the command implemented getFallback.
          */
         @Test
-        public void testQueueSuccess() {
-            TestHystrixCommand<Boolean> command = new SuccessfulTestCommand();
+        public void testExecutionTimeoutWithFallback() {
+            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_SUCCESS);
             try {
-                Future<Boolean> future = command.queue();
-                assertEquals(true, future.get());
+                assertEquals(false, command.execute());
+                assertTrue(command.isResponseTimedOut());
+                assertTrue(command.isResponseFromFallback());
             } catch (Exception e) {
                 e.printStackTrace();
-                fail("We received an exception.");
+                fail("We should have received a response from the fallback.");
             }
 
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
 
-            assertEquals(0, command.builder.metrics.getHealthCounts().getErrorPercentage());
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
 
             assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test a command execution (asynchronously) that throws an HystrixException and didn't implement getFallback.
+         * Test a command execution timeout where the command implemented getFallback but it fails.
          */
         @Test
-        public void testQueueKnownFailureWithNoFallback() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithoutFallback(circuitBreaker);
+        public void testExecutionTimeoutFallbackFailure() {
+            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_FAILURE);
             try {
-                command.queue().get();
+                command.execute();
                 fail("we shouldn't get here");
             } catch (Exception e) {
-                e.printStackTrace();
-                if (e.getCause() instanceof HystrixRuntimeException) {
-                    HystrixRuntimeException de = (HystrixRuntimeException) e.getCause();
-
+                if (e instanceof HystrixRuntimeException) {
+                    HystrixRuntimeException de = (HystrixRuntimeException) e;
                     assertNotNull(de.getFallbackException());
+                    assertFalse(de.getFallbackException() instanceof UnsupportedOperationException);
                     assertNotNull(de.getImplementingClass());
+                    assertNotNull(de.getCause());
+                    assertTrue(de.getCause() instanceof TimeoutException);
                 } else {
-                    fail("the cause should be HystrixRuntimeException");
+                    fail("the exception should be HystrixRuntimeException");
                 }
             }
 
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test that the circuit-breaker counts a command execution timeout as a 'timeout' and not just failure.
+         */
+        @Test
+        public void testCircuitBreakerOnExecutionTimeout() {
+            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_SUCCESS);
+            try {
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+
+                command.execute();
+
+                assertTrue(command.isResponseFromFallback());
+                assertFalse(command.isCircuitBreakerOpen());
+                assertFalse(command.isResponseShortCircuited());
+
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+                assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We should have received a response from the fallback.");
+            }
+
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test that the command finishing AFTER a timeout (because thread continues in background) does not register a SUCCESS
+         */
+        @Test
+        public void testCountersOnExecutionTimeout() {
+            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_SUCCESS);
+            try {
+                command.execute();
+
+                /* wait long enough for the command to have finished */
+                Thread.sleep(200);
+
+                /* response should still be the same as 'testCircuitBreakerOnExecutionTimeout' */
+                assertTrue(command.isResponseFromFallback());
+                assertFalse(command.isCircuitBreakerOpen());
+                assertFalse(command.isResponseShortCircuited());
+
+                /* failure and timeout count should be the same as 'testCircuitBreakerOnExecutionTimeout' */
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+                assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
 
-            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+                /* we should NOT have a 'success' counter */
+                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We should have received a response from the fallback.");
+            }
+
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
 
             assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test a command execution (asynchronously) that throws an unknown exception (not HystrixException) and didn't implement getFallback.
+         * Test a queued command execution timeout where the command didn't implement getFallback.
+         * <p>
+         * We specifically want to protect against developers queuing commands and using queue().get() without a timeout (such as queue().get(3000, TimeUnit.Milliseconds)) and ending up blocking
+         * indefinitely by skipping the timeout protection of the execute() command.
          */
         @Test
-        public void testQueueUnknownFailureWithNoFallback() {
-            TestHystrixCommand<Boolean> command = new UnknownFailureTestCommandWithoutFallback();
+        public void testQueuedExecutionTimeoutWithNoFallback() {
+            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_NOT_IMPLEMENTED);
             try {
                 command.queue().get();
                 fail("we shouldn't get here");
             } catch (Exception e) {
                 e.printStackTrace();
-                if (e.getCause() instanceof HystrixRuntimeException) {
+                if (e instanceof ExecutionException && e.getCause() instanceof HystrixRuntimeException) {
                     HystrixRuntimeException de = (HystrixRuntimeException) e.getCause();
                     assertNotNull(de.getFallbackException());
+                    assertTrue(de.getFallbackException() instanceof UnsupportedOperationException);
                     assertNotNull(de.getImplementingClass());
+                    assertNotNull(de.getCause());
+                    assertTrue(de.getCause() instanceof TimeoutException);
                 } else {
-                    fail("the cause should be HystrixRuntimeException");
+                    fail("the exception should be ExecutionException with cause as HystrixRuntimeException");
                 }
             }
 
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
 
             assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
@@ -2029,14 +4762,16 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         }
 
         /**
-         * Test a command execution (asynchronously) that fails but has a fallback.
+         * Test a queued command execution timeout where the command implemented getFallback.
+         * <p>
+         * We specifically want to protect against developers queuing commands and using queue().get() without a timeout (such as queue().get(3000, TimeUnit.Milliseconds)) and ending up blocking
+         * indefinitely by skipping the timeout protection of the execute() command.
          */
         @Test
-        public void testQueueFailureWithFallback() {
-            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithFallback(new TestCircuitBreaker());
+        public void testQueuedExecutionTimeoutWithFallback() {
+            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_SUCCESS);
             try {
-                Future<Boolean> future = command.queue();
-                assertEquals(false, future.get());
+                assertEquals(false, command.queue().get());
             } catch (Exception e) {
                 e.printStackTrace();
                 fail("We should have received a response from the fallback.");
@@ -2044,14 +4779,14 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
 
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
             assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
 
             assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
@@ -2060,34 +4795,40 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         }
 
         /**
-         * Test a command execution (asynchronously) that fails, has getFallback implemented but that fails as well.
+         * Test a queued command execution timeout where the command implemented getFallback but it fails.
+         * <p>
+         * We specifically want to protect against developers queuing commands and using queue().get() without a timeout (such as queue().get(3000, TimeUnit.Milliseconds)) and ending up blocking
+         * indefinitely by skipping the timeout protection of the execute() command.
          */
         @Test
-        public void testQueueFailureWithFallbackFailure() {
-            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithFallbackFailure();
+        public void testQueuedExecutionTimeoutFallbackFailure() {
+            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_FAILURE);
             try {
                 command.queue().get();
                 fail("we shouldn't get here");
             } catch (Exception e) {
-                if (e.getCause() instanceof HystrixRuntimeException) {
+                if (e instanceof ExecutionException && e.getCause() instanceof HystrixRuntimeException) {
                     HystrixRuntimeException de = (HystrixRuntimeException) e.getCause();
-                    e.printStackTrace();
                     assertNotNull(de.getFallbackException());
+                    assertFalse(de.getFallbackException() instanceof UnsupportedOperationException);
+                    assertNotNull(de.getImplementingClass());
+                    assertNotNull(de.getCause());
+                    assertTrue(de.getCause() instanceof TimeoutException);
                 } else {
-                    fail("the cause should be HystrixRuntimeException");
+                    fail("the exception should be ExecutionException with cause as HystrixRuntimeException");
                 }
             }
 
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
             assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
 
             assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
@@ -2096,611 +4837,1193 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
         }
 
         /**
-         * Test that the circuit-breaker will 'trip' and prevent command execution on subsequent calls.
+         * Test that a queued command times out (interrupting the thread executing it) even though no thread ever calls get().
          */
         @Test
-        public void testCircuitBreakerTripsAfterFailures() {
+        public void testQueuedExecutionTimeoutWithoutGet() throws Exception {
+            SingleThreadedPool pool = new SingleThreadedPool(1);
             TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            /* fail 3 times and then it should trip the circuit and stop executing */
-            // failure 1
-            KnownFailureTestCommandWithFallback attempt1 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-            attempt1.execute();
-            assertTrue(attempt1.isResponseFromFallback());
-            assertFalse(attempt1.isCircuitBreakerOpen());
-            assertFalse(attempt1.isResponseShortCircuited());
-
-            // failure 2
-            KnownFailureTestCommandWithFallback attempt2 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-            attempt2.execute();
-            assertTrue(attempt2.isResponseFromFallback());
-            assertFalse(attempt2.isCircuitBreakerOpen());
-            assertFalse(attempt2.isResponseShortCircuited());
+            // execution will take 1000ms, timeout is 50ms
+            CommandWithCustomThreadPool command = new CommandWithCustomThreadPool(circuitBreaker, pool, 1000, HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withExecutionIsolationThreadTimeoutInMilliseconds(50));
+            Future<Boolean> f = command.queue();
 
-            // failure 3
-            KnownFailureTestCommandWithFallback attempt3 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-            attempt3.execute();
-            assertTrue(attempt3.isResponseFromFallback());
-            assertFalse(attempt3.isResponseShortCircuited());
-            // it should now be 'open' and prevent further executions
-            assertTrue(attempt3.isCircuitBreakerOpen());
+            // we don't call get() but wait long enough for the timer to have timed it out
+            Thread.sleep(250);
 
-            // attempt 4
-            KnownFailureTestCommandWithFallback attempt4 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-            attempt4.execute();
-            assertTrue(attempt4.isResponseFromFallback());
-            // this should now be true as the response will be short-circuited
-            assertTrue(attempt4.isResponseShortCircuited());
-            // this should remain open
-            assertTrue(attempt4.isCircuitBreakerOpen());
+            assertTrue(f.isDone());
+            assertTrue(command.isResponseTimedOut());
+            // the thread should have been interrupted and released back to the pool
+            assertEquals(0, pool.pool.getActiveCount());
 
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(4, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
 
-            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+            // get() now receives the result of the timeout without waiting
+            try {
+                f.get();
+                fail("we shouldn't get here");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof HystrixRuntimeException);
+                assertEquals(FailureType.TIMEOUT, ((HystrixRuntimeException) e.getCause()).getFailureType());
+            }
+            // and the timeout is not counted again
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+        }
 
-            assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        /**
+         * Test a command using VIRTUAL_THREAD isolation executes on a thread from the separate virtual thread pool.
+         */
+        @Test
+        public void testExecutionViaVirtualThread() {
+            VirtualThreadTestCommand command = new VirtualThreadTestCommand(0, 1000);
+            assertEquals(true, command.execute());
+            assertTrue(command.isExecutedInThread());
+            assertTrue(command.isSuccessfulExecution());
+            assertNotSame(Thread.currentThread(), command.executionThread);
+            // virtual threads are named by the same convention as platform threads (and we fall back to platform threads on JVMs without virtual thread support)
+            assertTrue(command.executionThread.getName().startsWith("hystrix-" + command.getThreadPoolKey().name() + HystrixThreadPool.Factory.VIRTUAL_THREAD_POOL_KEY_SUFFIX + "-"));
+
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
         }
 
         /**
-         * Test that the circuit-breaker will 'trip' and prevent command execution on subsequent calls.
+         * Test a command using VIRTUAL_THREAD isolation times out and is interrupted the same as THREAD isolation.
          */
         @Test
-        public void testCircuitBreakerTripsAfterFailuresViaQueue() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+        public void testExecutionTimeoutViaVirtualThread() throws Exception {
+            VirtualThreadTestCommand command = new VirtualThreadTestCommand(1000, 50);
             try {
-                /* fail 3 times and then it should trip the circuit and stop executing */
-                // failure 1
-                KnownFailureTestCommandWithFallback attempt1 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-                attempt1.queue().get();
-                assertTrue(attempt1.isResponseFromFallback());
-                assertFalse(attempt1.isCircuitBreakerOpen());
-                assertFalse(attempt1.isResponseShortCircuited());
+                command.execute();
+                fail("we shouldn't get here");
+            } catch (HystrixRuntimeException e) {
+                assertEquals(FailureType.TIMEOUT, e.getFailureType());
+            }
+            assertTrue(command.isResponseTimedOut());
+            assertTrue(command.isExecutedInThread());
 
-                // failure 2
-                KnownFailureTestCommandWithFallback attempt2 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-                attempt2.queue().get();
-                assertTrue(attempt2.isResponseFromFallback());
-                assertFalse(attempt2.isCircuitBreakerOpen());
-                assertFalse(attempt2.isResponseShortCircuited());
+            // give the interrupted thread a moment to record that it was interrupted
+            Thread.sleep(100);
+            assertTrue(command.wasInterrupted);
 
-                // failure 3
-                KnownFailureTestCommandWithFallback attempt3 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-                attempt3.queue().get();
-                assertTrue(attempt3.isResponseFromFallback());
-                assertFalse(attempt3.isResponseShortCircuited());
-                // it should now be 'open' and prevent further executions
-                assertTrue(attempt3.isCircuitBreakerOpen());
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+        }
 
-                // attempt 4
-                KnownFailureTestCommandWithFallback attempt4 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-                attempt4.queue().get();
-                assertTrue(attempt4.isResponseFromFallback());
-                // this should now be true as the response will be short-circuited
-                assertTrue(attempt4.isResponseShortCircuited());
-                // this should remain open
-                assertTrue(attempt4.isCircuitBreakerOpen());
+        /**
+         * Test the SEMAPHORE fast path used when request caching and request logging are disabled.
+         */
+        @Test
+        public void testSemaphoreExecutionWithoutRequestCacheOrRequestLog() throws Exception {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                    .withExecutionIsolationStrategy(ExecutionIsolationStrategy.SEMAPHORE).withRequestCacheEnabled(false).withRequestLogEnabled(false);
+
+            TestHystrixCommand<Boolean> command1 = new SuccessfulTestCommand(properties);
+            assertEquals(true, command1.execute());
+            assertTrue(command1.isSuccessfulExecution());
+            assertFalse(command1.isExecutedInThread());
+            assertTrue(command1.getExecutionTimeInMilliseconds() >= 0);
+            assertEquals(Arrays.asList(HystrixEventType.SUCCESS), command1.getExecutionEvents());
+
+            TestHystrixCommand<Boolean> command2 = new SuccessfulTestCommand(properties);
+            Future<Boolean> f = command2.queue();
+            // executed synchronously so already complete
+            assertTrue(f.isDone());
+            assertEquals(true, f.get());
+            assertTrue(command2.isSuccessfulExecution());
+            assertTrue(command2.getExecutionTimeInMilliseconds() >= 0);
+            assertEquals(Arrays.asList(HystrixEventType.SUCCESS), command2.getExecutionEvents());
+
+            assertEquals(1, command1.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, command2.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
 
-                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-                assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-                assertEquals(4, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-                assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-                assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+        /**
+         * Test that execution events are unique, immutable and ordered as declared in HystrixEventType.
+         */
+        @Test
+        public void testExecutionEventsOrderedAndImmutable() {
+            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithFallback(new TestCircuitBreaker());
+            assertEquals(false, command.execute());
+
+            List<HystrixEventType> events = command.getExecutionEvents();
+            assertEquals(Arrays.asList(HystrixEventType.FAILURE, HystrixEventType.FALLBACK_SUCCESS), events);
+            assertEquals(2, events.size());
+            assertTrue(events.contains(HystrixEventType.FAILURE));
+            assertFalse(events.contains(HystrixEventType.SUCCESS));
+            assertEquals(HystrixEventType.FALLBACK_SUCCESS, events.get(1));
+            assertEquals("[FAILURE, FALLBACK_SUCCESS]", events.toString());
+            try {
+                events.add(HystrixEventType.SUCCESS);
+                fail("events should be immutable");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
 
-                assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+        /**
+         * Micro-benchmarks of command construction (via {@link Setter} and via {@link Definition}) and of the SEMAPHORE execution fast path (request cache and request log disabled).
+         * <p>
+         * Prints throughput and, if the JVM supports measuring it, the bytes allocated per operation.
+         * <p>
+         * This is not run as a unit test, invoke it manually.
+         */
+        public static void main(String args[]) {
+            int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+            // use the default properties strategy (as in production) rather than the unit test mocks which allocate on every property access
+            final Setter setter = Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("Benchmark"))
+                    .andCommandKey(HystrixCommandKey.Factory.asKey("Benchmark"))
+                    .andCommandPropertiesDefaults(HystrixCommandProperties.Setter().withExecutionIsolationStrategy(ExecutionIsolationStrategy.SEMAPHORE)
+                            .withRequestCacheEnabled(false).withRequestLogEnabled(false));
+            final Definition definition = Definition.from(setter);
+
+            // first pass warms up, second pass measures
+            for (int pass = 0; pass < 2; pass++) {
+                @SuppressWarnings({ "unchecked", "rawtypes" })
+                HystrixCommand<Boolean>[] commands = new HystrixCommand[iterations];
+
+                long allocatedBefore = getAllocatedBytesForCurrentThread();
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    commands[i] = new BenchmarkCommand(setter);
+                }
+                printBenchmark(pass, "construct via Setter", iterations, start, allocatedBefore);
+
+                allocatedBefore = getAllocatedBytesForCurrentThread();
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    commands[i] = new BenchmarkCommand(definition);
+                }
+                printBenchmark(pass, "construct via Definition", iterations, start, allocatedBefore);
+
+                // the commands were constructed above so only execute() is measured
+                allocatedBefore = getAllocatedBytesForCurrentThread();
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    commands[i].execute();
+                }
+                printBenchmark(pass, "SEMAPHORE execute()", iterations, start, allocatedBefore);
+            }
+        }
+
+        private static long getAllocatedBytesForCurrentThread() {
+            java.lang.management.ThreadMXBean threadMXBean = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            return -1;
+        }
+
+        private static void printBenchmark(int pass, String name, int iterations, long startNanos, long allocatedBefore) {
+            long duration = System.nanoTime() - startNanos;
+            long allocatedAfter = getAllocatedBytesForCurrentThread();
+            if (pass > 0) {
+                String allocated = allocatedBefore < 0 ? "unknown" : String.valueOf((allocatedAfter - allocatedBefore) / iterations);
+                System.out.println(name + ": " + (duration / iterations) + "ns/op, " + (iterations * 1000000000L / Math.max(1, duration)) + " ops/second, " + allocated + " bytes allocated/op");
+            }
+        }
+
+        /**
+         * Test constructing commands from a shared Definition.
+         */
+        @Test
+        public void testExecutionViaDefinition() {
+            Definition definition = Definition.from(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("DefinitionGroup"))
+                    .andCommandKey(HystrixCommandKey.Factory.asKey("DefinitionCommand")));
+            assertEquals("DefinitionCommand", definition.getCommandKey().name());
+            assertEquals("DefinitionGroup", definition.getThreadPoolKey().name());
+
+            BenchmarkCommand command1 = new BenchmarkCommand(definition);
+            BenchmarkCommand command2 = new BenchmarkCommand(definition);
+            assertEquals(true, command1.execute());
+            assertEquals(true, command2.execute());
+            assertTrue(command1.isSuccessfulExecution());
+            assertTrue(command2.isExecutedInThread());
+            assertSame(definition.getMetrics(), command1.getMetrics());
+            assertSame(command1.getMetrics(), command2.getMetrics());
+            assertSame(definition.getProperties(), command2.getProperties());
+            assertEquals(2, definition.getMetrics().getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+
+            // a command constructed with a Setter for the same key resolves the same shared state
+            BenchmarkCommand command3 = new BenchmarkCommand(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("DefinitionGroup"))
+                    .andCommandKey(HystrixCommandKey.Factory.asKey("DefinitionCommand")));
+            assertSame(definition.getMetrics(), command3.getMetrics());
+
+            assertEquals(2, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test that a Definition requires a HystrixCommandKey since it can't be derived from a class name.
+         */
+        @Test
+        public void testDefinitionRequiresCommandKey() {
+            try {
+                Definition.from(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("DefinitionGroup")));
+                fail("we expect an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        /**
+         * Test that a hedged execution is issued once the first execution is slower than the configured percentile and that its response wins.
+         */
+        @Test
+        public void testHedgedExecutionWins() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                    .withExecutionHedgingEnabled(true).withExecutionHedgingBudgetPercentage(100);
+            HedgingTestMetrics metrics = new HedgingTestMetrics(properties);
+
+            // prime the rolling counts so the hedge budget allows a hedge
+            assertEquals(true, new HedgedTestCommand(properties, metrics, false).execute());
+            assertEquals(0, metrics.getRollingCount(HystrixRollingNumberEvent.HEDGE_ISSUED));
+
+            HedgedTestCommand command = new HedgedTestCommand(properties, metrics, true);
+            assertEquals(true, command.execute());
+            assertEquals(2, command.executions.get());
+            assertTrue(command.isSuccessfulExecution());
+            assertFalse(command.isResponseTimedOut());
+            assertTrue(command.getExecutionEvents().contains(HystrixEventType.HEDGE_ISSUED));
+            assertTrue(command.getExecutionEvents().contains(HystrixEventType.HEDGE_WON));
+            assertTrue(command.getExecutionTimeInMilliseconds() < HedgedTestCommand.SLOW_EXECUTION_TIME);
+
+            assertEquals(1, metrics.getRollingCount(HystrixRollingNumberEvent.HEDGE_ISSUED));
+            assertEquals(1, metrics.getRollingCount(HystrixRollingNumberEvent.HEDGE_WON));
+            // only one outcome is counted per command
+            assertEquals(2, metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+        }
+
+        /**
+         * Test that no hedged execution is issued unless enabled.
+         */
+        @Test
+        public void testHedgedExecutionDisabledByDefault() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withExecutionHedgingBudgetPercentage(100);
+            HedgingTestMetrics metrics = new HedgingTestMetrics(properties);
+            assertEquals(true, new HedgedTestCommand(properties, metrics, false).execute());
+
+            HedgedTestCommand command = new HedgedTestCommand(properties, metrics, true);
+            assertEquals(true, command.execute());
+            assertEquals(1, command.executions.get());
+            assertFalse(command.getExecutionEvents().contains(HystrixEventType.HEDGE_ISSUED));
+            assertEquals(0, metrics.getRollingCount(HystrixRollingNumberEvent.HEDGE_ISSUED));
+        }
+
+        /**
+         * Test that no hedged execution is issued beyond the budget (no requests have completed yet so there is no budget).
+         */
+        @Test
+        public void testHedgedExecutionBudget() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                    .withExecutionHedgingEnabled(true).withExecutionHedgingBudgetPercentage(100);
+            HedgingTestMetrics metrics = new HedgingTestMetrics(properties);
 
-                assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We should have received fallbacks.");
-            }
+            HedgedTestCommand command = new HedgedTestCommand(properties, metrics, true);
+            assertEquals(true, command.execute());
+            assertEquals(1, command.executions.get());
+            assertTrue(command.isSuccessfulExecution());
+            assertFalse(command.getExecutionEvents().contains(HystrixEventType.HEDGE_ISSUED));
+            assertEquals(0, metrics.getRollingCount(HystrixRollingNumberEvent.HEDGE_ISSUED));
+            assertEquals(1, metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
         }
 
         /**
-         * Test that the circuit-breaker is shared across HystrixCommand objects with the same CommandKey.
-         * <p>
-         * This will test HystrixCommand objects with a single circuit-breaker (as if each injected with same CommandKey)
-         * <p>
-         * Multiple HystrixCommand objects with the same dependency use the same circuit-breaker.
+         * Test that a failed execution is retried and the retry is recorded in the metrics and request log.
          */
         @Test
-        public void testCircuitBreakerAcrossMultipleCommandsButSameCircuitBreaker() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            /* fail 3 times and then it should trip the circuit and stop executing */
-            // failure 1
-            KnownFailureTestCommandWithFallback attempt1 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-            attempt1.execute();
-            assertTrue(attempt1.isResponseFromFallback());
-            assertFalse(attempt1.isCircuitBreakerOpen());
-            assertFalse(attempt1.isResponseShortCircuited());
+        public void testRetrySucceedsWithinBudget() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                    .withExecutionRetryMaxAttempts(2).withExecutionRetryBackoffInMilliseconds(1).withExecutionRetryBudgetPercentage(100);
+            HystrixCommandMetrics metrics = new HystrixCommandMetrics(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, ThreadPoolKeyForUnitTest.THREAD_POOL_ONE, HystrixCommandProperties.Setter.asMock(properties), HystrixEventNotifierDefault.getInstance());
 
-            // failure 2 with a different command, same circuit breaker
-            KnownFailureTestCommandWithoutFallback attempt2 = new KnownFailureTestCommandWithoutFallback(circuitBreaker);
-            try {
-                attempt2.execute();
-            } catch (Exception e) {
-                // ignore ... this doesn't have a fallback so will throw an exception
-            }
-            assertTrue(attempt2.isFailedExecution());
-            assertFalse(attempt2.isResponseFromFallback()); // false because no fallback
-            assertFalse(attempt2.isCircuitBreakerOpen());
-            assertFalse(attempt2.isResponseShortCircuited());
+            // a success earns the budget for a retry
+            assertEquals(true, new RetryTestCommand(properties, metrics, 0).execute());
 
-            // failure 3 of the Hystrix, 2nd for this particular HystrixCommand
-            KnownFailureTestCommandWithFallback attempt3 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-            attempt3.execute();
-            assertTrue(attempt2.isFailedExecution());
-            assertTrue(attempt3.isResponseFromFallback());
-            assertFalse(attempt3.isResponseShortCircuited());
+            RetryTestCommand command = new RetryTestCommand(properties, metrics, 1);
+            assertEquals(true, command.execute());
+            assertEquals(2, command.attempts.get());
+            assertTrue(command.isSuccessfulExecution());
+            assertTrue(command.getExecutionEvents().contains(HystrixEventType.RETRY));
+            assertEquals(1, metrics.getRollingCount(HystrixRollingNumberEvent.RETRY));
+            assertEquals(2, metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertTrue(HystrixRequestLog.getCurrentRequest().getExecutedCommandsAsString().contains("RETRY"));
+        }
 
-            // it should now be 'open' and prevent further executions
-            // after having 3 failures on the Hystrix that these 2 different HystrixCommand objects are for
-            assertTrue(attempt3.isCircuitBreakerOpen());
+        /**
+         * Test that retries stop after the configured maximum and the failure is reported once.
+         */
+        @Test
+        public void testRetryMaxAttempts() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                    .withExecutionRetryMaxAttempts(2).withExecutionRetryBackoffInMilliseconds(1).withExecutionRetryBudgetPercentage(100);
+            HystrixCommandMetrics metrics = new HystrixCommandMetrics(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, ThreadPoolKeyForUnitTest.THREAD_POOL_ONE, HystrixCommandProperties.Setter.asMock(properties), HystrixEventNotifierDefault.getInstance());
+            for (int i = 0; i < 5; i++) {
+                assertEquals(true, new RetryTestCommand(properties, metrics, 0).execute());
+            }
 
-            // attempt 4
-            KnownFailureTestCommandWithFallback attempt4 = new KnownFailureTestCommandWithFallback(circuitBreaker);
-            attempt4.execute();
-            assertTrue(attempt4.isResponseFromFallback());
-            // this should now be true as the response will be short-circuited
-            assertTrue(attempt4.isResponseShortCircuited());
-            // this should remain open
-            assertTrue(attempt4.isCircuitBreakerOpen());
+            RetryTestCommand command = new RetryTestCommand(properties, metrics, 10);
+            assertEquals(false, command.execute());
+            assertEquals(3, command.attempts.get());
+            assertTrue(command.isFailedExecution());
+            assertTrue(command.isResponseFromFallback());
+            assertTrue(command.getExecutionEvents().contains(HystrixEventType.RETRY));
+            assertEquals(2, metrics.getRollingCount(HystrixRollingNumberEvent.RETRY));
+            assertEquals(1, metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+        }
 
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+        /**
+         * Test that no retry is performed when the retry budget is exhausted (no successes have earned any tokens) or retries are not configured.
+         */
+        @Test
+        public void testRetryBudgetExhausted() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                    .withExecutionRetryMaxAttempts(2).withExecutionRetryBackoffInMilliseconds(1).withExecutionRetryBudgetPercentage(100);
+            HystrixCommandMetrics metrics = new HystrixCommandMetrics(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, ThreadPoolKeyForUnitTest.THREAD_POOL_ONE, HystrixCommandProperties.Setter.asMock(properties), HystrixEventNotifierDefault.getInstance());
 
-            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+            RetryTestCommand command = new RetryTestCommand(properties, metrics, 1);
+            assertEquals(false, command.execute());
+            assertEquals(1, command.attempts.get());
+            assertFalse(command.getExecutionEvents().contains(HystrixEventType.RETRY));
+            assertEquals(0, metrics.getRollingCount(HystrixRollingNumberEvent.RETRY));
 
+            // retries are disabled by default
+            RetryTestCommand notRetried = new RetryTestCommand(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter(), metrics, 1);
+            assertEquals(false, notRetried.execute());
+            assertEquals(1, notRetried.attempts.get());
+        }
+
+        /**
+         * Test executeAll() with a deadline before a latent command completes so it receives its fallback while the others complete normally.
+         */
+        @Test
+        public void testExecuteAllWithDeadline() throws Exception {
+            TestCommandWithTimeout latent = new TestCommandWithTimeout(1000, TestCommandWithTimeout.FALLBACK_SUCCESS);
+            SuccessfulTestCommand success = new SuccessfulTestCommand();
+            KnownFailureTestCommandWithFallback failure = new KnownFailureTestCommandWithFallback(new TestCircuitBreaker());
+            KnownFailureTestCommandWithoutFallback failureWithoutFallback = new KnownFailureTestCommandWithoutFallback(new TestCircuitBreaker());
+
+            long start = System.currentTimeMillis();
+            List<Future<Boolean>> responses = HystrixCommand.executeAll(Arrays.<HystrixCommand<Boolean>> asList(latent, success, failure, failureWithoutFallback), start + 200);
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue("executeAll should return at the deadline: " + elapsed, elapsed >= 200 && elapsed < 1000);
+
+            assertEquals(4, responses.size());
+            for (Future<Boolean> response : responses) {
+                assertTrue(response.isDone());
+            }
+            assertEquals(false, responses.get(0).get());
+            assertTrue(latent.isResponseTimedOut());
+            assertTrue(latent.isResponseFromFallback());
+            assertEquals(true, responses.get(1).get());
+            assertTrue(success.isSuccessfulExecution());
+            assertEquals(false, responses.get(2).get());
+            assertTrue(failure.isFailedExecution());
+            try {
+                responses.get(3).get();
+                fail("we expect an ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof HystrixRuntimeException);
+            }
             assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test that the circuit-breaker is different between HystrixCommand objects with a different Hystrix.
+         * Test executeAll() returns as soon as all commands complete rather than at the deadline.
          */
         @Test
-        public void testCircuitBreakerAcrossMultipleCommandsAndDifferentDependency() {
-            TestCircuitBreaker circuitBreaker_one = new TestCircuitBreaker();
-            TestCircuitBreaker circuitBreaker_two = new TestCircuitBreaker();
-            /* fail 3 times, twice on one Hystrix, once on a different Hystrix ... circuit-breaker should NOT open */
+        public void testExecuteAllCompletesBeforeDeadline() throws Exception {
+            List<SuccessfulTestCommand> commands = new ArrayList<SuccessfulTestCommand>();
+            for (int i = 0; i < 5; i++) {
+                commands.add(new SuccessfulTestCommand());
+            }
+            long start = System.currentTimeMillis();
+            List<Future<Boolean>> responses = HystrixCommand.executeAll(commands, start + 5000);
+            assertTrue(System.currentTimeMillis() - start < 1000);
+            for (int i = 0; i < commands.size(); i++) {
+                assertEquals(true, responses.get(i).get());
+                assertTrue(commands.get(i).isSuccessfulExecution());
+                assertFalse(commands.get(i).isResponseTimedOut());
+            }
+        }
 
-            // failure 1
-            KnownFailureTestCommandWithFallback attempt1 = new KnownFailureTestCommandWithFallback(circuitBreaker_one);
-            attempt1.execute();
-            assertTrue(attempt1.isResponseFromFallback());
-            assertFalse(attempt1.isCircuitBreakerOpen());
-            assertFalse(attempt1.isResponseShortCircuited());
+        /**
+         * Test queueAll() delivers each response as soon as it completes with the latent command timed-out at the deadline.
+         */
+        @Test
+        public void testQueueAllInCompletionOrder() throws Exception {
+            TestCommandWithTimeout latent = new TestCommandWithTimeout(1000, TestCommandWithTimeout.FALLBACK_SUCCESS);
+            SuccessfulTestCommand success = new SuccessfulTestCommand();
 
-            // failure 2 with a different HystrixCommand implementation and different Hystrix
-            KnownFailureTestCommandWithFallback attempt2 = new KnownFailureTestCommandWithFallback(circuitBreaker_two);
-            attempt2.execute();
-            assertTrue(attempt2.isResponseFromFallback());
-            assertFalse(attempt2.isCircuitBreakerOpen());
-            assertFalse(attempt2.isResponseShortCircuited());
+            long start = System.currentTimeMillis();
+            BlockingQueue<Future<Boolean>> responses = HystrixCommand.queueAll(Arrays.<HystrixCommand<Boolean>> asList(latent, success), start + 200);
+            assertTrue(System.currentTimeMillis() - start < 200);
 
-            // failure 3 but only 2nd of the Hystrix.ONE
-            KnownFailureTestCommandWithFallback attempt3 = new KnownFailureTestCommandWithFallback(circuitBreaker_one);
-            attempt3.execute();
-            assertTrue(attempt3.isResponseFromFallback());
-            assertFalse(attempt3.isResponseShortCircuited());
+            Future<Boolean> first = responses.take();
+            assertTrue("the successful command should be delivered before the deadline: " + (System.currentTimeMillis() - start), System.currentTimeMillis() - start < 200);
+            assertEquals(true, first.get());
+            assertTrue(success.isSuccessfulExecution());
 
-            // it should remain 'closed' since we have only had 2 failures on Hystrix.ONE
-            assertFalse(attempt3.isCircuitBreakerOpen());
+            Future<Boolean> second = responses.take();
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue("the latent command should be timed-out at the deadline: " + elapsed, elapsed >= 200 && elapsed < 1000);
+            assertEquals(false, second.get());
+            assertTrue(latent.isResponseTimedOut());
+            assertTrue(responses.isEmpty());
+        }
 
-            // this one should also remain closed as it only had 1 failure for Hystrix.TWO
-            assertFalse(attempt2.isCircuitBreakerOpen());
+        /**
+         * Test executeAll() times-out the commands remaining at the deadline at once rather than waiting for each of their fallbacks in turn.
+         */
+        @Test
+        public void testExecuteAllTimesOutRemainingConcurrently() throws Exception {
+            List<SlowFallbackOnTimeoutTestCommand> commands = new ArrayList<SlowFallbackOnTimeoutTestCommand>();
+            for (int i = 0; i < 4; i++) {
+                commands.add(new SlowFallbackOnTimeoutTestCommand(5000, 300));
+            }
+            long start = System.currentTimeMillis();
+            List<Future<Boolean>> responses = HystrixCommand.executeAll(commands, start + 100);
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue("fallbacks should be retrieved concurrently: " + elapsed, elapsed >= 400 && elapsed < 900);
+            for (int i = 0; i < commands.size(); i++) {
+                assertTrue(responses.get(i).isDone());
+                assertEquals(false, responses.get(i).get());
+                assertTrue(commands.get(i).isResponseTimedOut());
+            }
+        }
 
-            // attempt 4 (3rd attempt for Hystrix.ONE)
-            KnownFailureTestCommandWithFallback attempt4 = new KnownFailureTestCommandWithFallback(circuitBreaker_one);
-            attempt4.execute();
-            // this should NOW flip to true as this is the 3rd failure for Hystrix.ONE
-            assertTrue(attempt3.isCircuitBreakerOpen());
-            assertTrue(attempt3.isResponseFromFallback());
-            assertFalse(attempt3.isResponseShortCircuited());
+        /**
+         * Test executeAll() waits for the fallbacks of the commands timed-out at the deadline at most for the fallback timeout.
+         */
+        @Test
+        public void testExecuteAllBoundsWaitForFallbacks() throws Exception {
+            SlowFallbackOnTimeoutTestCommand command = new SlowFallbackOnTimeoutTestCommand(5000, 3000);
+            long start = System.currentTimeMillis();
+            List<Future<Boolean>> responses = HystrixCommand.executeAll(Arrays.asList(command), start + 100);
+            long elapsed = System.currentTimeMillis() - start;
+            // the deadline plus the 1000ms fallback timeout
+            assertTrue("should stop waiting for the fallback: " + elapsed, elapsed >= 1100 && elapsed < 2000);
+            assertFalse(responses.get(0).isDone());
+            assertEquals(false, responses.get(0).get());
+        }
 
-            // Hystrix.TWO should still remain closed
-            assertFalse(attempt2.isCircuitBreakerOpen());
+        /**
+         * Test that the request deadline shortens the timeout of a command.
+         */
+        @Test
+        public void testRequestDeadlineShortensTimeout() {
+            long start = System.currentTimeMillis();
+            HystrixRequestContext.getContextForCurrentThread().setDeadline(start + 100);
+            TestCommandWithTimeout command = new TestCommandWithTimeout(1000, TestCommandWithTimeout.FALLBACK_SUCCESS);
+            assertEquals(false, command.execute());
+            assertTrue(command.isResponseTimedOut());
+            assertTrue(System.currentTimeMillis() - start < 1000);
+        }
 
-            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(3, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(3, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, circuitBreaker_one.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+        /**
+         * Test that a command is rejected without executing once the request deadline has passed.
+         */
+        @Test
+        public void testRequestDeadlineExceeded() {
+            HystrixRequestContext.getContextForCurrentThread().setDeadline(System.currentTimeMillis() - 1);
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter();
+            HystrixCommandMetrics metrics = new HystrixCommandMetrics(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, ThreadPoolKeyForUnitTest.THREAD_POOL_ONE, HystrixCommandProperties.Setter.asMock(properties), HystrixEventNotifierDefault.getInstance());
+
+            RetryTestCommand command = new RetryTestCommand(properties, metrics, 0);
+            assertEquals(false, command.execute());
+            assertEquals(0, command.attempts.get());
+            assertTrue(command.isResponseFromFallback());
+            assertTrue(command.getExecutionEvents().contains(HystrixEventType.DEADLINE_EXCEEDED));
+            assertEquals(1, metrics.getRollingCount(HystrixRollingNumberEvent.DEADLINE_EXCEEDED));
+            // not a failure of the dependency
+            assertEquals(0, metrics.getHealthCounts().getTotalRequests());
 
-            assertEquals(100, circuitBreaker_one.metrics.getHealthCounts().getErrorPercentage());
+            try {
+                new KnownFailureTestCommandWithoutFallback(new TestCircuitBreaker()).queue();
+                fail("we expect a HystrixRuntimeException");
+            } catch (HystrixRuntimeException e) {
+                assertEquals(FailureType.DEADLINE_EXCEEDED, e.getFailureType());
+            }
+        }
 
-            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(1, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(1, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, circuitBreaker_two.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+        /**
+         * Test that the deadline of the request and of the command are carried to the thread executing it so nested commands don't outlive them.
+         */
+        @Test
+        public void testDeadlineCarriedToExecutingThread() {
+            long start = System.currentTimeMillis();
+            DeadlineTestCommand command = new DeadlineTestCommand(300);
+            command.execute();
+            assertTrue(command.deadline > start && command.deadline <= System.currentTimeMillis() + 300);
 
-            assertEquals(100, circuitBreaker_two.metrics.getHealthCounts().getErrorPercentage());
+            long requestDeadline = System.currentTimeMillis() + 200;
+            HystrixRequestContext.getContextForCurrentThread().setDeadline(requestDeadline);
+            command = new DeadlineTestCommand(1000);
+            command.execute();
+            assertEquals(requestDeadline, command.deadline);
 
-            assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            // the calling thread only sees the request deadline
+            assertEquals(requestDeadline, HystrixRequestContext.getDeadlineForCurrentThread());
         }
 
         /**
-         * Test that the circuit-breaker being disabled doesn't wreak havoc.
+         * Test that the adaptive concurrency limit is used for semaphore and thread-pool admission when enabled.
          */
         @Test
-        public void testExecutionSuccessWithCircuitBreakerDisabled() {
-            TestHystrixCommand<Boolean> command = new TestCommandWithoutCircuitBreaker();
-            try {
-                assertEquals(true, command.execute());
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We received an exception.");
-            }
+        public void testAdaptiveConcurrencyLimitAdmission() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withExecutionAdaptiveConcurrencyLimitEnabled(true);
+            HystrixCommandMetrics metrics = new HystrixCommandMetrics(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, ThreadPoolKeyForUnitTest.THREAD_POOL_ONE, HystrixCommandProperties.Setter.asMock(properties), HystrixEventNotifierDefault.getInstance());
+            assertEquals(true, new RetryTestCommand(properties, metrics, 0).execute());
+            assertTrue(metrics.getCurrentConcurrencyLimit() > 0);
+            // released once complete
+            assertEquals(0, metrics.getThreadExecutionsInFlight());
 
-            // we'll still get metrics ... just not the circuit breaker opening/closing
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+            properties.withExecutionIsolationStrategy(ExecutionIsolationStrategy.SEMAPHORE);
+            metrics = new HystrixCommandMetrics(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, ThreadPoolKeyForUnitTest.THREAD_POOL_ONE, HystrixCommandProperties.Setter.asMock(properties), HystrixEventNotifierDefault.getInstance());
+            assertEquals(true, new RetryTestCommand(properties, metrics, 0).execute());
+            assertTrue(metrics.getCurrentConcurrencyLimit() > 0);
+        }
 
-            assertEquals(0, command.builder.metrics.getHealthCounts().getErrorPercentage());
+        /**
+         * Test acquiring permits of the TryableSemaphore with a limit lower than the number of permits.
+         */
+        @Test
+        public void testTryableSemaphoreWithLimit() {
+            TryableSemaphore semaphore = new TryableSemaphore(HystrixProperty.Factory.asProperty(3));
+            assertTrue(semaphore.tryAcquire(1));
+            assertFalse(semaphore.tryAcquire(1));
+            assertTrue(semaphore.tryAcquire());
+            assertTrue(semaphore.tryAcquire());
+            assertFalse(semaphore.tryAcquire());
+            assertEquals(3, semaphore.getNumberOfPermitsUsed());
+            semaphore.release();
+            semaphore.release();
+            semaphore.release();
+            // each semaphore counts its own permits
+            assertEquals(0, new TryableSemaphore(HystrixProperty.Factory.asProperty(3)).getNumberOfPermitsUsed());
+        }
 
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        /**
+         * Test that a thread waits for a released TryableSemaphore permit, times out or is rejected when the wait queue is full.
+         */
+        @Test
+        public void testTryableSemaphoreWait() throws Exception {
+            final TryableSemaphore semaphore = new TryableSemaphore(HystrixProperty.Factory.asProperty(1));
+            assertTrue(semaphore.tryAcquire());
+
+            // nothing releases the permit so the wait times out
+            long start = System.nanoTime();
+            assertEquals(-1, semaphore.tryAcquire(1, 1, TimeUnit.MILLISECONDS.toNanos(20)));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+
+            // no waiting allowed
+            assertEquals(-1, semaphore.tryAcquire(1, 0, TimeUnit.SECONDS.toNanos(1)));
+
+            // another thread waits so the wait queue of 1 is full
+            final AtomicLong waited = new AtomicLong();
+            Thread waiter = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    waited.set(semaphore.tryAcquire(1, 1, TimeUnit.SECONDS.toNanos(5)));
+                }
+
+            });
+            waiter.start();
+            while (waiter.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(1);
+            }
+            assertEquals(-1, semaphore.tryAcquire(1, 1, TimeUnit.SECONDS.toNanos(5)));
+
+            // the waiting thread receives the released permit
+            semaphore.release();
+            waiter.join(5000);
+            assertTrue(waited.get() > 0);
+            assertEquals(1, semaphore.getNumberOfPermitsUsed());
+            semaphore.release();
+            assertEquals(0, semaphore.getNumberOfPermitsUsed());
         }
 
         /**
-         * Test a command execution timeout where the command didn't implement getFallback.
+         * Test that a SEMAPHORE isolated command waits for a permit (rather than being rejected) when a wait queue is configured.
          */
         @Test
-        public void testExecutionTimeoutWithNoFallback() {
-            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_NOT_IMPLEMENTED);
-            try {
-                command.execute();
-                fail("we shouldn't get here");
-            } catch (Exception e) {
-                e.printStackTrace();
-                if (e instanceof HystrixRuntimeException) {
-                    HystrixRuntimeException de = (HystrixRuntimeException) e;
-                    assertNotNull(de.getFallbackException());
-                    assertTrue(de.getFallbackException() instanceof UnsupportedOperationException);
-                    assertNotNull(de.getImplementingClass());
-                    assertNotNull(de.getCause());
-                    assertTrue(de.getCause() instanceof TimeoutException);
-                } else {
-                    fail("the exception should be HystrixRuntimeException");
+        public void testSemaphoreWaitQueue() throws Exception {
+            TryableSemaphore semaphore = new TryableSemaphore(HystrixProperty.Factory.asProperty(1));
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withExecutionIsolationStrategy(ExecutionIsolationStrategy.SEMAPHORE)
+                    .withExecutionIsolationSemaphoreWaitQueueSize(1).withExecutionIsolationSemaphoreWaitTimeoutInMicroseconds(2000000);
+            HystrixCommandMetrics metrics = new HystrixCommandMetrics(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, ThreadPoolKeyForUnitTest.THREAD_POOL_ONE, HystrixCommandProperties.Setter.asMock(properties), HystrixEventNotifierDefault.getInstance());
+
+            // hold the only permit for 50ms on another thread
+            final SemaphoreWaitTestCommand holder = new SemaphoreWaitTestCommand(properties, metrics, semaphore, 50);
+            Thread t = new Thread(new HystrixContextRunnable(new Runnable() {
+
+                @Override
+                public void run() {
+                    holder.execute();
                 }
+
+            }));
+            t.start();
+            while (semaphore.getNumberOfPermitsUsed() == 0) {
+                Thread.sleep(1);
             }
-            assertTrue(command.isResponseTimedOut());
-            assertFalse(command.isResponseFromFallback());
-            assertFalse(command.isResponseRejected());
 
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+            SemaphoreWaitTestCommand waiting = new SemaphoreWaitTestCommand(properties, metrics, semaphore, 0);
+            assertEquals(true, waiting.execute());
+            assertTrue(waiting.isSuccessfulExecution());
+            t.join();
+            assertEquals(1, metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_WAITED));
+            assertTrue(metrics.getExecutionSemaphoreWaitTimeMax() > 0);
+            assertTrue(metrics.getExecutionSemaphoreWaitTimeMean() > 0);
+            assertEquals(0, metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+
+            // a short wait times out and is rejected
+            properties.withExecutionIsolationSemaphoreWaitTimeoutInMicroseconds(1000);
+            assertTrue(semaphore.tryAcquire());
+            SemaphoreWaitTestCommand rejected = new SemaphoreWaitTestCommand(properties, metrics, semaphore, 0);
+            assertEquals(false, rejected.execute());
+            assertTrue(rejected.isResponseRejected());
+            semaphore.release();
+            assertEquals(1, metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_WAIT_QUEUE_REJECTED));
+            assertEquals(1, metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+        }
+
+        /**
+         * Test that queued executions are taken off a thread-pool with priority lanes by priority rather than in order.
+         */
+        @Test
+        public void testPriorityLanes() throws Exception {
+            HystrixThreadPoolKey threadPoolKey = HystrixThreadPoolKey.Factory.asKey("PriorityLanes");
+            HystrixThreadPoolProperties.Setter threadPoolProperties = HystrixThreadPoolProperties.Setter.getUnitTestPropertiesBuilder().withCoreSize(1)
+                    .withQueuePriorityLanesEnabled(true).withQueuePriorityStarvationThresholdInMilliseconds(10000);
+            List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            // occupy the only thread
+            Future<String> blocker = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "blocker", executed, started, release).queue();
+            assertTrue(started.await(1000, TimeUnit.MILLISECONDS));
+
+            Future<String> low = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.LOW, "low", executed, null, null).queue();
+            Future<String> normal = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "normal", executed, null, null).queue();
+            Future<String> high = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.HIGH, "high", executed, null, null).queue();
+            release.countDown();
+
+            assertEquals("blocker", blocker.get());
+            assertEquals("low", low.get());
+            assertEquals("normal", normal.get());
+            assertEquals("high", high.get());
+            assertEquals(Arrays.asList("blocker", "high", "normal", "low"), executed);
+        }
 
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+        /**
+         * Test that LOW priority executions (by command or by request) are rejected at a lower queue size than other executions.
+         */
+        @Test
+        public void testLowPriorityRejectedFirst() throws Exception {
+            HystrixThreadPoolKey threadPoolKey = HystrixThreadPoolKey.Factory.asKey("LowPriorityRejectedFirst");
+            HystrixThreadPoolProperties.Setter threadPoolProperties = HystrixThreadPoolProperties.Setter.getUnitTestPropertiesBuilder().withCoreSize(1)
+                    .withQueueSizeRejectionThreshold(4).withQueueSizeRejectionThresholdLowPriorityPercentage(50);
+            List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            // occupy the only thread and queue 2 executions
+            Future<String> blocker = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "blocker", executed, started, release).queue();
+            assertTrue(started.await(1000, TimeUnit.MILLISECONDS));
+            new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "queued1", executed, null, null).queue();
+            new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "queued2", executed, null, null).queue();
+
+            // the queue is at 50% of the threshold so LOW is rejected
+            PriorityTestCommand low = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.LOW, "low", executed, null, null);
+            assertEquals("fallback", low.queue().get());
+            assertTrue(low.isResponseRejected());
+
+            // the request priority takes precedence over the command priority
+            HystrixRequestContext.getContextForCurrentThread().setPriority(ExecutionPriority.LOW);
+            PriorityTestCommand lowRequest = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.HIGH, "lowRequest", executed, null, null);
+            assertEquals("fallback", lowRequest.queue().get());
+            assertTrue(lowRequest.isResponseRejected());
+            HystrixRequestContext.getContextForCurrentThread().setPriority(null);
+
+            // while other priorities are still accepted
+            Future<String> normal = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "normal", executed, null, null).queue();
+            release.countDown();
+            assertEquals("blocker", blocker.get());
+            assertEquals("normal", normal.get());
+            assertFalse(executed.contains("low"));
+            assertFalse(executed.contains("lowRequest"));
+        }
 
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        /**
+         * Test that executions are queued and executed in order on a thread-pool using the lock-free queue.
+         */
+        @Test
+        public void testLockFreeQueue() throws Exception {
+            HystrixThreadPoolKey threadPoolKey = HystrixThreadPoolKey.Factory.asKey("LockFreeQueue");
+            HystrixThreadPoolProperties.Setter threadPoolProperties = HystrixThreadPoolProperties.Setter.getUnitTestPropertiesBuilder().withCoreSize(1).withQueueLockFreeEnabled(true)
+                    .withQueueSizeRejectionThreshold(2);
+            List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            // occupy the only thread and fill the queue up to the rejection threshold
+            Future<String> blocker = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "blocker", executed, started, release).queue();
+            assertTrue(started.await(1000, TimeUnit.MILLISECONDS));
+            Future<String> queued1 = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "queued1", executed, null, null).queue();
+            Future<String> queued2 = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "queued2", executed, null, null).queue();
+            PriorityTestCommand rejected = new PriorityTestCommand(threadPoolKey, threadPoolProperties, ExecutionPriority.NORMAL, "rejected", executed, null, null);
+            assertEquals("fallback", rejected.queue().get());
+            assertTrue(rejected.isResponseRejected());
+
+            release.countDown();
+            assertEquals("blocker", blocker.get());
+            assertEquals("queued1", queued1.get());
+            assertEquals("queued2", queued2.get());
+            assertEquals(Arrays.asList("blocker", "queued1", "queued2"), executed);
         }
 
         /**
-         * Test a command execution timeout where the command implemented getFallback.
+         * Test that an execution that times out while queued is removed from the queue rather than occupying it until a thread dequeues it.
          */
         @Test
-        public void testExecutionTimeoutWithFallback() {
-            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_SUCCESS);
-            try {
-                assertEquals(false, command.execute());
-                assertTrue(command.isResponseTimedOut());
-                assertTrue(command.isResponseFromFallback());
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We should have received a response from the fallback.");
-            }
+        public void testTimedOutExecutionPurgedFromQueue() throws Exception {
+            HystrixThreadPoolKey threadPoolKey = HystrixThreadPoolKey.Factory.asKey("PurgeTimedOut");
+            HystrixThreadPoolProperties.Setter threadPoolProperties = HystrixThreadPoolProperties.Setter.getUnitTestPropertiesBuilder().withCoreSize(1);
+            List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            // occupy the only thread
+            Future<String> blocker = new PriorityTestCommand(threadPoolKey, threadPoolProperties, HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                    .withExecutionIsolationThreadTimeoutInMilliseconds(5000), "blocker", executed, started, release).queue();
+            assertTrue(started.await(1000, TimeUnit.MILLISECONDS));
+
+            PriorityTestCommand queued = new PriorityTestCommand(threadPoolKey, threadPoolProperties, HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                    .withExecutionIsolationThreadTimeoutInMilliseconds(100), "queued", executed, null, null);
+            BlockingQueue<Runnable> queue = ((HystrixCommand<String>) queued).threadPool.getExecutor().getQueue();
+            Future<String> queuedFuture = queued.queue();
+            assertEquals(1, queue.size());
+
+            assertEquals("fallback", queuedFuture.get());
+            assertTrue(queued.isResponseTimedOut());
+            // the thread is still occupied but the queue no longer holds the execution that timed-out
+            assertEquals(0, queue.size());
+
+            release.countDown();
+            assertEquals("blocker", blocker.get());
+            assertEquals(Arrays.asList("blocker"), executed);
+        }
 
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+        /**
+         * Test that the fallback executes on the separate fallback thread-pool when enabled.
+         */
+        @Test
+        public void testFallbackOnThreadPool() {
+            FallbackThreadTestCommand command = new FallbackThreadTestCommand(1000, 0);
+            String fallbackThreadName = command.execute();
+            assertTrue(fallbackThreadName, fallbackThreadName.startsWith("hystrix-FallbackThread" + HystrixThreadPool.Factory.FALLBACK_THREAD_POOL_KEY_SUFFIX + "-"));
+            assertTrue(command.isFailedExecution());
+            assertTrue(command.isResponseFromFallback());
             assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
-
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
-
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test a command execution timeout where the command implemented getFallback but it fails.
+         * Test that a latent fallback on the fallback thread-pool times out instead of extending the latency of the caller.
          */
         @Test
-        public void testExecutionTimeoutFallbackFailure() {
-            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_FAILURE);
+        public void testFallbackOnThreadPoolTimeout() {
+            FallbackThreadTestCommand command = new FallbackThreadTestCommand(100, 2000);
+            long start = System.currentTimeMillis();
             try {
                 command.execute();
-                fail("we shouldn't get here");
-            } catch (Exception e) {
-                if (e instanceof HystrixRuntimeException) {
-                    HystrixRuntimeException de = (HystrixRuntimeException) e;
-                    assertNotNull(de.getFallbackException());
-                    assertFalse(de.getFallbackException() instanceof UnsupportedOperationException);
-                    assertNotNull(de.getImplementingClass());
-                    assertNotNull(de.getCause());
-                    assertTrue(de.getCause() instanceof TimeoutException);
-                } else {
-                    fail("the exception should be HystrixRuntimeException");
-                }
+                fail("expected the fallback to time out");
+            } catch (HystrixRuntimeException e) {
+                assertEquals(FailureType.COMMAND_EXCEPTION, e.getFailureType());
+                assertTrue(e.getFallbackException() instanceof HystrixRuntimeException);
+                assertEquals(FailureType.TIMEOUT, ((HystrixRuntimeException) e.getFallbackException()).getFailureType());
             }
-
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertTrue("took " + (System.currentTimeMillis() - start) + "ms", System.currentTimeMillis() - start < 1000);
+            assertTrue(command.isFailedExecution());
             assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+        }
 
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+        /**
+         * Test that a failed execution releases its thread while the fallback executes on the fallback thread-pool (which then sets the response).
+         */
+        @Test
+        public void testFallbackOnThreadPoolDoesNotHoldExecutionThread() throws Exception {
+            FallbackThreadTestCommand command = new FallbackThreadTestCommand(1000, 300);
+            Future<String> response = command.queue();
+            Thread.sleep(150);
+            assertFalse(response.isDone());
+            assertEquals(0, ((HystrixCommand<String>) command).threadPool.getExecutor().getActiveCount());
 
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            String fallbackThreadName = response.get();
+            assertTrue(fallbackThreadName, fallbackThreadName.startsWith("hystrix-FallbackThread" + HystrixThreadPool.Factory.FALLBACK_THREAD_POOL_KEY_SUFFIX + "-"));
+            assertTrue(command.isFailedExecution());
+            assertTrue(command.isResponseFromFallback());
         }
 
         /**
-         * Test that the circuit-breaker counts a command execution timeout as a 'timeout' and not just failure.
+         * Test that a latent fallback on the fallback thread-pool after a timeout is itself timed-out and counted as a fallback failure.
          */
         @Test
-        public void testCircuitBreakerOnExecutionTimeout() {
-            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_SUCCESS);
+        public void testFallbackOnThreadPoolTimeoutAfterTimeout() {
+            FallbackThreadTestCommand command = new FallbackThreadTestCommand(100, 200, 2000);
+            long start = System.currentTimeMillis();
             try {
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-
-                command.execute();
-
-                assertTrue(command.isResponseFromFallback());
-                assertFalse(command.isCircuitBreakerOpen());
-                assertFalse(command.isResponseShortCircuited());
-
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-                assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-
+                command.queue().get();
+                fail("expected the fallback to time out");
+            } catch (ExecutionException e) {
+                HystrixRuntimeException re = (HystrixRuntimeException) e.getCause();
+                assertEquals(FailureType.TIMEOUT, re.getFailureType());
+                assertTrue(re.getFallbackException() instanceof HystrixRuntimeException);
+                assertEquals(FailureType.TIMEOUT, ((HystrixRuntimeException) re.getFallbackException()).getFailureType());
             } catch (Exception e) {
                 e.printStackTrace();
-                fail("We should have received a response from the fallback.");
+                fail("We received an unexpected exception.");
             }
-
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
-
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
-
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            assertTrue("took " + (System.currentTimeMillis() - start) + "ms", System.currentTimeMillis() - start < 1000);
+            assertTrue(command.isResponseTimedOut());
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
         }
 
         /**
-         * Test that the command finishing AFTER a timeout (because thread continues in background) does not register a SUCCESS
+         * Test that the last successful response for a cache key is returned instead of the fallback when short-circuited.
          */
         @Test
-        public void testCountersOnExecutionTimeout() {
-            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_SUCCESS);
-            try {
-                command.execute();
+        public void testLastKnownGoodOnShortCircuit() {
+            LastKnownGoodTestCommand success = new LastKnownGoodTestCommand("lkg-1", false, "value-1");
+            assertEquals("value-1", success.execute());
+            assertFalse(success.isResponseFromLastKnownGood());
+
+            LastKnownGoodTestCommand shortCircuited = new LastKnownGoodTestCommand("lkg-1", true, "value-2");
+            assertEquals("value-1", shortCircuited.execute());
+            assertTrue(shortCircuited.isResponseShortCircuited());
+            assertTrue(shortCircuited.isResponseFromLastKnownGood());
+            assertFalse(shortCircuited.isResponseFromFallback());
+            assertEquals(1, shortCircuited.builder.metrics.getRollingCount(HystrixRollingNumberEvent.LAST_KNOWN_GOOD_HIT));
+            assertEquals(0, shortCircuited.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+
+            // nothing retained for a different cache key so the fallback is used
+            LastKnownGoodTestCommand miss = new LastKnownGoodTestCommand("lkg-2", true, "value-3");
+            assertEquals("fallback", miss.execute());
+            assertTrue(miss.isResponseFromFallback());
+            assertEquals(1, miss.builder.metrics.getRollingCount(HystrixRollingNumberEvent.LAST_KNOWN_GOOD_MISS));
+        }
 
-                /* wait long enough for the command to have finished */
-                Thread.sleep(200);
+        /**
+         * Test that a successful response is returned across requests from the response cache without executing and refreshed ahead of expiry by a single execution.
+         */
+        @Test
+        public void testResponseCacheWithRefreshAhead() throws Exception {
+            AtomicInteger executions = new AtomicInteger();
+            ResponseCacheTestCommand first = new ResponseCacheTestCommand("rc-1", "value-1", 0, executions);
+            assertEquals("value-1", first.execute());
+            assertFalse(first.isResponseFromCache());
+
+            ResponseCacheTestCommand cached = new ResponseCacheTestCommand("rc-1", "value-2", 0, executions);
+            assertEquals("value-1", cached.queue().get());
+            assertTrue(cached.isResponseFromCache());
+            assertTrue(cached.isExecutionComplete());
+            assertEquals(1, executions.get());
+
+            // a different cache key executes
+            assertEquals("value-3", new ResponseCacheTestCommand("rc-2", "value-3", 0, executions).execute());
+            assertEquals(2, executions.get());
+
+            // once past the refresh-ahead point only the first execution refreshes the response
+            Thread.sleep(50);
+            ResponseCacheTestCommand refresh = new ResponseCacheTestCommand("rc-1", "value-4", 1, executions);
+            assertEquals("value-4", refresh.execute());
+            assertFalse(refresh.isResponseFromCache());
+            assertEquals(3, executions.get());
+            assertEquals("value-4", new ResponseCacheTestCommand("rc-1", "value-5", 1, executions).execute());
+            assertEquals(3, executions.get());
+        }
 
-                /* response should still be the same as 'testCircuitBreakerOnExecutionTimeout' */
-                assertTrue(command.isResponseFromFallback());
-                assertFalse(command.isCircuitBreakerOpen());
-                assertFalse(command.isResponseShortCircuited());
+        /**
+         * Test that concurrent identical executions share one execution of run() and a joining execution times out on its own timeout.
+         */
+        @Test
+        public void testSingleFlight() throws Exception {
+            AtomicInteger executions = new AtomicInteger();
+            SingleFlightTestCommand leader = new SingleFlightTestCommand("sf-1", "value-1", 500, 1000, executions);
+            Future<String> leaderResponse = leader.queue();
+            SingleFlightTestCommand joiner = new SingleFlightTestCommand("sf-1", "value-2", 500, 1000, executions);
+            Future<String> joinerResponse = joiner.queue();
+            // joins later with a shorter timeout than the execution in flight has left
+            SingleFlightTestCommand lateJoiner = new SingleFlightTestCommand("sf-1", "value-3", 500, 100, executions);
+            assertEquals("fallback", lateJoiner.execute());
+            assertTrue(lateJoiner.isResponseTimedOut());
+            assertTrue(lateJoiner.isResponseCoalesced());
+
+            assertEquals("value-1", leaderResponse.get());
+            assertEquals("value-1", joinerResponse.get());
+            assertFalse(leader.isResponseCoalesced());
+            assertTrue(joiner.isResponseCoalesced());
+            assertTrue(joiner.isSuccessfulExecution());
+            assertEquals(1, executions.get());
+            assertEquals(1, joiner.builder.metrics.getRollingCount(HystrixRollingNumberEvent.COALESCED));
+            assertEquals(0, joiner.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+
+            // the execution is no longer in flight once completed so the next one executes
+            assertEquals("value-4", new SingleFlightTestCommand("sf-1", "value-4", 0, 1000, executions).execute());
+            assertEquals(2, executions.get());
+        }
 
-                /* failure and timeout count should be the same as 'testCircuitBreakerOnExecutionTimeout' */
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-                assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+        /**
+         * Test that executions joining a shared execution that failed each receive their own fallback instead of the one of the command that executed.
+         */
+        @Test
+        public void testSingleFlightJoinerUsesOwnFallbackWhenSharedExecutionFails() throws Exception {
+            AtomicInteger executions = new AtomicInteger();
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter();
+            SingleFlightTestCommand leader = new SingleFlightTestCommand(circuitBreaker, circuitBreaker.metrics, properties, "sf-2", "value-1", 200, true, executions);
+            Future<String> leaderResponse = leader.queue();
+            SingleFlightTestCommand joiner = new SingleFlightTestCommand(circuitBreaker, circuitBreaker.metrics, properties, "sf-2", "value-2", 200, true, executions);
+            Future<String> joinerResponse = joiner.queue();
+
+            assertEquals("fallback-value-1", leaderResponse.get());
+            assertEquals("fallback-value-2", joinerResponse.get());
+            assertEquals(1, executions.get());
+            assertTrue(leader.isFailedExecution());
+            assertTrue(joiner.isResponseCoalesced());
+            assertTrue(joiner.isResponseFromFallback());
+            // the failure is only counted once (by the command that executed)
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(2, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+        }
 
-                /* we should NOT have a 'success' counter */
-                assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+        /**
+         * Test that probes of a half-open circuit are not coalesced so each releases the probe it was admitted as and the circuit closes.
+         */
+        @Test
+        public void testSingleFlightDoesNotCoalesceCircuitBreakerProbes() throws Exception {
+            AtomicInteger executions = new AtomicInteger();
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withCircuitBreakerSleepWindowInMilliseconds(100)
+                    .withCircuitBreakerHalfOpenMaxConcurrentProbes(2).withCircuitBreakerHalfOpenSuccessThreshold(2);
+            HystrixCommandMetrics metrics = new TestCircuitBreaker().metrics;
+            HystrixCircuitBreaker circuitBreaker = new HystrixCircuitBreakerImpl(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, HystrixCommandProperties.Setter.asMock(properties), metrics);
+
+            // trip the circuit and wait for the sleep window
+            metrics.markFailure(1000);
+            metrics.markFailure(1000);
+            metrics.markFailure(1000);
+            metrics.markFailure(1000);
+            assertTrue(circuitBreaker.isOpen());
+            Thread.sleep(150);
+
+            // 2 identical concurrent probes both execute
+            SingleFlightTestCommand probe1 = new SingleFlightTestCommand(circuitBreaker, metrics, properties, "sf-3", "value-1", 200, false, executions);
+            Future<String> probe1Response = probe1.queue();
+            SingleFlightTestCommand probe2 = new SingleFlightTestCommand(circuitBreaker, metrics, properties, "sf-3", "value-2", 200, false, executions);
+            Future<String> probe2Response = probe2.queue();
+            assertEquals("value-1", probe1Response.get());
+            assertEquals("value-2", probe2Response.get());
+            assertFalse(probe2.isResponseCoalesced());
+            assertEquals(2, executions.get());
+
+            // both probes succeeded so the circuit closed
+            assertFalse(circuitBreaker.isOpen());
+        }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We should have received a response from the fallback.");
-            }
+        /**
+         * Test that after a failure executions with the same cache key return the fallback without executing until the failure expires.
+         */
+        @Test
+        public void testNegativeCache() throws Exception {
+            AtomicInteger executions = new AtomicInteger();
+            NegativeCacheTestCommand failure = new NegativeCacheTestCommand("nc-1", true, executions);
+            assertEquals("fallback", failure.execute());
+            assertTrue(failure.isFailedExecution());
+
+            NegativeCacheTestCommand negativeCacheHit = new NegativeCacheTestCommand("nc-1", false, executions);
+            assertEquals("fallback", negativeCacheHit.queue().get());
+            assertTrue(negativeCacheHit.getExecutionEvents().contains(HystrixEventType.NEGATIVE_CACHE_HIT));
+            assertFalse(negativeCacheHit.isFailedExecution());
+            assertEquals(1, negativeCacheHit.builder.metrics.getRollingCount(HystrixRollingNumberEvent.NEGATIVE_CACHE_HIT));
+            assertEquals(0, negativeCacheHit.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(1, executions.get());
+
+            // other cache keys still execute
+            assertEquals("success", new NegativeCacheTestCommand("nc-2", false, executions).execute());
+            assertEquals(2, executions.get());
+
+            // executes again once the failure expired
+            Thread.sleep(150);
+            assertEquals("success", new NegativeCacheTestCommand("nc-1", false, executions).execute());
+            assertEquals(3, executions.get());
+        }
 
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+        /**
+         * A negative cache hit is served by getFallback() even when a last-known-good response is available.
+         */
+        @Test
+        public void testNegativeCacheHitUsesFallbackNotLastKnownGood() throws Exception {
+            AtomicInteger executions = new AtomicInteger();
+            // retained as the last-known-good response
+            assertEquals("success", new NegativeCacheTestCommand("nc-lkg", false, executions, true).execute());
 
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+            NegativeCacheTestCommand failure = new NegativeCacheTestCommand("nc-lkg", true, executions, true);
+            assertEquals("fallback", failure.execute());
+            assertTrue(failure.isFailedExecution());
 
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            NegativeCacheTestCommand negativeCacheHit = new NegativeCacheTestCommand("nc-lkg", false, executions, true);
+            assertEquals("fallback", negativeCacheHit.execute());
+            assertTrue(negativeCacheHit.getExecutionEvents().contains(HystrixEventType.NEGATIVE_CACHE_HIT));
+            assertTrue(negativeCacheHit.getExecutionEvents().contains(HystrixEventType.FALLBACK_SUCCESS));
+            assertFalse(negativeCacheHit.getExecutionEvents().contains(HystrixEventType.LAST_KNOWN_GOOD));
+            assertEquals(1, negativeCacheHit.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(2, executions.get());
         }
 
         /**
-         * Test a queued command execution timeout where the command didn't implement getFallback.
-         * <p>
-         * We specifically want to protect against developers queuing commands and using queue().get() without a timeout (such as queue().get(3000, TimeUnit.Milliseconds)) and ending up blocking
-         * indefinitely by skipping the timeout protection of the execute() command.
+         * Executions admitted before the circuit tripped that succeed afterwards are not half-open probes and must not close the circuit.
          */
         @Test
-        public void testQueuedExecutionTimeoutWithNoFallback() {
-            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_NOT_IMPLEMENTED);
+        public void testSuccessesAdmittedBeforeCircuitTripDoNotCloseCircuit() {
             try {
-                command.queue().get();
-                fail("we shouldn't get here");
+                HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withCircuitBreakerSleepWindowInMilliseconds(1000)
+                        .withCircuitBreakerHalfOpenSuccessThreshold(2).withRequestCacheEnabled(false);
+                HystrixCommandMetrics metrics = new TestCircuitBreaker().metrics;
+                HystrixCircuitBreaker circuitBreaker = new HystrixCircuitBreakerImpl(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, HystrixCommandProperties.Setter.asMock(properties), metrics);
+
+                // 2 slow executions are admitted while the circuit is closed
+                Future<String> f1 = new CircuitBreakerProbeTestCommand(circuitBreaker, metrics, properties, 300).queue();
+                Future<String> f2 = new CircuitBreakerProbeTestCommand(circuitBreaker, metrics, properties, 300).queue();
+
+                // the circuit trips while they are still running
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+                metrics.markFailure(1000);
+                assertTrue(circuitBreaker.isOpen());
+
+                // they succeed but that says nothing about the backend having recovered so the circuit stays open
+                assertEquals("success", f1.get());
+                assertEquals("success", f2.get());
+                assertTrue(circuitBreaker.isOpen());
+                CircuitBreakerProbeTestCommand shortCircuited = new CircuitBreakerProbeTestCommand(circuitBreaker, metrics, properties, 0);
+                assertEquals("fallback", shortCircuited.execute());
+                assertTrue(shortCircuited.isResponseShortCircuited());
+
+                // after the sleep window 2 successful probes close it
+                Thread.sleep(1050);
+                assertEquals("success", new CircuitBreakerProbeTestCommand(circuitBreaker, metrics, properties, 0).execute());
+                assertTrue(circuitBreaker.isOpen());
+                assertEquals("success", new CircuitBreakerProbeTestCommand(circuitBreaker, metrics, properties, 0).execute());
+                assertFalse(circuitBreaker.isOpen());
             } catch (Exception e) {
                 e.printStackTrace();
-                if (e instanceof ExecutionException && e.getCause() instanceof HystrixRuntimeException) {
-                    HystrixRuntimeException de = (HystrixRuntimeException) e.getCause();
-                    assertNotNull(de.getFallbackException());
-                    assertTrue(de.getFallbackException() instanceof UnsupportedOperationException);
-                    assertNotNull(de.getImplementingClass());
-                    assertNotNull(de.getCause());
-                    assertTrue(de.getCause() instanceof TimeoutException);
-                } else {
-                    fail("the exception should be ExecutionException with cause as HystrixRuntimeException");
-                }
+                fail("Error occurred: " + e.getMessage());
             }
-
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
-
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
-
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test a queued command execution timeout where the command implemented getFallback.
-         * <p>
-         * We specifically want to protect against developers queuing commands and using queue().get() without a timeout (such as queue().get(3000, TimeUnit.Milliseconds)) and ending up blocking
-         * indefinitely by skipping the timeout protection of the execute() command.
+         * Test that a fallback which sleeps after a timeout does not delay the timeout of another command (timeouts are performed off the HystrixTimer tick thread).
          */
         @Test
-        public void testQueuedExecutionTimeoutWithFallback() {
-            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_SUCCESS);
+        public void testSlowFallbackOnTimeoutDoesNotDelayOtherTimeouts() {
             try {
-                assertEquals(false, command.queue().get());
+                SlowFallbackOnTimeoutTestCommand slow = new SlowFallbackOnTimeoutTestCommand(100, 2000);
+                Future<Boolean> slowFuture = slow.queue();
+                // wait for the first timeout to fire so its fallback is sleeping
+                Thread.sleep(300);
+
+                SlowFallbackOnTimeoutTestCommand fast = new SlowFallbackOnTimeoutTestCommand(100, 0);
+                long start = System.currentTimeMillis();
+                Future<Boolean> fastFuture = fast.queue();
+                // the timeout must fire on time even without a thread blocking on get()
+                while (!fastFuture.isDone() && System.currentTimeMillis() - start < 2000) {
+                    Thread.sleep(10);
+                }
+                long latency = System.currentTimeMillis() - start;
+                System.out.println("Timeout with slow fallback of another command: " + latency + "ms");
+                assertTrue(fastFuture.isDone());
+                assertTrue(latency < 1000);
+                assertFalse(fastFuture.get());
+                assertTrue(fast.isResponseTimedOut());
+
+                assertFalse(slowFuture.get());
+                assertTrue(slow.isResponseTimedOut());
             } catch (Exception e) {
                 e.printStackTrace();
-                fail("We should have received a response from the fallback.");
+                fail("We received an exception.");
             }
-
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
-
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
-
-            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test a queued command execution timeout where the command implemented getFallback but it fails.
-         * <p>
-         * We specifically want to protect against developers queuing commands and using queue().get() without a timeout (such as queue().get(3000, TimeUnit.Milliseconds)) and ending up blocking
-         * indefinitely by skipping the timeout protection of the execute() command.
+         * Test a successful command execution via observe() where the response is delivered by the thread executing it.
          */
         @Test
-        public void testQueuedExecutionTimeoutFallbackFailure() {
-            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_FAILURE);
-            try {
-                command.queue().get();
-                fail("we shouldn't get here");
-            } catch (Exception e) {
-                if (e instanceof ExecutionException && e.getCause() instanceof HystrixRuntimeException) {
-                    HystrixRuntimeException de = (HystrixRuntimeException) e.getCause();
-                    assertNotNull(de.getFallbackException());
-                    assertFalse(de.getFallbackException() instanceof UnsupportedOperationException);
-                    assertNotNull(de.getImplementingClass());
-                    assertNotNull(de.getCause());
-                    assertTrue(de.getCause() instanceof TimeoutException);
-                } else {
-                    fail("the exception should be ExecutionException with cause as HystrixRuntimeException");
-                }
-            }
+        public void testObserveSuccess() throws Exception {
+            TestHystrixCommand<Boolean> command = new SuccessfulTestCommand();
+            TestObserver<Boolean> observer = new TestObserver<Boolean>();
+            command.observe(observer);
+
+            assertTrue("observer was not invoked", observer.completed.await(1000, TimeUnit.MILLISECONDS));
+            assertEquals(true, observer.response.get());
+            assertNull(observer.error.get());
+            assertTrue(command.isSuccessfulExecution());
+            assertTrue(command.isExecutedInThread());
+
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test that a command executed via observe() times out and delivers the fallback even though no thread ever calls get().
+         */
+        @Test
+        public void testObserveTimeoutWithFallback() throws Exception {
+            TestHystrixCommand<Boolean> command = new TestCommandWithTimeout(50, TestCommandWithTimeout.FALLBACK_SUCCESS);
+            TestObserver<Boolean> observer = new TestObserver<Boolean>();
+            command.observe(observer);
+
+            assertTrue("observer was not invoked", observer.completed.await(1000, TimeUnit.MILLISECONDS));
+            assertEquals(false, observer.response.get());
+            assertNull(observer.error.get());
+            assertNotSame(Thread.currentThread(), observer.thread.get());
+            assertTrue(command.isResponseTimedOut());
+            assertTrue(command.isResponseFromFallback());
 
             assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
             assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
 
-            assertEquals(100, command.builder.metrics.getHealthCounts().getErrorPercentage());
+            assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test that a command executed via observe() that fails without a fallback delivers the exception to onError.
+         */
+        @Test
+        public void testObserveKnownFailureWithNoFallback() throws Exception {
+            TestHystrixCommand<Boolean> command = new KnownFailureTestCommandWithoutFallback(new TestCircuitBreaker());
+            TestObserver<Boolean> observer = new TestObserver<Boolean>();
+            command.observe(observer);
+
+            assertTrue("observer was not invoked", observer.completed.await(1000, TimeUnit.MILLISECONDS));
+            assertNull(observer.response.get());
+            assertTrue(observer.error.get() instanceof HystrixRuntimeException);
+            assertNotNull(((HystrixRuntimeException) observer.error.get()).getImplementingClass());
+            assertTrue(command.isFailedExecution());
+
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(1, command.builder.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
 
             assertEquals(1, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
@@ -3380,53 +6703,285 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                 DynamicOwnerAndKeyTestCommand command2 = new DynamicOwnerAndKeyTestCommand(CommandGroupForUnitTest.OWNER_ONE, CommandKeyForUnitTest.KEY_TWO);
                 assertEquals(true, command2.execute());
 
-                // 2 different circuit breakers should be created
-                assertNotSame(command1.getCircuitBreaker(), command2.getCircuitBreaker());
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We received an exception.");
-            }
+                // 2 different circuit breakers should be created
+                assertNotSame(command1.getCircuitBreaker(), command2.getCircuitBreaker());
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We received an exception.");
+            }
+        }
+
+        /**
+         * Test Request scoped caching of commands so that a 2nd duplicate call doesn't execute but returns the previous Future
+         */
+        @Test
+        public void testRequestCache1() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            SuccessfulCacheableCommand command1 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
+            SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
+
+            assertTrue(command1.isCommandRunningInThread());
+
+            Future<String> f1 = command1.queue();
+            Future<String> f2 = command2.queue();
+
+            try {
+                assertEquals("A", f1.get());
+                assertEquals("A", f2.get());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+
+            assertTrue(command1.executed);
+            // the second one should not have executed as it should have received the cached value instead
+            assertFalse(command2.executed);
+
+            // the execution log for command1 should show a SUCCESS
+            assertEquals(1, command1.getExecutionEvents().size());
+            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+            assertTrue(command1.getExecutionTimeInMilliseconds() > -1);
+            assertFalse(command1.isResponseFromCache());
+
+            // the execution log for command2 should show it came from cache
+            assertEquals(2, command2.getExecutionEvents().size()); // it will include the SUCCESS + RESPONSE_FROM_CACHE
+            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.RESPONSE_FROM_CACHE));
+            assertTrue(command2.getExecutionTimeInMilliseconds() == -1);
+            assertTrue(command2.isResponseFromCache());
+
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(2, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test Request scoped caching doesn't prevent different ones from executing
+         */
+        @Test
+        public void testRequestCache2() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            SuccessfulCacheableCommand command1 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
+            SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, true, "B");
+
+            assertTrue(command1.isCommandRunningInThread());
+
+            Future<String> f1 = command1.queue();
+            Future<String> f2 = command2.queue();
+
+            try {
+                assertEquals("A", f1.get());
+                assertEquals("B", f2.get());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+
+            assertTrue(command1.executed);
+            // both should execute as they are different
+            assertTrue(command2.executed);
+
+            // the execution log for command1 should show a SUCCESS
+            assertEquals(1, command1.getExecutionEvents().size());
+            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            // the execution log for command2 should show a SUCCESS
+            assertEquals(1, command2.getExecutionEvents().size());
+            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+            assertTrue(command2.getExecutionTimeInMilliseconds() > -1);
+            assertFalse(command2.isResponseFromCache());
+
+            assertEquals(2, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(2, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test Request scoped caching with a mixture of commands
+         */
+        @Test
+        public void testRequestCache3() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            SuccessfulCacheableCommand command1 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
+            SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, true, "B");
+            SuccessfulCacheableCommand command3 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
+
+            assertTrue(command1.isCommandRunningInThread());
+
+            Future<String> f1 = command1.queue();
+            Future<String> f2 = command2.queue();
+            Future<String> f3 = command3.queue();
+
+            try {
+                assertEquals("A", f1.get());
+                assertEquals("B", f2.get());
+                assertEquals("A", f3.get());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+
+            assertTrue(command1.executed);
+            // both should execute as they are different
+            assertTrue(command2.executed);
+            // but the 3rd should come from cache
+            assertFalse(command3.executed);
+
+            // the execution log for command1 should show a SUCCESS
+            assertEquals(1, command1.getExecutionEvents().size());
+            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            // the execution log for command2 should show a SUCCESS
+            assertEquals(1, command2.getExecutionEvents().size());
+            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            // the execution log for command3 should show it came from cache
+            assertEquals(2, command3.getExecutionEvents().size()); // it will include the SUCCESS + RESPONSE_FROM_CACHE
+            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.RESPONSE_FROM_CACHE));
+            assertTrue(command3.getExecutionTimeInMilliseconds() == -1);
+            assertTrue(command3.isResponseFromCache());
+
+            assertEquals(2, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        /**
+         * Test Request scoped caching with a mixture of commands
+         */
+        @Test
+        public void testNoRequestCache3() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            SuccessfulCacheableCommand command1 = new SuccessfulCacheableCommand(circuitBreaker, false, "A");
+            SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, false, "B");
+            SuccessfulCacheableCommand command3 = new SuccessfulCacheableCommand(circuitBreaker, false, "A");
+
+            assertTrue(command1.isCommandRunningInThread());
+
+            Future<String> f1 = command1.queue();
+            Future<String> f2 = command2.queue();
+            Future<String> f3 = command3.queue();
+
+            try {
+                assertEquals("A", f1.get());
+                assertEquals("B", f2.get());
+                assertEquals("A", f3.get());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+
+            assertTrue(command1.executed);
+            // both should execute as they are different
+            assertTrue(command2.executed);
+            // this should also execute since we disabled the cache
+            assertTrue(command3.executed);
+
+            // the execution log for command1 should show a SUCCESS
+            assertEquals(1, command1.getExecutionEvents().size());
+            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            // the execution log for command2 should show a SUCCESS
+            assertEquals(1, command2.getExecutionEvents().size());
+            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            // the execution log for command3 should show a SUCCESS
+            assertEquals(1, command3.getExecutionEvents().size());
+            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test Request scoped caching of commands so that a 2nd duplicate call doesn't execute but returns the previous Future
+         * Test Request scoped caching with a mixture of commands
          */
         @Test
-        public void testRequestCache1() {
+        public void testRequestCacheViaQueueSemaphore1() {
             TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            SuccessfulCacheableCommand command1 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
-            SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
+            SuccessfulCacheableCommandViaSemaphore command1 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "A");
+            SuccessfulCacheableCommandViaSemaphore command2 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "B");
+            SuccessfulCacheableCommandViaSemaphore command3 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "A");
 
-            assertTrue(command1.isCommandRunningInThread());
+            assertFalse(command1.isCommandRunningInThread());
 
             Future<String> f1 = command1.queue();
             Future<String> f2 = command2.queue();
+            Future<String> f3 = command3.queue();
 
             try {
                 assertEquals("A", f1.get());
-                assertEquals("A", f2.get());
+                assertEquals("B", f2.get());
+                assertEquals("A", f3.get());
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
 
             assertTrue(command1.executed);
-            // the second one should not have executed as it should have received the cached value instead
-            assertFalse(command2.executed);
+            // both should execute as they are different
+            assertTrue(command2.executed);
+            // but the 3rd should come from cache
+            assertFalse(command3.executed);
 
             // the execution log for command1 should show a SUCCESS
             assertEquals(1, command1.getExecutionEvents().size());
             assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
-            assertTrue(command1.getExecutionTimeInMilliseconds() > -1);
-            assertFalse(command1.isResponseFromCache());
 
-            // the execution log for command2 should show it came from cache
-            assertEquals(2, command2.getExecutionEvents().size()); // it will include the SUCCESS + RESPONSE_FROM_CACHE
+            // the execution log for command2 should show a SUCCESS
+            assertEquals(1, command2.getExecutionEvents().size());
             assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
-            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.RESPONSE_FROM_CACHE));
-            assertTrue(command2.getExecutionTimeInMilliseconds() == -1);
-            assertTrue(command2.isResponseFromCache());
 
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            // the execution log for command3 should show it comes from cache
+            assertEquals(2, command3.getExecutionEvents().size()); // it will include the SUCCESS + RESPONSE_FROM_CACHE
+            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.RESPONSE_FROM_CACHE));
+
+            assertEquals(2, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
@@ -3440,26 +6995,29 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
 
             assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
 
-            assertEquals(2, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test Request scoped caching doesn't prevent different ones from executing
+         * Test Request scoped caching with a mixture of commands
          */
         @Test
-        public void testRequestCache2() {
+        public void testNoRequestCacheViaQueueSemaphore1() {
             TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            SuccessfulCacheableCommand command1 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
-            SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, true, "B");
+            SuccessfulCacheableCommandViaSemaphore command1 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "A");
+            SuccessfulCacheableCommandViaSemaphore command2 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "B");
+            SuccessfulCacheableCommandViaSemaphore command3 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "A");
 
-            assertTrue(command1.isCommandRunningInThread());
+            assertFalse(command1.isCommandRunningInThread());
 
             Future<String> f1 = command1.queue();
             Future<String> f2 = command2.queue();
+            Future<String> f3 = command3.queue();
 
             try {
                 assertEquals("A", f1.get());
                 assertEquals("B", f2.get());
+                assertEquals("A", f3.get());
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -3467,6 +7025,8 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
             assertTrue(command1.executed);
             // both should execute as they are different
             assertTrue(command2.executed);
+            // this should also execute because caching is disabled
+            assertTrue(command3.executed);
 
             // the execution log for command1 should show a SUCCESS
             assertEquals(1, command1.getExecutionEvents().size());
@@ -3475,10 +7035,12 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
             // the execution log for command2 should show a SUCCESS
             assertEquals(1, command2.getExecutionEvents().size());
             assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
-            assertTrue(command2.getExecutionTimeInMilliseconds() > -1);
-            assertFalse(command2.isResponseFromCache());
 
-            assertEquals(2, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            // the execution log for command3 should show a SUCCESS
+            assertEquals(1, command3.getExecutionEvents().size());
+            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
@@ -3492,32 +7054,28 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
 
             assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
 
-            assertEquals(2, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
          * Test Request scoped caching with a mixture of commands
          */
         @Test
-        public void testRequestCache3() {
+        public void testRequestCacheViaExecuteSemaphore1() {
             TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            SuccessfulCacheableCommand command1 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
-            SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, true, "B");
-            SuccessfulCacheableCommand command3 = new SuccessfulCacheableCommand(circuitBreaker, true, "A");
+            SuccessfulCacheableCommandViaSemaphore command1 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "A");
+            SuccessfulCacheableCommandViaSemaphore command2 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "B");
+            SuccessfulCacheableCommandViaSemaphore command3 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "A");
 
-            assertTrue(command1.isCommandRunningInThread());
+            assertFalse(command1.isCommandRunningInThread());
 
-            Future<String> f1 = command1.queue();
-            Future<String> f2 = command2.queue();
-            Future<String> f3 = command3.queue();
+            String f1 = command1.execute();
+            String f2 = command2.execute();
+            String f3 = command3.execute();
 
-            try {
-                assertEquals("A", f1.get());
-                assertEquals("B", f2.get());
-                assertEquals("A", f3.get());
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+            assertEquals("A", f1);
+            assertEquals("B", f2);
+            assertEquals("A", f3);
 
             assertTrue(command1.executed);
             // both should execute as they are different
@@ -3533,11 +7091,9 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
             assertEquals(1, command2.getExecutionEvents().size());
             assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
 
-            // the execution log for command3 should show it came from cache
+            // the execution log for command3 should show it comes from cache
             assertEquals(2, command3.getExecutionEvents().size()); // it will include the SUCCESS + RESPONSE_FROM_CACHE
             assertTrue(command3.getExecutionEvents().contains(HystrixEventType.RESPONSE_FROM_CACHE));
-            assertTrue(command3.getExecutionTimeInMilliseconds() == -1);
-            assertTrue(command3.isResponseFromCache());
 
             assertEquals(2, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
@@ -3560,46 +7116,163 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
          * Test Request scoped caching with a mixture of commands
          */
         @Test
-        public void testNoRequestCache3() {
+        public void testNoRequestCacheViaExecuteSemaphore1() {
             TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            SuccessfulCacheableCommand command1 = new SuccessfulCacheableCommand(circuitBreaker, false, "A");
-            SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, false, "B");
-            SuccessfulCacheableCommand command3 = new SuccessfulCacheableCommand(circuitBreaker, false, "A");
+            SuccessfulCacheableCommandViaSemaphore command1 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "A");
+            SuccessfulCacheableCommandViaSemaphore command2 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "B");
+            SuccessfulCacheableCommandViaSemaphore command3 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "A");
 
-            assertTrue(command1.isCommandRunningInThread());
+            assertFalse(command1.isCommandRunningInThread());
 
-            Future<String> f1 = command1.queue();
-            Future<String> f2 = command2.queue();
-            Future<String> f3 = command3.queue();
+            String f1 = command1.execute();
+            String f2 = command2.execute();
+            String f3 = command3.execute();
+
+            assertEquals("A", f1);
+            assertEquals("B", f2);
+            assertEquals("A", f3);
+
+            assertTrue(command1.executed);
+            // both should execute as they are different
+            assertTrue(command2.executed);
+            // this should also execute because caching is disabled
+            assertTrue(command3.executed);
+
+            // the execution log for command1 should show a SUCCESS
+            assertEquals(1, command1.getExecutionEvents().size());
+            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            // the execution log for command2 should show a SUCCESS
+            assertEquals(1, command2.getExecutionEvents().size());
+            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            // the execution log for command3 should show a SUCCESS
+            assertEquals(1, command3.getExecutionEvents().size());
+            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+
+            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+        }
+
+        @Test
+        public void testRequestCacheOnTimeoutCausesNullPointerException() throws Exception {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            // Expect it to time out - all results should be false
+            assertFalse(new RequestCacheNullPointerExceptionCase(circuitBreaker).execute());
+            assertFalse(new RequestCacheNullPointerExceptionCase(circuitBreaker).execute()); // return from cache #1
+            assertFalse(new RequestCacheNullPointerExceptionCase(circuitBreaker).execute()); // return from cache #2
+            Thread.sleep(500); // timeout on command is set to 200ms
+            Boolean value = new RequestCacheNullPointerExceptionCase(circuitBreaker).execute(); // return from cache #3
+            assertFalse(value);
+            RequestCacheNullPointerExceptionCase c = new RequestCacheNullPointerExceptionCase(circuitBreaker);
+            Future<Boolean> f = c.queue(); // return from cache #4
+            // the bug is that we're getting a null Future back, rather than a Future that returns false
+            assertNotNull(f);
+            assertFalse(f.get());
+
+            assertTrue(c.isResponseFromFallback());
+            assertTrue(c.isResponseTimedOut());
+            assertFalse(c.isFailedExecution());
+            assertFalse(c.isResponseShortCircuited());
+
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(4, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+
+            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+
+            assertEquals(5, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+
+            HystrixCommand<?>[] executeCommands = HystrixRequestLog.getCurrentRequest().getExecutedCommands().toArray(new HystrixCommand<?>[] {});
+
+            System.out.println(":executeCommands[0].getExecutionEvents()" + executeCommands[0].getExecutionEvents());
+            assertEquals(2, executeCommands[0].getExecutionEvents().size());
+            assertTrue(executeCommands[0].getExecutionEvents().contains(HystrixEventType.FALLBACK_SUCCESS));
+            assertTrue(executeCommands[0].getExecutionEvents().contains(HystrixEventType.TIMEOUT));
+            assertTrue(executeCommands[0].getExecutionTimeInMilliseconds() > -1);
+            assertTrue(executeCommands[0].isResponseTimedOut());
+            assertTrue(executeCommands[0].isResponseFromFallback());
+            assertFalse(executeCommands[0].isResponseFromCache());
+
+            assertEquals(3, executeCommands[1].getExecutionEvents().size()); // it will include FALLBACK_SUCCESS/TIMEOUT + RESPONSE_FROM_CACHE
+            assertTrue(executeCommands[1].getExecutionEvents().contains(HystrixEventType.RESPONSE_FROM_CACHE));
+            assertTrue(executeCommands[1].getExecutionTimeInMilliseconds() == -1);
+            assertTrue(executeCommands[1].isResponseFromCache());
+            assertTrue(executeCommands[1].isResponseTimedOut());
+            assertTrue(executeCommands[1].isResponseFromFallback());
+        }
+
+        @Test
+        public void testRequestCacheOnTimeoutThrowsException() throws Exception {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            RequestCacheTimeoutWithoutFallback r1 = new RequestCacheTimeoutWithoutFallback(circuitBreaker);
+            try {
+                r1.execute();
+                // we should have thrown an exception
+                fail("expected a timeout");
+            } catch (HystrixRuntimeException e) {
+                assertTrue(r1.isResponseTimedOut());
+                // what we want
+            }
 
+            RequestCacheTimeoutWithoutFallback r2 = new RequestCacheTimeoutWithoutFallback(circuitBreaker);
             try {
-                assertEquals("A", f1.get());
-                assertEquals("B", f2.get());
-                assertEquals("A", f3.get());
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+                r2.execute();
+                // we should have thrown an exception
+                fail("expected a timeout");
+            } catch (HystrixRuntimeException e) {
+                assertTrue(r2.isResponseTimedOut());
+                // what we want
+            }
+
+            RequestCacheTimeoutWithoutFallback r3 = new RequestCacheTimeoutWithoutFallback(circuitBreaker);
+            Future<Boolean> f3 = r3.queue();
+            try {
+                f3.get();
+                // we should have thrown an exception
+                fail("expected a timeout");
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                assertTrue(r3.isResponseTimedOut());
+                // what we want
             }
 
-            assertTrue(command1.executed);
-            // both should execute as they are different
-            assertTrue(command2.executed);
-            // this should also execute since we disabled the cache
-            assertTrue(command3.executed);
-
-            // the execution log for command1 should show a SUCCESS
-            assertEquals(1, command1.getExecutionEvents().size());
-            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
-
-            // the execution log for command2 should show a SUCCESS
-            assertEquals(1, command2.getExecutionEvents().size());
-            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+            Thread.sleep(500); // timeout on command is set to 200ms
 
-            // the execution log for command3 should show a SUCCESS
-            assertEquals(1, command3.getExecutionEvents().size());
-            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+            RequestCacheTimeoutWithoutFallback r4 = new RequestCacheTimeoutWithoutFallback(circuitBreaker);
+            try {
+                r4.execute();
+                // we should have thrown an exception
+                fail("expected a timeout");
+            } catch (HystrixRuntimeException e) {
+                assertTrue(r4.isResponseTimedOut());
+                assertFalse(r4.isResponseFromFallback());
+                // what we want
+            }
 
-            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
@@ -3607,731 +7280,839 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
+            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
 
-            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
 
-            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test Request scoped caching with a mixture of commands
+         * Test that we can do basic execution without a RequestVariable being initialized.
          */
         @Test
-        public void testRequestCacheViaQueueSemaphore1() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            SuccessfulCacheableCommandViaSemaphore command1 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "A");
-            SuccessfulCacheableCommandViaSemaphore command2 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "B");
-            SuccessfulCacheableCommandViaSemaphore command3 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "A");
+        public void testBasicExecutionWorksWithoutRequestVariable() {
+            try {
+                /* force the RequestVariable to not be initialized */
+                HystrixRequestContext.setContextOnCurrentThread(null);
 
-            assertFalse(command1.isCommandRunningInThread());
+                TestHystrixCommand<Boolean> command = new SuccessfulTestCommand();
+                assertEquals(true, command.execute());
 
-            Future<String> f1 = command1.queue();
-            Future<String> f2 = command2.queue();
-            Future<String> f3 = command3.queue();
+                TestHystrixCommand<Boolean> command2 = new SuccessfulTestCommand();
+                assertEquals(true, command2.queue().get());
+
+                // we should be able to execute without a RequestVariable if ...
+                // 1) We don't have a cacheKey
+                // 2) We don't ask for the RequestLog
+                // 3) We don't do collapsing
 
-            try {
-                assertEquals("A", f1.get());
-                assertEquals("B", f2.get());
-                assertEquals("A", f3.get());
             } catch (Exception e) {
-                throw new RuntimeException(e);
+                e.printStackTrace();
+                fail("We received an exception.");
             }
+        }
 
-            assertTrue(command1.executed);
-            // both should execute as they are different
-            assertTrue(command2.executed);
-            // but the 3rd should come from cache
-            assertFalse(command3.executed);
-
-            // the execution log for command1 should show a SUCCESS
-            assertEquals(1, command1.getExecutionEvents().size());
-            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+        /**
+         * Test that if we try and execute a command with a cacheKey without initializing RequestVariable that it gives an error.
+         */
+        @Test
+        public void testCacheKeyExecutionRequiresRequestVariable() {
+            try {
+                /* force the RequestVariable to not be initialized */
+                HystrixRequestContext.setContextOnCurrentThread(null);
 
-            // the execution log for command2 should show a SUCCESS
-            assertEquals(1, command2.getExecutionEvents().size());
-            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+                TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
 
-            // the execution log for command3 should show it comes from cache
-            assertEquals(2, command3.getExecutionEvents().size()); // it will include the SUCCESS + RESPONSE_FROM_CACHE
-            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.SUCCESS));
-            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.RESPONSE_FROM_CACHE));
+                SuccessfulCacheableCommand command = new SuccessfulCacheableCommand(circuitBreaker, true, "one");
+                assertEquals(true, command.execute());
 
-            assertEquals(2, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+                SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, true, "two");
+                assertEquals(true, command2.queue().get());
 
-            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+                fail("We expect an exception because cacheKey requires RequestVariable.");
 
-            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
 
         /**
-         * Test Request scoped caching with a mixture of commands
+         * Test that a BadRequestException can be thrown and not count towards errors and bypasses fallback.
          */
         @Test
-        public void testNoRequestCacheViaQueueSemaphore1() {
+        public void testBadRequestExceptionViaExecuteInThread() {
             TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            SuccessfulCacheableCommandViaSemaphore command1 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "A");
-            SuccessfulCacheableCommandViaSemaphore command2 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "B");
-            SuccessfulCacheableCommandViaSemaphore command3 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "A");
-
-            assertFalse(command1.isCommandRunningInThread());
-
-            Future<String> f1 = command1.queue();
-            Future<String> f2 = command2.queue();
-            Future<String> f3 = command3.queue();
-
             try {
-                assertEquals("A", f1.get());
-                assertEquals("B", f2.get());
-                assertEquals("A", f3.get());
+                new BadRequestCommand(circuitBreaker, ExecutionIsolationStrategy.THREAD).execute();
+                fail("we expect to receive a " + HystrixBadRequestException.class.getSimpleName());
+            } catch (HystrixBadRequestException e) {
+                // success
+                e.printStackTrace();
             } catch (Exception e) {
-                throw new RuntimeException(e);
+                e.printStackTrace();
+                fail("We expect a " + HystrixBadRequestException.class.getSimpleName() + " but got a " + e.getClass().getSimpleName());
             }
 
-            assertTrue(command1.executed);
-            // both should execute as they are different
-            assertTrue(command2.executed);
-            // this should also execute because caching is disabled
-            assertTrue(command3.executed);
-
-            // the execution log for command1 should show a SUCCESS
-            assertEquals(1, command1.getExecutionEvents().size());
-            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
-
-            // the execution log for command2 should show a SUCCESS
-            assertEquals(1, command2.getExecutionEvents().size());
-            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
-
-            // the execution log for command3 should show a SUCCESS
-            assertEquals(1, command3.getExecutionEvents().size());
-            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.SUCCESS));
-
-            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
-
-            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
-
-            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test Request scoped caching with a mixture of commands
+         * Test that a BadRequestException can be thrown and not count towards errors and bypasses fallback.
          */
         @Test
-        public void testRequestCacheViaExecuteSemaphore1() {
+        public void testBadRequestExceptionViaQueueInThread() {
             TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            SuccessfulCacheableCommandViaSemaphore command1 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "A");
-            SuccessfulCacheableCommandViaSemaphore command2 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "B");
-            SuccessfulCacheableCommandViaSemaphore command3 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, true, "A");
-
-            assertFalse(command1.isCommandRunningInThread());
-
-            String f1 = command1.execute();
-            String f2 = command2.execute();
-            String f3 = command3.execute();
-
-            assertEquals("A", f1);
-            assertEquals("B", f2);
-            assertEquals("A", f3);
+            try {
+                new BadRequestCommand(circuitBreaker, ExecutionIsolationStrategy.THREAD).queue().get();
+                fail("we expect to receive a " + HystrixBadRequestException.class.getSimpleName());
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                if (e.getCause() instanceof HystrixBadRequestException) {
+                    // success    
+                } else {
+                    fail("We expect a " + HystrixBadRequestException.class.getSimpleName() + " but got a " + e.getClass().getSimpleName());
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail();
+            }
 
-            assertTrue(command1.executed);
-            // both should execute as they are different
-            assertTrue(command2.executed);
-            // but the 3rd should come from cache
-            assertFalse(command3.executed);
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+        }
 
-            // the execution log for command1 should show a SUCCESS
-            assertEquals(1, command1.getExecutionEvents().size());
-            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+        /**
+         * Test that a BadRequestException can be thrown and not count towards errors and bypasses fallback.
+         */
+        @Test
+        public void testBadRequestExceptionViaExecuteInSemaphore() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            try {
+                new BadRequestCommand(circuitBreaker, ExecutionIsolationStrategy.SEMAPHORE).execute();
+                fail("we expect to receive a " + HystrixBadRequestException.class.getSimpleName());
+            } catch (HystrixBadRequestException e) {
+                // success
+                e.printStackTrace();
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We expect a " + HystrixBadRequestException.class.getSimpleName() + " but got a " + e.getClass().getSimpleName());
+            }
 
-            // the execution log for command2 should show a SUCCESS
-            assertEquals(1, command2.getExecutionEvents().size());
-            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
+        }
 
-            // the execution log for command3 should show it comes from cache
-            assertEquals(2, command3.getExecutionEvents().size()); // it will include the SUCCESS + RESPONSE_FROM_CACHE
-            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.RESPONSE_FROM_CACHE));
+        /**
+         * Test that a BadRequestException can be thrown and not count towards errors and bypasses fallback.
+         */
+        @Test
+        public void testBadRequestExceptionViaQueueInSemaphore() {
+            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            try {
+                new BadRequestCommand(circuitBreaker, ExecutionIsolationStrategy.SEMAPHORE).queue().get();
+                fail("we expect to receive a " + HystrixBadRequestException.class.getSimpleName());
+            } catch (HystrixBadRequestException e) {
+                // success
+                e.printStackTrace();
+            } catch (Exception e) {
+                e.printStackTrace();
+                fail("We expect a " + HystrixBadRequestException.class.getSimpleName() + " but got a " + e.getClass().getSimpleName());
+            }
 
-            assertEquals(2, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
+            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
             assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
-
-            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
-
-            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
+        /* ******************************************************************************** */
+        /* ******************************************************************************** */
+        /* private HystrixCommand class implementations for unit testing */
+        /* ******************************************************************************** */
+        /* ******************************************************************************** */
+
         /**
-         * Test Request scoped caching with a mixture of commands
+         * Used by UnitTest command implementations to provide base defaults for constructor and a builder pattern for the arguments being passed in.
          */
-        @Test
-        public void testNoRequestCacheViaExecuteSemaphore1() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            SuccessfulCacheableCommandViaSemaphore command1 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "A");
-            SuccessfulCacheableCommandViaSemaphore command2 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "B");
-            SuccessfulCacheableCommandViaSemaphore command3 = new SuccessfulCacheableCommandViaSemaphore(circuitBreaker, false, "A");
+        /* package */static abstract class TestHystrixCommand<K> extends HystrixCommand<K> {
 
-            assertFalse(command1.isCommandRunningInThread());
+            final TestCommandBuilder builder;
 
-            String f1 = command1.execute();
-            String f2 = command2.execute();
-            String f3 = command3.execute();
+            TestHystrixCommand(TestCommandBuilder builder) {
+                super(builder.owner, builder.dependencyKey, builder.threadPoolKey, builder.circuitBreaker, builder.threadPool, builder.propertiesFactory,
+                        builder.commandPropertiesDefaults, builder.threadPoolPropertiesDefaults, builder.notifier, builder.concurrencyStrategy, builder.metrics,
+                        builder.metricsPublisher, builder.fallbackSemaphore, builder.executionSemaphore);
+                this.builder = builder;
+            }
 
-            assertEquals("A", f1);
-            assertEquals("B", f2);
-            assertEquals("A", f3);
+            static TestCommandBuilder testPropsBuilder() {
+                return new TestCommandBuilder();
+            }
 
-            assertTrue(command1.executed);
-            // both should execute as they are different
-            assertTrue(command2.executed);
-            // this should also execute because caching is disabled
-            assertTrue(command3.executed);
+            static class TestCommandBuilder {
+                TestCircuitBreaker _cb = new TestCircuitBreaker();
+                HystrixCommandGroupKey owner = CommandGroupForUnitTest.OWNER_ONE;
+                HystrixCommandKey dependencyKey = null;
+                HystrixThreadPoolKey threadPoolKey = null;
+                HystrixCircuitBreaker circuitBreaker = _cb;
+                HystrixThreadPool threadPool = null;
+                HystrixPropertiesStrategy propertiesFactory = TEST_PROPERTIES_FACTORY;
+                HystrixCommandProperties.Setter commandPropertiesDefaults = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter();
+                HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults = HystrixThreadPoolProperties.Setter.getUnitTestPropertiesBuilder();
+                HystrixEventNotifier notifier = null;
+                HystrixConcurrencyStrategy concurrencyStrategy = null;
+                HystrixCommandMetrics metrics = _cb.metrics;
+                HystrixMetricsPublisher metricsPublisher = null;
+                TryableSemaphore fallbackSemaphore = null;
+                TryableSemaphore executionSemaphore = null;
 
-            // the execution log for command1 should show a SUCCESS
-            assertEquals(1, command1.getExecutionEvents().size());
-            assertTrue(command1.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+                TestCommandBuilder setOwner(HystrixCommandGroupKey owner) {
+                    this.owner = owner;
+                    return this;
+                }
 
-            // the execution log for command2 should show a SUCCESS
-            assertEquals(1, command2.getExecutionEvents().size());
-            assertTrue(command2.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+                TestCommandBuilder setCommandKey(HystrixCommandKey dependencyKey) {
+                    this.dependencyKey = dependencyKey;
+                    return this;
+                }
 
-            // the execution log for command3 should show a SUCCESS
-            assertEquals(1, command3.getExecutionEvents().size());
-            assertTrue(command3.getExecutionEvents().contains(HystrixEventType.SUCCESS));
+                TestCommandBuilder setThreadPoolKey(HystrixThreadPoolKey threadPoolKey) {
+                    this.threadPoolKey = threadPoolKey;
+                    return this;
+                }
 
-            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+                TestCommandBuilder setCircuitBreaker(HystrixCircuitBreaker circuitBreaker) {
+                    this.circuitBreaker = circuitBreaker;
+                    return this;
+                }
 
-            assertEquals(0, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+                TestCommandBuilder setThreadPool(HystrixThreadPool threadPool) {
+                    this.threadPool = threadPool;
+                    return this;
+                }
 
-            assertEquals(3, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
-        }
+                TestCommandBuilder setPropertiesFactory(HystrixPropertiesStrategy propertiesFactory) {
+                    this.propertiesFactory = propertiesFactory;
+                    return this;
+                }
 
-        @Test
-        public void testRequestCacheOnTimeoutCausesNullPointerException() throws Exception {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            // Expect it to time out - all results should be false
-            assertFalse(new RequestCacheNullPointerExceptionCase(circuitBreaker).execute());
-            assertFalse(new RequestCacheNullPointerExceptionCase(circuitBreaker).execute()); // return from cache #1
-            assertFalse(new RequestCacheNullPointerExceptionCase(circuitBreaker).execute()); // return from cache #2
-            Thread.sleep(500); // timeout on command is set to 200ms
-            Boolean value = new RequestCacheNullPointerExceptionCase(circuitBreaker).execute(); // return from cache #3
-            assertFalse(value);
-            RequestCacheNullPointerExceptionCase c = new RequestCacheNullPointerExceptionCase(circuitBreaker);
-            Future<Boolean> f = c.queue(); // return from cache #4
-            // the bug is that we're getting a null Future back, rather than a Future that returns false
-            assertNotNull(f);
-            assertFalse(f.get());
+                TestCommandBuilder setCommandPropertiesDefaults(HystrixCommandProperties.Setter commandPropertiesDefaults) {
+                    this.commandPropertiesDefaults = commandPropertiesDefaults;
+                    return this;
+                }
 
-            assertTrue(c.isResponseFromFallback());
-            assertTrue(c.isResponseTimedOut());
-            assertFalse(c.isFailedExecution());
-            assertFalse(c.isResponseShortCircuited());
+                TestCommandBuilder setThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults) {
+                    this.threadPoolPropertiesDefaults = threadPoolPropertiesDefaults;
+                    return this;
+                }
 
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(4, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+                TestCommandBuilder setNotifier(HystrixEventNotifier notifier) {
+                    this.notifier = notifier;
+                    return this;
+                }
 
-            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+                TestCommandBuilder setConcurrencyStrategy(HystrixConcurrencyStrategy concurrencyStrategy) {
+                    this.concurrencyStrategy = concurrencyStrategy;
+                    return this;
+                }
 
-            assertEquals(5, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
+                TestCommandBuilder setMetrics(HystrixCommandMetrics metrics) {
+                    this.metrics = metrics;
+                    return this;
+                }
 
-            HystrixCommand<?>[] executeCommands = HystrixRequestLog.getCurrentRequest().getExecutedCommands().toArray(new HystrixCommand<?>[] {});
+                TestCommandBuilder setMetricsPublisher(HystrixMetricsPublisher metricsPublisher) {
+                    this.metricsPublisher = metricsPublisher;
+                    return this;
+                }
 
-            System.out.println(":executeCommands[0].getExecutionEvents()" + executeCommands[0].getExecutionEvents());
-            assertEquals(2, executeCommands[0].getExecutionEvents().size());
-            assertTrue(executeCommands[0].getExecutionEvents().contains(HystrixEventType.FALLBACK_SUCCESS));
-            assertTrue(executeCommands[0].getExecutionEvents().contains(HystrixEventType.TIMEOUT));
-            assertTrue(executeCommands[0].getExecutionTimeInMilliseconds() > -1);
-            assertTrue(executeCommands[0].isResponseTimedOut());
-            assertTrue(executeCommands[0].isResponseFromFallback());
-            assertFalse(executeCommands[0].isResponseFromCache());
+                TestCommandBuilder setFallbackSemaphore(TryableSemaphore fallbackSemaphore) {
+                    this.fallbackSemaphore = fallbackSemaphore;
+                    return this;
+                }
+
+                TestCommandBuilder setExecutionSemaphore(TryableSemaphore executionSemaphore) {
+                    this.executionSemaphore = executionSemaphore;
+                    return this;
+                }
+
+            }
 
-            assertEquals(3, executeCommands[1].getExecutionEvents().size()); // it will include FALLBACK_SUCCESS/TIMEOUT + RESPONSE_FROM_CACHE
-            assertTrue(executeCommands[1].getExecutionEvents().contains(HystrixEventType.RESPONSE_FROM_CACHE));
-            assertTrue(executeCommands[1].getExecutionTimeInMilliseconds() == -1);
-            assertTrue(executeCommands[1].isResponseFromCache());
-            assertTrue(executeCommands[1].isResponseTimedOut());
-            assertTrue(executeCommands[1].isResponseFromFallback());
         }
 
-        @Test
-        public void testRequestCacheOnTimeoutThrowsException() throws Exception {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            RequestCacheTimeoutWithoutFallback r1 = new RequestCacheTimeoutWithoutFallback(circuitBreaker);
-            try {
-                r1.execute();
-                // we should have thrown an exception
-                fail("expected a timeout");
-            } catch (HystrixRuntimeException e) {
-                assertTrue(r1.isResponseTimedOut());
-                // what we want
+        /**
+         * Successful execution - no fallback implementation.
+         */
+        private static class SuccessfulTestCommand extends TestHystrixCommand<Boolean> {
+
+            public SuccessfulTestCommand() {
+                this(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter());
             }
 
-            RequestCacheTimeoutWithoutFallback r2 = new RequestCacheTimeoutWithoutFallback(circuitBreaker);
-            try {
-                r2.execute();
-                // we should have thrown an exception
-                fail("expected a timeout");
-            } catch (HystrixRuntimeException e) {
-                assertTrue(r2.isResponseTimedOut());
-                // what we want
+            public SuccessfulTestCommand(HystrixCommandProperties.Setter properties) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(properties));
             }
 
-            RequestCacheTimeoutWithoutFallback r3 = new RequestCacheTimeoutWithoutFallback(circuitBreaker);
-            Future<Boolean> f3 = r3.queue();
-            try {
-                f3.get();
-                // we should have thrown an exception
-                fail("expected a timeout");
-            } catch (ExecutionException e) {
-                e.printStackTrace();
-                assertTrue(r3.isResponseTimedOut());
-                // what we want
+            @Override
+            protected Boolean run() {
+                return true;
             }
 
-            Thread.sleep(500); // timeout on command is set to 200ms
+        }
 
-            RequestCacheTimeoutWithoutFallback r4 = new RequestCacheTimeoutWithoutFallback(circuitBreaker);
-            try {
-                r4.execute();
-                // we should have thrown an exception
-                fail("expected a timeout");
-            } catch (HystrixRuntimeException e) {
-                assertTrue(r4.isResponseTimedOut());
-                assertFalse(r4.isResponseFromFallback());
-                // what we want
-            }
+        /**
+         * Successful execution - no fallback implementation.
+         */
+        private static class DynamicOwnerTestCommand extends TestHystrixCommand<Boolean> {
 
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_REJECTION));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_FAILURE));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FALLBACK_SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SHORT_CIRCUITED));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
-            assertEquals(1, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.TIMEOUT));
-            assertEquals(3, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
+            public DynamicOwnerTestCommand(HystrixCommandGroupKey owner) {
+                super(testPropsBuilder().setOwner(owner));
+            }
 
-            assertEquals(100, circuitBreaker.metrics.getHealthCounts().getErrorPercentage());
+            @Override
+            protected Boolean run() {
+                System.out.println("successfully executed");
+                return true;
+            }
 
-            assertEquals(4, HystrixRequestLog.getCurrentRequest().getExecutedCommands().size());
         }
 
         /**
-         * Test that we can do basic execution without a RequestVariable being initialized.
+         * Successful execution - no fallback implementation.
          */
-        @Test
-        public void testBasicExecutionWorksWithoutRequestVariable() {
-            try {
-                /* force the RequestVariable to not be initialized */
-                HystrixRequestContext.setContextOnCurrentThread(null);
+        private static class DynamicOwnerAndKeyTestCommand extends TestHystrixCommand<Boolean> {
 
-                TestHystrixCommand<Boolean> command = new SuccessfulTestCommand();
-                assertEquals(true, command.execute());
+            public DynamicOwnerAndKeyTestCommand(HystrixCommandGroupKey owner, HystrixCommandKey key) {
+                super(testPropsBuilder().setOwner(owner).setCommandKey(key).setCircuitBreaker(null).setMetrics(null));
+                // we specifically are NOT passing in a circuit breaker here so we test that it creates a new one correctly based on the dynamic key
+            }
 
-                TestHystrixCommand<Boolean> command2 = new SuccessfulTestCommand();
-                assertEquals(true, command2.queue().get());
+            @Override
+            protected Boolean run() {
+                System.out.println("successfully executed");
+                return true;
+            }
 
-                // we should be able to execute without a RequestVariable if ...
-                // 1) We don't have a cacheKey
-                // 2) We don't ask for the RequestLog
-                // 3) We don't do collapsing
+        }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We received an exception.");
+        /**
+         * Failed execution with unknown exception (not HystrixException) - no fallback implementation.
+         */
+        private static class UnknownFailureTestCommandWithoutFallback extends TestHystrixCommand<Boolean> {
+
+            private UnknownFailureTestCommandWithoutFallback() {
+                super(testPropsBuilder());
+            }
+
+            @Override
+            protected Boolean run() {
+                System.out.println("*** simulated failed execution ***");
+                throw new RuntimeException("we failed with an unknown issue");
             }
+
         }
 
         /**
-         * Test that if we try and execute a command with a cacheKey without initializing RequestVariable that it gives an error.
+         * Failed execution with known exception (HystrixException) - no fallback implementation.
          */
-        @Test
-        public void testCacheKeyExecutionRequiresRequestVariable() {
-            try {
-                /* force the RequestVariable to not be initialized */
-                HystrixRequestContext.setContextOnCurrentThread(null);
+        private static class KnownFailureTestCommandWithoutFallback extends TestHystrixCommand<Boolean> {
 
-                TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
+            private KnownFailureTestCommandWithoutFallback(TestCircuitBreaker circuitBreaker) {
+                super(testPropsBuilder().setCircuitBreaker(circuitBreaker).setMetrics(circuitBreaker.metrics));
+            }
 
-                SuccessfulCacheableCommand command = new SuccessfulCacheableCommand(circuitBreaker, true, "one");
-                assertEquals(true, command.execute());
+            @Override
+            protected Boolean run() {
+                System.out.println("*** simulated failed execution ***");
+                throw new RuntimeException("we failed with a simulated issue");
+            }
 
-                SuccessfulCacheableCommand command2 = new SuccessfulCacheableCommand(circuitBreaker, true, "two");
-                assertEquals(true, command2.queue().get());
+        }
 
-                fail("We expect an exception because cacheKey requires RequestVariable.");
+        /**
+         * Failed execution - fallback implementation successfully returns value.
+         */
+        private static class KnownFailureTestCommandWithFallback extends TestHystrixCommand<Boolean> {
 
-            } catch (Exception e) {
-                e.printStackTrace();
+            public KnownFailureTestCommandWithFallback(TestCircuitBreaker circuitBreaker) {
+                super(testPropsBuilder().setCircuitBreaker(circuitBreaker).setMetrics(circuitBreaker.metrics));
+            }
+
+            @Override
+            protected Boolean run() {
+                System.out.println("*** simulated failed execution ***");
+                throw new RuntimeException("we failed with a simulated issue");
+            }
+
+            @Override
+            protected Boolean getFallback() {
+                return false;
             }
         }
 
         /**
-         * Test that a BadRequestException can be thrown and not count towards errors and bypasses fallback.
+         * Metrics with a fixed execution latency percentile so hedging tests don't depend on the rolling percentile buckets.
          */
-        @Test
-        public void testBadRequestExceptionViaExecuteInThread() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            try {
-                new BadRequestCommand(circuitBreaker, ExecutionIsolationStrategy.THREAD).execute();
-                fail("we expect to receive a " + HystrixBadRequestException.class.getSimpleName());
-            } catch (HystrixBadRequestException e) {
-                // success
-                e.printStackTrace();
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We expect a " + HystrixBadRequestException.class.getSimpleName() + " but got a " + e.getClass().getSimpleName());
+        private static class HedgingTestMetrics extends HystrixCommandMetrics {
+
+            HedgingTestMetrics(HystrixCommandProperties.Setter properties) {
+                super(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, ThreadPoolKeyForUnitTest.THREAD_POOL_ONE, HystrixCommandProperties.Setter.asMock(properties), HystrixEventNotifierDefault.getInstance());
+            }
+
+            @Override
+            public int getExecutionTimePercentile(double percentile) {
+                return 50;
             }
 
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
         }
 
         /**
-         * Test that a BadRequestException can be thrown and not count towards errors and bypasses fallback.
+         * Command whose first execution of run() is slow (if requested) while any subsequent (hedged) execution is fast.
          */
-        @Test
-        public void testBadRequestExceptionViaQueueInThread() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            try {
-                new BadRequestCommand(circuitBreaker, ExecutionIsolationStrategy.THREAD).queue().get();
-                fail("we expect to receive a " + HystrixBadRequestException.class.getSimpleName());
-            } catch (ExecutionException e) {
-                e.printStackTrace();
-                if (e.getCause() instanceof HystrixBadRequestException) {
-                    // success    
-                } else {
-                    fail("We expect a " + HystrixBadRequestException.class.getSimpleName() + " but got a " + e.getClass().getSimpleName());
+        private static class HedgedTestCommand extends TestHystrixCommand<Boolean> {
+
+            private static final int SLOW_EXECUTION_TIME = 500;
+
+            private final boolean slowFirstExecution;
+            private final AtomicInteger executions = new AtomicInteger();
+
+            public HedgedTestCommand(HystrixCommandProperties.Setter properties, HystrixCommandMetrics metrics, boolean slowFirstExecution) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(properties).setMetrics(metrics));
+                this.slowFirstExecution = slowFirstExecution;
+            }
+
+            @Override
+            protected Boolean run() {
+                if (executions.incrementAndGet() == 1 && slowFirstExecution) {
+                    try {
+                        Thread.sleep(SLOW_EXECUTION_TIME);
+                    } catch (InterruptedException e) {
+                        // cancelled once the hedged execution won
+                    }
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail();
+                return true;
             }
 
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
         }
 
         /**
-         * Test that a BadRequestException can be thrown and not count towards errors and bypasses fallback.
+         * Command that fails the given number of executions of run() before succeeding.
          */
-        @Test
-        public void testBadRequestExceptionViaExecuteInSemaphore() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            try {
-                new BadRequestCommand(circuitBreaker, ExecutionIsolationStrategy.SEMAPHORE).execute();
-                fail("we expect to receive a " + HystrixBadRequestException.class.getSimpleName());
-            } catch (HystrixBadRequestException e) {
-                // success
-                e.printStackTrace();
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We expect a " + HystrixBadRequestException.class.getSimpleName() + " but got a " + e.getClass().getSimpleName());
+        private static class RetryTestCommand extends TestHystrixCommand<Boolean> {
+
+            private final int failures;
+            private final AtomicInteger attempts = new AtomicInteger();
+
+            public RetryTestCommand(HystrixCommandProperties.Setter properties, HystrixCommandMetrics metrics, int failures) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(properties).setMetrics(metrics));
+                this.failures = failures;
+            }
+
+            @Override
+            protected Boolean run() {
+                if (attempts.incrementAndGet() <= failures) {
+                    throw new RuntimeException("transient failure");
+                }
+                return true;
+            }
+
+            @Override
+            protected Boolean getFallback() {
+                return false;
             }
 
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
         }
 
         /**
-         * Test that a BadRequestException can be thrown and not count towards errors and bypasses fallback.
+         * Command that records the deadline seen by the thread executing it.
          */
-        @Test
-        public void testBadRequestExceptionViaQueueInSemaphore() {
-            TestCircuitBreaker circuitBreaker = new TestCircuitBreaker();
-            try {
-                new BadRequestCommand(circuitBreaker, ExecutionIsolationStrategy.SEMAPHORE).queue().get();
-                fail("we expect to receive a " + HystrixBadRequestException.class.getSimpleName());
-            } catch (HystrixBadRequestException e) {
-                // success
-                e.printStackTrace();
-            } catch (Exception e) {
-                e.printStackTrace();
-                fail("We expect a " + HystrixBadRequestException.class.getSimpleName() + " but got a " + e.getClass().getSimpleName());
+        private static class DeadlineTestCommand extends TestHystrixCommand<Boolean> {
+
+            private volatile long deadline;
+
+            public DeadlineTestCommand(int timeout) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withExecutionIsolationThreadTimeoutInMilliseconds(timeout)));
             }
 
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.SUCCESS));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.EXCEPTION_THROWN));
-            assertEquals(0, circuitBreaker.metrics.getRollingCount(HystrixRollingNumberEvent.FAILURE));
-        }
+            @Override
+            protected Boolean run() {
+                deadline = HystrixRequestContext.getDeadlineForCurrentThread();
+                return true;
+            }
 
-        /* ******************************************************************************** */
-        /* ******************************************************************************** */
-        /* private HystrixCommand class implementations for unit testing */
-        /* ******************************************************************************** */
-        /* ******************************************************************************** */
+        }
 
         /**
-         * Used by UnitTest command implementations to provide base defaults for constructor and a builder pattern for the arguments being passed in.
+         * SEMAPHORE isolated command using the given semaphore whose run() sleeps for the given time.
          */
-        /* package */static abstract class TestHystrixCommand<K> extends HystrixCommand<K> {
+        private static class SemaphoreWaitTestCommand extends TestHystrixCommand<Boolean> {
 
-            final TestCommandBuilder builder;
+            private final long executionSleep;
 
-            TestHystrixCommand(TestCommandBuilder builder) {
-                super(builder.owner, builder.dependencyKey, builder.threadPoolKey, builder.circuitBreaker, builder.threadPool, builder.propertiesFactory,
-                        builder.commandPropertiesDefaults, builder.threadPoolPropertiesDefaults, builder.notifier, builder.concurrencyStrategy, builder.metrics,
-                        builder.metricsPublisher, builder.fallbackSemaphore, builder.executionSemaphore);
-                this.builder = builder;
+            public SemaphoreWaitTestCommand(HystrixCommandProperties.Setter properties, HystrixCommandMetrics metrics, TryableSemaphore semaphore, long executionSleep) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(properties).setMetrics(metrics).setExecutionSemaphore(semaphore));
+                this.executionSleep = executionSleep;
             }
 
-            static TestCommandBuilder testPropsBuilder() {
-                return new TestCommandBuilder();
+            @Override
+            protected Boolean run() {
+                try {
+                    Thread.sleep(executionSleep);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                return true;
             }
 
-            static class TestCommandBuilder {
-                TestCircuitBreaker _cb = new TestCircuitBreaker();
-                HystrixCommandGroupKey owner = CommandGroupForUnitTest.OWNER_ONE;
-                HystrixCommandKey dependencyKey = null;
-                HystrixThreadPoolKey threadPoolKey = null;
-                HystrixCircuitBreaker circuitBreaker = _cb;
-                HystrixThreadPool threadPool = null;
-                HystrixPropertiesStrategy propertiesFactory = TEST_PROPERTIES_FACTORY;
-                HystrixCommandProperties.Setter commandPropertiesDefaults = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter();
-                HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults = HystrixThreadPoolProperties.Setter.getUnitTestPropertiesBuilder();
-                HystrixEventNotifier notifier = null;
-                HystrixConcurrencyStrategy concurrencyStrategy = null;
-                HystrixCommandMetrics metrics = _cb.metrics;
-                HystrixMetricsPublisher metricsPublisher = null;
-                TryableSemaphore fallbackSemaphore = null;
-                TryableSemaphore executionSemaphore = null;
+            @Override
+            protected Boolean getFallback() {
+                return false;
+            }
+
+        }
 
-                TestCommandBuilder setOwner(HystrixCommandGroupKey owner) {
-                    this.owner = owner;
-                    return this;
-                }
+        /**
+         * Command with the given priority that records its execution and optionally blocks until released.
+         */
+        private static class PriorityTestCommand extends TestHystrixCommand<String> {
 
-                TestCommandBuilder setCommandKey(HystrixCommandKey dependencyKey) {
-                    this.dependencyKey = dependencyKey;
-                    return this;
-                }
+            private final String name;
+            private final List<String> executed;
+            private final CountDownLatch started;
+            private final CountDownLatch release;
 
-                TestCommandBuilder setThreadPoolKey(HystrixThreadPoolKey threadPoolKey) {
-                    this.threadPoolKey = threadPoolKey;
-                    return this;
-                }
+            public PriorityTestCommand(HystrixThreadPoolKey threadPoolKey, HystrixThreadPoolProperties.Setter threadPoolProperties, ExecutionPriority priority, String name, List<String> executed, CountDownLatch started, CountDownLatch release) {
+                this(threadPoolKey, threadPoolProperties, HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withExecutionPriority(priority), name, executed, started, release);
+            }
 
-                TestCommandBuilder setCircuitBreaker(HystrixCircuitBreaker circuitBreaker) {
-                    this.circuitBreaker = circuitBreaker;
-                    return this;
-                }
+            public PriorityTestCommand(HystrixThreadPoolKey threadPoolKey, HystrixThreadPoolProperties.Setter threadPoolProperties, HystrixCommandProperties.Setter commandProperties, String name, List<String> executed, CountDownLatch started, CountDownLatch release) {
+                super(testPropsBuilder().setThreadPoolKey(threadPoolKey).setThreadPoolPropertiesDefaults(threadPoolProperties).setCommandPropertiesDefaults(commandProperties));
+                this.name = name;
+                this.executed = executed;
+                this.started = started;
+                this.release = release;
+            }
 
-                TestCommandBuilder setThreadPool(HystrixThreadPool threadPool) {
-                    this.threadPool = threadPool;
-                    return this;
+            @Override
+            protected String run() {
+                if (started != null) {
+                    started.countDown();
                 }
-
-                TestCommandBuilder setPropertiesFactory(HystrixPropertiesStrategy propertiesFactory) {
-                    this.propertiesFactory = propertiesFactory;
-                    return this;
+                if (release != null) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
                 }
+                executed.add(name);
+                return name;
+            }
 
-                TestCommandBuilder setCommandPropertiesDefaults(HystrixCommandProperties.Setter commandPropertiesDefaults) {
-                    this.commandPropertiesDefaults = commandPropertiesDefaults;
-                    return this;
-                }
+            @Override
+            protected String getFallback() {
+                return "fallback";
+            }
 
-                TestCommandBuilder setThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter threadPoolPropertiesDefaults) {
-                    this.threadPoolPropertiesDefaults = threadPoolPropertiesDefaults;
-                    return this;
-                }
+        }
 
-                TestCommandBuilder setNotifier(HystrixEventNotifier notifier) {
-                    this.notifier = notifier;
-                    return this;
-                }
+        /**
+         * Failed execution with a fallback (returning the name of the thread it executed on) isolated on the fallback thread-pool.
+         */
+        private static class FallbackThreadTestCommand extends TestHystrixCommand<String> {
 
-                TestCommandBuilder setConcurrencyStrategy(HystrixConcurrencyStrategy concurrencyStrategy) {
-                    this.concurrencyStrategy = concurrencyStrategy;
-                    return this;
-                }
+            private final long fallbackSleep;
+            private final boolean timeout;
 
-                TestCommandBuilder setMetrics(HystrixCommandMetrics metrics) {
-                    this.metrics = metrics;
-                    return this;
-                }
+            public FallbackThreadTestCommand(int fallbackTimeout, long fallbackSleep) {
+                super(testPropsBuilder().setThreadPoolKey(HystrixThreadPoolKey.Factory.asKey("FallbackThread")).setCommandPropertiesDefaults(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                        .withFallbackIsolationThreadEnabled(true).withFallbackIsolationThreadTimeoutInMilliseconds(fallbackTimeout)));
+                this.fallbackSleep = fallbackSleep;
+                this.timeout = false;
+            }
 
-                TestCommandBuilder setMetricsPublisher(HystrixMetricsPublisher metricsPublisher) {
-                    this.metricsPublisher = metricsPublisher;
-                    return this;
-                }
+            /**
+             * Execution that times out instead of failing.
+             */
+            public FallbackThreadTestCommand(int timeout, int fallbackTimeout, long fallbackSleep) {
+                super(testPropsBuilder().setThreadPoolKey(HystrixThreadPoolKey.Factory.asKey("FallbackThread")).setCommandPropertiesDefaults(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                        .withExecutionIsolationThreadTimeoutInMilliseconds(timeout).withFallbackIsolationThreadEnabled(true).withFallbackIsolationThreadTimeoutInMilliseconds(fallbackTimeout)));
+                this.fallbackSleep = fallbackSleep;
+                this.timeout = true;
+            }
 
-                TestCommandBuilder setFallbackSemaphore(TryableSemaphore fallbackSemaphore) {
-                    this.fallbackSemaphore = fallbackSemaphore;
-                    return this;
+            @Override
+            protected String run() {
+                if (timeout) {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        // interrupted on timeout
+                    }
+                    return "success";
                 }
+                throw new RuntimeException("we failed with a simulated issue");
+            }
 
-                TestCommandBuilder setExecutionSemaphore(TryableSemaphore executionSemaphore) {
-                    this.executionSemaphore = executionSemaphore;
-                    return this;
+            @Override
+            protected String getFallback() {
+                try {
+                    Thread.sleep(fallbackSleep);
+                } catch (InterruptedException e) {
+                    // interrupted on timeout
                 }
-
+                return Thread.currentThread().getName();
             }
 
         }
 
         /**
-         * Successful execution - no fallback implementation.
+         * Successful execution (unless short-circuited) with a cache key and the last known good response enabled.
          */
-        private static class SuccessfulTestCommand extends TestHystrixCommand<Boolean> {
+        private static class LastKnownGoodTestCommand extends TestHystrixCommand<String> {
 
-            public SuccessfulTestCommand() {
-                this(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter());
+            private final String cacheKey;
+            private final String value;
+
+            public LastKnownGoodTestCommand(String cacheKey, boolean shortCircuit, String value) {
+                super(testPropsBuilder().setCircuitBreaker(new TestCircuitBreaker().setForceShortCircuit(shortCircuit)).setCommandPropertiesDefaults(HystrixCommandProperties.Setter
+                        .getUnitTestPropertiesSetter().withFallbackLastKnownGoodEnabled(true).withRequestCacheEnabled(false)));
+                this.cacheKey = cacheKey;
+                this.value = value;
             }
 
-            public SuccessfulTestCommand(HystrixCommandProperties.Setter properties) {
-                super(testPropsBuilder().setCommandPropertiesDefaults(properties));
+            @Override
+            protected String run() {
+                return value;
             }
 
             @Override
-            protected Boolean run() {
-                return true;
+            protected String getFallback() {
+                return "fallback";
+            }
+
+            @Override
+            protected String getCacheKey() {
+                return cacheKey;
             }
 
         }
 
         /**
-         * Successful execution - no fallback implementation.
+         * Successful execution with a cache key and the response cache enabled that counts its executions.
          */
-        private static class DynamicOwnerTestCommand extends TestHystrixCommand<Boolean> {
+        private static class ResponseCacheTestCommand extends TestHystrixCommand<String> {
 
-            public DynamicOwnerTestCommand(HystrixCommandGroupKey owner) {
-                super(testPropsBuilder().setOwner(owner));
+            private final String cacheKey;
+            private final String value;
+            private final AtomicInteger executions;
+
+            public ResponseCacheTestCommand(String cacheKey, String value, int refreshAheadPercentage, AtomicInteger executions) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withResponseCacheEnabled(true)
+                        .withResponseCacheTimeToLiveInMilliseconds(1000).withResponseCacheRefreshAheadPercentage(refreshAheadPercentage).withRequestCacheEnabled(false)));
+                this.cacheKey = cacheKey;
+                this.value = value;
+                this.executions = executions;
             }
 
             @Override
-            protected Boolean run() {
-                System.out.println("successfully executed");
-                return true;
+            protected String run() {
+                executions.incrementAndGet();
+                return value;
+            }
+
+            @Override
+            protected String getCacheKey() {
+                return cacheKey;
             }
 
         }
 
         /**
-         * Successful execution - no fallback implementation.
+         * Execution with a cache key and single-flight enabled that counts its executions.
          */
-        private static class DynamicOwnerAndKeyTestCommand extends TestHystrixCommand<Boolean> {
+        private static class SingleFlightTestCommand extends TestHystrixCommand<String> {
 
-            public DynamicOwnerAndKeyTestCommand(HystrixCommandGroupKey owner, HystrixCommandKey key) {
-                super(testPropsBuilder().setOwner(owner).setCommandKey(key).setCircuitBreaker(null).setMetrics(null));
-                // we specifically are NOT passing in a circuit breaker here so we test that it creates a new one correctly based on the dynamic key
+            private final String cacheKey;
+            private final String value;
+            private final String fallback;
+            private final int executionSleep;
+            private final boolean fail;
+            private final AtomicInteger executions;
+
+            public SingleFlightTestCommand(String cacheKey, String value, int executionSleep, int timeout, AtomicInteger executions) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withExecutionSingleFlightEnabled(true)
+                        .withExecutionIsolationThreadTimeoutInMilliseconds(timeout).withRequestCacheEnabled(false)));
+                this.cacheKey = cacheKey;
+                this.value = value;
+                this.fallback = "fallback";
+                this.executionSleep = executionSleep;
+                this.fail = false;
+                this.executions = executions;
+            }
+
+            public SingleFlightTestCommand(HystrixCircuitBreaker circuitBreaker, HystrixCommandMetrics metrics, HystrixCommandProperties.Setter properties, String cacheKey, String value, int executionSleep, boolean fail, AtomicInteger executions) {
+                super(testPropsBuilder().setCircuitBreaker(circuitBreaker).setMetrics(metrics).setCommandPropertiesDefaults(properties.withExecutionSingleFlightEnabled(true).withRequestCacheEnabled(false)));
+                this.cacheKey = cacheKey;
+                this.value = value;
+                this.fallback = "fallback-" + value;
+                this.executionSleep = executionSleep;
+                this.fail = fail;
+                this.executions = executions;
             }
 
             @Override
-            protected Boolean run() {
-                System.out.println("successfully executed");
-                return true;
+            protected String run() {
+                executions.incrementAndGet();
+                try {
+                    Thread.sleep(executionSleep);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                if (fail) {
+                    throw new RuntimeException("failed " + value);
+                }
+                return value;
+            }
+
+            @Override
+            protected String getFallback() {
+                return fallback;
+            }
+
+            @Override
+            protected String getCacheKey() {
+                return cacheKey;
             }
 
         }
 
         /**
-         * Failed execution with unknown exception (not HystrixException) - no fallback implementation.
+         * Execution with a cache key and negative caching enabled that counts its executions.
          */
-        private static class UnknownFailureTestCommandWithoutFallback extends TestHystrixCommand<Boolean> {
+        private static class NegativeCacheTestCommand extends TestHystrixCommand<String> {
 
-            private UnknownFailureTestCommandWithoutFallback() {
-                super(testPropsBuilder());
+            private final String cacheKey;
+            private final boolean fail;
+            private final AtomicInteger executions;
+
+            public NegativeCacheTestCommand(String cacheKey, boolean fail, AtomicInteger executions) {
+                this(cacheKey, fail, executions, false);
+            }
+
+            public NegativeCacheTestCommand(String cacheKey, boolean fail, AtomicInteger executions, boolean lastKnownGoodEnabled) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withNegativeCacheEnabled(true)
+                        .withNegativeCacheTimeToLiveInMilliseconds(100).withFallbackLastKnownGoodEnabled(lastKnownGoodEnabled).withRequestCacheEnabled(false)));
+                this.cacheKey = cacheKey;
+                this.fail = fail;
+                this.executions = executions;
             }
 
             @Override
-            protected Boolean run() {
-                System.out.println("*** simulated failed execution ***");
-                throw new RuntimeException("we failed with an unknown issue");
+            protected String run() {
+                executions.incrementAndGet();
+                if (fail) {
+                    throw new RuntimeException("failed for " + cacheKey);
+                }
+                return "success";
+            }
+
+            @Override
+            protected String getFallback() {
+                return "fallback";
+            }
+
+            @Override
+            protected String getCacheKey() {
+                return cacheKey;
             }
 
         }
 
-        /**
-         * Failed execution with known exception (HystrixException) - no fallback implementation.
-         */
-        private static class KnownFailureTestCommandWithoutFallback extends TestHystrixCommand<Boolean> {
+        private static class CircuitBreakerProbeTestCommand extends TestHystrixCommand<String> {
 
-            private KnownFailureTestCommandWithoutFallback(TestCircuitBreaker circuitBreaker) {
-                super(testPropsBuilder().setCircuitBreaker(circuitBreaker).setMetrics(circuitBreaker.metrics));
+            private final int executionSleep;
+
+            public CircuitBreakerProbeTestCommand(HystrixCircuitBreaker circuitBreaker, HystrixCommandMetrics metrics, HystrixCommandProperties.Setter properties, int executionSleep) {
+                super(testPropsBuilder().setCircuitBreaker(circuitBreaker).setMetrics(metrics).setCommandPropertiesDefaults(properties));
+                this.executionSleep = executionSleep;
             }
 
             @Override
-            protected Boolean run() {
-                System.out.println("*** simulated failed execution ***");
-                throw new RuntimeException("we failed with a simulated issue");
+            protected String run() {
+                try {
+                    Thread.sleep(executionSleep);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                return "success";
+            }
+
+            @Override
+            protected String getFallback() {
+                return "fallback";
             }
 
         }
 
         /**
-         * Failed execution - fallback implementation successfully returns value.
+         * Command that times out and whose fallback sleeps before returning false.
          */
-        private static class KnownFailureTestCommandWithFallback extends TestHystrixCommand<Boolean> {
+        private static class SlowFallbackOnTimeoutTestCommand extends TestHystrixCommand<Boolean> {
 
-            public KnownFailureTestCommandWithFallback(TestCircuitBreaker circuitBreaker) {
-                super(testPropsBuilder().setCircuitBreaker(circuitBreaker).setMetrics(circuitBreaker.metrics));
+            private final long fallbackSleepTime;
+
+            private SlowFallbackOnTimeoutTestCommand(int timeout, long fallbackSleepTime) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withExecutionIsolationThreadTimeoutInMilliseconds(timeout)));
+                this.fallbackSleepTime = fallbackSleepTime;
             }
 
             @Override
             protected Boolean run() {
-                System.out.println("*** simulated failed execution ***");
-                throw new RuntimeException("we failed with a simulated issue");
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    // timed-out and interrupted
+                }
+                return true;
             }
 
             @Override
             protected Boolean getFallback() {
+                try {
+                    Thread.sleep(fallbackSleepTime);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
                 return false;
             }
         }
 
+        /**
+         * Successful execution constructed via Setter or Definition (not TestHystrixCommand) to use the same defaults as production.
+         */
+        private static class BenchmarkCommand extends HystrixCommand<Boolean> {
+
+            public BenchmarkCommand(Setter setter) {
+                super(setter);
+            }
+
+            public BenchmarkCommand(Definition definition) {
+                super(definition);
+            }
+
+            @Override
+            protected Boolean run() {
+                return true;
+            }
+
+        }
+
         /**
          * Failed execution - fallback implementation throws exception.
          */
@@ -4484,6 +8265,60 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
             }
         }
 
+        /**
+         * Command using VIRTUAL_THREAD isolation that records the thread it executed on and whether it was interrupted.
+         */
+        private static class VirtualThreadTestCommand extends TestHystrixCommand<Boolean> {
+
+            private final long sleepTime;
+            private volatile Thread executionThread;
+            private volatile boolean wasInterrupted = false;
+
+            private VirtualThreadTestCommand(long sleepTime, int timeout) {
+                super(testPropsBuilder().setCommandPropertiesDefaults(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                        .withExecutionIsolationStrategy(ExecutionIsolationStrategy.VIRTUAL_THREAD).withExecutionIsolationThreadTimeoutInMilliseconds(timeout)));
+                this.sleepTime = sleepTime;
+            }
+
+            @Override
+            protected Boolean run() {
+                executionThread = Thread.currentThread();
+                try {
+                    Thread.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    wasInterrupted = true;
+                }
+                return true;
+            }
+
+        }
+
+        /**
+         * HystrixObserver that records what it received and on which thread.
+         */
+        private static class TestObserver<T> implements HystrixObserver<T> {
+
+            final CountDownLatch completed = new CountDownLatch(1);
+            final AtomicReference<T> response = new AtomicReference<T>();
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+            final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+
+            @Override
+            public void onCompleted(T r) {
+                response.set(r);
+                thread.set(Thread.currentThread());
+                completed.countDown();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                error.set(e);
+                thread.set(Thread.currentThread());
+                completed.countDown();
+            }
+
+        }
+
         /**
          * Threadpool with 1 thread, queue of size 1
          */
@@ -4523,6 +8358,21 @@ public abstract class HystrixCommand<R> implements HystrixExecutable<R> {
                 return queue.size() < rejectionQueueSizeThreshold;
             }
 
+            @Override
+            public boolean isQueueSpaceAvailable(ExecutionPriority priority) {
+                return isQueueSpaceAvailable();
+            }
+
+            @Override
+            public boolean markQueueWait(int queueWaitTimeInMilliseconds) {
+                return true;
+            }
+
+            @Override
+            public boolean purgeQueuedTask(Runnable task) {
+                return pool.remove(task);
+            }
+
         }
 
         /**
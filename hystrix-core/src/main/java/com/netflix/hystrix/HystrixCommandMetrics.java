@@ -99,6 +99,15 @@ public class HystrixCommandMetrics {
     private final HystrixRollingPercentile percentileTotal;
     private final HystrixCommandKey key;
     private final AtomicInteger executionSemaphorePermitsInUse = new AtomicInteger();
+    /* THREAD isolated executions queued or executing (for the adaptive concurrency limit) */
+    private final AtomicInteger threadExecutionsInFlight = new AtomicInteger();
+    /* the adaptive concurrency limit (-1 until first used) */
+    private volatile double concurrencyLimit = -1;
+    private final AtomicLong lastConcurrencyLimitUpdate = new AtomicLong();
+    /* the minimum execution latency the adaptive concurrency limit compares against, kept beyond the rolling percentile window (-1 until first used) */
+    private volatile double concurrencyLimitMinLatency = -1;
+    /* how far the minimum latency moves up towards the minimum of the rolling percentile window on each update of the adaptive concurrency limit */
+    private static final double CONCURRENCY_LIMIT_MIN_LATENCY_DECAY = 0.002;
     private final HystrixEventNotifier eventNotifier;
 
     /* package */HystrixCommandMetrics(HystrixCommandKey key, HystrixCommandGroupKey commandGroup, HystrixThreadPoolKey threadPoolKey, HystrixCommandProperties properties, HystrixEventNotifier eventNotifier) {
@@ -208,6 +217,94 @@ public class HystrixCommandMetrics {
         return executionSemaphorePermitsInUse.get();
     }
 
+    /**
+     * The current adaptive limit of concurrent executions (see {@link HystrixCommandProperties#executionAdaptiveConcurrencyLimitEnabled()}).
+     * 
+     * @return int limit or -1 if the adaptive concurrency limit has not been used
+     */
+    public int getCurrentConcurrencyLimit() {
+        double limit = concurrencyLimit;
+        return limit < 0 ? -1 : (int) limit;
+    }
+
+    /**
+     * Retrieve the adaptive concurrency limit, adjusting it at most once per {@link HystrixCommandProperties#metricsHealthSnapshotIntervalInMilliseconds()}.
+     * <p>
+     * The limit is multiplied by the gradient between the minimum and the mean execution latency (clamped to [0.5, 1.0]) and the square root of the limit is added to allow for some queueing
+     * (as in the TCP Vegas and gradient congestion control algorithms). The result is smoothed and bounded by {@link HystrixCommandProperties#executionAdaptiveConcurrencyLimitMinimum()} and the
+     * given maximum.
+     * <p>
+     * The minimum latency is not the minimum of the rolling percentile window, which under sustained degradation rises to the degraded latency once the window rolls over and lets the limit
+     * grow back. Instead it follows a lower minimum immediately and a higher one only slowly (reaching most of the way after about a thousand updates) so that a lasting change of the
+     * baseline, such as a slower backend, is eventually accepted without a degradation being mistaken for one.
+     * 
+     * @param maxConcurrency
+     *            the static limit (semaphore permits or thread-pool capacity)
+     * @param inFlight
+     *            number of executions currently holding a permit
+     * @return int limit
+     */
+    /* package */int getConcurrencyLimit(int maxConcurrency, int inFlight) {
+        double limit = concurrencyLimit;
+        if (limit < 0) {
+            // start permissive and only shrink once latency shows queueing
+            limit = maxConcurrency;
+            concurrencyLimit = limit;
+        }
+        long lastUpdate = lastConcurrencyLimitUpdate.get();
+        long currentTime = System.currentTimeMillis();
+        if (currentTime - lastUpdate >= properties.metricsHealthSnapshotIntervalInMilliseconds().get() && lastConcurrencyLimitUpdate.compareAndSet(lastUpdate, currentTime)) {
+            // only the thread that won setting the update time adjusts the limit
+            limit = computeConcurrencyLimit(limit, maxConcurrency, inFlight);
+            concurrencyLimit = limit;
+        }
+        return (int) limit;
+    }
+
+    private double computeConcurrencyLimit(double limit, int maxConcurrency, int inFlight) {
+        // latencies are in milliseconds so sub-millisecond executions are treated as 1ms
+        double minLatency = updateConcurrencyLimitMinLatency(Math.max(1, getExecutionTimePercentile(0)));
+        int meanLatency = Math.max(1, getExecutionTimeMean());
+        double gradient = Math.max(0.5, Math.min(1.0, (double) minLatency / meanLatency));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        if (newLimit > limit && inFlight * 2 < limit) {
+            // the limit isn't being used so there's no evidence it can grow
+            return limit;
+        }
+        // smooth the change so a single noisy snapshot doesn't swing the limit
+        newLimit = limit * 0.8 + newLimit * 0.2;
+        return Math.max(properties.executionAdaptiveConcurrencyLimitMinimum().get(), Math.min(maxConcurrency, newLimit));
+    }
+
+    /**
+     * Only invoked by the thread updating the adaptive concurrency limit.
+     */
+    private double updateConcurrencyLimitMinLatency(int windowMinLatency) {
+        double minLatency = concurrencyLimitMinLatency;
+        if (minLatency < 0 || windowMinLatency < minLatency) {
+            minLatency = windowMinLatency;
+        } else {
+            minLatency += (windowMinLatency - minLatency) * CONCURRENCY_LIMIT_MIN_LATENCY_DECAY;
+        }
+        concurrencyLimitMinLatency = minLatency;
+        return minLatency;
+    }
+
+    /**
+     * Number of THREAD isolated executions queued or executing.
+     */
+    /* package */int getThreadExecutionsInFlight() {
+        return threadExecutionsInFlight.get();
+    }
+
+    /* package */int incrementThreadExecutionsInFlight() {
+        return threadExecutionsInFlight.incrementAndGet();
+    }
+
+    /* package */void decrementThreadExecutionsInFlight() {
+        threadExecutionsInFlight.decrementAndGet();
+    }
+
     /**
      * When a {@link HystrixCommand} successfully completes it will call this method to report its success along with how long the execution took.
      * 
@@ -272,6 +369,81 @@ public class HystrixCommandMetrics {
         executionSemaphorePermitsInUse.set(numberOfPermitsUsed);
     }
 
+    /**
+     * When a thread acquired an execution semaphore permit after waiting for it.
+     * 
+     * @param waitTimeInMicroseconds
+     */
+    /* package */void markExecutionSemaphoreWaited(long waitTimeInMicroseconds) {
+        counter.increment(HystrixRollingNumberEvent.SEMAPHORE_WAITED);
+        counter.add(HystrixRollingNumberEvent.SEMAPHORE_WAIT_TIME, waitTimeInMicroseconds);
+        counter.updateRollingMax(HystrixRollingNumberEvent.SEMAPHORE_WAIT_TIME_MAX, waitTimeInMicroseconds);
+    }
+
+    /**
+     * When a thread was rejected from waiting for an execution semaphore permit (the wait queue was full or the wait timed-out).
+     * <p>
+     * This is in addition to {@link #markSemaphoreRejection()}.
+     */
+    /* package */void markExecutionSemaphoreWaitQueueRejection() {
+        counter.increment(HystrixRollingNumberEvent.SEMAPHORE_WAIT_QUEUE_REJECTED);
+    }
+
+    /**
+     * Mean time (in microseconds) threads waited for an execution semaphore permit in the rolling statistical window (only including those that waited).
+     * 
+     * @return long time in microseconds
+     */
+    public long getExecutionSemaphoreWaitTimeMean() {
+        long waited = counter.getRollingSum(HystrixRollingNumberEvent.SEMAPHORE_WAITED);
+        return waited == 0 ? 0 : counter.getRollingSum(HystrixRollingNumberEvent.SEMAPHORE_WAIT_TIME) / waited;
+    }
+
+    /**
+     * Maximum time (in microseconds) a thread waited for an execution semaphore permit in the rolling statistical window.
+     * 
+     * @return long time in microseconds
+     */
+    public long getExecutionSemaphoreWaitTimeMax() {
+        return counter.getRollingMaxValue(HystrixRollingNumberEvent.SEMAPHORE_WAIT_TIME_MAX);
+    }
+
+    /**
+     * When a request shuts down with the size its request cache reached (see {@link HystrixCommandProperties#requestCacheMaxEntries()}).
+     * 
+     * @param entries
+     *            number of entries in the request cache
+     * @param sizeInBytes
+     *            estimated size of the entries in the request cache
+     * @param evictions
+     *            number of entries evicted from the request cache during the request
+     */
+    /* package */void markRequestCacheShutdown(int entries, long sizeInBytes, long evictions) {
+        counter.updateRollingMax(HystrixRollingNumberEvent.REQUEST_CACHE_ENTRIES_MAX, entries);
+        counter.updateRollingMax(HystrixRollingNumberEvent.REQUEST_CACHE_SIZE_IN_BYTES_MAX, sizeInBytes);
+        if (evictions > 0) {
+            counter.add(HystrixRollingNumberEvent.REQUEST_CACHE_EVICTED, evictions);
+        }
+    }
+
+    /**
+     * Maximum number of entries in the request cache of a request that shut down in the rolling statistical window.
+     * 
+     * @return long number of entries
+     */
+    public long getRequestCacheEntriesMax() {
+        return counter.getRollingMaxValue(HystrixRollingNumberEvent.REQUEST_CACHE_ENTRIES_MAX);
+    }
+
+    /**
+     * Maximum estimated size in bytes of the request cache of a request that shut down in the rolling statistical window.
+     * 
+     * @return long size in bytes
+     */
+    public long getRequestCacheSizeInBytesMax() {
+        return counter.getRollingMaxValue(HystrixRollingNumberEvent.REQUEST_CACHE_SIZE_IN_BYTES_MAX);
+    }
+
     /**
      * When a {@link HystrixCommand} returns a Fallback successfully.
      */
@@ -324,6 +496,97 @@ public class HystrixCommandMetrics {
         counter.increment(HystrixRollingNumberEvent.RESPONSE_FROM_CACHE);
     }
 
+    /**
+     * When an execution joins an identical execution already in flight in another request instead of executing (see
+     * {@link HystrixCommandProperties#executionSingleFlightEnabled()}).
+     */
+    /* package */void markCoalesced() {
+        eventNotifier.markEvent(HystrixEventType.COALESCED, key);
+        counter.increment(HystrixRollingNumberEvent.COALESCED);
+    }
+
+    /**
+     * When an execution is not executed since its cache key failed recently and the fallback is returned instead (see {@link HystrixCommandProperties#negativeCacheEnabled()}).
+     */
+    /* package */void markNegativeCacheHit() {
+        eventNotifier.markEvent(HystrixEventType.NEGATIVE_CACHE_HIT, key);
+        counter.increment(HystrixRollingNumberEvent.NEGATIVE_CACHE_HIT);
+    }
+
+    /**
+     * When the last known good response is returned instead of the fallback (see {@link HystrixCommandProperties#fallbackLastKnownGoodEnabled()}).
+     */
+    /* package */void markLastKnownGoodHit() {
+        eventNotifier.markEvent(HystrixEventType.LAST_KNOWN_GOOD, key);
+        counter.increment(HystrixRollingNumberEvent.LAST_KNOWN_GOOD_HIT);
+    }
+
+    /**
+     * When there is no last known good response (or it expired) so the fallback is used instead.
+     */
+    /* package */void markLastKnownGoodMiss() {
+        counter.increment(HystrixRollingNumberEvent.LAST_KNOWN_GOOD_MISS);
+    }
+
+    /**
+     * When a hedged execution of {@link HystrixCommand#run()} is issued because the first execution exceeded {@link HystrixCommandProperties#executionHedgingPercentile()}.
+     */
+    /* package */void markHedgeIssued() {
+        eventNotifier.markEvent(HystrixEventType.HEDGE_ISSUED, key);
+        counter.increment(HystrixRollingNumberEvent.HEDGE_ISSUED);
+    }
+
+    /**
+     * When a hedged execution completes successfully before the first execution and its response is used.
+     */
+    /* package */void markHedgeWon() {
+        eventNotifier.markEvent(HystrixEventType.HEDGE_WON, key);
+        counter.increment(HystrixRollingNumberEvent.HEDGE_WON);
+    }
+
+    /**
+     * Whether issuing another hedged execution stays within {@link HystrixCommandProperties#executionHedgingBudgetPercentage()} of the requests in the rolling statistical window.
+     * 
+     * @return boolean
+     */
+    /* package */boolean isHedgeBudgetAvailable() {
+        long hedgesIssued = counter.getRollingSum(HystrixRollingNumberEvent.HEDGE_ISSUED);
+        long totalRequests = getHealthCounts().getTotalRequests();
+        return (hedgesIssued + 1) * 100 <= totalRequests * properties.executionHedgingBudgetPercentage().get();
+    }
+
+    /**
+     * When a command is rejected without executing since the deadline of the request (or of the command it is nested within) has passed.
+     * <p>
+     * This is not counted in the {@link HealthCounts} as it is not a failure of the dependency.
+     */
+    /* package */void markDeadlineExceeded() {
+        eventNotifier.markEvent(HystrixEventType.DEADLINE_EXCEEDED, key);
+        counter.increment(HystrixRollingNumberEvent.DEADLINE_EXCEEDED);
+    }
+
+    /**
+     * When a failed execution is retried.
+     */
+    /* package */void markRetry() {
+        eventNotifier.markEvent(HystrixEventType.RETRY, key);
+        counter.increment(HystrixRollingNumberEvent.RETRY);
+    }
+
+    /**
+     * Whether another retry stays within the token-bucket retry budget: each success in the rolling statistical window earns
+     * {@link HystrixCommandProperties#executionRetryBudgetPercentage()}/100 of a token and each retry in the window spends one.
+     * <p>
+     * This is a best-effort check (concurrent retries can slightly overshoot the budget) as it's only intended to prevent retry storms.
+     * 
+     * @return boolean
+     */
+    /* package */boolean isRetryBudgetAvailable() {
+        long retries = counter.getRollingSum(HystrixRollingNumberEvent.RETRY);
+        long successes = counter.getRollingSum(HystrixRollingNumberEvent.SUCCESS);
+        return (retries + 1) * 100 <= successes * properties.executionRetryBudgetPercentage().get();
+    }
+
     /**
      * Execution time of {@link HystrixCommand#run()}.
      */
@@ -456,6 +719,116 @@ public class HystrixCommandMetrics {
 
         }
 
+        /**
+         * Test that the adaptive concurrency limit shrinks when latency rises above the minimum and grows back when it recovers.
+         */
+        @Test
+        public void testAdaptiveConcurrencyLimit() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter();
+            LatencyTestMetrics metrics = new LatencyTestMetrics(properties);
+            assertEquals(-1, metrics.getCurrentConcurrencyLimit());
+
+            // no queueing so the limit stays at the maximum
+            metrics.minLatency = 10;
+            metrics.meanLatency = 10;
+            assertEquals(20, metrics.getConcurrencyLimit(20, 20));
+            assertEquals(20, metrics.getCurrentConcurrencyLimit());
+
+            // latency doubles so the limit shrinks (down to where the queueing allowance balances it)
+            metrics.meanLatency = 20;
+            int previous = 20;
+            for (int i = 0; i < 100; i++) {
+                int limit = metrics.getConcurrencyLimit(20, 20);
+                assertTrue(limit <= previous);
+                previous = limit;
+            }
+            assertTrue("limit: " + previous, previous >= 3 && previous <= 5);
+
+            // latency recovers but the limit isn't being used so it doesn't grow
+            metrics.meanLatency = 10;
+            assertEquals(previous, metrics.getConcurrencyLimit(20, 0));
+
+            // and grows back to the maximum once used
+            for (int i = 0; i < 100; i++) {
+                metrics.getConcurrencyLimit(20, metrics.getCurrentConcurrencyLimit());
+            }
+            assertEquals(20, metrics.getCurrentConcurrencyLimit());
+        }
+
+        /**
+         * Test that the adaptive concurrency limit stays reduced while latency stays high for longer than the rolling percentile window (so its minimum is the degraded latency too).
+         */
+        @Test
+        public void testAdaptiveConcurrencyLimitUnderSustainedDegradation() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter();
+            LatencyTestMetrics metrics = new LatencyTestMetrics(properties);
+            metrics.minLatency = 10;
+            metrics.meanLatency = 10;
+            assertEquals(20, metrics.getConcurrencyLimit(20, 20));
+
+            // latency doubles but the window still contains the earlier minimum
+            metrics.meanLatency = 20;
+            for (int i = 0; i < 50; i++) {
+                metrics.getConcurrencyLimit(20, 20);
+            }
+            int reduced = metrics.getCurrentConcurrencyLimit();
+            assertTrue("limit: " + reduced, reduced < 10);
+
+            // the window rolled over so it only contains degraded latencies
+            metrics.minLatency = 20;
+            for (int i = 0; i < 200; i++) {
+                metrics.getConcurrencyLimit(20, 20);
+            }
+            assertTrue("limit: " + metrics.getCurrentConcurrencyLimit(), metrics.getCurrentConcurrencyLimit() < 10);
+
+            // latency recovers so the limit grows back
+            metrics.meanLatency = 10;
+            metrics.minLatency = 10;
+            for (int i = 0; i < 100; i++) {
+                metrics.getConcurrencyLimit(20, metrics.getCurrentConcurrencyLimit());
+            }
+            assertEquals(20, metrics.getCurrentConcurrencyLimit());
+        }
+
+        /**
+         * Test that the adaptive concurrency limit doesn't go below the configured minimum.
+         */
+        @Test
+        public void testAdaptiveConcurrencyLimitMinimum() {
+            HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter.getUnitTestPropertiesSetter().withExecutionAdaptiveConcurrencyLimitMinimum(10);
+            LatencyTestMetrics metrics = new LatencyTestMetrics(properties);
+            metrics.minLatency = 1;
+            metrics.meanLatency = 1000;
+            for (int i = 0; i < 100; i++) {
+                metrics.getConcurrencyLimit(50, 50);
+            }
+            assertEquals(10, metrics.getCurrentConcurrencyLimit());
+        }
+
+        /**
+         * Metrics with latencies set by the test rather than the rolling percentile buckets.
+         */
+        private static class LatencyTestMetrics extends HystrixCommandMetrics {
+
+            private volatile int minLatency = 0;
+            private volatile int meanLatency = 0;
+
+            LatencyTestMetrics(HystrixCommandProperties.Setter properties) {
+                super(CommandKeyForUnitTest.KEY_ONE, CommandGroupForUnitTest.OWNER_ONE, ThreadPoolKeyForUnitTest.THREAD_POOL_ONE, HystrixCommandProperties.Setter.asMock(properties), HystrixEventNotifierDefault.getInstance());
+            }
+
+            @Override
+            public int getExecutionTimePercentile(double percentile) {
+                return percentile <= 0 ? minLatency : meanLatency;
+            }
+
+            @Override
+            public int getExecutionTimeMean() {
+                return meanLatency;
+            }
+
+        }
+
         /**
          * Utility method for creating {@link HystrixCommandMetrics} for unit tests.
          */
@@ -28,6 +28,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.netflix.config.ConfigurationManager;
+import com.netflix.hystrix.strategy.concurrency.HystrixConcurrencyStrategy;
+import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
 import com.netflix.hystrix.strategy.properties.HystrixPropertiesChainedArchaiusProperty;
 import com.netflix.hystrix.strategy.properties.HystrixPropertiesChainedArchaiusProperty.DynamicStringProperty;
 import com.netflix.hystrix.strategy.properties.HystrixPropertiesStrategy;
@@ -64,6 +66,38 @@ public abstract class HystrixCommandProperties {
     private static final Integer default_metricsRollingPercentileWindowBuckets = 6; // default to 6 buckets (10 seconds each in 60 second window)
     private static final Integer default_metricsRollingPercentileBucketSize = 100; // default to 100 values max per bucket
     private static final Integer default_metricsHealthSnapshotIntervalInMilliseconds = 500; // default to 500ms as max frequency between allowing snapshots of health (error percentage etc)
+    private static final Boolean default_executionHedgingEnabled = false;
+    private static final Integer default_executionHedgingPercentile = 95;
+    private static final Integer default_executionHedgingBudgetPercentage = 10;
+    private static final Integer default_executionRetryMaxAttempts = 0;
+    private static final Integer default_executionRetryBackoffInMilliseconds = 10;
+    private static final Integer default_executionRetryBudgetPercentage = 20;
+    private static final Boolean default_executionAdaptiveConcurrencyLimitEnabled = false;
+    private static final Integer default_executionAdaptiveConcurrencyLimitMinimum = 1;
+    private static final Integer default_executionIsolationSemaphoreWaitQueueSize = 0;
+    private static final Integer default_executionIsolationSemaphoreWaitTimeoutInMicroseconds = 500;
+    private static final ExecutionPriority default_executionPriority = ExecutionPriority.NORMAL;
+    private static final Boolean default_fallbackIsolationThreadEnabled = false;
+    private static final Integer default_fallbackIsolationThreadTimeoutInMilliseconds = 1000;
+    private static final Boolean default_fallbackLastKnownGoodEnabled = false;
+    private static final Integer default_fallbackLastKnownGoodTimeToLiveInMilliseconds = 60000;
+    private static final Integer default_fallbackLastKnownGoodMaxEntries = 1000;
+    private static final Integer default_fallbackLastKnownGoodMaxSizeInBytes = 10485760;
+    private static final Boolean default_responseCacheEnabled = false;
+    private static final Integer default_responseCacheTimeToLiveInMilliseconds = 1000;
+    private static final Integer default_responseCacheMaxEntries = 1000;
+    private static final Integer default_responseCacheMaxSizeInBytes = 10485760;
+    private static final Integer default_responseCacheRefreshAheadPercentage = 80;
+    private static final Boolean default_executionSingleFlightEnabled = false;
+    private static final Integer default_requestCacheMaxEntries = 0; // no limit unless configured
+    private static final Integer default_requestCacheMaxSizeInBytes = 0;
+    private static final Boolean default_negativeCacheEnabled = false;
+    private static final Integer default_negativeCacheTimeToLiveInMilliseconds = 1000;
+    private static final Integer default_negativeCacheMaxEntries = 1000;
+    private static final Integer default_circuitBreakerHalfOpenMaxConcurrentProbes = 1;
+    private static final Integer default_circuitBreakerHalfOpenSuccessThreshold = 1;
+    private static final Integer default_circuitBreakerRampUpTimeInMilliseconds = 0;
+    private static final Integer default_circuitBreakerRampUpInitialPercentage = 10;
 
     private final HystrixCommandKey key;
     private final HystrixProperty<Integer> circuitBreakerRequestVolumeThreshold; // number of requests that must be made within a statisticalWindow before open/close decisions are made using stats
@@ -87,6 +121,38 @@ public abstract class HystrixCommandProperties {
     private final HystrixProperty<Integer> metricsHealthSnapshotIntervalInMilliseconds; // time between health snapshots
     private final HystrixProperty<Boolean> requestLogEnabled; // whether command request logging is enabled.
     private final HystrixProperty<Boolean> requestCacheEnabled; // Whether request caching is enabled.
+    private final HystrixProperty<Boolean> executionHedgingEnabled; // Whether a second (hedged) execution of run() is issued when the first is slow
+    private final HystrixProperty<Integer> executionHedgingPercentile; // percentile of execution time after which a hedged execution is issued
+    private final HystrixProperty<Integer> executionHedgingBudgetPercentage; // max % of requests in the rolling window that can issue a hedged execution
+    private final HystrixProperty<Integer> executionRetryMaxAttempts; // number of times a failed execution is retried before falling back
+    private final HystrixProperty<Integer> executionRetryBackoffInMilliseconds; // base backoff before a retry, doubled on each subsequent retry
+    private final HystrixProperty<Integer> executionRetryBudgetPercentage; // % of successful executions in the rolling window that may be retried
+    private final HystrixProperty<Boolean> executionAdaptiveConcurrencyLimitEnabled; // whether the permitted concurrency adapts to observed latency
+    private final HystrixProperty<Integer> executionAdaptiveConcurrencyLimitMinimum; // lower bound of the adaptive concurrency limit
+    private final HystrixProperty<Integer> executionIsolationSemaphoreWaitQueueSize; // number of threads that may wait for an execution semaphore permit
+    private final HystrixProperty<Integer> executionIsolationSemaphoreWaitTimeoutInMicroseconds; // max time to wait for an execution semaphore permit
+    private final HystrixProperty<ExecutionPriority> executionPriority; // priority of queued executions relative to other commands sharing the thread-pool
+    private final HystrixProperty<Boolean> fallbackIsolationThreadEnabled; // whether getFallback() executes on a separate thread-pool
+    private final HystrixProperty<Integer> fallbackIsolationThreadTimeoutInMilliseconds; // timeout for getFallback() when executed on a separate thread-pool
+    private final HystrixProperty<Boolean> fallbackLastKnownGoodEnabled; // whether the last successful response is served when short-circuited, rejected or timed-out
+    private final HystrixProperty<Integer> fallbackLastKnownGoodTimeToLiveInMilliseconds; // how long a last known good response is served
+    private final HystrixProperty<Integer> fallbackLastKnownGoodMaxEntries; // max number of last known good responses retained per command
+    private final HystrixProperty<Integer> fallbackLastKnownGoodMaxSizeInBytes; // max estimated size of last known good responses retained per command
+    private final HystrixProperty<Boolean> responseCacheEnabled; // whether responses are cached across requests
+    private final HystrixProperty<Integer> responseCacheTimeToLiveInMilliseconds; // how long a cached response is returned
+    private final HystrixProperty<Integer> responseCacheMaxEntries; // max number of cached responses per command
+    private final HystrixProperty<Integer> responseCacheMaxSizeInBytes; // max estimated size of cached responses per command
+    private final HystrixProperty<Integer> responseCacheRefreshAheadPercentage; // percentage of the time-to-live after which one execution refreshes a cached response
+    private final HystrixProperty<Boolean> executionSingleFlightEnabled; // Whether identical executions in flight are shared across requests
+    private final HystrixProperty<Integer> requestCacheMaxEntries; // Maximum number of request cache entries per request
+    private final HystrixProperty<Integer> requestCacheMaxSizeInBytes; // Maximum estimated size of request cache entries per request
+    private final HystrixProperty<Boolean> negativeCacheEnabled; // Whether failures are remembered per cache key
+    private final HystrixProperty<Integer> negativeCacheTimeToLiveInMilliseconds; // How long a failure is remembered per cache key
+    private final HystrixProperty<Integer> negativeCacheMaxEntries; // Maximum number of failed cache keys remembered
+    private final HystrixProperty<Integer> circuitBreakerHalfOpenMaxConcurrentProbes; // number of probe requests allowed in flight at once while the circuit is half-open
+    private final HystrixProperty<Integer> circuitBreakerHalfOpenSuccessThreshold; // number of successful probes required to close the circuit
+    private final HystrixProperty<Integer> circuitBreakerRampUpTimeInMilliseconds; // milliseconds over which admitted traffic ramps up after the circuit closes (0 = disabled)
+    private final HystrixProperty<Integer> circuitBreakerRampUpInitialPercentage; // percentage of traffic admitted at the start of the ramp-up
 
     /**
      * Isolation strategy to use when executing a {@link HystrixCommand}.
@@ -94,10 +160,25 @@ public abstract class HystrixCommandProperties {
      * <ul>
      * <li>THREAD: Execute the {@link HystrixCommand#run()} method on a separate thread and restrict concurrent executions using the thread-pool size.</li>
      * <li>SEMAPHORE: Execute the {@link HystrixCommand#run()} method on the calling thread and restrict concurrent executions using the semaphore permit count.</li>
+     * <li>VIRTUAL_THREAD: Execute the {@link HystrixCommand#run()} method on a separate virtual thread (if supported by the JVM) and restrict concurrent executions using the thread-pool size of a
+     * dedicated {@link HystrixThreadPool} (see {@link HystrixConcurrencyStrategy#getVirtualThreadPool}).</li>
      * </ul>
      */
     public static enum ExecutionIsolationStrategy {
-        THREAD, SEMAPHORE
+        THREAD, SEMAPHORE, VIRTUAL_THREAD
+    }
+
+    /**
+     * Priority of a {@link HystrixCommand} execution when queued on a {@link HystrixThreadPool}.
+     * <p>
+     * <ul>
+     * <li>HIGH: User-facing work that should be executed ahead of other queued work.</li>
+     * <li>NORMAL: Default priority.</li>
+     * <li>LOW: Background work that should only use capacity not needed by other work and is rejected first when the thread-pool is saturated.</li>
+     * </ul>
+     */
+    public static enum ExecutionPriority {
+        HIGH, NORMAL, LOW
     }
 
     protected HystrixCommandProperties(HystrixCommandKey key) {
@@ -131,6 +212,38 @@ public abstract class HystrixCommandProperties {
         this.metricsHealthSnapshotIntervalInMilliseconds = getProperty(propertyPrefix, key, "metrics.healthSnapshot.intervalInMilliseconds", builder.getMetricsHealthSnapshotIntervalInMilliseconds(), default_metricsHealthSnapshotIntervalInMilliseconds);
         this.requestCacheEnabled = getProperty(propertyPrefix, key, "requestCache.enabled", builder.getRequestCacheEnabled(), default_requestCacheEnabled);
         this.requestLogEnabled = getProperty(propertyPrefix, key, "requestLog.enabled", builder.getRequestLogEnabled(), default_requestLogEnabled);
+        this.executionHedgingEnabled = getProperty(propertyPrefix, key, "execution.hedging.enabled", builder.getExecutionHedgingEnabled(), default_executionHedgingEnabled);
+        this.executionHedgingPercentile = getProperty(propertyPrefix, key, "execution.hedging.percentile", builder.getExecutionHedgingPercentile(), default_executionHedgingPercentile);
+        this.executionHedgingBudgetPercentage = getProperty(propertyPrefix, key, "execution.hedging.budgetPercentage", builder.getExecutionHedgingBudgetPercentage(), default_executionHedgingBudgetPercentage);
+        this.executionRetryMaxAttempts = getProperty(propertyPrefix, key, "execution.retry.maxAttempts", builder.getExecutionRetryMaxAttempts(), default_executionRetryMaxAttempts);
+        this.executionRetryBackoffInMilliseconds = getProperty(propertyPrefix, key, "execution.retry.backoffInMilliseconds", builder.getExecutionRetryBackoffInMilliseconds(), default_executionRetryBackoffInMilliseconds);
+        this.executionRetryBudgetPercentage = getProperty(propertyPrefix, key, "execution.retry.budgetPercentage", builder.getExecutionRetryBudgetPercentage(), default_executionRetryBudgetPercentage);
+        this.executionAdaptiveConcurrencyLimitEnabled = getProperty(propertyPrefix, key, "execution.adaptiveConcurrencyLimit.enabled", builder.getExecutionAdaptiveConcurrencyLimitEnabled(), default_executionAdaptiveConcurrencyLimitEnabled);
+        this.executionAdaptiveConcurrencyLimitMinimum = getProperty(propertyPrefix, key, "execution.adaptiveConcurrencyLimit.minimum", builder.getExecutionAdaptiveConcurrencyLimitMinimum(), default_executionAdaptiveConcurrencyLimitMinimum);
+        this.executionIsolationSemaphoreWaitQueueSize = getProperty(propertyPrefix, key, "execution.isolation.semaphore.waitQueueSize", builder.getExecutionIsolationSemaphoreWaitQueueSize(), default_executionIsolationSemaphoreWaitQueueSize);
+        this.executionIsolationSemaphoreWaitTimeoutInMicroseconds = getProperty(propertyPrefix, key, "execution.isolation.semaphore.waitTimeoutInMicroseconds", builder.getExecutionIsolationSemaphoreWaitTimeoutInMicroseconds(), default_executionIsolationSemaphoreWaitTimeoutInMicroseconds);
+        this.executionPriority = getProperty(propertyPrefix, key, "execution.priority", builder.getExecutionPriority(), default_executionPriority);
+        this.fallbackIsolationThreadEnabled = getProperty(propertyPrefix, key, "fallback.isolation.thread.enabled", builder.getFallbackIsolationThreadEnabled(), default_fallbackIsolationThreadEnabled);
+        this.fallbackIsolationThreadTimeoutInMilliseconds = getProperty(propertyPrefix, key, "fallback.isolation.thread.timeoutInMilliseconds", builder.getFallbackIsolationThreadTimeoutInMilliseconds(), default_fallbackIsolationThreadTimeoutInMilliseconds);
+        this.fallbackLastKnownGoodEnabled = getProperty(propertyPrefix, key, "fallback.lastKnownGood.enabled", builder.getFallbackLastKnownGoodEnabled(), default_fallbackLastKnownGoodEnabled);
+        this.fallbackLastKnownGoodTimeToLiveInMilliseconds = getProperty(propertyPrefix, key, "fallback.lastKnownGood.timeToLiveInMilliseconds", builder.getFallbackLastKnownGoodTimeToLiveInMilliseconds(), default_fallbackLastKnownGoodTimeToLiveInMilliseconds);
+        this.fallbackLastKnownGoodMaxEntries = getProperty(propertyPrefix, key, "fallback.lastKnownGood.maxEntries", builder.getFallbackLastKnownGoodMaxEntries(), default_fallbackLastKnownGoodMaxEntries);
+        this.fallbackLastKnownGoodMaxSizeInBytes = getProperty(propertyPrefix, key, "fallback.lastKnownGood.maxSizeInBytes", builder.getFallbackLastKnownGoodMaxSizeInBytes(), default_fallbackLastKnownGoodMaxSizeInBytes);
+        this.responseCacheEnabled = getProperty(propertyPrefix, key, "responseCache.enabled", builder.getResponseCacheEnabled(), default_responseCacheEnabled);
+        this.responseCacheTimeToLiveInMilliseconds = getProperty(propertyPrefix, key, "responseCache.timeToLiveInMilliseconds", builder.getResponseCacheTimeToLiveInMilliseconds(), default_responseCacheTimeToLiveInMilliseconds);
+        this.responseCacheMaxEntries = getProperty(propertyPrefix, key, "responseCache.maxEntries", builder.getResponseCacheMaxEntries(), default_responseCacheMaxEntries);
+        this.responseCacheMaxSizeInBytes = getProperty(propertyPrefix, key, "responseCache.maxSizeInBytes", builder.getResponseCacheMaxSizeInBytes(), default_responseCacheMaxSizeInBytes);
+        this.responseCacheRefreshAheadPercentage = getProperty(propertyPrefix, key, "responseCache.refreshAheadPercentage", builder.getResponseCacheRefreshAheadPercentage(), default_responseCacheRefreshAheadPercentage);
+        this.executionSingleFlightEnabled = getProperty(propertyPrefix, key, "execution.singleFlight.enabled", builder.getExecutionSingleFlightEnabled(), default_executionSingleFlightEnabled);
+        this.requestCacheMaxEntries = getProperty(propertyPrefix, key, "requestCache.maxEntries", builder.getRequestCacheMaxEntries(), default_requestCacheMaxEntries);
+        this.requestCacheMaxSizeInBytes = getProperty(propertyPrefix, key, "requestCache.maxSizeInBytes", builder.getRequestCacheMaxSizeInBytes(), default_requestCacheMaxSizeInBytes);
+        this.negativeCacheEnabled = getProperty(propertyPrefix, key, "negativeCache.enabled", builder.getNegativeCacheEnabled(), default_negativeCacheEnabled);
+        this.negativeCacheTimeToLiveInMilliseconds = getProperty(propertyPrefix, key, "negativeCache.timeToLiveInMilliseconds", builder.getNegativeCacheTimeToLiveInMilliseconds(), default_negativeCacheTimeToLiveInMilliseconds);
+        this.negativeCacheMaxEntries = getProperty(propertyPrefix, key, "negativeCache.maxEntries", builder.getNegativeCacheMaxEntries(), default_negativeCacheMaxEntries);
+        this.circuitBreakerHalfOpenMaxConcurrentProbes = getProperty(propertyPrefix, key, "circuitBreaker.halfOpen.maxConcurrentProbes", builder.getCircuitBreakerHalfOpenMaxConcurrentProbes(), default_circuitBreakerHalfOpenMaxConcurrentProbes);
+        this.circuitBreakerHalfOpenSuccessThreshold = getProperty(propertyPrefix, key, "circuitBreaker.halfOpen.successThreshold", builder.getCircuitBreakerHalfOpenSuccessThreshold(), default_circuitBreakerHalfOpenSuccessThreshold);
+        this.circuitBreakerRampUpTimeInMilliseconds = getProperty(propertyPrefix, key, "circuitBreaker.rampUp.timeInMilliseconds", builder.getCircuitBreakerRampUpTimeInMilliseconds(), default_circuitBreakerRampUpTimeInMilliseconds);
+        this.circuitBreakerRampUpInitialPercentage = getProperty(propertyPrefix, key, "circuitBreaker.rampUp.initialPercentage", builder.getCircuitBreakerRampUpInitialPercentage(), default_circuitBreakerRampUpInitialPercentage);
 
         // threadpool doesn't have a global override, only instance level makes sense
         this.executionIsolationThreadPoolKeyOverride = asProperty(new DynamicStringProperty(propertyPrefix + ".command." + key.name() + ".threadPoolKeyOverride", null));
@@ -220,6 +333,10 @@ public abstract class HystrixCommandProperties {
      * If {@link ExecutionIsolationStrategy#THREAD} then it will be executed on a separate thread and concurrent requests limited by the number of threads in the thread-pool.
      * <p>
      * If {@link ExecutionIsolationStrategy#SEMAPHORE} then it will be executed on the calling thread and concurrent requests limited by the semaphore count.
+     * <p>
+     * If {@link ExecutionIsolationStrategy#VIRTUAL_THREAD} then it will be executed on a separate virtual thread and concurrent requests limited by the size of a thread-pool dedicated to virtual
+     * thread execution. This gives the same timeout and interrupt behavior as THREAD without holding a platform thread per concurrent request, which is preferable for IO-bound dependencies
+     * needing a high concurrency limit.
      * 
      * @return {@code HystrixProperty<Boolean>}
      */
@@ -230,7 +347,7 @@ public abstract class HystrixCommandProperties {
     /**
      * Whether the execution thread should attempt an interrupt (using {@link Future#cancel}) when a thread times out.
      * <p>
-     * Applicable only when {@link #executionIsolationStrategy()} == THREAD.
+     * Applicable only when {@link #executionIsolationStrategy()} == THREAD or VIRTUAL_THREAD.
      * 
      * @return {@code HystrixProperty<Boolean>}
      */
@@ -256,7 +373,7 @@ public abstract class HystrixCommandProperties {
      * <p>
      * If {@link #executionIsolationThreadInterruptOnTimeout} == true the executing thread will be interrupted.
      * <p>
-     * Applicable only when {@link #executionIsolationStrategy()} == THREAD.
+     * Applicable only when {@link #executionIsolationStrategy()} == THREAD or VIRTUAL_THREAD.
      * 
      * @return {@code HystrixProperty<Integer>}
      */
@@ -356,6 +473,352 @@ public abstract class HystrixCommandProperties {
         return requestLogEnabled;
     }
 
+    /**
+     * Whether a second (hedged) execution of {@link HystrixCommand#run()} should be issued when the first has not completed within {@link #executionHedgingPercentile()} of recent execution times. Whichever completes first is used and the other is cancelled.
+     * <p>
+     * Only applicable to {@link ExecutionIsolationStrategy#THREAD} and {@link ExecutionIsolationStrategy#VIRTUAL_THREAD} isolation and only safe to enable for idempotent commands as <code>run()</code> can be invoked twice.
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> executionHedgingEnabled() {
+        return executionHedgingEnabled;
+    }
+
+    /**
+     * Percentile of {@link HystrixCommandMetrics#getExecutionTimePercentile(double)} that an execution must exceed before a hedged execution is issued when {@link #executionHedgingEnabled()} is true.
+     * <p>
+     * No hedge is issued until execution times have been recorded (requires {@link #metricsRollingPercentileEnabled()}) or if the percentile is at or beyond the timeout.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> executionHedgingPercentile() {
+        return executionHedgingPercentile;
+    }
+
+    /**
+     * Maximum percentage of requests in the rolling statistical window that may issue a hedged execution when {@link #executionHedgingEnabled()} is true.
+     * <p>
+     * This bounds the extra load hedging puts on the dependency (10 means at most 10% more executions).
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> executionHedgingBudgetPercentage() {
+        return executionHedgingBudgetPercentage;
+    }
+
+    /**
+     * Number of times a failed execution of {@link HystrixCommand#run()} is retried before the failure is reported and {@link HystrixCommand#getFallback()} is used.
+     * <p>
+     * A retry is not performed if the command timed-out, the exception is a {@link com.netflix.hystrix.exception.HystrixBadRequestException} or the retry budget (see {@link #executionRetryBudgetPercentage()}) is exhausted.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> executionRetryMaxAttempts() {
+        return executionRetryMaxAttempts;
+    }
+
+    /**
+     * Base time to wait before retrying a failed execution. The backoff doubles on each subsequent retry and a random (full) jitter is applied so retries from many threads don't synchronize.
+     * <p>
+     * The backoff counts towards the execution timeout.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> executionRetryBackoffInMilliseconds() {
+        return executionRetryBackoffInMilliseconds;
+    }
+
+    /**
+     * Cap on retries within the rolling statistical window as a percentage of successful executions in the same window.
+     * <p>
+     * Each success earns a fraction of a retry token so a healthy dependency absorbs transient errors while a struggling one (with few successes) is not amplified by a retry storm.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> executionRetryBudgetPercentage() {
+        return executionRetryBudgetPercentage;
+    }
+
+    /**
+     * Whether the number of concurrent executions permitted adapts to the observed latency of {@link HystrixCommand#run()} rather than being only the static {@link #executionIsolationSemaphoreMaxConcurrentRequests()} (SEMAPHORE) or the thread-pool size and queue (THREAD).
+     * <p>
+     * The limit is adjusted by the gradient between the minimum and the mean latency in the rolling percentile window: when latency rises (queueing is occurring somewhere) the limit shrinks and executions beyond it are rejected early, when latency is stable the limit grows back towards the static maximum.
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> executionAdaptiveConcurrencyLimitEnabled() {
+        return executionAdaptiveConcurrencyLimitEnabled;
+    }
+
+    /**
+     * Lower bound of the adaptive concurrency limit (see {@link #executionAdaptiveConcurrencyLimitEnabled()}).
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> executionAdaptiveConcurrencyLimitMinimum() {
+        return executionAdaptiveConcurrencyLimitMinimum;
+    }
+
+    /**
+     * Number of threads that may wait (rather than be rejected immediately) for an execution permit when all of {@link #executionIsolationSemaphoreMaxConcurrentRequests()} are in use.
+     * <p>
+     * This smooths short bursts of cheap SEMAPHORE isolated commands. Waiting threads are rejected after {@link #executionIsolationSemaphoreWaitTimeoutInMicroseconds()}. The default of 0 rejects immediately.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> executionIsolationSemaphoreWaitQueueSize() {
+        return executionIsolationSemaphoreWaitQueueSize;
+    }
+
+    /**
+     * Maximum time a thread waits for an execution semaphore permit (see {@link #executionIsolationSemaphoreWaitQueueSize()}) before being rejected.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> executionIsolationSemaphoreWaitTimeoutInMicroseconds() {
+        return executionIsolationSemaphoreWaitTimeoutInMicroseconds;
+    }
+
+    /**
+     * Priority of a {@link HystrixCommand} execution relative to other commands sharing its {@link HystrixThreadPool}. A priority set on the {@link HystrixRequestContext} of the calling
+     * thread takes precedence.
+     * <p>
+     * If {@link HystrixThreadPoolProperties#queuePriorityLanesEnabled()} then higher priority executions are taken off the queue first. Regardless of that, {@link ExecutionPriority#LOW}
+     * executions are rejected at a lower queue size (see {@link HystrixThreadPoolProperties#queueSizeRejectionThresholdLowPriorityPercentage()}) so background work is shed first when the
+     * thread-pool is saturated.
+     * 
+     * @return {@code HystrixProperty<ExecutionPriority>}
+     */
+    public HystrixProperty<ExecutionPriority> executionPriority() {
+        return executionPriority;
+    }
+
+    /**
+     * Whether {@link HystrixCommand#getFallback()} is executed on a separate thread-pool (keyed by the {@link HystrixThreadPoolKey} suffixed with <code>Fallback</code>)
+     * rather than on the thread that encountered the failure.
+     * <p>
+     * The caller then waits at most {@link #fallbackIsolationThreadTimeoutInMilliseconds()} for the fallback so a latent fallback can not extend its latency beyond that and fallback
+     * concurrency is isolated from execution concurrency. The fallback semaphore still applies.
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> fallbackIsolationThreadEnabled() {
+        return fallbackIsolationThreadEnabled;
+    }
+
+    /**
+     * Time in milliseconds after which a {@link HystrixCommand#getFallback()} executing on a separate thread-pool (see {@link #fallbackIsolationThreadEnabled()}) is interrupted and
+     * treated as a fallback failure.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> fallbackIsolationThreadTimeoutInMilliseconds() {
+        return fallbackIsolationThreadTimeoutInMilliseconds;
+    }
+
+    /**
+     * Whether the last successful response for the same {@link HystrixCommand#getCacheKey()} is retained and returned instead of {@link HystrixCommand#getFallback()} when the command is
+     * short-circuited, rejected or times out so an outage degrades to stale data.
+     * <p>
+     * Failures of <code>run()</code> still use <code>getFallback()</code>. Responses of commands that do not implement <code>getCacheKey()</code> are not retained.
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> fallbackLastKnownGoodEnabled() {
+        return fallbackLastKnownGoodEnabled;
+    }
+
+    /**
+     * Time in milliseconds after it was retained that a last known good response (see {@link #fallbackLastKnownGoodEnabled()}) is no longer served.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> fallbackLastKnownGoodTimeToLiveInMilliseconds() {
+        return fallbackLastKnownGoodTimeToLiveInMilliseconds;
+    }
+
+    /**
+     * Maximum number of last known good responses (see {@link #fallbackLastKnownGoodEnabled()}) retained per {@link HystrixCommandKey}, the oldest are evicted first.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> fallbackLastKnownGoodMaxEntries() {
+        return fallbackLastKnownGoodMaxEntries;
+    }
+
+    /**
+     * Maximum total size in bytes (as estimated by {@link HystrixCommand#getResponseSizeInBytes(Object)}) of the last known good responses (see {@link #fallbackLastKnownGoodEnabled()})
+     * retained per {@link HystrixCommandKey}, the oldest are evicted first.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> fallbackLastKnownGoodMaxSizeInBytes() {
+        return fallbackLastKnownGoodMaxSizeInBytes;
+    }
+
+    /**
+     * Whether successful responses are cached across requests (application-scoped rather than per {@link HystrixRequestContext} like the request cache) by {@link HystrixCommand#getCacheKey()}
+     * and returned without executing for {@link #responseCacheTimeToLiveInMilliseconds()}.
+     * <p>
+     * This is consulted before the request cache. Commands that do not implement <code>getCacheKey()</code> are not cached.
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> responseCacheEnabled() {
+        return responseCacheEnabled;
+    }
+
+    /**
+     * Time in milliseconds after it was cached that a response (see {@link #responseCacheEnabled()}) is no longer returned.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> responseCacheTimeToLiveInMilliseconds() {
+        return responseCacheTimeToLiveInMilliseconds;
+    }
+
+    /**
+     * Maximum number of responses (see {@link #responseCacheEnabled()}) cached per {@link HystrixCommandKey}, the oldest are evicted first.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> responseCacheMaxEntries() {
+        return responseCacheMaxEntries;
+    }
+
+    /**
+     * Maximum total size in bytes (as estimated by {@link HystrixCommand#getResponseSizeInBytes(Object)}) of the responses (see {@link #responseCacheEnabled()}) cached per
+     * {@link HystrixCommandKey}, the oldest are evicted first.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> responseCacheMaxSizeInBytes() {
+        return responseCacheMaxSizeInBytes;
+    }
+
+    /**
+     * Percentage of {@link #responseCacheTimeToLiveInMilliseconds()} after which a cached response is refreshed: the next execution executes (and caches its response) while all
+     * others continue to receive the cached response so a hot key never expires for everyone at once.
+     * <p>
+     * 0 disables refreshing ahead of expiry.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> responseCacheRefreshAheadPercentage() {
+        return responseCacheRefreshAheadPercentage;
+    }
+
+    /**
+     * Whether concurrent executions with the same {@link HystrixCommand#getCacheKey()} share a single execution of <code>run()</code> and its response across all
+     * requests (application-wide rather than per {@link HystrixRequestContext} like the request cache).
+     * <p>
+     * Executions that join one already in flight are counted as {@link HystrixEventType#COALESCED} rather than as executions and wait no longer than their own timeout (or deadline) for it.
+     * <p>
+     * Only applies to executions isolated in a thread (not {@link ExecutionIsolationStrategy#SEMAPHORE}).
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> executionSingleFlightEnabled() {
+        return executionSingleFlightEnabled;
+    }
+
+    /**
+     * Maximum number of entries in the request cache (see {@link #requestCacheEnabled()}) of this {@link HystrixCommandKey} per request, the
+     * oldest are evicted first (and executed again if requested again) so memory per request is bounded.
+     * <p>
+     * 0 or less for no limit (the default).
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> requestCacheMaxEntries() {
+        return requestCacheMaxEntries;
+    }
+
+    /**
+     * Maximum total size in bytes (as estimated by {@link HystrixCommand#getResponseSizeInBytes} for the responses plus the keys and bookkeeping) of the request cache
+     * (see {@link #requestCacheEnabled()}) of this {@link HystrixCommandKey} per request, the oldest are evicted first.
+     * <p>
+     * 0 or less for no limit.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> requestCacheMaxSizeInBytes() {
+        return requestCacheMaxSizeInBytes;
+    }
+
+    /**
+     * Whether a failure of <code>run()</code> (not a timeout or rejection) is remembered by {@link HystrixCommand#getCacheKey()} for
+     * {@link #negativeCacheTimeToLiveInMilliseconds()} during which executions with the same cache key do not execute and instead immediately return the fallback (as
+     * {@link HystrixEventType#NEGATIVE_CACHE_HIT}).
+     * <p>
+     * This reduces load on a dependency that is failing for specific keys without those executions counting towards tripping the circuit.
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> negativeCacheEnabled() {
+        return negativeCacheEnabled;
+    }
+
+    /**
+     * Time in milliseconds after a failure during which executions with the same cache key return the fallback (see {@link #negativeCacheEnabled()}).
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> negativeCacheTimeToLiveInMilliseconds() {
+        return negativeCacheTimeToLiveInMilliseconds;
+    }
+
+    /**
+     * Maximum number of cache keys that failed remembered per {@link HystrixCommandKey} (see {@link #negativeCacheEnabled()}), the oldest are evicted first.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> negativeCacheMaxEntries() {
+        return negativeCacheMaxEntries;
+    }
+
+    /**
+     * Number of probe requests allowed in flight at the same time once {@link #circuitBreakerSleepWindowInMilliseconds()} has elapsed and the circuit is half-open.
+     * <p>
+     * Further requests are short-circuited until a probe completes. A failed or timed-out probe sends the circuit back to sleep until the next sleep window.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> circuitBreakerHalfOpenMaxConcurrentProbes() {
+        return circuitBreakerHalfOpenMaxConcurrentProbes;
+    }
+
+    /**
+     * Number of successful probe requests required while the circuit is half-open before it is closed again.
+     * <p>
+     * A failed or timed-out probe resets the count.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> circuitBreakerHalfOpenSuccessThreshold() {
+        return circuitBreakerHalfOpenSuccessThreshold;
+    }
+
+    /**
+     * Time in milliseconds after the circuit closes during which admitted traffic increases linearly from {@link #circuitBreakerRampUpInitialPercentage()} to 100% instead of returning to full traffic at once.
+     * <p>
+     * Requests not admitted during the ramp-up are short-circuited. A value of 0 disables the ramp-up.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> circuitBreakerRampUpTimeInMilliseconds() {
+        return circuitBreakerRampUpTimeInMilliseconds;
+    }
+
+    /**
+     * Percentage of traffic admitted immediately after the circuit closes when {@link #circuitBreakerRampUpTimeInMilliseconds()} is enabled.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> circuitBreakerRampUpInitialPercentage() {
+        return circuitBreakerRampUpInitialPercentage;
+    }
+
     private static HystrixProperty<Boolean> getProperty(String propertyPrefix, HystrixCommandKey key, String instanceProperty, Boolean builderOverrideValue, Boolean defaultValue) {
         return asProperty(new HystrixPropertiesChainedArchaiusProperty.BooleanProperty(
                 new HystrixPropertiesChainedArchaiusProperty.DynamicBooleanProperty(propertyPrefix + ".command." + key.name() + "." + instanceProperty, builderOverrideValue),
@@ -377,19 +840,25 @@ public abstract class HystrixCommandProperties {
 
     @SuppressWarnings("unused")
     private static HystrixProperty<ExecutionIsolationStrategy> getProperty(final String propertyPrefix, final HystrixCommandKey key, final String instanceProperty, final ExecutionIsolationStrategy builderOverrideValue, final ExecutionIsolationStrategy defaultValue) {
-        return new ExecutionIsolationStrategyHystrixProperty(builderOverrideValue, key, propertyPrefix, defaultValue, instanceProperty);
+        return new EnumHystrixProperty<ExecutionIsolationStrategy>(ExecutionIsolationStrategy.class, builderOverrideValue, key, propertyPrefix, defaultValue, instanceProperty);
+
+    }
 
+    private static HystrixProperty<ExecutionPriority> getProperty(final String propertyPrefix, final HystrixCommandKey key, final String instanceProperty, final ExecutionPriority builderOverrideValue, final ExecutionPriority defaultValue) {
+        return new EnumHystrixProperty<ExecutionPriority>(ExecutionPriority.class, builderOverrideValue, key, propertyPrefix, defaultValue, instanceProperty);
     }
 
     /**
-     * HystrixProperty that converts a String to ExecutionIsolationStrategy so we remain TypeSafe.
+     * HystrixProperty that converts a String to an enum (such as ExecutionIsolationStrategy) so we remain TypeSafe.
      */
-    private static final class ExecutionIsolationStrategyHystrixProperty implements HystrixProperty<ExecutionIsolationStrategy> {
+    private static final class EnumHystrixProperty<E extends Enum<E>> implements HystrixProperty<E> {
+        private final Class<E> type;
         private final HystrixPropertiesChainedArchaiusProperty.StringProperty property;
-        private volatile ExecutionIsolationStrategy value;
-        private final ExecutionIsolationStrategy defaultValue;
+        private volatile E value;
+        private final E defaultValue;
 
-        private ExecutionIsolationStrategyHystrixProperty(ExecutionIsolationStrategy builderOverrideValue, HystrixCommandKey key, String propertyPrefix, ExecutionIsolationStrategy defaultValue, String instanceProperty) {
+        private EnumHystrixProperty(Class<E> type, E builderOverrideValue, HystrixCommandKey key, String propertyPrefix, E defaultValue, String instanceProperty) {
+            this.type = type;
             this.defaultValue = defaultValue;
             String overrideValue = null;
             if (builderOverrideValue != null) {
@@ -415,15 +884,15 @@ public abstract class HystrixCommandProperties {
         }
 
         @Override
-        public ExecutionIsolationStrategy get() {
+        public E get() {
             return value;
         }
 
         private void parseProperty() {
             try {
-                value = ExecutionIsolationStrategy.valueOf(property.get());
+                value = Enum.valueOf(type, property.get());
             } catch (Exception e) {
-                logger.error("Unable to derive ExecutionIsolationStrategy from property value: " + property.get(), e);
+                logger.error("Unable to derive " + type.getSimpleName() + " from property value: " + property.get(), e);
                 // use the default value
                 value = defaultValue;
             }
@@ -474,6 +943,38 @@ public abstract class HystrixCommandProperties {
         private Integer metricsRollingStatisticalWindowBuckets = null;
         private Boolean requestCacheEnabled = null;
         private Boolean requestLogEnabled = null;
+        private Boolean executionHedgingEnabled = null;
+        private Integer executionHedgingPercentile = null;
+        private Integer executionHedgingBudgetPercentage = null;
+        private Integer executionRetryMaxAttempts = null;
+        private Integer executionRetryBackoffInMilliseconds = null;
+        private Integer executionRetryBudgetPercentage = null;
+        private Boolean executionAdaptiveConcurrencyLimitEnabled = null;
+        private Integer executionAdaptiveConcurrencyLimitMinimum = null;
+        private Integer executionIsolationSemaphoreWaitQueueSize = null;
+        private Integer executionIsolationSemaphoreWaitTimeoutInMicroseconds = null;
+        private ExecutionPriority executionPriority = null;
+        private Boolean fallbackIsolationThreadEnabled = null;
+        private Integer fallbackIsolationThreadTimeoutInMilliseconds = null;
+        private Boolean fallbackLastKnownGoodEnabled = null;
+        private Integer fallbackLastKnownGoodTimeToLiveInMilliseconds = null;
+        private Integer fallbackLastKnownGoodMaxEntries = null;
+        private Integer fallbackLastKnownGoodMaxSizeInBytes = null;
+        private Boolean responseCacheEnabled = null;
+        private Integer responseCacheTimeToLiveInMilliseconds = null;
+        private Integer responseCacheMaxEntries = null;
+        private Integer responseCacheMaxSizeInBytes = null;
+        private Integer responseCacheRefreshAheadPercentage = null;
+        private Boolean executionSingleFlightEnabled = null;
+        private Integer requestCacheMaxEntries = null;
+        private Integer requestCacheMaxSizeInBytes = null;
+        private Boolean negativeCacheEnabled = null;
+        private Integer negativeCacheTimeToLiveInMilliseconds = null;
+        private Integer negativeCacheMaxEntries = null;
+        private Integer circuitBreakerHalfOpenMaxConcurrentProbes = null;
+        private Integer circuitBreakerHalfOpenSuccessThreshold = null;
+        private Integer circuitBreakerRampUpTimeInMilliseconds = null;
+        private Integer circuitBreakerRampUpInitialPercentage = null;
 
         private Setter() {
         }
@@ -558,6 +1059,134 @@ public abstract class HystrixCommandProperties {
             return requestLogEnabled;
         }
 
+        public Boolean getExecutionHedgingEnabled() {
+            return executionHedgingEnabled;
+        }
+
+        public Integer getExecutionHedgingPercentile() {
+            return executionHedgingPercentile;
+        }
+
+        public Integer getExecutionHedgingBudgetPercentage() {
+            return executionHedgingBudgetPercentage;
+        }
+
+        public Integer getExecutionRetryMaxAttempts() {
+            return executionRetryMaxAttempts;
+        }
+
+        public Integer getExecutionRetryBackoffInMilliseconds() {
+            return executionRetryBackoffInMilliseconds;
+        }
+
+        public Integer getExecutionRetryBudgetPercentage() {
+            return executionRetryBudgetPercentage;
+        }
+
+        public Boolean getExecutionAdaptiveConcurrencyLimitEnabled() {
+            return executionAdaptiveConcurrencyLimitEnabled;
+        }
+
+        public Integer getExecutionAdaptiveConcurrencyLimitMinimum() {
+            return executionAdaptiveConcurrencyLimitMinimum;
+        }
+
+        public Integer getExecutionIsolationSemaphoreWaitQueueSize() {
+            return executionIsolationSemaphoreWaitQueueSize;
+        }
+
+        public Integer getExecutionIsolationSemaphoreWaitTimeoutInMicroseconds() {
+            return executionIsolationSemaphoreWaitTimeoutInMicroseconds;
+        }
+
+        public ExecutionPriority getExecutionPriority() {
+            return executionPriority;
+        }
+
+        public Boolean getFallbackIsolationThreadEnabled() {
+            return fallbackIsolationThreadEnabled;
+        }
+
+        public Integer getFallbackIsolationThreadTimeoutInMilliseconds() {
+            return fallbackIsolationThreadTimeoutInMilliseconds;
+        }
+
+        public Boolean getFallbackLastKnownGoodEnabled() {
+            return fallbackLastKnownGoodEnabled;
+        }
+
+        public Integer getFallbackLastKnownGoodTimeToLiveInMilliseconds() {
+            return fallbackLastKnownGoodTimeToLiveInMilliseconds;
+        }
+
+        public Integer getFallbackLastKnownGoodMaxEntries() {
+            return fallbackLastKnownGoodMaxEntries;
+        }
+
+        public Integer getFallbackLastKnownGoodMaxSizeInBytes() {
+            return fallbackLastKnownGoodMaxSizeInBytes;
+        }
+
+        public Boolean getResponseCacheEnabled() {
+            return responseCacheEnabled;
+        }
+
+        public Integer getResponseCacheTimeToLiveInMilliseconds() {
+            return responseCacheTimeToLiveInMilliseconds;
+        }
+
+        public Integer getResponseCacheMaxEntries() {
+            return responseCacheMaxEntries;
+        }
+
+        public Integer getResponseCacheMaxSizeInBytes() {
+            return responseCacheMaxSizeInBytes;
+        }
+
+        public Integer getResponseCacheRefreshAheadPercentage() {
+            return responseCacheRefreshAheadPercentage;
+        }
+
+        public Boolean getExecutionSingleFlightEnabled() {
+            return executionSingleFlightEnabled;
+        }
+
+        public Integer getRequestCacheMaxEntries() {
+            return requestCacheMaxEntries;
+        }
+
+        public Integer getRequestCacheMaxSizeInBytes() {
+            return requestCacheMaxSizeInBytes;
+        }
+
+        public Boolean getNegativeCacheEnabled() {
+            return negativeCacheEnabled;
+        }
+
+        public Integer getNegativeCacheTimeToLiveInMilliseconds() {
+            return negativeCacheTimeToLiveInMilliseconds;
+        }
+
+        public Integer getNegativeCacheMaxEntries() {
+            return negativeCacheMaxEntries;
+        }
+
+        public Integer getCircuitBreakerHalfOpenMaxConcurrentProbes() {
+            return circuitBreakerHalfOpenMaxConcurrentProbes;
+        }
+
+        public Integer getCircuitBreakerHalfOpenSuccessThreshold() {
+            return circuitBreakerHalfOpenSuccessThreshold;
+        }
+
+        public Integer getCircuitBreakerRampUpTimeInMilliseconds() {
+            return circuitBreakerRampUpTimeInMilliseconds;
+        }
+
+        public Integer getCircuitBreakerRampUpInitialPercentage() {
+            return circuitBreakerRampUpInitialPercentage;
+        }
+
         public Setter withCircuitBreakerEnabled(boolean value) {
             this.circuitBreakerEnabled = value;
             return this;
@@ -658,6 +1287,166 @@ public abstract class HystrixCommandProperties {
             return this;
         }
 
+        public Setter withExecutionHedgingEnabled(boolean value) {
+            this.executionHedgingEnabled = value;
+            return this;
+        }
+
+        public Setter withExecutionHedgingPercentile(int value) {
+            this.executionHedgingPercentile = value;
+            return this;
+        }
+
+        public Setter withExecutionHedgingBudgetPercentage(int value) {
+            this.executionHedgingBudgetPercentage = value;
+            return this;
+        }
+
+        public Setter withExecutionRetryMaxAttempts(int value) {
+            this.executionRetryMaxAttempts = value;
+            return this;
+        }
+
+        public Setter withExecutionRetryBackoffInMilliseconds(int value) {
+            this.executionRetryBackoffInMilliseconds = value;
+            return this;
+        }
+
+        public Setter withExecutionRetryBudgetPercentage(int value) {
+            this.executionRetryBudgetPercentage = value;
+            return this;
+        }
+
+        public Setter withExecutionAdaptiveConcurrencyLimitEnabled(boolean value) {
+            this.executionAdaptiveConcurrencyLimitEnabled = value;
+            return this;
+        }
+
+        public Setter withExecutionAdaptiveConcurrencyLimitMinimum(int value) {
+            this.executionAdaptiveConcurrencyLimitMinimum = value;
+            return this;
+        }
+
+        public Setter withExecutionIsolationSemaphoreWaitQueueSize(int value) {
+            this.executionIsolationSemaphoreWaitQueueSize = value;
+            return this;
+        }
+
+        public Setter withExecutionIsolationSemaphoreWaitTimeoutInMicroseconds(int value) {
+            this.executionIsolationSemaphoreWaitTimeoutInMicroseconds = value;
+            return this;
+        }
+
+        public Setter withExecutionPriority(ExecutionPriority value) {
+            this.executionPriority = value;
+            return this;
+        }
+
+        public Setter withFallbackIsolationThreadEnabled(boolean value) {
+            this.fallbackIsolationThreadEnabled = value;
+            return this;
+        }
+
+        public Setter withFallbackIsolationThreadTimeoutInMilliseconds(int value) {
+            this.fallbackIsolationThreadTimeoutInMilliseconds = value;
+            return this;
+        }
+
+        public Setter withFallbackLastKnownGoodEnabled(boolean value) {
+            this.fallbackLastKnownGoodEnabled = value;
+            return this;
+        }
+
+        public Setter withFallbackLastKnownGoodTimeToLiveInMilliseconds(int value) {
+            this.fallbackLastKnownGoodTimeToLiveInMilliseconds = value;
+            return this;
+        }
+
+        public Setter withFallbackLastKnownGoodMaxEntries(int value) {
+            this.fallbackLastKnownGoodMaxEntries = value;
+            return this;
+        }
+
+        public Setter withFallbackLastKnownGoodMaxSizeInBytes(int value) {
+            this.fallbackLastKnownGoodMaxSizeInBytes = value;
+            return this;
+        }
+
+        public Setter withResponseCacheEnabled(boolean value) {
+            this.responseCacheEnabled = value;
+            return this;
+        }
+
+        public Setter withResponseCacheTimeToLiveInMilliseconds(int value) {
+            this.responseCacheTimeToLiveInMilliseconds = value;
+            return this;
+        }
+
+        public Setter withResponseCacheMaxEntries(int value) {
+            this.responseCacheMaxEntries = value;
+            return this;
+        }
+
+        public Setter withResponseCacheMaxSizeInBytes(int value) {
+            this.responseCacheMaxSizeInBytes = value;
+            return this;
+        }
+
+        public Setter withResponseCacheRefreshAheadPercentage(int value) {
+            this.responseCacheRefreshAheadPercentage = value;
+            return this;
+        }
+
+        public Setter withExecutionSingleFlightEnabled(boolean value) {
+            this.executionSingleFlightEnabled = value;
+            return this;
+        }
+
+        public Setter withRequestCacheMaxEntries(int value) {
+            this.requestCacheMaxEntries = value;
+            return this;
+        }
+
+        public Setter withRequestCacheMaxSizeInBytes(int value) {
+            this.requestCacheMaxSizeInBytes = value;
+            return this;
+        }
+
+        public Setter withNegativeCacheEnabled(boolean value) {
+            this.negativeCacheEnabled = value;
+            return this;
+        }
+
+        public Setter withNegativeCacheTimeToLiveInMilliseconds(int value) {
+            this.negativeCacheTimeToLiveInMilliseconds = value;
+            return this;
+        }
+
+        public Setter withNegativeCacheMaxEntries(int value) {
+            this.negativeCacheMaxEntries = value;
+            return this;
+        }
+
+        public Setter withCircuitBreakerHalfOpenMaxConcurrentProbes(int value) {
+            this.circuitBreakerHalfOpenMaxConcurrentProbes = value;
+            return this;
+        }
+
+        public Setter withCircuitBreakerHalfOpenSuccessThreshold(int value) {
+            this.circuitBreakerHalfOpenSuccessThreshold = value;
+            return this;
+        }
+
+        public Setter withCircuitBreakerRampUpTimeInMilliseconds(int value) {
+            this.circuitBreakerRampUpTimeInMilliseconds = value;
+            return this;
+        }
+
+        public Setter withCircuitBreakerRampUpInitialPercentage(int value) {
+            this.circuitBreakerRampUpInitialPercentage = value;
+            return this;
+        }
+
         /**
          * Utility method for creating baseline properties for unit tests.
          */
@@ -682,7 +1471,39 @@ public abstract class HystrixCommandProperties {
                     .withMetricsRollingPercentileWindowInMilliseconds(60000)
                     .withMetricsRollingPercentileWindowBuckets(12)
                     .withMetricsRollingPercentileBucketSize(1000)
-                    .withMetricsHealthSnapshotIntervalInMilliseconds(0);
+                    .withMetricsHealthSnapshotIntervalInMilliseconds(0)
+                    .withExecutionHedgingEnabled(false)
+                    .withExecutionHedgingPercentile(95)
+                    .withExecutionHedgingBudgetPercentage(10)
+                    .withExecutionRetryMaxAttempts(0)
+                    .withExecutionRetryBackoffInMilliseconds(10)
+                    .withExecutionRetryBudgetPercentage(20)
+                    .withExecutionAdaptiveConcurrencyLimitEnabled(false)
+                    .withExecutionAdaptiveConcurrencyLimitMinimum(1)
+                    .withExecutionIsolationSemaphoreWaitQueueSize(0)
+                    .withExecutionIsolationSemaphoreWaitTimeoutInMicroseconds(500)
+                    .withExecutionPriority(ExecutionPriority.NORMAL)
+                    .withFallbackIsolationThreadEnabled(false)
+                    .withFallbackIsolationThreadTimeoutInMilliseconds(1000)
+                    .withFallbackLastKnownGoodEnabled(false)
+                    .withFallbackLastKnownGoodTimeToLiveInMilliseconds(60000)
+                    .withFallbackLastKnownGoodMaxEntries(1000)
+                    .withFallbackLastKnownGoodMaxSizeInBytes(10485760)
+                    .withResponseCacheEnabled(false)
+                    .withResponseCacheTimeToLiveInMilliseconds(1000)
+                    .withResponseCacheMaxEntries(1000)
+                    .withResponseCacheMaxSizeInBytes(10485760)
+                    .withResponseCacheRefreshAheadPercentage(80)
+                    .withExecutionSingleFlightEnabled(false)
+                    .withRequestCacheMaxEntries(0)
+                    .withRequestCacheMaxSizeInBytes(0)
+                    .withNegativeCacheEnabled(false)
+                    .withNegativeCacheTimeToLiveInMilliseconds(1000)
+                    .withNegativeCacheMaxEntries(1000)
+                    .withCircuitBreakerHalfOpenMaxConcurrentProbes(1)
+                    .withCircuitBreakerHalfOpenSuccessThreshold(1)
+                    .withCircuitBreakerRampUpTimeInMilliseconds(0)
+                    .withCircuitBreakerRampUpInitialPercentage(10);
         }
 
         /**
@@ -800,6 +1621,166 @@ public abstract class HystrixCommandProperties {
                     return HystrixProperty.Factory.asProperty(builder.requestLogEnabled);
                 }
 
+                @Override
+                public HystrixProperty<Boolean> executionHedgingEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.executionHedgingEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> executionHedgingPercentile() {
+                    return HystrixProperty.Factory.asProperty(builder.executionHedgingPercentile);
+                }
+
+                @Override
+                public HystrixProperty<Integer> executionHedgingBudgetPercentage() {
+                    return HystrixProperty.Factory.asProperty(builder.executionHedgingBudgetPercentage);
+                }
+
+                @Override
+                public HystrixProperty<Integer> executionRetryMaxAttempts() {
+                    return HystrixProperty.Factory.asProperty(builder.executionRetryMaxAttempts);
+                }
+
+                @Override
+                public HystrixProperty<Integer> executionRetryBackoffInMilliseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.executionRetryBackoffInMilliseconds);
+                }
+
+                @Override
+                public HystrixProperty<Integer> executionRetryBudgetPercentage() {
+                    return HystrixProperty.Factory.asProperty(builder.executionRetryBudgetPercentage);
+                }
+
+                @Override
+                public HystrixProperty<Boolean> executionAdaptiveConcurrencyLimitEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.executionAdaptiveConcurrencyLimitEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> executionAdaptiveConcurrencyLimitMinimum() {
+                    return HystrixProperty.Factory.asProperty(builder.executionAdaptiveConcurrencyLimitMinimum);
+                }
+
+                @Override
+                public HystrixProperty<Integer> executionIsolationSemaphoreWaitQueueSize() {
+                    return HystrixProperty.Factory.asProperty(builder.executionIsolationSemaphoreWaitQueueSize);
+                }
+
+                @Override
+                public HystrixProperty<Integer> executionIsolationSemaphoreWaitTimeoutInMicroseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.executionIsolationSemaphoreWaitTimeoutInMicroseconds);
+                }
+
+                @Override
+                public HystrixProperty<ExecutionPriority> executionPriority() {
+                    return HystrixProperty.Factory.asProperty(builder.executionPriority);
+                }
+
+                @Override
+                public HystrixProperty<Boolean> fallbackIsolationThreadEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.fallbackIsolationThreadEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> fallbackIsolationThreadTimeoutInMilliseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.fallbackIsolationThreadTimeoutInMilliseconds);
+                }
+
+                @Override
+                public HystrixProperty<Boolean> fallbackLastKnownGoodEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.fallbackLastKnownGoodEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> fallbackLastKnownGoodTimeToLiveInMilliseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.fallbackLastKnownGoodTimeToLiveInMilliseconds);
+                }
+
+                @Override
+                public HystrixProperty<Integer> fallbackLastKnownGoodMaxEntries() {
+                    return HystrixProperty.Factory.asProperty(builder.fallbackLastKnownGoodMaxEntries);
+                }
+
+                @Override
+                public HystrixProperty<Integer> fallbackLastKnownGoodMaxSizeInBytes() {
+                    return HystrixProperty.Factory.asProperty(builder.fallbackLastKnownGoodMaxSizeInBytes);
+                }
+
+                @Override
+                public HystrixProperty<Boolean> responseCacheEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.responseCacheEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> responseCacheTimeToLiveInMilliseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.responseCacheTimeToLiveInMilliseconds);
+                }
+
+                @Override
+                public HystrixProperty<Integer> responseCacheMaxEntries() {
+                    return HystrixProperty.Factory.asProperty(builder.responseCacheMaxEntries);
+                }
+
+                @Override
+                public HystrixProperty<Integer> responseCacheMaxSizeInBytes() {
+                    return HystrixProperty.Factory.asProperty(builder.responseCacheMaxSizeInBytes);
+                }
+
+                @Override
+                public HystrixProperty<Integer> responseCacheRefreshAheadPercentage() {
+                    return HystrixProperty.Factory.asProperty(builder.responseCacheRefreshAheadPercentage);
+                }
+
+                @Override
+                public HystrixProperty<Boolean> executionSingleFlightEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.executionSingleFlightEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> requestCacheMaxEntries() {
+                    return HystrixProperty.Factory.asProperty(builder.requestCacheMaxEntries);
+                }
+
+                @Override
+                public HystrixProperty<Integer> requestCacheMaxSizeInBytes() {
+                    return HystrixProperty.Factory.asProperty(builder.requestCacheMaxSizeInBytes);
+                }
+
+                @Override
+                public HystrixProperty<Boolean> negativeCacheEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.negativeCacheEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> negativeCacheTimeToLiveInMilliseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.negativeCacheTimeToLiveInMilliseconds);
+                }
+
+                @Override
+                public HystrixProperty<Integer> negativeCacheMaxEntries() {
+                    return HystrixProperty.Factory.asProperty(builder.negativeCacheMaxEntries);
+                }
+
+                @Override
+                public HystrixProperty<Integer> circuitBreakerHalfOpenMaxConcurrentProbes() {
+                    return HystrixProperty.Factory.asProperty(builder.circuitBreakerHalfOpenMaxConcurrentProbes);
+                }
+
+                @Override
+                public HystrixProperty<Integer> circuitBreakerHalfOpenSuccessThreshold() {
+                    return HystrixProperty.Factory.asProperty(builder.circuitBreakerHalfOpenSuccessThreshold);
+                }
+
+                @Override
+                public HystrixProperty<Integer> circuitBreakerRampUpTimeInMilliseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.circuitBreakerRampUpTimeInMilliseconds);
+                }
+
+                @Override
+                public HystrixProperty<Integer> circuitBreakerRampUpInitialPercentage() {
+                    return HystrixProperty.Factory.asProperty(builder.circuitBreakerRampUpInitialPercentage);
+                }
+
             };
         }
     }
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2012 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.hystrix;
+
+import com.netflix.hystrix.exception.HystrixBadRequestException;
+import com.netflix.hystrix.exception.HystrixRuntimeException;
+
+/**
+ * Callback interface for non-blocking execution of a {@link HystrixCommand} via {@link HystrixCommand#observe(HystrixObserver)}.
+ * <p>
+ * Exactly one of the methods will be invoked exactly once per observed execution.
+ * <p>
+ * The callback is invoked on whichever thread completes the command: the thread-pool thread that executed <code>run()</code>, the {@link com.netflix.hystrix.util.HystrixTimer} thread if the
+ * command timed out, or the calling thread if the response was available immediately (semaphore isolation, short-circuit, rejection or request cache).
+ * <p>
+ * Implementations should NOT block or perform expensive work as that would hold up the thread completing the command. If further work is needed it should be handed off to another thread.
+ *
+ * @param <R>
+ *            the return type of the {@link HystrixCommand}
+ */
+public interface HystrixObserver<R> {
+
+    /**
+     * Invoked with the response from <code>run()</code>, or from <code>getFallback()</code> if <code>run()</code> failed, timed-out, was short-circuited or rejected.
+     *
+     * @param response
+     *            R response
+     */
+    public void onCompleted(R response);
+
+    /**
+     * Invoked if the command failed and a fallback could not be retrieved.
+     *
+     * @param e
+     *            {@link HystrixRuntimeException} if a failure occurred and a fallback could not be retrieved or {@link HystrixBadRequestException} if invalid arguments or state were used
+     *            representing a user failure, not a system failure
+     */
+    public void onError(Throwable e);
+
+}
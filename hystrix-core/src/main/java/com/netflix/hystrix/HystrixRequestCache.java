@@ -17,11 +17,13 @@ package com.netflix.hystrix;
 
 import static org.junit.Assert.*;
 
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -33,11 +35,19 @@ import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
 import com.netflix.hystrix.strategy.concurrency.HystrixRequestVariableDefault;
 import com.netflix.hystrix.strategy.concurrency.HystrixRequestVariableHolder;
 import com.netflix.hystrix.strategy.concurrency.HystrixRequestVariableLifecycle;
+import com.netflix.hystrix.strategy.eventnotifier.HystrixEventNotifierDefault;
+import com.netflix.hystrix.strategy.properties.HystrixProperty;
+import com.netflix.hystrix.util.HystrixBoundedCache;
+import com.netflix.hystrix.util.HystrixRollingNumberEvent;
 
 /**
  * Cache that is scoped to the current request as managed by {@link HystrixRequestVariableDefault}.
  * <p>
  * This is used for short-lived caching of {@link HystrixCommand} instances to allow de-duping of command executions within a request.
+ * <p>
+ * The cache of each {@link HystrixCommandKey} can be bounded per request by {@link HystrixCommandProperties#requestCacheMaxEntries()} and
+ * {@link HystrixCommandProperties#requestCacheMaxSizeInBytes()} (both unbounded by default), evicting the oldest entries first, and its size is recorded in
+ * {@link HystrixCommandMetrics} when the request shuts down.
  */
 public class HystrixRequestCache {
     @SuppressWarnings("unused")
@@ -46,24 +56,43 @@ public class HystrixRequestCache {
     // the String key must be: HystrixRequestCache.prefix + concurrencyStrategy + cacheKey
     private final static ConcurrentHashMap<RequestCacheKey, HystrixRequestCache> caches = new ConcurrentHashMap<RequestCacheKey, HystrixRequestCache>();
 
+    /* estimated size in bytes of an entry excluding the key and response (the map and queue nodes, the entry and the Future) */
+    private static final int ENTRY_SIZE_IN_BYTES = 160;
+    private static final HystrixProperty<Integer> NO_TIME_TO_LIVE = HystrixProperty.Factory.asProperty(0);
+
     private final RequestCacheKey rcKey;
     private final HystrixConcurrencyStrategy concurrencyStrategy;
+    /* bounds of the cache of each request, unbounded unless set from the HystrixCommandProperties */
+    private volatile HystrixProperty<Integer> maxEntries = HystrixProperty.Factory.asProperty(0);
+    private volatile HystrixProperty<Integer> maxSizeInBytes = HystrixProperty.Factory.asProperty(0);
+    private final AtomicBoolean boundsSet = new AtomicBoolean(false);
 
     /**
-     * A ConcurrentHashMap per 'prefix' and per request scope that is used to to dedupe requests in the same request.
+     * A ConcurrentHashMap per request scope of a bounded cache per 'prefix' that is used to to dedupe requests in the same request.
+     * <p>
+     * Key => CommandPrefix : (CacheKey : Future<?> from queue())
      * <p>
-     * Key => CommandPrefix + CacheKey : Future<?> from queue()
+     * The cache key is used directly as the key of the cache for its prefix so a lookup does not allocate a key combining the prefix and cache key.
      */
-    private static final HystrixRequestVariableHolder<ConcurrentHashMap<ValueCacheKey, Future<?>>> requestVariableForCache = new HystrixRequestVariableHolder<ConcurrentHashMap<ValueCacheKey, Future<?>>>(new HystrixRequestVariableLifecycle<ConcurrentHashMap<ValueCacheKey, Future<?>>>() {
+    private static final HystrixRequestVariableHolder<ConcurrentHashMap<RequestCacheKey, HystrixBoundedCache<Object, Future<?>>>> requestVariableForCache = new HystrixRequestVariableHolder<ConcurrentHashMap<RequestCacheKey, HystrixBoundedCache<Object, Future<?>>>>(new HystrixRequestVariableLifecycle<ConcurrentHashMap<RequestCacheKey, HystrixBoundedCache<Object, Future<?>>>>() {
 
         @Override
-        public ConcurrentHashMap<ValueCacheKey, Future<?>> initialValue() {
-            return new ConcurrentHashMap<ValueCacheKey, Future<?>>();
+        public ConcurrentHashMap<RequestCacheKey, HystrixBoundedCache<Object, Future<?>>> initialValue() {
+            return new ConcurrentHashMap<RequestCacheKey, HystrixBoundedCache<Object, Future<?>>>();
         }
 
         @Override
-        public void shutdown(ConcurrentHashMap<ValueCacheKey, Future<?>> value) {
-            // nothing to shutdown
+        public void shutdown(ConcurrentHashMap<RequestCacheKey, HystrixBoundedCache<Object, Future<?>>> value) {
+            // record the size each command's cache reached during the request
+            for (Map.Entry<RequestCacheKey, HystrixBoundedCache<Object, Future<?>>> e : value.entrySet()) {
+                if (e.getKey().type == RequestCacheKey.TYPE_COMMAND && e.getKey().key != null) {
+                    HystrixCommandMetrics metrics = HystrixCommandMetrics.getInstance(HystrixCommandKey.Factory.asKey(e.getKey().key));
+                    if (metrics != null) {
+                        HystrixBoundedCache<Object, Future<?>> cache = e.getValue();
+                        metrics.markRequestCacheShutdown(cache.size(), cache.getSizeInBytes(), cache.getEvictionCount());
+                    }
+                }
+            }
         };
 
     });
@@ -77,6 +106,27 @@ public class HystrixRequestCache {
         return getInstance(new RequestCacheKey(key, concurrencyStrategy), concurrencyStrategy);
     }
 
+    /**
+     * Get the request cache of a {@link HystrixCommandKey} bounded by {@link HystrixCommandProperties#requestCacheMaxEntries()} and
+     * {@link HystrixCommandProperties#requestCacheMaxSizeInBytes()} (of the first properties given for the key).
+     * 
+     * @param key
+     *            {@link HystrixCommandKey}
+     * @param concurrencyStrategy
+     *            {@link HystrixConcurrencyStrategy}
+     * @param properties
+     *            {@link HystrixCommandProperties} of the command
+     * @return {@link HystrixRequestCache}
+     */
+    public static HystrixRequestCache getInstance(HystrixCommandKey key, HystrixConcurrencyStrategy concurrencyStrategy, HystrixCommandProperties properties) {
+        HystrixRequestCache c = getInstance(new RequestCacheKey(key, concurrencyStrategy), concurrencyStrategy);
+        if (!c.boundsSet.get() && c.boundsSet.compareAndSet(false, true)) {
+            c.maxEntries = properties.requestCacheMaxEntries();
+            c.maxSizeInBytes = properties.requestCacheMaxSizeInBytes();
+        }
+        return c;
+    }
+
     public static HystrixRequestCache getInstance(HystrixCollapserKey key, HystrixConcurrencyStrategy concurrencyStrategy) {
         return getInstance(new RequestCacheKey(key, concurrencyStrategy), concurrencyStrategy);
     }
@@ -100,15 +150,30 @@ public class HystrixRequestCache {
     /**
      * Retrieve a cached Future for this request scope if a matching command has already been executed/queued.
      * 
+     * @param cacheKey
+     *            key as defined by {@link HystrixCommand#getCacheKey()}
+     * @return {@code Future<T>}
+     */
+    public <T> Future<T> get(String cacheKey) {
+        return get((Object) cacheKey);
+    }
+
+    /**
+     * Retrieve a cached Future for this request scope if a matching command has already been executed/queued.
+     * 
+     * @param cacheKey
+     *            key as defined by {@link HystrixCommand#getRequestCacheKey()}
      * @return {@code Future<T>}
      */
     // suppressing warnings because we are using a raw Future since it's in a heterogeneous ConcurrentHashMap cache
     @SuppressWarnings({ "unchecked" })
-    public <T> Future<T> get(String cacheKey) {
-        ValueCacheKey key = getRequestCacheKey(cacheKey);
-        if (key != null) {
-            /* look for the stored value */
-            return (Future<T>) requestVariableForCache.get(concurrencyStrategy).get(key);
+    public <T> Future<T> get(Object cacheKey) {
+        if (cacheKey != null) {
+            HystrixBoundedCache<Object, Future<?>> cache = getCacheForCurrentRequest(false);
+            if (cache != null) {
+                /* look for the stored value */
+                return (Future<T>) cache.get(cacheKey);
+            }
         }
         return null;
     }
@@ -125,13 +190,28 @@ public class HystrixRequestCache {
      * 
      * @return null if nothing else was in the cache (or this {@link HystrixCommand} does not have a cacheKey) or previous value if another thread beat us to adding to the cache
      */
+    public <T> Future<T> putIfAbsent(String cacheKey, Future<T> f) {
+        return putIfAbsent((Object) cacheKey, f);
+    }
+
+    /**
+     * Put the Future in the cache if it does not already exist.
+     * <p>
+     * If this method returns a non-null value then another thread won the race and it should be returned instead of proceeding with execution of the new Future.
+     * 
+     * @param cacheKey
+     *            key as defined by {@link HystrixCommand#getRequestCacheKey()}
+     * @param f
+     *            Future to be cached
+     * 
+     * @return null if nothing else was in the cache (or this {@link HystrixCommand} does not have a cacheKey) or previous value if another thread beat us to adding to the cache
+     */
     // suppressing warnings because we are using a raw Future since it's in a heterogeneous ConcurrentHashMap cache
     @SuppressWarnings({ "unchecked" })
-    public <T> Future<T> putIfAbsent(String cacheKey, Future<T> f) {
-        ValueCacheKey key = getRequestCacheKey(cacheKey);
-        if (key != null) {
+    public <T> Future<T> putIfAbsent(Object cacheKey, Future<T> f) {
+        if (cacheKey != null) {
             /* look for the stored value */
-            Future<T> alreadySet = (Future<T>) requestVariableForCache.get(concurrencyStrategy).putIfAbsent(key, f);
+            Future<T> alreadySet = (Future<T>) getCacheForCurrentRequest(true).putIfAbsent(cacheKey, f, getEntrySizeInBytes(cacheKey, 0));
             if (alreadySet != null) {
                 // someone beat us so we didn't cache this
                 return alreadySet;
@@ -141,6 +221,37 @@ public class HystrixRequestCache {
         return null;
     }
 
+    /**
+     * Account for the estimated size of the response of a cached Future once it is known (such as once it completed) if the cache is bounded by size.
+     * 
+     * @param cacheKey
+     *            key as defined by {@link HystrixCommand#getRequestCacheKey()}
+     * @param f
+     *            Future cached for the key (nothing is updated if it is no longer cached)
+     * @param responseSizeInBytes
+     *            estimated size of the response
+     */
+    public void updateResponseSizeInBytes(Object cacheKey, Future<?> f, int responseSizeInBytes) {
+        if (cacheKey != null && isBoundedBySize()) {
+            HystrixBoundedCache<Object, Future<?>> cache = getCacheForCurrentRequest(false);
+            if (cache != null) {
+                cache.updateSize(cacheKey, f, getEntrySizeInBytes(cacheKey, responseSizeInBytes));
+            }
+        }
+    }
+
+    /**
+     * @return whether the cache is bounded by {@link HystrixCommandProperties#requestCacheMaxSizeInBytes()} so the size of responses needs to be accounted for
+     */
+    public boolean isBoundedBySize() {
+        return maxSizeInBytes.get() > 0;
+    }
+
+    private static int getEntrySizeInBytes(Object cacheKey, int responseSizeInBytes) {
+        int keySizeInBytes = cacheKey instanceof String ? 40 + 2 * ((String) cacheKey).length() : 32;
+        return ENTRY_SIZE_IN_BYTES + keySizeInBytes + responseSizeInBytes;
+    }
+
     /**
      * Clear the cache for a given cacheKey.
      * 
@@ -148,98 +259,84 @@ public class HystrixRequestCache {
      *            key as defined by {@link HystrixCommand#getCacheKey()}
      */
     public void clear(String cacheKey) {
-        ValueCacheKey key = getRequestCacheKey(cacheKey);
-        if (key != null) {
-            /* remove this cache key */
-            requestVariableForCache.get(concurrencyStrategy).remove(key);
-        }
+        clear((Object) cacheKey);
     }
 
     /**
-     * Request CacheKey: HystrixRequestCache.prefix + concurrencyStrategy + HystrixCommand.getCacheKey (as injected via get/put to this class)
-     * <p>
-     * We prefix with {@link HystrixCommandKey} or {@link HystrixCollapserKey} since the cache is heterogeneous and we don't want to accidentally return cached Futures from different
-     * types.
+     * Clear the cache for a given cacheKey.
      * 
-     * @return ValueCacheKey
+     * @param cacheKey
+     *            key as defined by {@link HystrixCommand#getRequestCacheKey()}
      */
-    private ValueCacheKey getRequestCacheKey(String cacheKey) {
+    public void clear(Object cacheKey) {
         if (cacheKey != null) {
-            /* create the cache key we will use to retrieve/store that include the type key prefix */
-            return new ValueCacheKey(rcKey, cacheKey);
+            HystrixBoundedCache<Object, Future<?>> cache = getCacheForCurrentRequest(false);
+            if (cache != null) {
+                /* remove this cache key */
+                cache.remove(cacheKey);
+            }
         }
-        return null;
     }
 
-    private static class ValueCacheKey {
-        private final RequestCacheKey rvKey;
-        private final String valueCacheKey;
-
-        private ValueCacheKey(RequestCacheKey rvKey, String valueCacheKey) {
-            this.rvKey = rvKey;
-            this.valueCacheKey = valueCacheKey;
-        }
-
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((rvKey == null) ? 0 : rvKey.hashCode());
-            result = prime * result + ((valueCacheKey == null) ? 0 : valueCacheKey.hashCode());
-            return result;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            ValueCacheKey other = (ValueCacheKey) obj;
-            if (rvKey == null) {
-                if (other.rvKey != null)
-                    return false;
-            } else if (!rvKey.equals(other.rvKey))
-                return false;
-            if (valueCacheKey == null) {
-                if (other.valueCacheKey != null)
-                    return false;
-            } else if (!valueCacheKey.equals(other.valueCacheKey))
-                return false;
-            return true;
+    /**
+     * The cache of the current request for this prefix: {@link HystrixCommandKey} or {@link HystrixCollapserKey} (and concurrencyStrategy).
+     * <p>
+     * We prefix with {@link HystrixCommandKey} or {@link HystrixCollapserKey} since the cache is heterogeneous and we don't want to accidentally return cached Futures from different
+     * types.
+     * 
+     * @param create
+     *            whether to create the cache if nothing has been cached for this prefix in the current request yet
+     * @return {@code HystrixBoundedCache<Object, Future<?>>} or null if it does not exist and create is false
+     */
+    private HystrixBoundedCache<Object, Future<?>> getCacheForCurrentRequest(boolean create) {
+        ConcurrentHashMap<RequestCacheKey, HystrixBoundedCache<Object, Future<?>>> cachesForRequest = requestVariableForCache.get(concurrencyStrategy);
+        HystrixBoundedCache<Object, Future<?>> cache = cachesForRequest.get(rcKey);
+        if (cache == null && create) {
+            // entries do not expire as the cache only lives as long as the request
+            cachesForRequest.putIfAbsent(rcKey, new HystrixBoundedCache<Object, Future<?>>(NO_TIME_TO_LIVE, maxEntries, maxSizeInBytes));
+            // assign whatever got set (this or another thread)
+            cache = cachesForRequest.get(rcKey);
         }
-
+        return cache;
     }
 
     private static class RequestCacheKey {
+        private static final short TYPE_COMMAND = 1;
+        private static final short TYPE_COLLAPSER = 2;
+
         private final short type; // used to differentiate between Collapser/Command if key is same between them
         private final String key;
         private final HystrixConcurrencyStrategy concurrencyStrategy;
+        private final int hashCode; // computed once as this is looked up on every access to the cache
 
         private RequestCacheKey(HystrixCommandKey commandKey, HystrixConcurrencyStrategy concurrencyStrategy) {
-            type = 1;
+            type = TYPE_COMMAND;
             if (commandKey == null) {
                 this.key = null;
             } else {
                 this.key = commandKey.name();
             }
             this.concurrencyStrategy = concurrencyStrategy;
+            this.hashCode = computeHashCode();
         }
 
         private RequestCacheKey(HystrixCollapserKey collapserKey, HystrixConcurrencyStrategy concurrencyStrategy) {
-            type = 2;
+            type = TYPE_COLLAPSER;
             if (collapserKey == null) {
                 this.key = null;
             } else {
                 this.key = collapserKey.name();
             }
             this.concurrencyStrategy = concurrencyStrategy;
+            this.hashCode = computeHashCode();
         }
 
         @Override
         public int hashCode() {
+            return hashCode;
+        }
+
+        private int computeHashCode() {
             final int prime = 31;
             int result = 1;
             result = prime * result + ((concurrencyStrategy == null) ? 0 : concurrencyStrategy.hashCode());
@@ -312,6 +409,93 @@ public class HystrixRequestCache {
             }
         }
 
+        @Test
+        public void testTypedCacheKeys() {
+            HystrixConcurrencyStrategy strategy = HystrixConcurrencyStrategyDefault.getInstance();
+            HystrixRequestContext context = HystrixRequestContext.initializeContext();
+            try {
+                HystrixRequestCache cache = HystrixRequestCache.getInstance(HystrixCommandKey.Factory.asKey("command1"), strategy);
+                assertNull(cache.get(Long.valueOf(1000)));
+                cache.putIfAbsent(Long.valueOf(1000), new TestFuture("a1"));
+                assertEquals("a1", cache.putIfAbsent(Long.valueOf(1000), new TestFuture("a2")).get());
+                // equal keys of a different type are different keys
+                assertNull(cache.get(Integer.valueOf(1000)));
+                assertNull(cache.get("1000"));
+                assertEquals("a1", cache.get(Long.valueOf(1000)).get());
+
+                // the same key for a different command is a different key
+                assertNull(HystrixRequestCache.getInstance(HystrixCommandKey.Factory.asKey("command2"), strategy).get(Long.valueOf(1000)));
+
+                cache.clear(Long.valueOf(1000));
+                assertNull(cache.get(Long.valueOf(1000)));
+            } catch (Exception e) {
+                fail("Exception: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                context.shutdown();
+            }
+        }
+
+        @Test
+        public void testBoundedCache() {
+            HystrixConcurrencyStrategy strategy = HystrixConcurrencyStrategyDefault.getInstance();
+            HystrixCommandKey key = HystrixCommandKey.Factory.asKey("commandBounded");
+            HystrixCommandProperties properties = HystrixCommandProperties.Setter.asMock(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter()
+                    .withRequestCacheMaxEntries(2).withRequestCacheMaxSizeInBytes(1000));
+            HystrixCommandMetrics metrics = HystrixCommandMetrics.getInstance(key, HystrixCommandGroupKey.Factory.asKey("groupBounded"), HystrixThreadPoolKey.Factory.asKey("groupBounded"),
+                    properties, HystrixEventNotifierDefault.getInstance());
+            HystrixRequestContext context = HystrixRequestContext.initializeContext();
+            try {
+                HystrixRequestCache cache = HystrixRequestCache.getInstance(key, strategy, properties);
+                assertTrue(cache.isBoundedBySize());
+                cache.putIfAbsent("valueA", new TestFuture("a1"));
+                cache.putIfAbsent("valueB", new TestFuture("b1"));
+                cache.putIfAbsent("valueC", new TestFuture("c1"));
+                // the oldest is evicted beyond the maximum entries
+                assertNull(cache.get("valueA"));
+                assertEquals("b1", cache.get("valueB").get());
+
+                // and beyond the maximum size once the response size is known
+                Future<String> c1 = cache.get("valueC");
+                cache.updateResponseSizeInBytes("valueC", c1, 700);
+                assertNull(cache.get("valueB"));
+                assertEquals("c1", cache.get("valueC").get());
+            } catch (Exception e) {
+                fail("Exception: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                context.shutdown();
+            }
+            // the size at shutdown is recorded in the metrics
+            assertEquals(1, metrics.getRequestCacheEntriesMax());
+            assertTrue(metrics.getRequestCacheSizeInBytesMax() > 700);
+            assertEquals(2, metrics.getRollingCount(HystrixRollingNumberEvent.REQUEST_CACHE_EVICTED));
+        }
+
+        @Test
+        public void testUnboundedByDefault() {
+            HystrixConcurrencyStrategy strategy = HystrixConcurrencyStrategyDefault.getInstance();
+            HystrixCommandKey key = HystrixCommandKey.Factory.asKey("commandUnbounded");
+            HystrixCommandProperties properties = HystrixCommandProperties.Setter.asMock(HystrixCommandProperties.Setter.getUnitTestPropertiesSetter());
+            HystrixRequestContext context = HystrixRequestContext.initializeContext();
+            try {
+                HystrixRequestCache cache = HystrixRequestCache.getInstance(key, strategy, properties);
+                assertFalse(cache.isBoundedBySize());
+                for (int i = 0; i < 1000; i++) {
+                    cache.putIfAbsent("value" + i, new TestFuture("v" + i));
+                }
+                // nothing is evicted
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals("v" + i, cache.get("value" + i).get());
+                }
+            } catch (Exception e) {
+                fail("Exception: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                context.shutdown();
+            }
+        }
+
         @Test
         public void testClearCache() {
             HystrixConcurrencyStrategy strategy = HystrixConcurrencyStrategyDefault.getInstance();
@@ -17,11 +17,8 @@ package com.netflix.hystrix;
 
 import static org.junit.Assert.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -129,56 +126,58 @@ public class HystrixRequestLog {
      */
     public String getExecutedCommandsAsString() {
         try {
-            LinkedHashMap<String, Integer> aggregatedCommandsExecuted = new LinkedHashMap<String, Integer>();
-            Map<String, Integer> aggregatedCommandExecutionTime = new HashMap<String, Integer>();
+            // display string -> { count, sum of executionTime }
+            LinkedHashMap<String, int[]> aggregatedCommandsExecuted = new LinkedHashMap<String, int[]>();
+            StringBuilder displayString = new StringBuilder();
 
             for (HystrixCommand<?> command : executedCommands) {
-                StringBuilder displayString = new StringBuilder();
+                displayString.setLength(0);
                 displayString.append(command.getCommandKey().name());
 
-                List<HystrixEventType> events = new ArrayList<HystrixEventType>(command.getExecutionEvents());
+                // events are already unique and ordered by HystrixEventType so don't need to be copied and sorted
+                List<HystrixEventType> events = command.getExecutionEvents();
                 if (events.size() > 0) {
-                    Collections.sort(events);
-                    displayString.append(Arrays.toString(events.toArray()));
+                    displayString.append('[');
+                    for (int i = 0; i < events.size(); i++) {
+                        if (i > 0) {
+                            displayString.append(", ");
+                        }
+                        displayString.append(events.get(i).name());
+                    }
+                    displayString.append(']');
                 } else {
                     displayString.append("[Executed]");
                 }
 
-                String display = displayString.toString();
-                if (aggregatedCommandsExecuted.containsKey(display)) {
-                    // increment the count
-                    aggregatedCommandsExecuted.put(display, aggregatedCommandsExecuted.get(display) + 1);
-                } else {
-                    // add it
-                    aggregatedCommandsExecuted.put(display, 1);
-                }
-
                 int executionTime = command.getExecutionTimeInMilliseconds();
                 if (executionTime < 0) {
                     // do this so we don't create negative values or subtract values
                     executionTime = 0;
                 }
-                if (aggregatedCommandExecutionTime.containsKey(display)) {
-                    // add to the existing executionTime (sum of executionTimes for duplicate command displayNames)
-                    aggregatedCommandExecutionTime.put(display, aggregatedCommandExecutionTime.get(display) + executionTime);
-                } else {
+
+                String display = displayString.toString();
+                int[] aggregate = aggregatedCommandsExecuted.get(display);
+                if (aggregate == null) {
                     // add it
-                    aggregatedCommandExecutionTime.put(display, executionTime);
+                    aggregatedCommandsExecuted.put(display, new int[] { 1, executionTime });
+                } else {
+                    // increment the count and add to the existing executionTime (sum of executionTimes for duplicate command displayNames)
+                    aggregate[0]++;
+                    aggregate[1] += executionTime;
                 }
-
             }
 
             StringBuilder header = new StringBuilder();
-            for (String displayString : aggregatedCommandsExecuted.keySet()) {
+            for (Map.Entry<String, int[]> entry : aggregatedCommandsExecuted.entrySet()) {
                 if (header.length() > 0) {
                     header.append(", ");
                 }
-                header.append(displayString);
+                header.append(entry.getKey());
 
-                int totalExecutionTime = aggregatedCommandExecutionTime.get(displayString);
+                int totalExecutionTime = entry.getValue()[1];
                 header.append("[").append(totalExecutionTime).append("ms]");
 
-                int count = aggregatedCommandsExecuted.get(displayString);
+                int count = entry.getValue()[0];
                 if (count > 1) {
                     header.append("x").append(count);
                 }
@@ -15,18 +15,36 @@
  */
 package com.netflix.hystrix;
 
+import static org.junit.Assert.*;
+
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.concurrent.ThreadSafe;
 
+import org.junit.After;
+import org.junit.Test;
+
+import com.netflix.config.ConfigurationManager;
+
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionPriority;
 import com.netflix.hystrix.strategy.concurrency.HystrixConcurrencyStrategy;
+import com.netflix.hystrix.strategy.concurrency.HystrixConcurrencyStrategyDefault;
 import com.netflix.hystrix.strategy.metrics.HystrixMetricsPublisher;
+import com.netflix.hystrix.strategy.metrics.HystrixMetricsPublisherDefault;
 import com.netflix.hystrix.strategy.metrics.HystrixMetricsPublisherFactory;
 import com.netflix.hystrix.strategy.properties.HystrixPropertiesFactory;
 import com.netflix.hystrix.strategy.properties.HystrixPropertiesStrategy;
+import com.netflix.hystrix.strategy.properties.HystrixPropertiesStrategyDefault;
+import com.netflix.hystrix.strategy.properties.HystrixProperty;
+import com.netflix.hystrix.util.HystrixPriorityBlockingQueue;
 
 /**
  * ThreadPool used to executed {@link HystrixCommand#run()} on separate threads when configured to do so with {@link HystrixCommandProperties#executionIsolationStrategy()}.
@@ -70,6 +88,37 @@ public interface HystrixThreadPool {
      */
     public boolean isQueueSpaceAvailable();
 
+    /**
+     * Whether the queue will allow adding an item with the given priority to it.
+     * <p>
+     * This allows lower priority executions to be rejected before the queue is full so capacity remains for higher priority executions when the thread-pool is saturated.
+     * 
+     * @param priority
+     *            {@link ExecutionPriority} of the item to be queued
+     * @return boolean whether there is space on the queue
+     */
+    public boolean isQueueSpaceAvailable(ExecutionPriority priority);
+
+    /**
+     * Mark the time a task waited in the queue when a thread begins executing it and determine whether it should still be executed.
+     * <p>
+     * When {@link HystrixThreadPoolProperties#queueDelaySheddingEnabled()} tasks that waited too long while the queue is overloaded are rejected so that queueing delay remains bounded.
+     * 
+     * @param queueWaitTimeInMilliseconds
+     *            time the task waited in the queue
+     * @return boolean whether the task should be executed (false if it should be rejected instead)
+     */
+    public boolean markQueueWait(int queueWaitTimeInMilliseconds);
+
+    /**
+     * Remove a task that is no longer needed (such as after its caller timed-out) from the queue so it does not occupy space there until a thread dequeues it.
+     * 
+     * @param task
+     *            task previously submitted to {@link #getExecutor()}
+     * @return boolean whether the task was removed (false if a thread already dequeued it or the queue does not support removal)
+     */
+    public boolean purgeQueuedTask(Runnable task);
+
     /**
      * @ExcludeFromJavadoc
      */
@@ -80,6 +129,22 @@ public interface HystrixThreadPool {
          */
         private static ConcurrentHashMap<String, HystrixThreadPool> threadPools = new ConcurrentHashMap<String, HystrixThreadPool>();
 
+        /**
+         * Suffix appended to the {@link HystrixThreadPoolKey} of the separate {@link HystrixThreadPool} used for {@link ExecutionIsolationStrategy#VIRTUAL_THREAD} execution.
+         * <p>
+         * It has its own properties and metrics (for example <code>hystrix.threadpool.[key]VirtualThread.coreSize</code>) since the concurrency limit appropriate for virtual threads is
+         * typically much higher than for platform threads.
+         */
+        /* package */static final String VIRTUAL_THREAD_POOL_KEY_SUFFIX = "VirtualThread";
+
+        /**
+         * Suffix appended to the {@link HystrixThreadPoolKey} of the separate {@link HystrixThreadPool} used to execute {@link HystrixCommand#getFallback()} when
+         * {@link HystrixCommandProperties#fallbackIsolationThreadEnabled()}.
+         * <p>
+         * It has its own properties and metrics (for example <code>hystrix.threadpool.[key]Fallback.coreSize</code>) so fallback concurrency is isolated from execution concurrency.
+         */
+        /* package */static final String FALLBACK_THREAD_POOL_KEY_SUFFIX = "Fallback";
+
         /**
          * Get the {@link HystrixThreadPool} instance for a given {@link HystrixThreadPoolKey}.
          * <p>
@@ -88,6 +153,36 @@ public interface HystrixThreadPool {
          * @return {@link HystrixThreadPool} instance
          */
         /* package */static HystrixThreadPool getInstance(HystrixThreadPoolKey threadPoolKey, HystrixConcurrencyStrategy concurrencyStrategy, HystrixMetricsPublisher metricsPublisher, HystrixPropertiesStrategy propertiesFactory, HystrixThreadPoolProperties.Setter propertiesBuilder) {
+            return getInstance(threadPoolKey, concurrencyStrategy, metricsPublisher, propertiesFactory, propertiesBuilder, false);
+        }
+
+        /**
+         * Get the {@link HystrixThreadPool} instance for a given {@link HystrixThreadPoolKey} executing on either platform or virtual threads.
+         * <p>
+         * This is thread-safe and ensures only 1 {@link HystrixThreadPool} per {@link HystrixThreadPoolKey} and type of thread.
+         * 
+         * @return {@link HystrixThreadPool} instance
+         */
+        /* package */static HystrixThreadPool getInstance(HystrixThreadPoolKey threadPoolKey, HystrixConcurrencyStrategy concurrencyStrategy, HystrixMetricsPublisher metricsPublisher, HystrixPropertiesStrategy propertiesFactory, HystrixThreadPoolProperties.Setter propertiesBuilder, boolean virtualThreads) {
+            if (virtualThreads) {
+                // virtual thread execution is bulkheaded separately from platform thread execution for the same key
+                threadPoolKey = HystrixThreadPoolKey.Factory.asKey(threadPoolKey.name() + VIRTUAL_THREAD_POOL_KEY_SUFFIX);
+            }
+            return getInstanceForKey(threadPoolKey, concurrencyStrategy, metricsPublisher, propertiesFactory, propertiesBuilder, virtualThreads);
+        }
+
+        /**
+         * Get the {@link HystrixThreadPool} instance used to execute fallbacks for a given {@link HystrixThreadPoolKey}.
+         * <p>
+         * This is thread-safe and ensures only 1 fallback {@link HystrixThreadPool} per {@link HystrixThreadPoolKey}.
+         * 
+         * @return {@link HystrixThreadPool} instance
+         */
+        /* package */static HystrixThreadPool getFallbackInstance(HystrixThreadPoolKey threadPoolKey, HystrixConcurrencyStrategy concurrencyStrategy, HystrixMetricsPublisher metricsPublisher, HystrixPropertiesStrategy propertiesFactory, HystrixThreadPoolProperties.Setter propertiesBuilder) {
+            return getInstanceForKey(HystrixThreadPoolKey.Factory.asKey(threadPoolKey.name() + FALLBACK_THREAD_POOL_KEY_SUFFIX), concurrencyStrategy, metricsPublisher, propertiesFactory, propertiesBuilder, false);
+        }
+
+        private static HystrixThreadPool getInstanceForKey(HystrixThreadPoolKey threadPoolKey, HystrixConcurrencyStrategy concurrencyStrategy, HystrixMetricsPublisher metricsPublisher, HystrixPropertiesStrategy propertiesFactory, HystrixThreadPoolProperties.Setter propertiesBuilder, boolean virtualThreads) {
             // get the key to use instead of using the object itself so that if people forget to implement equals/hashcode things will still work
             String key = threadPoolKey.name();
 
@@ -102,7 +197,7 @@ public interface HystrixThreadPool {
             // Create and add to the map ... use putIfAbsent to atomically handle the possible race-condition of
             // 2 threads hitting this point at the same time and let ConcurrentHashMap provide us our thread-safety
             // If 2 threads hit here only one will get added and the other will get a non-null response instead.
-            HystrixThreadPool poolForKey = threadPools.putIfAbsent(key, new HystrixThreadPoolDefault(threadPoolKey, concurrencyStrategy, metricsPublisher, propertiesFactory, propertiesBuilder));
+            HystrixThreadPool poolForKey = threadPools.putIfAbsent(key, new HystrixThreadPoolDefault(threadPoolKey, concurrencyStrategy, metricsPublisher, propertiesFactory, propertiesBuilder, virtualThreads));
             if (poolForKey == null) {
                 // this means the putIfAbsent step just created a new one so let's retrieve and return it
                 HystrixThreadPool threadPoolJustCreated = threadPools.get(key);
@@ -125,11 +220,39 @@ public interface HystrixThreadPool {
         private final BlockingQueue<Runnable> queue;
         private final ThreadPoolExecutor threadPool;
         private final HystrixThreadPoolMetrics metrics;
+        /* queue delay shedding (CoDel): the end of the current interval, the minimum queue wait seen during it and whether the previous interval found the queue overloaded */
+        private final AtomicLong queueDelayIntervalEnd = new AtomicLong();
+        private final AtomicInteger queueDelayMinimum = new AtomicInteger();
+        private volatile boolean queueOverloaded = false;
 
         public HystrixThreadPoolDefault(HystrixThreadPoolKey threadPoolKey, HystrixConcurrencyStrategy concurrencyStrategy, HystrixMetricsPublisher metricsPublisher, HystrixPropertiesStrategy propertiesFactory, HystrixThreadPoolProperties.Setter propertiesDefaults) {
+            this(threadPoolKey, concurrencyStrategy, metricsPublisher, propertiesFactory, propertiesDefaults, false);
+        }
+
+        public HystrixThreadPoolDefault(HystrixThreadPoolKey threadPoolKey, HystrixConcurrencyStrategy concurrencyStrategy, HystrixMetricsPublisher metricsPublisher, HystrixPropertiesStrategy propertiesFactory, HystrixThreadPoolProperties.Setter propertiesDefaults, boolean virtualThreads) {
             this.properties = HystrixPropertiesFactory.getThreadPoolProperties(propertiesFactory, threadPoolKey, propertiesDefaults);
-            this.queue = concurrencyStrategy.getBlockingQueue(properties.maxQueueSize().get());
-            this.threadPool = concurrencyStrategy.getThreadPool(threadPoolKey, properties.coreSize(), properties.coreSize(), properties.keepAliveTimeMinutes(), TimeUnit.MINUTES, queue);
+            if (properties.queuePriorityLanesEnabled().get()) {
+                this.queue = concurrencyStrategy.getPriorityBlockingQueue(properties.maxQueueSize().get(), properties.queuePriorityStarvationThresholdInMilliseconds());
+            } else if (properties.queueLockFreeEnabled().get()) {
+                this.queue = concurrencyStrategy.getLockFreeBlockingQueue(properties.maxQueueSize().get());
+            } else {
+                this.queue = concurrencyStrategy.getBlockingQueue(properties.maxQueueSize().get());
+            }
+            HystrixProperty<Integer> maximumSize = HystrixProperty.Factory.asProperty(getMaximumPoolSize());
+            if (virtualThreads) {
+                this.threadPool = concurrencyStrategy.getVirtualThreadPool(threadPoolKey, properties.coreSize(), maximumSize, properties.keepAliveTimeMinutes(), TimeUnit.MINUTES, queue);
+            } else {
+                this.threadPool = concurrencyStrategy.getThreadPool(threadPoolKey, properties.coreSize(), maximumSize, properties.keepAliveTimeMinutes(), TimeUnit.MINUTES, queue);
+            }
+            // allow us to change things via fast-properties without checking them on every execution
+            properties.addPoolSizeCallback(new Runnable() {
+
+                @Override
+                public void run() {
+                    updatePoolSize();
+                }
+
+            });
             this.metrics = new HystrixThreadPoolMetrics(threadPoolKey, threadPool, properties);
 
             /* strategy: HystrixMetricsPublisherThreadPool */
@@ -138,14 +261,44 @@ public interface HystrixThreadPool {
 
         @Override
         public ThreadPoolExecutor getExecutor() {
-            // allow us to change things via fast-properties by setting it each time
-            threadPool.setCorePoolSize(properties.coreSize().get());
-            threadPool.setMaximumPoolSize(properties.coreSize().get()); // we always want maxSize the same as coreSize, we are not using a dynamically resizing pool
-            threadPool.setKeepAliveTime(properties.keepAliveTimeMinutes().get(), TimeUnit.MINUTES); // this doesn't really matter since we're not resizing
-
+            // the size is updated by the callback registered with the properties when they change
             return threadPool;
         }
 
+        /**
+         * The maximum size is the same as the core size unless <code>allowMaximumSizeToDivergeFromCoreSize</code> in which case it is never less than the core size.
+         */
+        private int getMaximumPoolSize() {
+            int coreSize = properties.coreSize().get();
+            Boolean allowMaximumSizeToDivergeFromCoreSize = properties.allowMaximumSizeToDivergeFromCoreSize().get();
+            if (allowMaximumSizeToDivergeFromCoreSize != null && allowMaximumSizeToDivergeFromCoreSize) {
+                return Math.max(coreSize, properties.maximumSize().get());
+            } else {
+                return coreSize;
+            }
+        }
+
+        /**
+         * Apply the current properties to the ThreadPoolExecutor (threads above the core size are then released once idle for the keep-alive time).
+         */
+        /* package */synchronized void updatePoolSize() {
+            if (threadPool.isShutdown()) {
+                // properties can outlive the pool (such as after Factory.shutdown()) so ignore changes once it is gone
+                return;
+            }
+            int coreSize = properties.coreSize().get();
+            int maximumSize = getMaximumPoolSize();
+            // the maximum can never be less than the core size so apply them in an order that keeps that true
+            if (maximumSize >= threadPool.getCorePoolSize()) {
+                threadPool.setMaximumPoolSize(maximumSize);
+                threadPool.setCorePoolSize(coreSize);
+            } else {
+                threadPool.setCorePoolSize(coreSize);
+                threadPool.setMaximumPoolSize(maximumSize);
+            }
+            threadPool.setKeepAliveTime(properties.keepAliveTimeMinutes().get(), TimeUnit.MINUTES);
+        }
+
         @Override
         public void markThreadExecution() {
             metrics.markThreadExecution();
@@ -168,10 +321,235 @@ public interface HystrixThreadPool {
                 // let the thread-pool reject or not
                 return true;
             } else {
-                return threadPool.getQueue().size() < properties.queueSizeRejectionThreshold().get();
+                return queue.size() < properties.queueSizeRejectionThreshold().get();
             }
         }
 
+        /**
+         * Whether the threadpool queue has space available for the given priority according to the <code>queueSizeRejectionThreshold</code> settings.
+         * <p>
+         * {@link ExecutionPriority#LOW} executions are rejected once the queue reaches <code>queueSizeRejectionThreshold.lowPriorityPercentage</code> of the threshold. With priority lanes other
+         * executions only count those of the same or higher priority as the ones of lower priority will not delay them.
+         */
+        @Override
+        public boolean isQueueSpaceAvailable(ExecutionPriority priority) {
+            if (properties.maxQueueSize().get() < 0) {
+                // we don't have a queue so we won't look for space but instead
+                // let the thread-pool reject or not
+                return true;
+            }
+            int threshold = properties.queueSizeRejectionThreshold().get();
+            if (priority == ExecutionPriority.LOW) {
+                return queue.size() < threshold * properties.queueSizeRejectionThresholdLowPriorityPercentage().get() / 100;
+            } else if (queue instanceof HystrixPriorityBlockingQueue) {
+                return ((HystrixPriorityBlockingQueue) queue).sizeOfPriorityOrHigher(priority) < threshold;
+            } else {
+                return queue.size() < threshold;
+            }
+        }
+
+        @Override
+        public boolean purgeQueuedTask(Runnable task) {
+            if (threadPool.remove(task)) {
+                metrics.markQueuePurge();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Record the queue wait and, when <code>queueDelayShedding</code> is enabled, reject the task if the queue is overloaded and it waited more than twice the target.
+         * <p>
+         * The queue is considered overloaded when even the shortest wait during the last interval exceeded the target, in other words the queue never drained during it. A standing queue
+         * only adds latency so shedding the tasks that waited longest lets it drain while short bursts (that the queue exists to absorb) are unaffected.
+         */
+        @Override
+        public boolean markQueueWait(int queueWaitTimeInMilliseconds) {
+            metrics.markQueueWait(queueWaitTimeInMilliseconds);
+            if (!properties.queueDelaySheddingEnabled().get()) {
+                return true;
+            }
+            int target = properties.queueDelaySheddingTargetInMilliseconds().get();
+            long now = System.currentTimeMillis();
+            long intervalEnd = queueDelayIntervalEnd.get();
+            if (now > intervalEnd && queueDelayIntervalEnd.compareAndSet(intervalEnd, now + properties.queueDelaySheddingIntervalInMilliseconds().get())) {
+                // the interval is over so determine whether the queue is overloaded and start measuring the next one with this wait
+                queueOverloaded = queueDelayMinimum.getAndSet(queueWaitTimeInMilliseconds) > target;
+            } else {
+                while (true) {
+                    int minimum = queueDelayMinimum.get();
+                    if (queueWaitTimeInMilliseconds >= minimum || queueDelayMinimum.compareAndSet(minimum, queueWaitTimeInMilliseconds)) {
+                        break;
+                    }
+                }
+            }
+            if (queueOverloaded && queueWaitTimeInMilliseconds > 2 * target) {
+                metrics.markQueueDelayShed();
+                return false;
+            }
+            return true;
+        }
+
+    }
+
+    public static class UnitTest {
+
+        @After
+        public void cleanup() {
+            ConfigurationManager.getConfigInstance().clear();
+        }
+
+        /**
+         * Test that the pool is fixed at the core size unless allowed to diverge and is resized when the properties change.
+         */
+        @Test
+        public void testElasticPoolSize() {
+            HystrixThreadPoolKey key = HystrixThreadPoolKey.Factory.asKey("ElasticPool");
+            HystrixThreadPoolDefault pool = new HystrixThreadPoolDefault(key, HystrixConcurrencyStrategyDefault.getInstance(), HystrixMetricsPublisherDefault.getInstance(),
+                    HystrixPropertiesStrategyDefault.getInstance(), HystrixThreadPoolProperties.Setter().withCoreSize(2).withMaximumSize(5));
+            ThreadPoolExecutor executor = pool.getExecutor();
+            assertEquals(2, executor.getCorePoolSize());
+            assertEquals(2, executor.getMaximumPoolSize());
+
+            ConfigurationManager.getConfigInstance().setProperty("hystrix.threadpool.ElasticPool.allowMaximumSizeToDivergeFromCoreSize", true);
+            assertEquals(2, executor.getCorePoolSize());
+            assertEquals(5, executor.getMaximumPoolSize());
+
+            ConfigurationManager.getConfigInstance().setProperty("hystrix.threadpool.ElasticPool.maximumSize", 8);
+            assertEquals(8, executor.getMaximumPoolSize());
+
+            // the maximum is never less than the core size
+            ConfigurationManager.getConfigInstance().setProperty("hystrix.threadpool.ElasticPool.coreSize", 10);
+            assertEquals(10, executor.getCorePoolSize());
+            assertEquals(10, executor.getMaximumPoolSize());
+            ConfigurationManager.getConfigInstance().setProperty("hystrix.threadpool.ElasticPool.coreSize", 3);
+            assertEquals(3, executor.getCorePoolSize());
+            assertEquals(8, executor.getMaximumPoolSize());
+
+            // changes to the default properties apply as well
+            ConfigurationManager.getConfigInstance().setProperty("hystrix.threadpool.default.keepAliveTimeMinutes", 5);
+            assertEquals(5, executor.getKeepAliveTime(TimeUnit.MINUTES));
+
+            ConfigurationManager.getConfigInstance().setProperty("hystrix.threadpool.ElasticPool.allowMaximumSizeToDivergeFromCoreSize", false);
+            assertEquals(3, executor.getCorePoolSize());
+            assertEquals(3, executor.getMaximumPoolSize());
+            executor.shutdown();
+        }
+
+        /**
+         * Test that an elastic pool without a queue creates threads above the core size rather than rejecting.
+         */
+        @Test
+        public void testElasticPoolGrowsAboveCoreSize() throws Exception {
+            HystrixThreadPoolKey key = HystrixThreadPoolKey.Factory.asKey("ElasticPoolGrows");
+            HystrixThreadPoolDefault pool = new HystrixThreadPoolDefault(key, HystrixConcurrencyStrategyDefault.getInstance(), HystrixMetricsPublisherDefault.getInstance(),
+                    HystrixPropertiesStrategyDefault.getInstance(), HystrixThreadPoolProperties.Setter().withCoreSize(1).withMaximumSize(3).withAllowMaximumSizeToDivergeFromCoreSize(true)
+                            .withMaxQueueSize(-1));
+            ThreadPoolExecutor executor = pool.getExecutor();
+            final CountDownLatch release = new CountDownLatch(1);
+            Runnable blocking = new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+
+            };
+            for (int i = 0; i < 3; i++) {
+                executor.execute(blocking);
+            }
+            assertEquals(3, executor.getPoolSize());
+            try {
+                executor.execute(blocking);
+                fail("expected rejection above the maximum size");
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+            release.countDown();
+            executor.shutdown();
+        }
+
+        /**
+         * Test that tasks are shed once the minimum queue wait during an interval exceeds the target and no longer once it falls below it.
+         */
+        @Test
+        public void testQueueDelayShedding() throws Exception {
+            HystrixThreadPoolKey key = HystrixThreadPoolKey.Factory.asKey("QueueDelayShedding");
+            HystrixThreadPoolDefault pool = new HystrixThreadPoolDefault(key, HystrixConcurrencyStrategyDefault.getInstance(), HystrixMetricsPublisherDefault.getInstance(),
+                    HystrixPropertiesStrategyDefault.getInstance(), HystrixThreadPoolProperties.Setter().withQueueDelaySheddingEnabled(true).withQueueDelaySheddingTargetInMilliseconds(5)
+                            .withQueueDelaySheddingIntervalInMilliseconds(100).withMetricsRollingStatisticalWindowInMilliseconds(1000).withMetricsRollingStatisticalWindowBuckets(10));
+
+            // the first interval has no measurements so the queue is not yet considered overloaded
+            assertTrue(pool.markQueueWait(20));
+            assertTrue(pool.markQueueWait(30));
+
+            // the shortest wait during that interval was above the target so long waits are now shed
+            Thread.sleep(150);
+            assertFalse(pool.markQueueWait(20));
+            assertTrue(pool.markQueueWait(8));
+            assertTrue(pool.markQueueWait(1));
+
+            // the queue drained during the last interval so nothing is shed
+            Thread.sleep(150);
+            assertTrue(pool.markQueueWait(30));
+
+            assertEquals(1, pool.metrics.getRollingCountQueueDelayShed());
+            assertEquals(1, pool.metrics.getCumulativeCountQueueDelayShed());
+            // the percentiles are calculated once the bucket rolls
+            Thread.sleep(150);
+            assertEquals(30, pool.metrics.getQueueWaitTimePercentile(100));
+            assertEquals(1, pool.metrics.getQueueWaitTimePercentile(0));
+            pool.getExecutor().shutdown();
+        }
+
+        /**
+         * Test that a task that is still queued is removed and counted while one that was already dequeued is not.
+         */
+        @Test
+        public void testPurgeQueuedTask() throws Exception {
+            HystrixThreadPoolKey key = HystrixThreadPoolKey.Factory.asKey("PurgeQueuedTask");
+            HystrixThreadPoolDefault pool = new HystrixThreadPoolDefault(key, HystrixConcurrencyStrategyDefault.getInstance(), HystrixMetricsPublisherDefault.getInstance(),
+                    HystrixPropertiesStrategyDefault.getInstance(), HystrixThreadPoolProperties.Setter().withCoreSize(1).withMaxQueueSize(5));
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            Runnable blocking = new Runnable() {
+
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+
+            };
+            Runnable queued = new Runnable() {
+
+                @Override
+                public void run() {
+                    fail("a purged task should not run");
+                }
+
+            };
+            pool.getExecutor().execute(blocking);
+            assertTrue(started.await(1000, TimeUnit.MILLISECONDS));
+            pool.getExecutor().execute(queued);
+
+            assertFalse(pool.purgeQueuedTask(blocking));
+            assertTrue(pool.purgeQueuedTask(queued));
+            assertEquals(0, pool.getExecutor().getQueue().size());
+            assertEquals(1, pool.metrics.getRollingCountQueuePurged());
+            assertEquals(1, pool.metrics.getCumulativeCountQueuePurged());
+
+            release.countDown();
+            pool.getExecutor().shutdown();
+        }
     }
 
 }
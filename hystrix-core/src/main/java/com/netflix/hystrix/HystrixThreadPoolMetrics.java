@@ -18,20 +18,28 @@ package com.netflix.hystrix;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 
+import com.netflix.hystrix.strategy.properties.HystrixProperty;
 import com.netflix.hystrix.util.HystrixRollingNumber;
 import com.netflix.hystrix.util.HystrixRollingNumberEvent;
+import com.netflix.hystrix.util.HystrixRollingPercentile;
 
 /**
  * Used by {@link HystrixThreadPool} to record metrics.
  */
 public class HystrixThreadPoolMetrics {
 
+    /* number of queue wait times sampled in each bucket of the rolling percentile */
+    private static final int QUEUE_WAIT_PERCENTILE_BUCKET_SIZE = 100;
+
     private final HystrixRollingNumber counter;
+    private final HystrixRollingPercentile percentileQueueWait;
     private final ThreadPoolExecutor threadPool;
 
     /* package */HystrixThreadPoolMetrics(HystrixThreadPoolKey threadPoolKey, ThreadPoolExecutor threadPool, HystrixThreadPoolProperties properties) {
         this.threadPool = threadPool;
         this.counter = new HystrixRollingNumber(properties.metricsRollingStatisticalWindowInMilliseconds(), properties.metricsRollingStatisticalWindowBuckets());
+        this.percentileQueueWait = new HystrixRollingPercentile(properties.metricsRollingStatisticalWindowInMilliseconds(), properties.metricsRollingStatisticalWindowBuckets(),
+                HystrixProperty.Factory.asProperty(QUEUE_WAIT_PERCENTILE_BUCKET_SIZE));
     }
 
     /**
@@ -153,6 +161,95 @@ public class HystrixThreadPoolMetrics {
         return counter.getRollingMaxValue(HystrixRollingNumberEvent.THREAD_MAX_ACTIVE);
     }
 
+    /**
+     * Invoked each time a thread begins executing a task with the time (in milliseconds) the task waited in the queue.
+     * 
+     * @param queueWaitTimeInMilliseconds
+     *            time the task waited in the queue
+     */
+    public void markQueueWait(int queueWaitTimeInMilliseconds) {
+        percentileQueueWait.addValue(queueWaitTimeInMilliseconds);
+    }
+
+    /**
+     * Retrieve the time (in milliseconds) tasks waited in the queue before a thread began executing them at a given percentile.
+     * <p>
+     * Percentile capture and calculation is configured via {@link HystrixThreadPoolProperties#metricsRollingStatisticalWindowInMilliseconds()} and
+     * {@link HystrixThreadPoolProperties#metricsRollingStatisticalWindowBuckets()}.
+     * 
+     * @param percentile
+     *            Percentile such as 50, 99, or 99.5.
+     * @return int time in milliseconds
+     */
+    public int getQueueWaitTimePercentile(double percentile) {
+        return percentileQueueWait.getPercentile(percentile);
+    }
+
+    /**
+     * The mean (average) time (in milliseconds) tasks waited in the queue before a thread began executing them.
+     * 
+     * @return int time in milliseconds
+     */
+    public int getQueueWaitTimeMean() {
+        return percentileQueueWait.getMean();
+    }
+
+    /**
+     * Invoked each time a task is rejected instead of executed because it waited too long in an overloaded queue.
+     * <p>
+     * See {@link HystrixThreadPoolProperties#queueDelaySheddingEnabled()}.
+     */
+    public void markQueueDelayShed() {
+        counter.increment(HystrixRollingNumberEvent.THREAD_QUEUE_DELAY_SHED);
+    }
+
+    /**
+     * Rolling count of tasks rejected because they waited too long in an overloaded queue during rolling statistical window.
+     * <p>
+     * The rolling window is defined by {@link HystrixThreadPoolProperties#metricsRollingStatisticalWindowInMilliseconds()}.
+     * 
+     * @return rolling count of tasks shed
+     */
+    public long getRollingCountQueueDelayShed() {
+        return counter.getRollingSum(HystrixRollingNumberEvent.THREAD_QUEUE_DELAY_SHED);
+    }
+
+    /**
+     * Cumulative count of tasks rejected because they waited too long in an overloaded queue since the start of the application.
+     * 
+     * @return cumulative count of tasks shed
+     */
+    public long getCumulativeCountQueueDelayShed() {
+        return counter.getCumulativeSum(HystrixRollingNumberEvent.THREAD_QUEUE_DELAY_SHED);
+    }
+
+    /**
+     * Invoked each time a task is removed from the queue without being executed because it is no longer needed (such as after its caller timed-out).
+     */
+    public void markQueuePurge() {
+        counter.increment(HystrixRollingNumberEvent.THREAD_QUEUE_PURGED);
+    }
+
+    /**
+     * Rolling count of tasks removed from the queue without being executed during rolling statistical window.
+     * <p>
+     * The rolling window is defined by {@link HystrixThreadPoolProperties#metricsRollingStatisticalWindowInMilliseconds()}.
+     * 
+     * @return rolling count of tasks purged
+     */
+    public long getRollingCountQueuePurged() {
+        return counter.getRollingSum(HystrixRollingNumberEvent.THREAD_QUEUE_PURGED);
+    }
+
+    /**
+     * Cumulative count of tasks removed from the queue without being executed since the start of the application.
+     * 
+     * @return cumulative count of tasks purged
+     */
+    public long getCumulativeCountQueuePurged() {
+        return counter.getCumulativeSum(HystrixRollingNumberEvent.THREAD_QUEUE_PURGED);
+    }
+
     private void setMaxActiveThreads() {
         counter.updateRollingMax(HystrixRollingNumberEvent.THREAD_MAX_ACTIVE, threadPool.getActiveCount());
     }
@@ -17,12 +17,15 @@ package com.netflix.hystrix;
 
 import static com.netflix.hystrix.strategy.properties.HystrixProperty.Factory.*;
 
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionPriority;
 import com.netflix.hystrix.strategy.concurrency.HystrixConcurrencyStrategy;
 import com.netflix.hystrix.strategy.properties.HystrixPropertiesChainedArchaiusProperty;
 import com.netflix.hystrix.strategy.properties.HystrixPropertiesStrategy;
@@ -44,6 +47,15 @@ public abstract class HystrixThreadPoolProperties {
     private Integer default_queueSizeRejectionThreshold = 5; // number of items in queue 
     private Integer default_threadPoolRollingNumberStatisticalWindow = 10000; // milliseconds for rolling number
     private Integer default_threadPoolRollingNumberStatisticalWindowBuckets = 10; // number of buckets in rolling number (10 1-second buckets)
+    private Boolean default_queuePriorityLanesEnabled = false; // whether the queue is split into lanes per ExecutionPriority
+    private Integer default_queuePriorityStarvationThresholdInMilliseconds = 100; // max time queued before a lower priority execution is taken ahead of higher priorities
+    private Integer default_queueSizeRejectionThresholdLowPriorityPercentage = 50; // percentage of queueSizeRejectionThreshold at which LOW priority executions are rejected
+    private Boolean default_queueLockFreeEnabled = false; // whether a lock-free ring buffer is used as the queue
+    private Integer default_maximumSize = 10; // max size of thread pool (if allowMaximumSizeToDivergeFromCoreSize)
+    private Boolean default_allowMaximumSizeToDivergeFromCoreSize = false; // whether maximumSize is used (otherwise the pool is fixed at coreSize)
+    private Boolean default_queueDelaySheddingEnabled = false; // whether tasks are shed once queueing delay stays above the target
+    private Integer default_queueDelaySheddingTargetInMilliseconds = 5; // acceptable minimum queueing delay
+    private Integer default_queueDelaySheddingIntervalInMilliseconds = 100; // interval over which the minimum queueing delay is measured
 
     private final HystrixProperty<Integer> corePoolSize;
     private final HystrixProperty<Integer> keepAliveTime;
@@ -51,6 +63,28 @@ public abstract class HystrixThreadPoolProperties {
     private final HystrixProperty<Integer> queueSizeRejectionThreshold;
     private final HystrixProperty<Integer> threadPoolRollingNumberStatisticalWindowInMilliseconds;
     private final HystrixProperty<Integer> threadPoolRollingNumberStatisticalWindowBuckets;
+    private final HystrixProperty<Boolean> queuePriorityLanesEnabled;
+    private final HystrixProperty<Integer> queuePriorityStarvationThresholdInMilliseconds;
+    private final HystrixProperty<Integer> queueSizeRejectionThresholdLowPriorityPercentage;
+    private final HystrixProperty<Boolean> queueLockFreeEnabled;
+    private final HystrixProperty<Integer> maximumSize;
+    private final HystrixProperty<Boolean> allowMaximumSizeToDivergeFromCoreSize;
+    private final HystrixProperty<Boolean> queueDelaySheddingEnabled;
+    private final HystrixProperty<Integer> queueDelaySheddingTargetInMilliseconds;
+    private final HystrixProperty<Integer> queueDelaySheddingIntervalInMilliseconds;
+
+    /* callbacks invoked when a property determining the size of the thread-pool changes */
+    private final List<Runnable> poolSizeCallbacks = new CopyOnWriteArrayList<Runnable>();
+    private final Runnable poolSizeChanged = new Runnable() {
+
+        @Override
+        public void run() {
+            for (Runnable callback : poolSizeCallbacks) {
+                callback.run();
+            }
+        }
+
+    };
 
     protected HystrixThreadPoolProperties(HystrixThreadPoolKey key) {
         this(key, new Setter(), "hystrix");
@@ -61,12 +95,21 @@ public abstract class HystrixThreadPoolProperties {
     }
 
     protected HystrixThreadPoolProperties(HystrixThreadPoolKey key, Setter builder, String propertyPrefix) {
-        this.corePoolSize = getProperty(propertyPrefix, key, "coreSize", builder.getCoreSize(), default_coreSize);
-        this.keepAliveTime = getProperty(propertyPrefix, key, "keepAliveTimeMinutes", builder.getKeepAliveTimeMinutes(), default_keepAliveTimeMinutes);
+        this.corePoolSize = getProperty(propertyPrefix, key, "coreSize", builder.getCoreSize(), default_coreSize, poolSizeChanged);
+        this.keepAliveTime = getProperty(propertyPrefix, key, "keepAliveTimeMinutes", builder.getKeepAliveTimeMinutes(), default_keepAliveTimeMinutes, poolSizeChanged);
         this.maxQueueSize = getProperty(propertyPrefix, key, "maxQueueSize", builder.getMaxQueueSize(), default_maxQueueSize);
         this.queueSizeRejectionThreshold = getProperty(propertyPrefix, key, "queueSizeRejectionThreshold", builder.getQueueSizeRejectionThreshold(), default_queueSizeRejectionThreshold);
         this.threadPoolRollingNumberStatisticalWindowInMilliseconds = getProperty(propertyPrefix, key, "metrics.rollingStats.timeInMilliseconds", builder.getMetricsRollingStatisticalWindowInMilliseconds(), default_threadPoolRollingNumberStatisticalWindow);
         this.threadPoolRollingNumberStatisticalWindowBuckets = getProperty(propertyPrefix, key, "metrics.rollingStats.numBuckets", builder.getMetricsRollingStatisticalWindowBuckets(), default_threadPoolRollingNumberStatisticalWindowBuckets);
+        this.queuePriorityLanesEnabled = getProperty(propertyPrefix, key, "queuePriorityLanes.enabled", builder.getQueuePriorityLanesEnabled(), default_queuePriorityLanesEnabled);
+        this.queuePriorityStarvationThresholdInMilliseconds = getProperty(propertyPrefix, key, "queuePriorityLanes.starvationThresholdInMilliseconds", builder.getQueuePriorityStarvationThresholdInMilliseconds(), default_queuePriorityStarvationThresholdInMilliseconds);
+        this.queueSizeRejectionThresholdLowPriorityPercentage = getProperty(propertyPrefix, key, "queueSizeRejectionThreshold.lowPriorityPercentage", builder.getQueueSizeRejectionThresholdLowPriorityPercentage(), default_queueSizeRejectionThresholdLowPriorityPercentage);
+        this.queueLockFreeEnabled = getProperty(propertyPrefix, key, "queueLockFree.enabled", builder.getQueueLockFreeEnabled(), default_queueLockFreeEnabled);
+        this.maximumSize = getProperty(propertyPrefix, key, "maximumSize", builder.getMaximumSize(), default_maximumSize, poolSizeChanged);
+        this.allowMaximumSizeToDivergeFromCoreSize = getProperty(propertyPrefix, key, "allowMaximumSizeToDivergeFromCoreSize", builder.getAllowMaximumSizeToDivergeFromCoreSize(), default_allowMaximumSizeToDivergeFromCoreSize, poolSizeChanged);
+        this.queueDelaySheddingEnabled = getProperty(propertyPrefix, key, "queueDelayShedding.enabled", builder.getQueueDelaySheddingEnabled(), default_queueDelaySheddingEnabled);
+        this.queueDelaySheddingTargetInMilliseconds = getProperty(propertyPrefix, key, "queueDelayShedding.targetInMilliseconds", builder.getQueueDelaySheddingTargetInMilliseconds(), default_queueDelaySheddingTargetInMilliseconds);
+        this.queueDelaySheddingIntervalInMilliseconds = getProperty(propertyPrefix, key, "queueDelayShedding.intervalInMilliseconds", builder.getQueueDelaySheddingIntervalInMilliseconds(), default_queueDelaySheddingIntervalInMilliseconds);
     }
 
     private static HystrixProperty<Integer> getProperty(String propertyPrefix, HystrixThreadPoolKey key, String instanceProperty, Integer builderOverrideValue, Integer defaultValue) {
@@ -75,7 +118,31 @@ public abstract class HystrixThreadPoolProperties {
                 new HystrixPropertiesChainedArchaiusProperty.DynamicIntegerProperty(propertyPrefix + ".threadpool.default." + instanceProperty, defaultValue)));
     }
 
-    @SuppressWarnings("unused")
+    /**
+     * Get an Integer property invoking the given callback when either the instance or default value changes.
+     */
+    private static HystrixProperty<Integer> getProperty(String propertyPrefix, HystrixThreadPoolKey key, String instanceProperty, Integer builderOverrideValue, Integer defaultValue, Runnable callback) {
+        HystrixPropertiesChainedArchaiusProperty.DynamicIntegerProperty instanceValue = new HystrixPropertiesChainedArchaiusProperty.DynamicIntegerProperty(propertyPrefix + ".threadpool." + key.name() + "." + instanceProperty, builderOverrideValue);
+        HystrixPropertiesChainedArchaiusProperty.DynamicIntegerProperty defaultValueProperty = new HystrixPropertiesChainedArchaiusProperty.DynamicIntegerProperty(propertyPrefix + ".threadpool.default." + instanceProperty, defaultValue);
+        HystrixProperty<Integer> property = asProperty(new HystrixPropertiesChainedArchaiusProperty.IntegerProperty(instanceValue, defaultValueProperty));
+        // added after the chained property has added its own callback so the new value is used when invoked
+        instanceValue.addCallback(callback);
+        defaultValueProperty.addCallback(callback);
+        return property;
+    }
+
+    /**
+     * Get a Boolean property invoking the given callback when either the instance or default value changes.
+     */
+    private static HystrixProperty<Boolean> getProperty(String propertyPrefix, HystrixThreadPoolKey key, String instanceProperty, Boolean builderOverrideValue, Boolean defaultValue, Runnable callback) {
+        HystrixPropertiesChainedArchaiusProperty.DynamicBooleanProperty instanceValue = new HystrixPropertiesChainedArchaiusProperty.DynamicBooleanProperty(propertyPrefix + ".threadpool." + key.name() + "." + instanceProperty, builderOverrideValue);
+        HystrixPropertiesChainedArchaiusProperty.DynamicBooleanProperty defaultValueProperty = new HystrixPropertiesChainedArchaiusProperty.DynamicBooleanProperty(propertyPrefix + ".threadpool.default." + instanceProperty, defaultValue);
+        HystrixProperty<Boolean> property = asProperty(new HystrixPropertiesChainedArchaiusProperty.BooleanProperty(instanceValue, defaultValueProperty));
+        instanceValue.addCallback(callback);
+        defaultValueProperty.addCallback(callback);
+        return property;
+    }
+
     private static HystrixProperty<Boolean> getProperty(String propertyPrefix, HystrixThreadPoolKey key, String instanceProperty, Boolean builderOverrideValue, Boolean defaultValue) {
         return asProperty(new HystrixPropertiesChainedArchaiusProperty.BooleanProperty(
                 new HystrixPropertiesChainedArchaiusProperty.DynamicBooleanProperty(propertyPrefix + ".threadpool." + key.name() + "." + instanceProperty, builderOverrideValue),
@@ -146,6 +213,118 @@ public abstract class HystrixThreadPoolProperties {
         return threadPoolRollingNumberStatisticalWindowBuckets;
     }
 
+    /**
+     * Whether the queue of the {@link HystrixThreadPool} is split into a lane per {@link ExecutionPriority} (see {@link HystrixConcurrencyStrategy#getPriorityBlockingQueue}) so higher
+     * priority executions are taken off the queue first.
+     * <p>
+     * Like {@link #maxQueueSize} this can not be dynamically changed as it determines the queue implementation.
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> queuePriorityLanesEnabled() {
+        return queuePriorityLanesEnabled;
+    }
+
+    /**
+     * Time in milliseconds after which an execution waiting in a lower priority lane is taken off the queue ahead of higher priority executions so low priority work is not starved.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> queuePriorityStarvationThresholdInMilliseconds() {
+        return queuePriorityStarvationThresholdInMilliseconds;
+    }
+
+    /**
+     * Percentage of {@link #queueSizeRejectionThreshold} at which executions with {@link ExecutionPriority#LOW} are rejected so background work is shed before other work when the
+     * thread-pool is saturated.
+     * <p>
+     * Other priorities are rejected at {@link #queueSizeRejectionThreshold} but with {@link #queuePriorityLanesEnabled} only executions of the same or higher priority (that is those queued
+     * ahead of it) are counted.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> queueSizeRejectionThresholdLowPriorityPercentage() {
+        return queueSizeRejectionThresholdLowPriorityPercentage;
+    }
+
+    /**
+     * Whether the queue of the {@link HystrixThreadPool} is a lock-free ring buffer (see {@link HystrixConcurrencyStrategy#getLockFreeBlockingQueue}) rather than a
+     * {@link java.util.concurrent.LinkedBlockingQueue} which allocates per task and uses locks.
+     * <p>
+     * It does not apply if {@link #queuePriorityLanesEnabled} and like {@link #maxQueueSize} can not be dynamically changed as it determines the queue implementation.
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> queueLockFreeEnabled() {
+        return queueLockFreeEnabled;
+    }
+
+    /**
+     * Maximum thread-pool size that gets passed to {@link ThreadPoolExecutor#setMaximumPoolSize(int)} if {@link #allowMaximumSizeToDivergeFromCoreSize()}. Threads above
+     * {@link #coreSize()} are created when the queue is full and released after {@link #keepAliveTimeMinutes()} of being idle.
+     * <p>
+     * As the {@link ThreadPoolExecutor} only creates threads above the core size once its queue is full this is typically used with {@link #maxQueueSize} -1 (a SynchronousQueue).
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Whether the thread-pool is elastic between {@link #coreSize()} and {@link #maximumSize()} or fixed at {@link #coreSize()} (the default).
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> allowMaximumSizeToDivergeFromCoreSize() {
+        return allowMaximumSizeToDivergeFromCoreSize;
+    }
+
+    /**
+     * Register a callback to be invoked when {@link #coreSize()}, {@link #maximumSize()}, {@link #allowMaximumSizeToDivergeFromCoreSize()} or {@link #keepAliveTimeMinutes()} change so the
+     * {@link HystrixThreadPool} can be resized when the properties change rather than checking them on every execution.
+     * <p>
+     * The default implementation observes the Archaius properties. Implementations overriding those methods with values that can change should override this as well.
+     * 
+     * @param callback
+     *            Runnable to invoke after a change
+     */
+    public void addPoolSizeCallback(Runnable callback) {
+        poolSizeCallbacks.add(callback);
+    }
+
+    /**
+     * Whether tasks are rejected instead of executed once the time they wait in the queue has stayed above {@link #queueDelaySheddingTargetInMilliseconds()} for a full
+     * {@link #queueDelaySheddingIntervalInMilliseconds()} (CoDel).
+     * <p>
+     * This bounds queueing delay when the thread-pool is overloaded regardless of <code>queueSizeRejectionThreshold</code>, which only limits the length of the queue.
+     * 
+     * @return {@code HystrixProperty<Boolean>}
+     */
+    public HystrixProperty<Boolean> queueDelaySheddingEnabled() {
+        return queueDelaySheddingEnabled;
+    }
+
+    /**
+     * Queueing delay that is considered acceptable when {@link #queueDelaySheddingEnabled()}.
+     * <p>
+     * The queue is considered overloaded when even the shortest wait during an interval exceeds this, and while overloaded tasks that waited more than twice this are rejected.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> queueDelaySheddingTargetInMilliseconds() {
+        return queueDelaySheddingTargetInMilliseconds;
+    }
+
+    /**
+     * Interval over which the minimum queueing delay is measured to decide whether the queue is overloaded when {@link #queueDelaySheddingEnabled()}.
+     * 
+     * @return {@code HystrixProperty<Integer>}
+     */
+    public HystrixProperty<Integer> queueDelaySheddingIntervalInMilliseconds() {
+        return queueDelaySheddingIntervalInMilliseconds;
+    }
+
     /**
      * Factory method to retrieve the default Setter.
      */
@@ -175,6 +354,15 @@ public abstract class HystrixThreadPoolProperties {
         private Integer queueSizeRejectionThreshold = null;
         private Integer rollingStatisticalWindowInMilliseconds = null;
         private Integer rollingStatisticalWindowBuckets = null;
+        private Boolean queuePriorityLanesEnabled = null;
+        private Integer queuePriorityStarvationThresholdInMilliseconds = null;
+        private Integer queueSizeRejectionThresholdLowPriorityPercentage = null;
+        private Boolean queueLockFreeEnabled = null;
+        private Integer maximumSize = null;
+        private Boolean allowMaximumSizeToDivergeFromCoreSize = null;
+        private Boolean queueDelaySheddingEnabled = null;
+        private Integer queueDelaySheddingTargetInMilliseconds = null;
+        private Integer queueDelaySheddingIntervalInMilliseconds = null;
 
         private Setter() {
         }
@@ -203,6 +391,42 @@ public abstract class HystrixThreadPoolProperties {
             return rollingStatisticalWindowBuckets;
         }
 
+        public Boolean getQueuePriorityLanesEnabled() {
+            return queuePriorityLanesEnabled;
+        }
+
+        public Integer getQueuePriorityStarvationThresholdInMilliseconds() {
+            return queuePriorityStarvationThresholdInMilliseconds;
+        }
+
+        public Integer getQueueSizeRejectionThresholdLowPriorityPercentage() {
+            return queueSizeRejectionThresholdLowPriorityPercentage;
+        }
+
+        public Boolean getQueueLockFreeEnabled() {
+            return queueLockFreeEnabled;
+        }
+
+        public Integer getMaximumSize() {
+            return maximumSize;
+        }
+
+        public Boolean getAllowMaximumSizeToDivergeFromCoreSize() {
+            return allowMaximumSizeToDivergeFromCoreSize;
+        }
+
+        public Boolean getQueueDelaySheddingEnabled() {
+            return queueDelaySheddingEnabled;
+        }
+
+        public Integer getQueueDelaySheddingTargetInMilliseconds() {
+            return queueDelaySheddingTargetInMilliseconds;
+        }
+
+        public Integer getQueueDelaySheddingIntervalInMilliseconds() {
+            return queueDelaySheddingIntervalInMilliseconds;
+        }
+
         public Setter withCoreSize(int value) {
             this.coreSize = value;
             return this;
@@ -233,6 +457,51 @@ public abstract class HystrixThreadPoolProperties {
             return this;
         }
 
+        public Setter withQueuePriorityLanesEnabled(boolean value) {
+            this.queuePriorityLanesEnabled = value;
+            return this;
+        }
+
+        public Setter withQueuePriorityStarvationThresholdInMilliseconds(int value) {
+            this.queuePriorityStarvationThresholdInMilliseconds = value;
+            return this;
+        }
+
+        public Setter withQueueSizeRejectionThresholdLowPriorityPercentage(int value) {
+            this.queueSizeRejectionThresholdLowPriorityPercentage = value;
+            return this;
+        }
+
+        public Setter withQueueLockFreeEnabled(boolean value) {
+            this.queueLockFreeEnabled = value;
+            return this;
+        }
+
+        public Setter withMaximumSize(int value) {
+            this.maximumSize = value;
+            return this;
+        }
+
+        public Setter withAllowMaximumSizeToDivergeFromCoreSize(boolean value) {
+            this.allowMaximumSizeToDivergeFromCoreSize = value;
+            return this;
+        }
+
+        public Setter withQueueDelaySheddingEnabled(boolean value) {
+            this.queueDelaySheddingEnabled = value;
+            return this;
+        }
+
+        public Setter withQueueDelaySheddingTargetInMilliseconds(int value) {
+            this.queueDelaySheddingTargetInMilliseconds = value;
+            return this;
+        }
+
+        public Setter withQueueDelaySheddingIntervalInMilliseconds(int value) {
+            this.queueDelaySheddingIntervalInMilliseconds = value;
+            return this;
+        }
+
         /**
          * Base properties for unit testing.
          */
@@ -243,7 +512,16 @@ public abstract class HystrixThreadPoolProperties {
                     .withMaxQueueSize(100)// size of queue (but we never allow it to grow this big ... this can't be dynamically changed so we use 'queueSizeRejectionThreshold' to artificially limit and reject)
                     .withQueueSizeRejectionThreshold(10)// number of items in queue at which point we reject (this can be dyamically changed)
                     .withMetricsRollingStatisticalWindowInMilliseconds(10000)// milliseconds for rolling number
-                    .withMetricsRollingStatisticalWindowBuckets(10);// number of buckets in rolling number (10 1-second buckets)
+                    .withMetricsRollingStatisticalWindowBuckets(10)// number of buckets in rolling number (10 1-second buckets)
+                    .withQueuePriorityLanesEnabled(false)
+                    .withQueuePriorityStarvationThresholdInMilliseconds(100)
+                    .withQueueSizeRejectionThresholdLowPriorityPercentage(50)
+                    .withQueueLockFreeEnabled(false)
+                    .withMaximumSize(10)
+                    .withAllowMaximumSizeToDivergeFromCoreSize(false)
+                    .withQueueDelaySheddingEnabled(false)
+                    .withQueueDelaySheddingTargetInMilliseconds(5)
+                    .withQueueDelaySheddingIntervalInMilliseconds(100);
         }
 
         /**
@@ -286,6 +564,51 @@ public abstract class HystrixThreadPoolProperties {
                     return HystrixProperty.Factory.asProperty(builder.rollingStatisticalWindowBuckets);
                 }
 
+                @Override
+                public HystrixProperty<Boolean> queuePriorityLanesEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.queuePriorityLanesEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> queuePriorityStarvationThresholdInMilliseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.queuePriorityStarvationThresholdInMilliseconds);
+                }
+
+                @Override
+                public HystrixProperty<Integer> queueSizeRejectionThresholdLowPriorityPercentage() {
+                    return HystrixProperty.Factory.asProperty(builder.queueSizeRejectionThresholdLowPriorityPercentage);
+                }
+
+                @Override
+                public HystrixProperty<Boolean> queueLockFreeEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.queueLockFreeEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> maximumSize() {
+                    return HystrixProperty.Factory.asProperty(builder.maximumSize);
+                }
+
+                @Override
+                public HystrixProperty<Boolean> allowMaximumSizeToDivergeFromCoreSize() {
+                    return HystrixProperty.Factory.asProperty(builder.allowMaximumSizeToDivergeFromCoreSize);
+                }
+
+                @Override
+                public HystrixProperty<Boolean> queueDelaySheddingEnabled() {
+                    return HystrixProperty.Factory.asProperty(builder.queueDelaySheddingEnabled);
+                }
+
+                @Override
+                public HystrixProperty<Integer> queueDelaySheddingTargetInMilliseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.queueDelaySheddingTargetInMilliseconds);
+                }
+
+                @Override
+                public HystrixProperty<Integer> queueDelaySheddingIntervalInMilliseconds() {
+                    return HystrixProperty.Factory.asProperty(builder.queueDelaySheddingIntervalInMilliseconds);
+                }
+
             };
 
         }
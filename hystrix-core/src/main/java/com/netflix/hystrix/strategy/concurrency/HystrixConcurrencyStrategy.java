@@ -24,12 +24,21 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.netflix.hystrix.HystrixCollapser;
 import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionPriority;
 import com.netflix.hystrix.HystrixThreadPool;
 import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
 import com.netflix.hystrix.strategy.HystrixPlugins;
 import com.netflix.hystrix.strategy.properties.HystrixProperty;
+import com.netflix.hystrix.util.HystrixLockFreeBlockingQueue;
+import com.netflix.hystrix.util.HystrixPriorityBlockingQueue;
 
 /**
  * Abstract class for defining different behavior or implementations for concurrency related aspects of the system with default implementations.
@@ -61,6 +70,8 @@ import com.netflix.hystrix.strategy.properties.HystrixProperty;
  */
 public abstract class HystrixConcurrencyStrategy {
 
+    private static final Logger logger = LoggerFactory.getLogger(HystrixConcurrencyStrategy.class);
+
     /**
      * Factory method to provide {@link ThreadPoolExecutor} instances as desired.
      * <p>
@@ -97,6 +108,65 @@ public abstract class HystrixConcurrencyStrategy {
         });
     }
 
+    /**
+     * Factory method to provide {@link ThreadPoolExecutor} instances that execute on virtual threads for {@link HystrixCommand} instances using
+     * {@link ExecutionIsolationStrategy#VIRTUAL_THREAD}.
+     * <p>
+     * The size of the pool restricts the number of concurrent executions the same as for {@link #getThreadPool} but virtual threads are cheap to create and block so the pool can be sized
+     * for the concurrency a dependency can handle rather than the number of platform threads the system can afford.
+     * <p>
+     * Note that the corePoolSize, maximumPoolSize and keepAliveTime values will be dynamically set during runtime if their values change using the {@link ThreadPoolExecutor#setCorePoolSize},
+     * {@link ThreadPoolExecutor#setMaximumPoolSize} and {@link ThreadPoolExecutor#setKeepAliveTime} methods.
+     * <p>
+     * <b>Default Implementation</b>
+     * <p>
+     * Implementation using standard java.util.concurrent.ThreadPoolExecutor with a {@link ThreadFactory} creating virtual threads and allowing idle threads to time out. If the JVM does not support
+     * virtual threads (prior to Java 21) it falls back to platform threads.
+     * 
+     * @param threadPoolKey
+     *            {@link HystrixThreadPoolKey} representing the {@link HystrixThreadPool} that this {@link ThreadPoolExecutor} will be used for.
+     * @param corePoolSize
+     *            Core number of threads requested via properties (or system default if no properties set).
+     * @param maximumPoolSize
+     *            Max number of threads requested via properties (or system default if no properties set).
+     * @param keepAliveTime
+     *            Keep-alive time for threads requested via properties (or system default if no properties set).
+     * @param unit
+     *            {@link TimeUnit} corresponding with keepAliveTime
+     * @param workQueue
+     *            {@code BlockingQueue<Runnable>} as provided by {@link #getBlockingQueue(int)}
+     * @return instance of {@link ThreadPoolExecutor}
+     */
+    public ThreadPoolExecutor getVirtualThreadPool(final HystrixThreadPoolKey threadPoolKey, HystrixProperty<Integer> corePoolSize, HystrixProperty<Integer> maximumPoolSize, HystrixProperty<Integer> keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(corePoolSize.get(), maximumPoolSize.get(), keepAliveTime.get(), unit, workQueue, getVirtualThreadFactory(threadPoolKey));
+        // there is no value in keeping idle virtual threads around as they are cheap to create
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+
+    /**
+     * Create a {@link ThreadFactory} for virtual threads via reflection (so as to compile and run on JVMs prior to Java 21) or platform threads if virtual threads are not supported.
+     */
+    private static ThreadFactory getVirtualThreadFactory(final HystrixThreadPoolKey threadPoolKey) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "hystrix-" + threadPoolKey.name() + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            logger.warn("Virtual threads are not supported by this JVM so platform threads will be used for HystrixThreadPool: " + threadPoolKey.name());
+            return new ThreadFactory() {
+
+                protected final AtomicInteger threadNumber = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "hystrix-" + threadPoolKey.name() + "-" + threadNumber.incrementAndGet());
+                }
+            };
+        }
+    }
+
     /**
      * Factory method to provide instance of {@code BlockingQueue<Runnable>} used for each {@link ThreadPoolExecutor} as constructed in {@link #getThreadPool}.
      * <p>
@@ -127,6 +197,50 @@ public abstract class HystrixConcurrencyStrategy {
         }
     }
 
+    /**
+     * Factory method to provide instance of lock-free {@code BlockingQueue<Runnable>} used for each {@link ThreadPoolExecutor} as constructed in {@link #getThreadPool} when
+     * {@link HystrixThreadPoolProperties#queueLockFreeEnabled()}.
+     * <p>
+     * <b>Default Implementation</b>
+     * <p>
+     * Implementation returns {@link SynchronousQueue} when maxQueueSize <= 0 or {@link HystrixLockFreeBlockingQueue} when maxQueueSize > 0.
+     * 
+     * @param maxQueueSize
+     *            The max size of the queue requested via properties (or system default if no properties set).
+     * @return instance of {@code BlockingQueue<Runnable>}
+     */
+    public BlockingQueue<Runnable> getLockFreeBlockingQueue(int maxQueueSize) {
+        if (maxQueueSize <= 0) {
+            return new SynchronousQueue<Runnable>();
+        } else {
+            return new HystrixLockFreeBlockingQueue(maxQueueSize);
+        }
+    }
+
+    /**
+     * Factory method to provide instance of {@code BlockingQueue<Runnable>} with a lane per {@link ExecutionPriority} used for each {@link ThreadPoolExecutor} as constructed in
+     * {@link #getThreadPool} when {@link HystrixThreadPoolProperties#queuePriorityLanesEnabled()}.
+     * <p>
+     * Tasks submitted by {@link HystrixCommand} implement {@link HystrixPriorityBlockingQueue.Prioritized} to expose the {@link HystrixCommandProperties#executionPriority()} of the execution.
+     * <p>
+     * <b>Default Implementation</b>
+     * <p>
+     * Implementation returns {@link SynchronousQueue} when maxQueueSize <= 0 (as there is nothing to prioritize without a queue) or {@link HystrixPriorityBlockingQueue} when maxQueueSize > 0.
+     * 
+     * @param maxQueueSize
+     *            The max size of the queue (across all lanes) requested via properties (or system default if no properties set).
+     * @param starvationThresholdInMilliseconds
+     *            {@code HystrixProperty<Integer>} for the time a task can wait in a lower priority lane before it is taken ahead of higher priority tasks.
+     * @return instance of {@code BlockingQueue<Runnable>}
+     */
+    public BlockingQueue<Runnable> getPriorityBlockingQueue(int maxQueueSize, HystrixProperty<Integer> starvationThresholdInMilliseconds) {
+        if (maxQueueSize <= 0) {
+            return new SynchronousQueue<Runnable>();
+        } else {
+            return new HystrixPriorityBlockingQueue(maxQueueSize, starvationThresholdInMilliseconds);
+        }
+    }
+
     /**
      * Provides an opportunity to wrap/decorate a {@code Callable<T>} before execution.
      * <p>
@@ -18,7 +18,7 @@ package com.netflix.hystrix.strategy.concurrency;
 import java.util.concurrent.Callable;
 
 /**
- * Wrapper around {@link Callable} that manages the {@link HystrixRequestContext} initialization and cleanup for the execution of the {@link Callable}
+ * Wrapper around {@link Callable} that manages the {@link HystrixRequestContext} (and deadline) initialization and cleanup for the execution of the {@link Callable}
  * 
  * @param <K>
  *            Return type of {@link Callable}
@@ -29,23 +29,28 @@ public class HystrixContextCallable<K> implements Callable<K> {
 
     private final Callable<K> actual;
     private final HystrixRequestContext parentThreadState;
+    private final Long parentThreadDeadline;
 
     public HystrixContextCallable(Callable<K> actual) {
         this.actual = actual;
         this.parentThreadState = HystrixRequestContext.getContextForCurrentThread();
+        this.parentThreadDeadline = HystrixRequestContext.getExecutionDeadlineForCurrentThread();
     }
 
     @Override
     public K call() throws Exception {
         HystrixRequestContext existingState = HystrixRequestContext.getContextForCurrentThread();
+        Long existingDeadline = HystrixRequestContext.getExecutionDeadlineForCurrentThread();
         try {
             // set the state of this thread to that of its parent
             HystrixRequestContext.setContextOnCurrentThread(parentThreadState);
+            HystrixRequestContext.setExecutionDeadlineOnCurrentThread(parentThreadDeadline);
             // execute actual Callable with the state of the parent
             return actual.call();
         } finally {
             // restore this thread back to its original state
             HystrixRequestContext.setContextOnCurrentThread(existingState);
+            HystrixRequestContext.setExecutionDeadlineOnCurrentThread(existingDeadline);
         }
     }
 
@@ -16,7 +16,7 @@
 package com.netflix.hystrix.strategy.concurrency;
 
 /**
- * Wrapper around {@link Runnable} that manages the {@link HystrixRequestContext} initialization and cleanup for the execution of the {@link Runnable}
+ * Wrapper around {@link Runnable} that manages the {@link HystrixRequestContext} (and deadline) initialization and cleanup for the execution of the {@link Runnable}
  * 
  * @ExcludeFromJavadoc
  */
@@ -24,23 +24,28 @@ public class HystrixContextRunnable implements Runnable {
 
     private final Runnable actual;
     private final HystrixRequestContext parentThreadState;
+    private final Long parentThreadDeadline;
 
     public HystrixContextRunnable(Runnable actual) {
         this.actual = actual;
         this.parentThreadState = HystrixRequestContext.getContextForCurrentThread();
+        this.parentThreadDeadline = HystrixRequestContext.getExecutionDeadlineForCurrentThread();
     }
 
     @Override
     public void run() {
         HystrixRequestContext existingState = HystrixRequestContext.getContextForCurrentThread();
+        Long existingDeadline = HystrixRequestContext.getExecutionDeadlineForCurrentThread();
         try {
             // set the state of this thread to that of its parent
             HystrixRequestContext.setContextOnCurrentThread(parentThreadState);
+            HystrixRequestContext.setExecutionDeadlineOnCurrentThread(parentThreadDeadline);
             // execute actual Callable with the state of the parent
             actual.run();
         } finally {
             // restore this thread back to its original state
             HystrixRequestContext.setContextOnCurrentThread(existingState);
+            HystrixRequestContext.setExecutionDeadlineOnCurrentThread(existingDeadline);
         }
     }
 
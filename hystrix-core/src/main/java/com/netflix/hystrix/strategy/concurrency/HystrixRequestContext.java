@@ -19,6 +19,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import com.netflix.hystrix.HystrixCollapser;
 import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionPriority;
 import com.netflix.hystrix.HystrixRequestCache;
 import com.netflix.hystrix.HystrixRequestLog;
 
@@ -59,6 +61,12 @@ import com.netflix.hystrix.HystrixRequestLog;
  * You can find an implementation at <a target="_top" href="https://github.com/Netflix/Hystrix/tree/master/hystrix-contrib/hystrix-request-servlet">hystrix-contrib/hystrix-request-servlet</a> on GitHub.
  * <p>
  * <b>NOTE:</b> If <code>initializeContext()</code> is called then <code>shutdown()</code> must also be called or a memory leak will occur.
+ * <p>
+ * A deadline can be set for the request (see {@link #setDeadline(long)}) so {@link HystrixCommand} executions within it (including nested executions on child threads) don't outlive it:
+ * each execution times out at the earlier of its own timeout and the deadline and is rejected without executing once the deadline has passed.
+ * <p>
+ * A priority can be set for the request (see {@link #setPriority(ExecutionPriority)}) to override the {@link HystrixCommandProperties#executionPriority()} of {@link HystrixCommand} executions
+ * within it, for example to mark all work of a background request as {@link ExecutionPriority#LOW}.
  */
 public class HystrixRequestContext {
 
@@ -74,6 +82,17 @@ public class HystrixRequestContext {
      */
     private static ThreadLocal<HystrixRequestContext> requestVariables = new ThreadLocal<HystrixRequestContext>();
 
+    /**
+     * Value of {@link #getDeadline()} when no deadline has been set.
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /*
+     * Deadline of the HystrixCommand executing on (or having queued work from) the current thread which is
+     * carried to child threads by HystrixContextCallable/HystrixContextRunnable so nested executions don't outlive it.
+     */
+    private static ThreadLocal<Long> executionDeadline = new ThreadLocal<Long>();
+
     public static boolean isCurrentThreadInitialized() {
         HystrixRequestContext context = requestVariables.get();
         return context != null && context.state != null;
@@ -95,6 +114,40 @@ public class HystrixRequestContext {
         requestVariables.set(state);
     }
 
+    /**
+     * The earliest of the deadline of the request (if the context is initialized) and of the {@link HystrixCommand} execution the current thread is performing work for.
+     * 
+     * @return time in milliseconds (as per {@link System#currentTimeMillis()}) or {@link #NO_DEADLINE}
+     */
+    public static long getDeadlineForCurrentThread() {
+        HystrixRequestContext context = getContextForCurrentThread();
+        long deadline = context == null ? NO_DEADLINE : context.deadline;
+        Long execution = executionDeadline.get();
+        return execution != null && execution < deadline ? execution : deadline;
+    }
+
+    /**
+     * The deadline of the {@link HystrixCommand} execution the current thread is performing work for (ignoring the request deadline) or null.
+     * 
+     * @ExcludeFromJavadoc
+     */
+    public static Long getExecutionDeadlineForCurrentThread() {
+        return executionDeadline.get();
+    }
+
+    /**
+     * Set (or clear with null) the deadline of the {@link HystrixCommand} execution the current thread is performing work for.
+     * 
+     * @ExcludeFromJavadoc
+     */
+    public static void setExecutionDeadlineOnCurrentThread(Long deadline) {
+        if (deadline == null) {
+            executionDeadline.remove();
+        } else {
+            executionDeadline.set(deadline);
+        }
+    }
+
     /**
      * Call this at the beginning of each request (from parent thread)
      * to initialize the underlying context so that {@link HystrixRequestVariableDefault} can be used on any children threads and be accessible from
@@ -117,11 +170,50 @@ public class HystrixRequestContext {
      */
     /* package */ConcurrentHashMap<HystrixRequestVariableDefault<?>, HystrixRequestVariableDefault.LazyInitializer<?>> state = new ConcurrentHashMap<HystrixRequestVariableDefault<?>, HystrixRequestVariableDefault.LazyInitializer<?>>();
 
+    /* deadline of this request (shared by all threads of the request) */
+    private volatile long deadline = NO_DEADLINE;
+    /* priority of this request (or null to use the priority of each command) */
+    private volatile ExecutionPriority priority = null;
+
     // instantiation should occur via static factory methods.
     private HystrixRequestContext() {
 
     }
 
+    /**
+     * Set the time by which this request must be complete. Commands executed within this request after the deadline has passed are rejected without executing.
+     * 
+     * @param deadline
+     *            time in milliseconds (as per {@link System#currentTimeMillis()}) or {@link #NO_DEADLINE}
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return time in milliseconds (as per {@link System#currentTimeMillis()}) by which this request must be complete or {@link #NO_DEADLINE}
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Set the priority of {@link HystrixCommand} executions within this request taking precedence over {@link HystrixCommandProperties#executionPriority()}.
+     * 
+     * @param priority
+     *            {@link ExecutionPriority} or null to use the priority of each command
+     */
+    public void setPriority(ExecutionPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return {@link ExecutionPriority} of {@link HystrixCommand} executions within this request or null if not set
+     */
+    public ExecutionPriority getPriority() {
+        return priority;
+    }
+
     /**
      * Shutdown {@link HystrixRequestVariableDefault} objects in this context.
      * <p>
@@ -39,6 +39,8 @@ public class HystrixRequestVariableHolder<T> {
     private static ConcurrentHashMap<RVCacheKey, HystrixRequestVariable<?>> requestVariableInstance = new ConcurrentHashMap<RVCacheKey, HystrixRequestVariable<?>>();
 
     private final HystrixRequestVariableLifecycle<T> lifeCycleMethods;
+    /* the RequestVariable for the most recently used HystrixConcurrencyStrategy (almost always the only one) so it can be retrieved without allocating an RVCacheKey */
+    private volatile RecentRequestVariable recentRequestVariable;
 
     public HystrixRequestVariableHolder(HystrixRequestVariableLifecycle<T> lifeCycleMethods) {
         this.lifeCycleMethods = lifeCycleMethods;
@@ -51,6 +53,10 @@ public class HystrixRequestVariableHolder<T> {
          * 2) If no implementation is found in cache then construct from factory.
          * 3) Cache implementation from factory as each object instance needs to be statically cached to be relevant across threads.
          */
+        RecentRequestVariable recent = recentRequestVariable;
+        if (recent != null && recent.concurrencyStrategy == concurrencyStrategy) {
+            return (T) recent.requestVariable.get();
+        }
         RVCacheKey key = new RVCacheKey(this, concurrencyStrategy);
         HystrixRequestVariable<?> rvInstance = requestVariableInstance.get(key);
         if (rvInstance == null) {
@@ -65,7 +71,21 @@ public class HystrixRequestVariableHolder<T> {
             }
         }
 
-        return (T) requestVariableInstance.get(key).get();
+        rvInstance = requestVariableInstance.get(key);
+        recentRequestVariable = new RecentRequestVariable(concurrencyStrategy, rvInstance);
+        return (T) rvInstance.get();
+    }
+
+    private static class RecentRequestVariable {
+
+        private final HystrixConcurrencyStrategy concurrencyStrategy;
+        private final HystrixRequestVariable<?> requestVariable;
+
+        private RecentRequestVariable(HystrixConcurrencyStrategy concurrencyStrategy, HystrixRequestVariable<?> requestVariable) {
+            this.concurrencyStrategy = concurrencyStrategy;
+            this.requestVariable = requestVariable;
+        }
+
     }
 
     private static class RVCacheKey {
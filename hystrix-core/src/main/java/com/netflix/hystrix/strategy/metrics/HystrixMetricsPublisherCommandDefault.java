@@ -135,28 +135,50 @@ public class HystrixMetricsPublisherCommandDefault extends HystrixMetricsServoPu
         });
 
         // cumulative counts
+        monitors.add(getCumulativeCountForEvent("countCoalesced", metrics, HystrixRollingNumberEvent.COALESCED));
         monitors.add(getCumulativeCountForEvent("countCollapsedRequests", metrics, HystrixRollingNumberEvent.COLLAPSED));
+        monitors.add(getCumulativeCountForEvent("countDeadlineExceeded", metrics, HystrixRollingNumberEvent.DEADLINE_EXCEEDED));
         monitors.add(getCumulativeCountForEvent("countExceptionsThrown", metrics, HystrixRollingNumberEvent.EXCEPTION_THROWN));
         monitors.add(getCumulativeCountForEvent("countFailure", metrics, HystrixRollingNumberEvent.FAILURE));
         monitors.add(getCumulativeCountForEvent("countFallbackFailure", metrics, HystrixRollingNumberEvent.FALLBACK_FAILURE));
         monitors.add(getCumulativeCountForEvent("countFallbackRejection", metrics, HystrixRollingNumberEvent.FALLBACK_REJECTION));
         monitors.add(getCumulativeCountForEvent("countFallbackSuccess", metrics, HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+        monitors.add(getCumulativeCountForEvent("countHedgesIssued", metrics, HystrixRollingNumberEvent.HEDGE_ISSUED));
+        monitors.add(getCumulativeCountForEvent("countHedgesWon", metrics, HystrixRollingNumberEvent.HEDGE_WON));
+        monitors.add(getCumulativeCountForEvent("countLastKnownGoodHit", metrics, HystrixRollingNumberEvent.LAST_KNOWN_GOOD_HIT));
+        monitors.add(getCumulativeCountForEvent("countLastKnownGoodMiss", metrics, HystrixRollingNumberEvent.LAST_KNOWN_GOOD_MISS));
+        monitors.add(getCumulativeCountForEvent("countNegativeCacheHit", metrics, HystrixRollingNumberEvent.NEGATIVE_CACHE_HIT));
+        monitors.add(getCumulativeCountForEvent("countRequestCacheEvicted", metrics, HystrixRollingNumberEvent.REQUEST_CACHE_EVICTED));
+        monitors.add(getCumulativeCountForEvent("countRetries", metrics, HystrixRollingNumberEvent.RETRY));
         monitors.add(getCumulativeCountForEvent("countResponsesFromCache", metrics, HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
         monitors.add(getCumulativeCountForEvent("countSemaphoreRejected", metrics, HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+        monitors.add(getCumulativeCountForEvent("countSemaphoreWaitQueueRejected", metrics, HystrixRollingNumberEvent.SEMAPHORE_WAIT_QUEUE_REJECTED));
+        monitors.add(getCumulativeCountForEvent("countSemaphoreWaited", metrics, HystrixRollingNumberEvent.SEMAPHORE_WAITED));
         monitors.add(getCumulativeCountForEvent("countShortCircuited", metrics, HystrixRollingNumberEvent.SHORT_CIRCUITED));
         monitors.add(getCumulativeCountForEvent("countSuccess", metrics, HystrixRollingNumberEvent.SUCCESS));
         monitors.add(getCumulativeCountForEvent("countThreadPoolRejected", metrics, HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
         monitors.add(getCumulativeCountForEvent("countTimeout", metrics, HystrixRollingNumberEvent.TIMEOUT));
 
         // rolling counts
+        monitors.add(getRollingCountForEvent("rollingCountCoalesced", metrics, HystrixRollingNumberEvent.COALESCED));
         monitors.add(getRollingCountForEvent("rollingCountCollapsedRequests", metrics, HystrixRollingNumberEvent.COLLAPSED));
+        monitors.add(getRollingCountForEvent("rollingCountDeadlineExceeded", metrics, HystrixRollingNumberEvent.DEADLINE_EXCEEDED));
         monitors.add(getRollingCountForEvent("rollingCountExceptionsThrown", metrics, HystrixRollingNumberEvent.EXCEPTION_THROWN));
         monitors.add(getRollingCountForEvent("rollingCountFailure", metrics, HystrixRollingNumberEvent.FAILURE));
         monitors.add(getRollingCountForEvent("rollingCountFallbackFailure", metrics, HystrixRollingNumberEvent.FALLBACK_FAILURE));
         monitors.add(getRollingCountForEvent("rollingCountFallbackRejection", metrics, HystrixRollingNumberEvent.FALLBACK_REJECTION));
         monitors.add(getRollingCountForEvent("rollingCountFallbackSuccess", metrics, HystrixRollingNumberEvent.FALLBACK_SUCCESS));
+        monitors.add(getRollingCountForEvent("rollingCountHedgesIssued", metrics, HystrixRollingNumberEvent.HEDGE_ISSUED));
+        monitors.add(getRollingCountForEvent("rollingCountHedgesWon", metrics, HystrixRollingNumberEvent.HEDGE_WON));
+        monitors.add(getRollingCountForEvent("rollingCountLastKnownGoodHit", metrics, HystrixRollingNumberEvent.LAST_KNOWN_GOOD_HIT));
+        monitors.add(getRollingCountForEvent("rollingCountLastKnownGoodMiss", metrics, HystrixRollingNumberEvent.LAST_KNOWN_GOOD_MISS));
+        monitors.add(getRollingCountForEvent("rollingCountNegativeCacheHit", metrics, HystrixRollingNumberEvent.NEGATIVE_CACHE_HIT));
+        monitors.add(getRollingCountForEvent("rollingCountRequestCacheEvicted", metrics, HystrixRollingNumberEvent.REQUEST_CACHE_EVICTED));
+        monitors.add(getRollingCountForEvent("rollingCountRetries", metrics, HystrixRollingNumberEvent.RETRY));
         monitors.add(getRollingCountForEvent("rollingCountResponsesFromCache", metrics, HystrixRollingNumberEvent.RESPONSE_FROM_CACHE));
         monitors.add(getRollingCountForEvent("rollingCountSemaphoreRejected", metrics, HystrixRollingNumberEvent.SEMAPHORE_REJECTED));
+        monitors.add(getRollingCountForEvent("rollingCountSemaphoreWaitQueueRejected", metrics, HystrixRollingNumberEvent.SEMAPHORE_WAIT_QUEUE_REJECTED));
+        monitors.add(getRollingCountForEvent("rollingCountSemaphoreWaited", metrics, HystrixRollingNumberEvent.SEMAPHORE_WAITED));
         monitors.add(getRollingCountForEvent("rollingCountShortCircuited", metrics, HystrixRollingNumberEvent.SHORT_CIRCUITED));
         monitors.add(getRollingCountForEvent("rollingCountSuccess", metrics, HystrixRollingNumberEvent.SUCCESS));
         monitors.add(getRollingCountForEvent("rollingCountThreadPoolRejected", metrics, HystrixRollingNumberEvent.THREAD_POOL_REJECTED));
@@ -170,6 +192,42 @@ public class HystrixMetricsPublisherCommandDefault extends HystrixMetricsServoPu
             }
         });
 
+        // time (in microseconds) spent waiting for executionSemaphorePermits
+        monitors.add(new GaugeMetric(MonitorConfig.builder("executionSemaphoreWaitTime_mean").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getExecutionSemaphoreWaitTimeMean();
+            }
+        });
+        monitors.add(new GaugeMetric(MonitorConfig.builder("executionSemaphoreWaitTime_max").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getExecutionSemaphoreWaitTimeMax();
+            }
+        });
+
+        // largest request cache of a request at shutdown
+        monitors.add(new GaugeMetric(MonitorConfig.builder("requestCacheEntries_max").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getRequestCacheEntriesMax();
+            }
+        });
+        monitors.add(new GaugeMetric(MonitorConfig.builder("requestCacheSizeInBytes_max").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getRequestCacheSizeInBytesMax();
+            }
+        });
+
+        // the adaptive concurrency limit (-1 unless enabled)
+        monitors.add(new GaugeMetric(MonitorConfig.builder("currentConcurrencyLimit").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getCurrentConcurrencyLimit();
+            }
+        });
+
         // error percentage derived from current metrics 
         monitors.add(new GaugeMetric(MonitorConfig.builder("errorPercentage").build()) {
             @Override
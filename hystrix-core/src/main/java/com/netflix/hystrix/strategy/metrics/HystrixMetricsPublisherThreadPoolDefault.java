@@ -184,6 +184,66 @@ public class HystrixMetricsPublisherThreadPoolDefault extends HystrixMetricsServ
             }
         });
 
+        monitors.add(new CounterMetric(MonitorConfig.builder("countQueueDelayShed").build()) {
+            @Override
+            public Long getValue() {
+                return metrics.getCumulativeCountQueueDelayShed();
+            }
+        });
+
+        monitors.add(new GaugeMetric(MonitorConfig.builder("rollingCountQueueDelayShed").withTag(DataSourceLevel.DEBUG).build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getRollingCountQueueDelayShed();
+            }
+        });
+
+        monitors.add(new CounterMetric(MonitorConfig.builder("countQueuePurged").build()) {
+            @Override
+            public Long getValue() {
+                return metrics.getCumulativeCountQueuePurged();
+            }
+        });
+
+        monitors.add(new GaugeMetric(MonitorConfig.builder("rollingCountQueuePurged").withTag(DataSourceLevel.DEBUG).build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getRollingCountQueuePurged();
+            }
+        });
+
+        // queue wait
+        monitors.add(new GaugeMetric(MonitorConfig.builder("queueWait_mean").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getQueueWaitTimeMean();
+            }
+        });
+        monitors.add(new GaugeMetric(MonitorConfig.builder("queueWait_percentile_50").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getQueueWaitTimePercentile(50);
+            }
+        });
+        monitors.add(new GaugeMetric(MonitorConfig.builder("queueWait_percentile_90").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getQueueWaitTimePercentile(90);
+            }
+        });
+        monitors.add(new GaugeMetric(MonitorConfig.builder("queueWait_percentile_99").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getQueueWaitTimePercentile(99);
+            }
+        });
+        monitors.add(new GaugeMetric(MonitorConfig.builder("queueWait_percentile_995").build()) {
+            @Override
+            public Number getValue() {
+                return metrics.getQueueWaitTimePercentile(99.5);
+            }
+        });
+
         // properties
         monitors.add(new InformationalMetric<Number>(MonitorConfig.builder("propertyValue_corePoolSize").build()) {
             @Override
@@ -192,6 +252,13 @@ public class HystrixMetricsPublisherThreadPoolDefault extends HystrixMetricsServ
             }
         });
 
+        monitors.add(new InformationalMetric<Number>(MonitorConfig.builder("propertyValue_maximumSize").build()) {
+            @Override
+            public Number getValue() {
+                return properties.maximumSize().get();
+            }
+        });
+
         monitors.add(new InformationalMetric<Number>(MonitorConfig.builder("propertyValue_keepAliveTimeInMinutes").build()) {
             @Override
             public Number getValue() {
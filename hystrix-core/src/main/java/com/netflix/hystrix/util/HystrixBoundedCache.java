@@ -0,0 +1,538 @@
+/**
+ * Copyright 2012 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.hystrix.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.junit.Test;
+
+import com.netflix.hystrix.strategy.properties.HystrixProperty;
+
+/**
+ * Cache bounded by number of entries and (estimated) size in bytes whose entries expire after a time-to-live.
+ * <p>
+ * Entries are evicted in the order they were last put (putting the value of an existing key again moves it to the back) which approximates LRU for values that are refreshed, such as
+ * the responses of frequently executed commands, but unlike LRU needs no bookkeeping on reads, and writes only lock the entry being written (there is no lock shared by all writes) as
+ * these caches are written on every successful execution of a command.
+ * <p>
+ * Expired entries are removed when they are retrieved (or evicted) rather than by a background thread, so the entry count includes expired entries until then. The bounds are
+ * approximate while concurrent writes are in progress.
+ *
+ * @param <K>
+ *            type of key
+ * @param <V>
+ *            type of value
+ */
+@ThreadSafe
+public class HystrixBoundedCache<K, V> {
+
+    private final HystrixProperty<Integer> timeToLiveInMilliseconds;
+    private final HystrixProperty<Integer> maxEntries;
+    private final HystrixProperty<Integer> maxSizeInBytes;
+    private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<K, Entry<K, V>>();
+    /* entries in the order they were last put (including removed entries, and the earlier positions of entries that were put again, until eviction reaches them) */
+    private final ConcurrentLinkedQueue<Position<K, V>> putOrder = new ConcurrentLinkedQueue<Position<K, V>>();
+    /* number of positions in putOrder and how many of them are the current position of an entry that was not removed */
+    private final AtomicInteger putOrderLength = new AtomicInteger();
+    private final AtomicInteger putOrderEntries = new AtomicInteger();
+    private final AtomicLong sizeInBytes = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param timeToLiveInMilliseconds
+     *            {@code HystrixProperty<Integer>} for how long an entry is retrievable after it was last put (0 or less to never expire)
+     * @param maxEntries
+     *            {@code HystrixProperty<Integer>} for the maximum number of entries (0 or less for no limit)
+     * @param maxSizeInBytes
+     *            {@code HystrixProperty<Integer>} for the maximum total estimated size of the values (0 or less for no limit)
+     */
+    public HystrixBoundedCache(HystrixProperty<Integer> timeToLiveInMilliseconds, HystrixProperty<Integer> maxEntries, HystrixProperty<Integer> maxSizeInBytes) {
+        this.timeToLiveInMilliseconds = timeToLiveInMilliseconds;
+        this.maxEntries = maxEntries;
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    /**
+     * Retrieve the value for a key unless it is absent or expired.
+     *
+     * @param key
+     *            key
+     * @return value or null
+     */
+    public V get(K key) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        int timeToLive = timeToLiveInMilliseconds.get();
+        if (timeToLive > 0 && System.currentTimeMillis() - entry.timestamp > timeToLive) {
+            remove(entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Put the value for a key (replacing any existing value and moving it to the back of the eviction order) and evict entries in the order they were last put while the bounds are
+     * exceeded.
+     *
+     * @param key
+     *            key
+     * @param value
+     *            value
+     * @param valueSizeInBytes
+     *            estimated size of the value
+     */
+    public void put(K key, V value, int valueSizeInBytes) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            Entry<K, V> entry = entries.get(key);
+            if (entry == null) {
+                Entry<K, V> newEntry = new Entry<K, V>(key, value, valueSizeInBytes, now);
+                if (entries.putIfAbsent(key, newEntry) == null) {
+                    sizeInBytes.addAndGet(valueSizeInBytes);
+                    addToPutOrder(newEntry);
+                    break;
+                }
+            } else if (entry.replace(value, valueSizeInBytes, now, sizeInBytes, putOrder)) {
+                putOrderLength.incrementAndGet();
+                break;
+            }
+            // another thread inserted or removed the entry concurrently so try again
+        }
+        evict();
+    }
+
+    /**
+     * Put the value for a key unless there already is one (that has not expired) and evict entries in the order they were last put while the bounds are exceeded.
+     *
+     * @param key
+     *            key
+     * @param value
+     *            value
+     * @param valueSizeInBytes
+     *            estimated size of the value
+     * @return the existing value or null if the value was put
+     */
+    public V putIfAbsent(K key, V value, int valueSizeInBytes) {
+        while (true) {
+            Entry<K, V> entry = entries.get(key);
+            if (entry != null) {
+                V existing = get(key);
+                if (existing != null) {
+                    return existing;
+                }
+                // it expired (and was removed) so try again
+            } else {
+                Entry<K, V> newEntry = new Entry<K, V>(key, value, valueSizeInBytes, System.currentTimeMillis());
+                if (entries.putIfAbsent(key, newEntry) == null) {
+                    sizeInBytes.addAndGet(valueSizeInBytes);
+                    addToPutOrder(newEntry);
+                    evict();
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the estimated size of the value for a key (such as once the size is known) if it is still the given value.
+     *
+     * @param key
+     *            key
+     * @param value
+     *            value the size is for
+     * @param valueSizeInBytes
+     *            estimated size of the value
+     */
+    public void updateSize(K key, V value, int valueSizeInBytes) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null && entry.updateSize(value, valueSizeInBytes, sizeInBytes)) {
+            evict();
+        }
+    }
+
+    /**
+     * Claim the refresh of the value for a key once it is older than the given age so that only one caller refreshes it (the claim is released when the value is next put).
+     *
+     * @param key
+     *            key
+     * @param minimumAgeInMilliseconds
+     *            age after which the value should be refreshed
+     * @return boolean whether the caller should refresh the value
+     */
+    public boolean tryClaimRefresh(K key, long minimumAgeInMilliseconds) {
+        Entry<K, V> entry = entries.get(key);
+        return entry != null && entry.claimRefresh(System.currentTimeMillis() - minimumAgeInMilliseconds);
+    }
+
+    /**
+     * Remove the value for a key.
+     *
+     * @param key
+     *            key
+     */
+    public void remove(K key) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * @return number of entries (which may include expired entries that have not yet been retrieved or evicted)
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return total estimated size in bytes of the values
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    /**
+     * @return number of entries evicted because the bounds were exceeded
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private void addToPutOrder(Entry<K, V> entry) {
+        putOrder.add(entry.position);
+        putOrderLength.incrementAndGet();
+        putOrderEntries.incrementAndGet();
+    }
+
+    private void evict() {
+        // drop the positions left behind by entries that were put again or removed first so they don't have to be walked through (or kept) below
+        compactPutOrder();
+        int max = maxEntries.get();
+        int maxBytes = maxSizeInBytes.get();
+        while ((max > 0 && putOrderEntries.get() > max) || (maxBytes > 0 && sizeInBytes.get() > maxBytes)) {
+            Position<K, V> eldest = putOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            putOrderLength.decrementAndGet();
+            Entry<K, V> entry = eldest.entry;
+            // locked so the entry can't be put again (and moved to a new position) while it is evicted
+            synchronized (entry) {
+                if (entry.position != eldest) {
+                    // the entry was put again since so it is no longer at this position
+                    continue;
+                }
+                // (already no longer counted if it was removed)
+                if (remove(entry)) {
+                    evictionCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * The earlier positions of entries that were put again (and the positions of removed entries) are dropped when eviction reaches them, but while the cache is below its bounds (or a
+     * long-lived entry is at the front) nothing does, so once there are more than twice as many positions as entries (or maxEntries) the front is compacted by dropping them and moving
+     * the entries that are still there to the back.
+     */
+    private void compactPutOrder() {
+        int length = putOrderLength.get();
+        long excess = length - 2L * Math.max(putOrderEntries.get(), maxEntries.get());
+        // each position is looked at no more than once per compaction
+        for (int remaining = length; excess > 0 && remaining > 0; remaining--) {
+            Position<K, V> eldest = putOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            putOrderLength.decrementAndGet();
+            excess--;
+            Entry<K, V> entry = eldest.entry;
+            synchronized (entry) {
+                if (entry.position == eldest && !entry.removed) {
+                    putOrder.add(eldest);
+                    putOrderLength.incrementAndGet();
+                    excess++;
+                }
+            }
+        }
+    }
+
+    private boolean remove(Entry<K, V> entry) {
+        // only if it is still the entry for the key (it may have already been removed and the key inserted again)
+        if (entries.remove(entry.key, entry)) {
+            if (entry.markRemoved(sizeInBytes)) {
+                // its position stays in putOrder until eviction or compaction reaches it but no longer counts towards maxEntries
+                putOrderEntries.decrementAndGet();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static class Position<K, V> {
+        private final Entry<K, V> entry;
+
+        private Position(Entry<K, V> entry) {
+            this.entry = entry;
+        }
+    }
+
+    private static class Entry<K, V> {
+        private final K key;
+        private volatile V value;
+        private volatile int valueSizeInBytes;
+        private volatile long timestamp;
+        private Position<K, V> position = new Position<K, V>(this); // guarded by this
+        private boolean removed = false; // guarded by this
+        private boolean refreshClaimed = false; // guarded by this
+
+        private Entry(K key, V value, int valueSizeInBytes, long timestamp) {
+            this.key = key;
+            this.value = value;
+            this.valueSizeInBytes = valueSizeInBytes;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Replace the value in place and move the entry to the back of the put order (leaving its earlier position behind) unless the entry was removed.
+         */
+        private synchronized boolean replace(V value, int valueSizeInBytes, long timestamp, AtomicLong sizeInBytes, ConcurrentLinkedQueue<Position<K, V>> putOrder) {
+            if (removed) {
+                return false;
+            }
+            sizeInBytes.addAndGet(valueSizeInBytes - this.valueSizeInBytes);
+            this.value = value;
+            this.valueSizeInBytes = valueSizeInBytes;
+            this.timestamp = timestamp;
+            this.refreshClaimed = false;
+            position = new Position<K, V>(this);
+            putOrder.add(position);
+            return true;
+        }
+
+        private synchronized boolean updateSize(V value, int valueSizeInBytes, AtomicLong sizeInBytes) {
+            if (removed || this.value != value) {
+                return false;
+            }
+            sizeInBytes.addAndGet(valueSizeInBytes - this.valueSizeInBytes);
+            this.valueSizeInBytes = valueSizeInBytes;
+            return true;
+        }
+
+        private synchronized boolean claimRefresh(long putBefore) {
+            if (removed || refreshClaimed || timestamp > putBefore) {
+                return false;
+            }
+            refreshClaimed = true;
+            return true;
+        }
+
+        /**
+         * @return boolean whether the entry was marked as removed by this invocation (false if it already was)
+         */
+        private synchronized boolean markRemoved(AtomicLong sizeInBytes) {
+            if (removed) {
+                return false;
+            }
+            removed = true;
+            sizeInBytes.addAndGet(-valueSizeInBytes);
+            return true;
+        }
+    }
+
+    public static class UnitTest {
+
+        @Test
+        public void testPutAndGet() {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(0), HystrixProperty.Factory.asProperty(10), HystrixProperty.Factory.asProperty(0));
+            assertNull(cache.get("a"));
+            cache.put("a", "1", 10);
+            cache.put("b", "2", 20);
+            assertEquals("1", cache.get("a"));
+            assertEquals("2", cache.get("b"));
+            assertEquals(30, cache.getSizeInBytes());
+
+            cache.put("a", "3", 5);
+            assertEquals("3", cache.get("a"));
+            assertEquals(2, cache.size());
+            assertEquals(25, cache.getSizeInBytes());
+
+            cache.remove("a");
+            assertNull(cache.get("a"));
+            assertEquals(1, cache.size());
+            assertEquals(20, cache.getSizeInBytes());
+        }
+
+        @Test
+        public void testEvictionByMaxEntries() {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(0), HystrixProperty.Factory.asProperty(2), HystrixProperty.Factory.asProperty(0));
+            cache.put("a", "1", 1);
+            cache.put("b", "2", 1);
+            // replacing moves it to the back of the order of eviction
+            cache.put("a", "3", 1);
+            cache.put("c", "4", 1);
+            assertEquals("3", cache.get("a"));
+            assertNull(cache.get("b"));
+            assertEquals("4", cache.get("c"));
+            assertEquals(2, cache.size());
+        }
+
+        @Test
+        public void testRefreshedEntrySurvivesOneOffEntries() {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(0), HystrixProperty.Factory.asProperty(10), HystrixProperty.Factory.asProperty(0));
+            // the hot key is inserted first and refreshed while a stream of keys that are only put once goes through the cache
+            cache.put("hot", "0", 1);
+            for (int i = 0; i < 1000; i++) {
+                cache.put("one-off-" + i, "value", 1);
+                if (i % 5 == 0) {
+                    cache.put("hot", String.valueOf(i), 1);
+                }
+            }
+            assertEquals("995", cache.get("hot"));
+            assertNull(cache.get("one-off-0"));
+            assertEquals("value", cache.get("one-off-999"));
+            assertEquals(10, cache.size());
+            assertEquals(10, cache.getSizeInBytes());
+            assertEquals(991, cache.getEvictionCount());
+        }
+
+        @Test
+        public void testRefreshWithoutEvictionDoesNotGrowPutOrder() {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(0), HystrixProperty.Factory.asProperty(10), HystrixProperty.Factory.asProperty(0));
+            cache.put("cold", "0", 1);
+            for (int i = 0; i < 1000; i++) {
+                cache.put("hot", String.valueOf(i), 1);
+            }
+            // the earlier positions of the hot key are compacted even though the cold key at the front is never evicted
+            assertTrue(cache.putOrderLength.get() <= 20);
+            assertEquals("0", cache.get("cold"));
+            assertEquals("999", cache.get("hot"));
+            assertEquals(0, cache.getEvictionCount());
+        }
+
+        @Test
+        public void testRemovedEntriesDoNotCauseEviction() {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(0), HystrixProperty.Factory.asProperty(10), HystrixProperty.Factory.asProperty(0));
+            cache.put("live", "0", 1);
+            // churn of entries that are removed soon after being put (such as failures in a negative cache)
+            for (int i = 0; i < 1000; i++) {
+                cache.put("removed-" + i, "value", 1);
+                cache.remove("removed-" + i);
+            }
+            for (int i = 0; i < 9; i++) {
+                cache.put("new-" + i, "value", 1);
+            }
+            // only live entries count towards maxEntries so nothing is evicted
+            assertEquals(0, cache.getEvictionCount());
+            assertEquals("0", cache.get("live"));
+            assertEquals(10, cache.size());
+            assertTrue(cache.putOrderLength.get() <= 20);
+        }
+
+        @Test
+        public void testExpiredEntriesDoNotCauseEvictionOnceRetrieved() throws Exception {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(50), HystrixProperty.Factory.asProperty(2), HystrixProperty.Factory.asProperty(0));
+            cache.put("a", "1", 1);
+            cache.put("b", "2", 1);
+            Thread.sleep(100);
+            assertNull(cache.get("a"));
+            assertNull(cache.get("b"));
+            cache.put("c", "3", 1);
+            cache.put("d", "4", 1);
+            assertEquals(0, cache.getEvictionCount());
+            assertEquals("3", cache.get("c"));
+            assertEquals("4", cache.get("d"));
+        }
+
+        @Test
+        public void testEvictionByMaxSizeInBytes() {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(0), HystrixProperty.Factory.asProperty(10), HystrixProperty.Factory.asProperty(100));
+            cache.put("a", "1", 40);
+            cache.put("b", "2", 40);
+            cache.put("c", "3", 40);
+            assertNull(cache.get("a"));
+            assertEquals("2", cache.get("b"));
+            assertEquals("3", cache.get("c"));
+            assertEquals(80, cache.getSizeInBytes());
+
+            // a value larger than the limit is evicted immediately
+            cache.put("d", "4", 200);
+            assertNull(cache.get("d"));
+            assertEquals(0, cache.getSizeInBytes());
+        }
+
+        @Test
+        public void testPutIfAbsentAndUpdateSize() {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(0), HystrixProperty.Factory.asProperty(10), HystrixProperty.Factory.asProperty(100));
+            assertNull(cache.putIfAbsent("a", "1", 10));
+            assertEquals("1", cache.putIfAbsent("a", "2", 10));
+            assertEquals("1", cache.get("a"));
+            assertNull(cache.putIfAbsent("b", "3", 10));
+
+            // only updated if it is still the same value
+            cache.updateSize("a", "2", 50);
+            assertEquals(20, cache.getSizeInBytes());
+            cache.updateSize("a", "1", 50);
+            assertEquals(60, cache.getSizeInBytes());
+
+            // growing beyond the limit evicts the eldest
+            cache.updateSize("b", "3", 60);
+            assertNull(cache.get("a"));
+            assertEquals(60, cache.getSizeInBytes());
+            assertEquals(1, cache.getEvictionCount());
+        }
+
+        @Test
+        public void testClaimRefresh() {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(0), HystrixProperty.Factory.asProperty(10), HystrixProperty.Factory.asProperty(0));
+            assertFalse(cache.tryClaimRefresh("a", 0));
+            cache.put("a", "1", 10);
+            // not old enough
+            assertFalse(cache.tryClaimRefresh("a", 10000));
+            // only the first caller refreshes
+            assertTrue(cache.tryClaimRefresh("a", 0));
+            assertFalse(cache.tryClaimRefresh("a", 0));
+            assertEquals("1", cache.get("a"));
+            // the refreshed value can be refreshed again
+            cache.put("a", "2", 10);
+            assertTrue(cache.tryClaimRefresh("a", 0));
+        }
+
+        @Test
+        public void testTimeToLive() throws Exception {
+            HystrixBoundedCache<String, String> cache = new HystrixBoundedCache<String, String>(HystrixProperty.Factory.asProperty(50), HystrixProperty.Factory.asProperty(10), HystrixProperty.Factory.asProperty(0));
+            cache.put("a", "1", 10);
+            assertEquals("1", cache.get("a"));
+            Thread.sleep(100);
+            assertNull(cache.get("a"));
+            assertEquals(0, cache.size());
+            assertEquals(0, cache.getSizeInBytes());
+
+            // the entry can be inserted again after it expired
+            cache.put("a", "2", 10);
+            assertEquals("2", cache.get("a"));
+        }
+    }
+}
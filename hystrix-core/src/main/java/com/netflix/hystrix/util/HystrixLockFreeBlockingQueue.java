@@ -0,0 +1,799 @@
+/**
+ * Copyright 2012 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.hystrix.util;
+
+import static org.junit.Assert.*;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.junit.Test;
+
+import com.netflix.hystrix.HystrixThreadPool;
+
+/**
+ * Bounded multi-producer multi-consumer {@link BlockingQueue} for the {@link HystrixThreadPool} backed by a ring buffer.
+ * <p>
+ * Unlike {@link LinkedBlockingQueue} it does not allocate a node per task or use locks: producers and consumers each claim a slot with a single compare-and-set on their index and every slot
+ * has a sequence number telling whether it is ready to be written or read (Dmitry Vyukov's bounded MPMC queue).
+ * <p>
+ * {@link #size()} is derived from the producer and consumer indexes so it is O(1) without a shared counter but only approximate while tasks are being added or taken concurrently.
+ * <p>
+ * Consumers (the threads of the pool) park when the queue is empty and are unparked by producers. Producers never block when used by a {@link java.util.concurrent.ThreadPoolExecutor}
+ * (which only uses {@link #offer(Runnable)}) so {@link #put(Runnable)} and {@link #offer(Runnable, long, TimeUnit)} simply retry with a short back-off while the queue is full.
+ * <p>
+ * Tasks can not be unlinked from the middle of the ring buffer so {@link #remove(Object)} replaces the task in its slot with a tombstone that consumers skip. The slot stays occupied
+ * (counting towards the capacity) until a consumer reaches it but the task no longer counts towards {@link #size()}, so a task removed by
+ * {@link java.util.concurrent.ThreadPoolExecutor#remove(Runnable)} or {@link java.util.concurrent.ThreadPoolExecutor#purge()} no longer counts towards the queue size rejection threshold.
+ */
+@ThreadSafe
+public class HystrixLockFreeBlockingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private static final long PRODUCER_BACKOFF_IN_NANOSECONDS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /* left in the slot of a removed task for consumers to skip */
+    private static final Runnable REMOVED = new Runnable() {
+
+        @Override
+        public void run() {
+        }
+
+    };
+
+    private final int capacity;
+    private final int mask;
+    /* sequence of each slot: equal to the producer index when it can be written and to the producer index + 1 once written */
+    private final AtomicLongArray sequences;
+    /* tasks are published by the write of the slot sequence after the task (and taken or removed atomically so a task is never both) */
+    private final AtomicReferenceArray<Runnable> buffer;
+    /* index of the next slot to write */
+    private final PaddedAtomicLong producerIndex = new PaddedAtomicLong();
+    /* index of the next slot to read */
+    private final PaddedAtomicLong consumerIndex = new PaddedAtomicLong();
+    /* consumers parked waiting for a task */
+    private final ConcurrentLinkedQueue<Thread> waitingConsumers = new ConcurrentLinkedQueue<Thread>();
+    private final AtomicInteger numberOfWaitingConsumers = new AtomicInteger();
+    /* slots holding a removed task that consumers have not yet skipped */
+    private final AtomicInteger numberOfRemoved = new AtomicInteger();
+
+    /**
+     * @param capacity
+     *            max number of tasks queued
+     */
+    public HystrixLockFreeBlockingQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+        // the ring buffer is sized to a power of 2 so the slot can be found with a mask while the capacity is enforced using the indexes
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<Runnable>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public int size() {
+        // read the consumer index first so the result can not be negative
+        long consumer = consumerIndex.get();
+        long size = producerIndex.get() - consumer - numberOfRemoved.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        // removed tasks occupy their slot until a consumer skips them
+        long consumer = consumerIndex.get();
+        long occupied = producerIndex.get() - consumer;
+        return (int) Math.max(0, capacity - Math.max(0, occupied));
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        long index = producerIndex.get();
+        for (;;) {
+            if (index - consumerIndex.get() >= capacity) {
+                // full
+                return false;
+            }
+            int slot = (int) index & mask;
+            long difference = sequences.get(slot) - index;
+            if (difference == 0) {
+                // the slot is free so claim it
+                if (producerIndex.compareAndSet(index, index + 1)) {
+                    buffer.lazySet(slot, task);
+                    // a volatile write (rather than lazySet) so it is ordered before checking for waiting consumers
+                    sequences.set(slot, index + 1);
+                    signalConsumer();
+                    return true;
+                }
+                index = producerIndex.get();
+            } else {
+                // another producer claimed the slot or a consumer claimed it but has not yet released it
+                index = producerIndex.get();
+            }
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        long index = consumerIndex.get();
+        for (;;) {
+            int slot = (int) index & mask;
+            long difference = sequences.get(slot) - (index + 1);
+            if (difference == 0) {
+                // the slot has been written so claim it
+                if (consumerIndex.compareAndSet(index, index + 1)) {
+                    Runnable task = buffer.getAndSet(slot, null);
+                    // free the slot for the producer wrapping around to it
+                    sequences.lazySet(slot, index + mask + 1);
+                    if (task != REMOVED) {
+                        return task;
+                    }
+                    // the task was removed while queued so skip to the next slot
+                    numberOfRemoved.decrementAndGet();
+                }
+                index = consumerIndex.get();
+            } else if (difference < 0) {
+                if (index == producerIndex.get()) {
+                    // empty
+                    return null;
+                }
+                // a producer has claimed the slot but not yet written it
+                index = consumerIndex.get();
+            } else {
+                // another consumer claimed the slot
+                index = consumerIndex.get();
+            }
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        for (;;) {
+            long index = consumerIndex.get();
+            int slot = (int) index & mask;
+            long sequence = sequences.get(slot);
+            Runnable task = buffer.get(slot);
+            if (sequence == index + 1 && task == REMOVED) {
+                // skip the removed task as a consumer would (it is discarded anyway) so the next one can be looked at
+                if (consumerIndex.compareAndSet(index, index + 1)) {
+                    buffer.set(slot, null);
+                    sequences.lazySet(slot, index + mask + 1);
+                    numberOfRemoved.decrementAndGet();
+                }
+                continue;
+            }
+            if (sequence == index + 1 && task != null && consumerIndex.get() == index) {
+                return task;
+            }
+            if (index == producerIndex.get()) {
+                // empty
+                return null;
+            }
+            // taken by a consumer or not yet written by a producer so try again
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        Runnable task = poll();
+        if (task != null) {
+            return task;
+        }
+        return awaitTask(false, 0);
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Runnable task = poll();
+        if (task != null) {
+            return task;
+        }
+        return awaitTask(true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Park until a task is available, the timeout passes or the thread is interrupted.
+     */
+    private Runnable awaitTask(boolean timed, long timeoutInNanoseconds) throws InterruptedException {
+        final Thread current = Thread.currentThread();
+        final long deadline = timed ? System.nanoTime() + timeoutInNanoseconds : 0;
+        // become visible to producers before checking again so a task offered concurrently can't be missed
+        waitingConsumers.add(current);
+        numberOfWaitingConsumers.incrementAndGet();
+        Runnable task = null;
+        try {
+            for (;;) {
+                task = poll();
+                if (task != null) {
+                    return task;
+                }
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waitingConsumers.remove(current);
+            numberOfWaitingConsumers.decrementAndGet();
+            // we may have been unparked for a task another consumer took so pass on the wake-up if tasks remain
+            if (producerIndex.get() != consumerIndex.get()) {
+                signalConsumer();
+            }
+        }
+    }
+
+    private void signalConsumer() {
+        if (numberOfWaitingConsumers.get() > 0) {
+            Thread consumer = waitingConsumers.peek();
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        while (!offer(task)) {
+            LockSupport.parkNanos(this, PRODUCER_BACKOFF_IN_NANOSECONDS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(task)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, PRODUCER_BACKOFF_IN_NANOSECONDS));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replace the task with a tombstone that consumers skip (see the class documentation).
+     * <p>
+     * This scans the queued tasks so it is O(n), like {@link LinkedBlockingQueue#remove(Object)}.
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        long producer = producerIndex.get();
+        for (long index = consumerIndex.get(); index < producer; index++) {
+            int slot = (int) index & mask;
+            Runnable task = buffer.get(slot);
+            // only if it is still written for this index (rather than already taken or not yet written) and not taken concurrently
+            if (task != null && task != REMOVED && sequences.get(slot) == index + 1 && o.equals(task) && buffer.compareAndSet(slot, task, REMOVED)) {
+                numberOfRemoved.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int n = 0;
+        Runnable task;
+        while (n < maxElements && (task = poll()) != null) {
+            c.add(task);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Iterator over a snapshot of the queued tasks (which may miss tasks added or taken concurrently). {@link Iterator#remove()} removes the task with {@link #remove(Object)} (so
+     * {@link java.util.concurrent.ThreadPoolExecutor#purge()} removes cancelled tasks).
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> snapshot = new ArrayList<Runnable>();
+        long consumer = consumerIndex.get();
+        long producer = producerIndex.get();
+        for (long index = consumer; index < producer; index++) {
+            int slot = (int) index & mask;
+            Runnable task = buffer.get(slot);
+            if (sequences.get(slot) == index + 1 && task != null && task != REMOVED) {
+                snapshot.add(task);
+            }
+        }
+        return new Iterator<Runnable>() {
+
+            private int next = 0;
+            private Runnable last = null;
+
+            @Override
+            public boolean hasNext() {
+                return next < snapshot.size();
+            }
+
+            @Override
+            public Runnable next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = snapshot.get(next++);
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                // (it may have been taken since the snapshot)
+                HystrixLockFreeBlockingQueue.this.remove(last);
+                last = null;
+            }
+
+        };
+    }
+
+    /**
+     * AtomicLong padded so the producer and consumer indexes don't share a cache line (as in Striped64).
+     */
+    @SuppressWarnings("serial")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        @SuppressWarnings("unused")
+        volatile long p0, p1, p2, p3, p4, p5, p6;
+    }
+
+    public static class UnitTest {
+
+        @Test
+        public void testOfferAndPoll() {
+            HystrixLockFreeBlockingQueue q = new HystrixLockFreeBlockingQueue(3);
+            Runnable r1 = new TestTask();
+            Runnable r2 = new TestTask();
+            Runnable r3 = new TestTask();
+            assertNull(q.poll());
+            assertNull(q.peek());
+            assertTrue(q.offer(r1));
+            assertTrue(q.offer(r2));
+            assertTrue(q.offer(r3));
+            // the capacity is enforced even though the ring buffer is sized to 4
+            assertFalse(q.offer(new TestTask()));
+            assertEquals(3, q.size());
+            assertEquals(0, q.remainingCapacity());
+            assertSame(r1, q.peek());
+            assertEquals(Arrays.asList(r1, r2, r3), copy(q.iterator()));
+
+            assertSame(r1, q.poll());
+            assertSame(r2, q.poll());
+            assertEquals(1, q.size());
+            assertSame(r3, q.poll());
+            assertNull(q.poll());
+            assertEquals(0, q.size());
+            assertEquals(3, q.remainingCapacity());
+        }
+
+        @Test
+        public void testRemove() {
+            HystrixLockFreeBlockingQueue q = new HystrixLockFreeBlockingQueue(3);
+            Runnable r1 = new TestTask();
+            Runnable r2 = new TestTask();
+            Runnable r3 = new TestTask();
+            assertTrue(q.offer(r1));
+            assertTrue(q.offer(r2));
+            assertTrue(q.offer(r3));
+            assertTrue(q.remove(r2));
+            assertFalse(q.remove(r2));
+            assertEquals(2, q.size());
+            // the removed task still occupies its slot until a consumer skips it
+            assertEquals(0, q.remainingCapacity());
+            assertEquals(Arrays.asList(r1, r3), copy(q.iterator()));
+
+            assertSame(r1, q.poll());
+            assertSame(r3, q.poll());
+            assertNull(q.poll());
+            assertEquals(0, q.size());
+            assertEquals(3, q.remainingCapacity());
+            // a task that was already taken can't be removed
+            assertFalse(q.remove(r1));
+
+            // a removed task at the head is skipped by peek() too
+            assertTrue(q.offer(r1));
+            assertTrue(q.offer(r2));
+            assertTrue(q.remove(r1));
+            assertSame(r2, q.peek());
+            assertSame(r2, q.poll());
+            assertTrue(q.isEmpty());
+        }
+
+        @Test
+        public void testThreadPoolExecutorPurge() throws Exception {
+            HystrixLockFreeBlockingQueue q = new HystrixLockFreeBlockingQueue(10);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, q);
+            final CountDownLatch blocked = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        // done
+                    }
+                }
+
+            });
+            List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>();
+            for (int i = 0; i < 5; i++) {
+                FutureTask<Object> task = new FutureTask<Object>(new TestTask(), null);
+                executor.execute(task);
+                tasks.add(task);
+            }
+            assertEquals(5, q.size());
+
+            // remove a single task as HystrixThreadPool.purgeQueuedTask does
+            assertTrue(executor.remove(tasks.get(0)));
+            assertEquals(4, q.size());
+
+            // purge the cancelled tasks
+            tasks.get(1).cancel(false);
+            tasks.get(3).cancel(false);
+            executor.purge();
+            assertEquals(2, q.size());
+
+            blocked.countDown();
+            tasks.get(2).get(1, TimeUnit.SECONDS);
+            tasks.get(4).get(1, TimeUnit.SECONDS);
+            assertFalse(tasks.get(0).isDone());
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        }
+
+        @Test
+        public void testWrapAround() {
+            HystrixLockFreeBlockingQueue q = new HystrixLockFreeBlockingQueue(5);
+            List<Runnable> drained = new ArrayList<Runnable>();
+            for (int i = 0; i < 1000; i++) {
+                Runnable r1 = new TestTask();
+                Runnable r2 = new TestTask();
+                assertTrue(q.offer(r1));
+                assertTrue(q.offer(r2));
+                assertSame(r1, q.poll());
+                drained.clear();
+                assertEquals(1, q.drainTo(drained));
+                assertSame(r2, drained.get(0));
+            }
+            assertTrue(q.isEmpty());
+        }
+
+        @Test
+        public void testTakeWaitsForOffer() throws Exception {
+            final HystrixLockFreeBlockingQueue q = new HystrixLockFreeBlockingQueue(10);
+            assertNull(q.poll(10, TimeUnit.MILLISECONDS));
+
+            final AtomicInteger taken = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            q.take().run();
+                            taken.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+
+                }).start();
+            }
+            Thread.sleep(20);
+            assertEquals(0, taken.get());
+            for (int i = 0; i < 3; i++) {
+                q.offer(new TestTask());
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(3, taken.get());
+        }
+
+        @Test
+        public void testConcurrentProducersAndConsumers() throws Exception {
+            final HystrixLockFreeBlockingQueue q = new HystrixLockFreeBlockingQueue(64);
+            final int producers = 8;
+            final int consumers = 4;
+            final int tasksPerProducer = 20000;
+            final AtomicLong sum = new AtomicLong();
+            final CountDownLatch consumed = new CountDownLatch(producers * tasksPerProducer);
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < consumers; i++) {
+                Thread t = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            while (true) {
+                                q.take().run();
+                            }
+                        } catch (InterruptedException e) {
+                            // done
+                        }
+                    }
+
+                });
+                t.setDaemon(true);
+                t.start();
+                threads.add(t);
+            }
+            for (int p = 0; p < producers; p++) {
+                new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 1; i <= tasksPerProducer; i++) {
+                                final int value = i;
+                                q.put(new Runnable() {
+
+                                    @Override
+                                    public void run() {
+                                        sum.addAndGet(value);
+                                        consumed.countDown();
+                                    }
+
+                                });
+                            }
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                    }
+
+                }).start();
+            }
+            assertTrue(consumed.await(30, TimeUnit.SECONDS));
+            // every task was taken exactly once
+            assertEquals((long) producers * tasksPerProducer * (tasksPerProducer + 1) / 2, sum.get());
+            assertTrue(q.isEmpty());
+            for (Thread t : threads) {
+                t.interrupt();
+            }
+        }
+
+        @Test
+        public void testConcurrentRemoveAndTake() throws Exception {
+            final HystrixLockFreeBlockingQueue q = new HystrixLockFreeBlockingQueue(64);
+            final int tasks = 50000;
+            final AtomicInteger ran = new AtomicInteger();
+            final ConcurrentLinkedQueue<Runnable> toRemove = new ConcurrentLinkedQueue<Runnable>();
+            final AtomicInteger removed = new AtomicInteger();
+            Thread consumer = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            q.take().run();
+                        }
+                    } catch (InterruptedException e) {
+                        // done
+                    }
+                }
+
+            });
+            consumer.setDaemon(true);
+            consumer.start();
+            Thread remover = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    Runnable r;
+                    while (!Thread.currentThread().isInterrupted()) {
+                        if ((r = toRemove.poll()) != null && q.remove(r)) {
+                            removed.incrementAndGet();
+                        }
+                    }
+                }
+
+            });
+            remover.setDaemon(true);
+            remover.start();
+            for (int i = 0; i < tasks; i++) {
+                Runnable task = new Runnable() {
+
+                    @Override
+                    public void run() {
+                        ran.incrementAndGet();
+                    }
+
+                };
+                q.put(task);
+                toRemove.add(task);
+            }
+            long deadline = System.currentTimeMillis() + 30000;
+            while ((!q.isEmpty() || !toRemove.isEmpty()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            remover.interrupt();
+            remover.join();
+            consumer.interrupt();
+            consumer.join();
+            // each task was either taken or removed, never both
+            assertEquals(tasks, ran.get() + removed.get());
+            assertEquals(0, q.size());
+        }
+
+        /**
+         * Benchmark of task submission comparing this queue with {@link LinkedBlockingQueue} and {@link ArrayBlockingQueue} with many producers (by default 32) offering to a queue drained by
+         * a few consumers, as a {@link java.util.concurrent.ThreadPoolExecutor} does.
+         * <p>
+         * Prints throughput of successful offers and the latency percentiles of offer().
+         * <p>
+         * This is not run as a unit test, invoke it manually.
+         */
+        public static void main(String args[]) throws Exception {
+            int producers = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+            int consumers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+            int offersPerProducer = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+            int capacity = 1024;
+            // first pass warms up, second pass measures
+            for (int pass = 0; pass < 2; pass++) {
+                benchmark(pass, "LinkedBlockingQueue", new LinkedBlockingQueue<Runnable>(capacity), producers, consumers, offersPerProducer);
+                benchmark(pass, "ArrayBlockingQueue", new ArrayBlockingQueue<Runnable>(capacity), producers, consumers, offersPerProducer);
+                benchmark(pass, "HystrixLockFreeBlockingQueue", new HystrixLockFreeBlockingQueue(capacity), producers, consumers, offersPerProducer);
+            }
+        }
+
+        private static void benchmark(int pass, String name, final BlockingQueue<Runnable> q, int producers, int consumers, final int offersPerProducer) throws Exception {
+            final Runnable task = new TestTask();
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch producersDone = new CountDownLatch(producers);
+            final long[][] latencies = new long[producers][offersPerProducer];
+            final AtomicLong rejected = new AtomicLong();
+            List<Thread> consumerThreads = new ArrayList<Thread>();
+            for (int i = 0; i < consumers; i++) {
+                Thread t = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            while (true) {
+                                q.take().run();
+                            }
+                        } catch (InterruptedException e) {
+                            // done
+                        }
+                    }
+
+                });
+                t.setDaemon(true);
+                t.start();
+                consumerThreads.add(t);
+            }
+            for (int p = 0; p < producers; p++) {
+                final long[] producerLatencies = latencies[p];
+                new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int i = 0; i < offersPerProducer; i++) {
+                            long s = System.nanoTime();
+                            if (!q.offer(task)) {
+                                rejected.incrementAndGet();
+                            }
+                            producerLatencies[i] = System.nanoTime() - s;
+                        }
+                        producersDone.countDown();
+                    }
+
+                }).start();
+            }
+            long startTime = System.nanoTime();
+            start.countDown();
+            producersDone.await();
+            long duration = System.nanoTime() - startTime;
+            for (Thread t : consumerThreads) {
+                t.interrupt();
+            }
+            if (pass > 0) {
+                long[] all = new long[producers * offersPerProducer];
+                for (int p = 0; p < producers; p++) {
+                    System.arraycopy(latencies[p], 0, all, p * offersPerProducer, offersPerProducer);
+                }
+                Arrays.sort(all);
+                long offers = (long) producers * offersPerProducer;
+                System.out.println(name + ": " + ((offers - rejected.get()) * 1000000000L / Math.max(1, duration)) + " accepted offers/second, " + (rejected.get() * 100 / offers) + "% rejected, "
+                        + "offer() latency p50 " + all[all.length / 2] + "ns, p99 " + all[(int) (all.length * 0.99)] + "ns, p99.9 " + all[(int) (all.length * 0.999)] + "ns");
+            }
+        }
+
+        private static List<Runnable> copy(Iterator<Runnable> i) {
+            List<Runnable> l = new ArrayList<Runnable>();
+            while (i.hasNext()) {
+                l.add(i.next());
+            }
+            return l;
+        }
+
+        private static class TestTask implements Runnable {
+
+            @Override
+            public void run() {
+            }
+
+        }
+    }
+}
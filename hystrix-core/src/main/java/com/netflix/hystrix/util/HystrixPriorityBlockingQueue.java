@@ -0,0 +1,518 @@
+/**
+ * Copyright 2012 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.hystrix.util;
+
+import static org.junit.Assert.*;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.junit.Test;
+
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionPriority;
+import com.netflix.hystrix.HystrixThreadPool;
+import com.netflix.hystrix.strategy.properties.HystrixProperty;
+
+/**
+ * Bounded {@link BlockingQueue} for the {@link HystrixThreadPool} with a FIFO lane per {@link ExecutionPriority}.
+ * <p>
+ * Tasks are taken from the highest priority lane that is not empty, except that a task that has waited longer than the starvation threshold in a lower priority lane is taken first (the
+ * longest waiting of them if several have) so that low priority work still makes progress under a constant stream of high priority work.
+ * <p>
+ * The priority of a task is retrieved from {@link Prioritized#getExecutionPriority()}. Tasks not implementing {@link Prioritized} use {@link ExecutionPriority#NORMAL}.
+ * <p>
+ * All lanes share the capacity and are guarded by a single lock (as with {@link java.util.concurrent.ArrayBlockingQueue}) since the queue is expected to be short and is only used once all
+ * threads of the pool are busy.
+ */
+@ThreadSafe
+public class HystrixPriorityBlockingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /**
+     * A task queued on a {@link HystrixPriorityBlockingQueue} that specifies the lane it is queued in.
+     */
+    public static interface Prioritized {
+
+        public ExecutionPriority getExecutionPriority();
+
+    }
+
+    private final int capacity;
+    private final HystrixProperty<Integer> starvationThresholdInMilliseconds;
+    private final ArrayDeque<Entry>[] lanes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    /* total number of tasks in all lanes (guarded by lock) */
+    private int count = 0;
+
+    /**
+     * @param capacity
+     *            max number of tasks queued across all lanes
+     * @param starvationThresholdInMilliseconds
+     *            {@code HystrixProperty<Integer>} for the time a task can wait in a lower priority lane before it is taken ahead of higher priority tasks
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public HystrixPriorityBlockingQueue(int capacity, HystrixProperty<Integer> starvationThresholdInMilliseconds) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.starvationThresholdInMilliseconds = starvationThresholdInMilliseconds;
+        this.lanes = new ArrayDeque[ExecutionPriority.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ArrayDeque<Entry>();
+        }
+    }
+
+    /**
+     * Number of tasks queued with the given priority or higher, that is the tasks that would be taken ahead of a task with the given priority if queued now (ignoring starvation).
+     *
+     * @param priority
+     *            {@link ExecutionPriority}
+     * @return number of tasks
+     */
+    public int sizeOfPriorityOrHigher(ExecutionPriority priority) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int size = 0;
+            for (int i = 0; i <= priority.ordinal(); i++) {
+                size += lanes[i].size();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        checkNotNull(task);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (count == capacity) {
+                return false;
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        checkNotNull(task);
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            while (count == capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        checkNotNull(task);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            while (count == capacity) {
+                notFull.await();
+            }
+            enqueue(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return count == 0 ? null : lanes[nextLane()].peek().task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            for (ArrayDeque<Entry> lane : lanes) {
+                Iterator<Entry> i = lane.iterator();
+                while (i.hasNext()) {
+                    if (o.equals(i.next().task)) {
+                        i.remove();
+                        removed();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        checkNotNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < maxElements && count > 0) {
+                c.add(dequeue());
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Iterator over a snapshot of the queued tasks (in lane order rather than the order they would be taken) that supports {@link Iterator#remove()} as used by
+     * {@link java.util.concurrent.ThreadPoolExecutor#purge()}.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> snapshot = new ArrayList<Runnable>();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            for (ArrayDeque<Entry> lane : lanes) {
+                for (Entry e : lane) {
+                    snapshot.add(e.task);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new Iterator<Runnable>() {
+
+            private int next = 0;
+            private Runnable last = null;
+
+            @Override
+            public boolean hasNext() {
+                return next < snapshot.size();
+            }
+
+            @Override
+            public Runnable next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = snapshot.get(next++);
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                HystrixPriorityBlockingQueue.this.remove(last);
+                last = null;
+            }
+
+        };
+    }
+
+    private static void checkNotNull(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    /* must hold lock */
+    private void enqueue(Runnable task) {
+        ExecutionPriority priority = ExecutionPriority.NORMAL;
+        if (task instanceof Prioritized) {
+            ExecutionPriority p = ((Prioritized) task).getExecutionPriority();
+            if (p != null) {
+                priority = p;
+            }
+        }
+        lanes[priority.ordinal()].add(new Entry(task, System.nanoTime()));
+        count++;
+        notEmpty.signal();
+    }
+
+    /* must hold lock and count > 0 */
+    private Runnable dequeue() {
+        Runnable task = lanes[nextLane()].poll().task;
+        removed();
+        return task;
+    }
+
+    /* must hold lock */
+    private void removed() {
+        count--;
+        notFull.signal();
+    }
+
+    /**
+     * The lane to take the next task from: the one holding the longest waiting task beyond the starvation threshold or otherwise the highest priority lane that is not empty.
+     * <p>
+     * Must hold lock and count > 0.
+     */
+    private int nextLane() {
+        int highest = -1;
+        int starved = -1;
+        long starvedSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(starvationThresholdInMilliseconds.get());
+        for (int i = 0; i < lanes.length; i++) {
+            Entry head = lanes[i].peek();
+            if (head == null) {
+                continue;
+            }
+            if (highest < 0) {
+                highest = i;
+            } else if (head.queuedTime - starvedSince < 0) {
+                // a lower priority task has been waiting longer than the threshold
+                starvedSince = head.queuedTime;
+                starved = i;
+            }
+        }
+        return starved >= 0 ? starved : highest;
+    }
+
+    private static class Entry {
+        private final Runnable task;
+        private final long queuedTime;
+
+        private Entry(Runnable task, long queuedTime) {
+            this.task = task;
+            this.queuedTime = queuedTime;
+        }
+    }
+
+    public static class UnitTest {
+
+        private static final HystrixProperty<Integer> starvationThreshold = HystrixProperty.Factory.asProperty(10000);
+
+        @Test
+        public void testPriorityOrder() {
+            HystrixPriorityBlockingQueue q = new HystrixPriorityBlockingQueue(10, starvationThreshold);
+            Runnable low1 = new TestTask(ExecutionPriority.LOW);
+            Runnable normal1 = new TestTask(ExecutionPriority.NORMAL);
+            Runnable high1 = new TestTask(ExecutionPriority.HIGH);
+            Runnable low2 = new TestTask(ExecutionPriority.LOW);
+            Runnable unprioritized = new TestTask(null);
+            Runnable high2 = new TestTask(ExecutionPriority.HIGH);
+            q.add(low1);
+            q.add(normal1);
+            q.add(high1);
+            q.add(low2);
+            q.add(unprioritized);
+            q.add(high2);
+
+            assertEquals(6, q.size());
+            assertEquals(4, q.remainingCapacity());
+            assertEquals(2, q.sizeOfPriorityOrHigher(ExecutionPriority.HIGH));
+            assertEquals(4, q.sizeOfPriorityOrHigher(ExecutionPriority.NORMAL));
+            assertEquals(6, q.sizeOfPriorityOrHigher(ExecutionPriority.LOW));
+
+            assertSame(high1, q.peek());
+            assertSame(high1, q.poll());
+            assertSame(high2, q.poll());
+            assertSame(normal1, q.poll());
+            assertSame(unprioritized, q.poll());
+            assertSame(low1, q.poll());
+            assertSame(low2, q.poll());
+            assertNull(q.poll());
+            assertEquals(0, q.size());
+        }
+
+        @Test
+        public void testStarvationProtection() throws Exception {
+            HystrixPriorityBlockingQueue q = new HystrixPriorityBlockingQueue(10, HystrixProperty.Factory.asProperty(10));
+            Runnable low = new TestTask(ExecutionPriority.LOW);
+            Runnable normal = new TestTask(ExecutionPriority.NORMAL);
+            q.add(low);
+            Thread.sleep(5);
+            q.add(normal);
+            Thread.sleep(20);
+            Runnable high = new TestTask(ExecutionPriority.HIGH);
+            q.add(high);
+
+            // both lower priority tasks are starved so the one waiting longest is taken first
+            assertSame(low, q.poll());
+            assertSame(normal, q.poll());
+            assertSame(high, q.poll());
+        }
+
+        @Test
+        public void testCapacity() throws Exception {
+            HystrixPriorityBlockingQueue q = new HystrixPriorityBlockingQueue(2, starvationThreshold);
+            assertTrue(q.offer(new TestTask(ExecutionPriority.LOW)));
+            assertTrue(q.offer(new TestTask(ExecutionPriority.LOW)));
+            // the capacity is shared by all lanes
+            assertFalse(q.offer(new TestTask(ExecutionPriority.HIGH)));
+            assertFalse(q.offer(new TestTask(ExecutionPriority.HIGH), 10, TimeUnit.MILLISECONDS));
+            assertEquals(0, q.remainingCapacity());
+            q.take();
+            assertTrue(q.offer(new TestTask(ExecutionPriority.HIGH)));
+            assertNull(new HystrixPriorityBlockingQueue(1, starvationThreshold).poll(10, TimeUnit.MILLISECONDS));
+        }
+
+        @Test
+        public void testRemoveAndDrain() {
+            HystrixPriorityBlockingQueue q = new HystrixPriorityBlockingQueue(10, starvationThreshold);
+            Runnable low = new TestTask(ExecutionPriority.LOW);
+            Runnable normal = new TestTask(ExecutionPriority.NORMAL);
+            Runnable high = new TestTask(ExecutionPriority.HIGH);
+            q.add(low);
+            q.add(normal);
+            q.add(high);
+
+            assertTrue(q.remove(normal));
+            assertFalse(q.remove(normal));
+            assertEquals(2, q.size());
+
+            Iterator<Runnable> i = q.iterator();
+            assertSame(high, i.next());
+            i.remove();
+            assertEquals(1, q.size());
+
+            List<Runnable> drained = new ArrayList<Runnable>();
+            assertEquals(1, q.drainTo(drained));
+            assertSame(low, drained.get(0));
+            assertTrue(q.isEmpty());
+        }
+
+        private static class TestTask implements Runnable, Prioritized {
+
+            private final ExecutionPriority priority;
+
+            private TestTask(ExecutionPriority priority) {
+                this.priority = priority;
+            }
+
+            @Override
+            public ExecutionPriority getExecutionPriority() {
+                return priority;
+            }
+
+            @Override
+            public void run() {
+            }
+
+        }
+    }
+}
@@ -31,7 +31,11 @@ package com.netflix.hystrix.util;
 public enum HystrixRollingNumberEvent {
     SUCCESS(1), FAILURE(1), TIMEOUT(1), SHORT_CIRCUITED(1), THREAD_POOL_REJECTED(1), SEMAPHORE_REJECTED(1),
     FALLBACK_SUCCESS(1), FALLBACK_FAILURE(1), FALLBACK_REJECTION(1), EXCEPTION_THROWN(1),
-    THREAD_EXECUTION(1), THREAD_MAX_ACTIVE(2), COLLAPSED(1), RESPONSE_FROM_CACHE(1);
+    THREAD_EXECUTION(1), THREAD_MAX_ACTIVE(2), COLLAPSED(1), RESPONSE_FROM_CACHE(1),
+    HEDGE_ISSUED(1), HEDGE_WON(1), RETRY(1), DEADLINE_EXCEEDED(1),
+    SEMAPHORE_WAITED(1), SEMAPHORE_WAIT_TIME(1), SEMAPHORE_WAIT_TIME_MAX(2), SEMAPHORE_WAIT_QUEUE_REJECTED(1), LAST_KNOWN_GOOD_HIT(1), LAST_KNOWN_GOOD_MISS(1),
+    THREAD_QUEUE_DELAY_SHED(1), THREAD_QUEUE_PURGED(1), COALESCED(1),
+    REQUEST_CACHE_EVICTED(1), REQUEST_CACHE_ENTRIES_MAX(2), REQUEST_CACHE_SIZE_IN_BYTES_MAX(2), NEGATIVE_CACHE_HIT(1);
 
     private final int type;
 
@@ -105,11 +105,23 @@ public class HystrixRollingPercentile {
      */
     public void addValue(int... value) {
         for (int v : value) {
-            try {
-                getCurrentBucket().data.addValue(v);
-            } catch (Exception e) {
-                logger.error("Failed to add value: " + v, e);
-            }
+            addValue(v);
+        }
+    }
+
+    /**
+     * Add a single value to current bucket.
+     * <p>
+     * This is the variant invoked on every command execution so it avoids the array allocation of the varargs {@link #addValue(int...)}.
+     * 
+     * @param value
+     *            Value to be stored in current bucket such as execution latency in milliseconds
+     */
+    public void addValue(int value) {
+        try {
+            getCurrentBucket().data.addValue(value);
+        } catch (Exception e) {
+            logger.error("Failed to add value: " + value, e);
         }
     }
 
@@ -277,14 +289,18 @@ public class HystrixRollingPercentile {
 
         public void addValue(int... latency) {
             for (int l : latency) {
-                /* We just wrap around the beginning and over-write if we go past 'dataLength' as that will effectively cause us to "sample" the most recent data */
-                list.set(index.getAndIncrement() % length, l);
-                // TODO Alternative to AtomicInteger? The getAndIncrement may be a source of contention on high throughput circuits on large multi-core systems.
-                // LongAdder isn't suited to this as it is not consistent. Perhaps a different data structure that doesn't need indexed adds?
-                // A threadlocal data storage that only aggregates when fetched would be ideal. Similar to LongAdder except for accumulating lists of data.
+                addValue(l);
             }
         }
 
+        public void addValue(int latency) {
+            /* We just wrap around the beginning and over-write if we go past 'dataLength' as that will effectively cause us to "sample" the most recent data */
+            list.set(index.getAndIncrement() % length, latency);
+            // TODO Alternative to AtomicInteger? The getAndIncrement may be a source of contention on high throughput circuits on large multi-core systems.
+            // LongAdder isn't suited to this as it is not consistent. Perhaps a different data structure that doesn't need indexed adds?
+            // A threadlocal data storage that only aggregates when fetched would be ideal. Similar to LongAdder except for accumulating lists of data.
+        }
+
         public int length() {
             if (index.get() > list.length()) {
                 return list.length();
@@ -22,6 +22,11 @@ import java.lang.ref.SoftReference;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.concurrent.NotThreadSafe;
@@ -31,9 +36,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.netflix.hystrix.HystrixCollapser;
+import com.netflix.hystrix.HystrixCommand;
 
 /**
- * Timer used by the {@link HystrixCollapser} to trigger batch executions.
+ * Timer used by the {@link HystrixCollapser} to trigger batch executions and by {@link HystrixCommand} to enforce execution timeouts.
  * <p>
  * Used instead of java.util.Timer because:
  * <ul>
@@ -67,6 +73,20 @@ public class HystrixTimer {
     }
 
     private TickThread tickThread = new TickThread();
+    /* performs the work TimerListeners hand off (threads are created as needed and discarded when idle so work that blocks doesn't hold up other work) */
+    private final ThreadPoolExecutor workExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, HystrixTimer.class.getSimpleName() + "_Work-" + threadNumber.incrementAndGet());
+            // like the tick thread these threads have no cleanup requirements
+            t.setDaemon(true);
+            return t;
+        }
+
+    });
     private ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Reference<TimerListener>>> listenersPerInterval = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Reference<TimerListener>>>();
     private ConcurrentLinkedQueue<TimerInterval> intervals = new ConcurrentLinkedQueue<TimerInterval>();
 
@@ -101,6 +121,19 @@ public class HystrixTimer {
         return reference;
     }
 
+    /**
+     * Perform work triggered by a {@link TimerListener} on another thread so that it doesn't block the tick thread (see {@link TimerListener#tick()}).
+     * <p>
+     * Such as performing the timeout of a {@link HystrixCommand} which includes retrieving its fallback. The amount of work is bounded by the callers (such as by the fallback semaphore of each
+     * command) rather than here so that one slow piece of work never delays another.
+     * 
+     * @param work
+     *            work to perform
+     */
+    public void execute(Runnable work) {
+        workExecutor.execute(work);
+    }
+
     private class TickThread extends Thread {
 
         TickThread() {
@@ -239,6 +272,38 @@ public class HystrixTimer {
 
     public static class UnitTest {
 
+        @Test
+        public void testExecuteDoesNotBlockTick() throws Exception {
+            HystrixTimer timer = HystrixTimer.getInstance();
+            final CountDownLatch slowWorkStarted = new CountDownLatch(1);
+            final CountDownLatch fastWorkDone = new CountDownLatch(1);
+            // work that blocks for a long time
+            timer.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    slowWorkStarted.countDown();
+                    try {
+                        Thread.sleep(2000);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+            });
+            assertTrue(slowWorkStarted.await(1000, TimeUnit.MILLISECONDS));
+            // doesn't hold up other work
+            timer.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    fastWorkDone.countDown();
+                }
+
+            });
+            assertTrue(fastWorkDone.await(500, TimeUnit.MILLISECONDS));
+        }
+
         @Test
         public void testSingleCommandSingleInterval() {
             HystrixTimer timer = HystrixTimer.getInstance();